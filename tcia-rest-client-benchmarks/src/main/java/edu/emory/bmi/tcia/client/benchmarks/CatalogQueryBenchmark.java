@@ -0,0 +1,85 @@
+package edu.emory.bmi.tcia.client.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import edu.emory.bmi.tcia.client.catalog.LocalCatalog;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.request.RequestTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * The getSeries queries answered by the local catalog, over a collection of generated series: a selective query by
+ * patient and modality, and a broad one by modality.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmarks.xml")
+@State(Scope.Benchmark)
+public class CatalogQueryBenchmark {
+
+	private static final String COLLECTION = "TCGA-BRCA";
+	private static final String[] MODALITIES = {"CT", "MR", "PT", "SEG"};
+
+	@Param({"100000"})
+	public int seriesCount;
+
+	private LocalCatalog catalog;
+
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		List<Series> series = new ArrayList<>(seriesCount);
+		for (int i = 0; i < seriesCount; i++) {
+			Series s = new Series();
+			s.setSeriesInstanceUID("1.3.6.1.4.1.14519.5.2.1." + i);
+			s.setStudyInstanceUID("1.3.6.1.4.1.14519.5.2.2." + i / 4);
+			s.setPatientID(String.format("TCGA-%06d", i / 8));
+			s.setCollection(COLLECTION);
+			s.setModality(MODALITIES[i % MODALITIES.length]);
+			series.add(s);
+		}
+		catalog = new LocalCatalog();
+		try (Stream<Series> recorded = catalog.record(Series.class,
+				RequestTemplate.GET_SERIES.query().collection(COLLECTION), series.stream())) {
+			recorded.forEach(s -> { });
+		}
+	}
+
+
+	/**
+	 * The series of a patient by modality, from the smallest index entry.
+	 */
+	@Benchmark
+	public void byPatientAndModality(Blackhole blackhole) {
+		catalog.query(Series.class, RequestTemplate.GET_SERIES.query().collection(COLLECTION)
+				.patientID("TCGA-000042").modality("MR")).forEach(blackhole::consume);
+	}
+
+
+	/**
+	 * A quarter of the series of the collection.
+	 */
+	@Benchmark
+	public void byModality(Blackhole blackhole) {
+		catalog.query(Series.class, RequestTemplate.GET_SERIES.query().collection(COLLECTION).modality("MR"))
+				.forEach(blackhole::consume);
+	}
+}
@@ -0,0 +1,127 @@
+package edu.emory.bmi.tcia.client.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.emory.bmi.tcia.client.columnar.ColumnarReader;
+import edu.emory.bmi.tcia.client.columnar.ColumnarSchema;
+import edu.emory.bmi.tcia.client.columnar.ColumnarWriter;
+import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
+import edu.emory.bmi.tcia.client.model.Series;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Reloading a snapshot of generated series: from JSON, and from a columnar snapshot, in full or by a scan of the
+ * modality column.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmarks.xml")
+@State(Scope.Benchmark)
+public class ColumnarSnapshotBenchmark {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final String[][] EQUIPMENT = {
+			{"CT", "CHEST", "SIEMENS", "SOMATOM Definition AS+"},
+			{"MR", "BRAIN", "GE MEDICAL SYSTEMS", "SIGNA HDxt"},
+			{"PT", "WHOLEBODY", "Philips Medical Systems", "GEMINI TF"},
+			{"MR", "BREAST", "SIEMENS", "Avanto"}};
+
+	@Param({"100000"})
+	public int seriesCount;
+
+	private Path directory;
+	private Path json;
+	private Path columnar;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		List<Series> series = new ArrayList<>(seriesCount);
+		for (int i = 0; i < seriesCount; i++) {
+			String[] equipment = EQUIPMENT[i % EQUIPMENT.length];
+			Series s = new Series();
+			s.setSeriesInstanceUID("1.3.6.1.4.1.14519.5.2.1.7695.4164." + (100000000000L + i * 7919L));
+			s.setStudyInstanceUID("1.3.6.1.4.1.14519.5.2.1.7695.4164." + (200000000000L + i / 4 * 104729L));
+			s.setCollection("TCGA-BRCA");
+			s.setPatientID(String.format("TCGA-%06d", i / 8));
+			s.setModality(equipment[0]);
+			s.setBodyPartExamined(equipment[1]);
+			s.setManufacturer(equipment[2]);
+			s.setManufacturerModelName(equipment[3]);
+			s.setProtocolName(equipment[1] + " routine");
+			s.setSeriesDate("2003-0" + (1 + i % 9) + "-1" + (i % 10));
+			s.setSeriesDescription(equipment[1] + " " + equipment[0]);
+			s.setSeriesNumber(String.valueOf(1 + i % 4));
+			s.setAnnotationsFlag("NO");
+			s.setSoftwareVersions("syngo MR B17");
+			s.setImageCount(100 + i % 200);
+			series.add(s);
+		}
+		directory = Files.createTempDirectory("tcia-columnar-benchmark");
+		json = directory.resolve("series.json");
+		MAPPER.writeValue(json.toFile(), series);
+		columnar = directory.resolve("series.col");
+		try (ColumnarWriter<Series> writer = new ColumnarWriter<>(columnar.toString(), ColumnarSchema.SERIES)) {
+			writer.addAll(series.stream());
+		}
+		System.out.println("\nJSON: " + Files.size(json) + " bytes, columnar: " + Files.size(columnar) + " bytes");
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(json);
+		Files.deleteIfExists(columnar);
+		Files.deleteIfExists(directory);
+	}
+
+
+	/**
+	 * The series of the JSON snapshot, parsed to a list.
+	 */
+	@Benchmark
+	public List<Series> loadJson() throws IOException {
+		return MAPPER.readValue(json.toFile(), new TypeReference<List<Series>>() { });
+	}
+
+
+	/**
+	 * The series of the columnar snapshot, all decoded.
+	 */
+	@Benchmark
+	public void loadColumnar(Blackhole blackhole) throws IOException {
+		new ColumnarReader<>(columnar.toString(), ColumnarSchema.SERIES).stream().forEach(blackhole::consume);
+	}
+
+
+	/**
+	 * The number of MR series of the columnar snapshot, from the codes of the modality column.
+	 */
+	@Benchmark
+	public long countColumnar() throws IOException {
+		return new ColumnarReader<>(columnar.toString(), ColumnarSchema.SERIES).count(DICOMAttributes.MODALITY, "MR");
+	}
+}
@@ -0,0 +1,217 @@
+package edu.emory.bmi.tcia.client.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.metrics.HistogramSnapshot;
+import edu.emory.bmi.tcia.client.metrics.LatencyHistogram;
+import edu.emory.bmi.tcia.client.resilience.RetryPolicy;
+import edu.emory.bmi.tcia.client.simulator.TCIASimulator;
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import edu.emory.bmi.tcia.client.util.SaveOptions;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+
+
+/**
+ * A load test of the client against the embedded TCIA simulator. Each level of concurrency runs its callers for a
+ * fixed duration, each call asking for a random patient, series or image, and reports the throughput and the tail
+ * latency of the calls:
+ * <pre>
+ * java -cp tcia-rest-client-benchmarks/target/benchmarks.jar edu.emory.bmi.tcia.client.benchmarks.LoadTest \
+ *     --levels=1,4,16,64 --duration=10 --latency=50 --bandwidth=10485760 --images=0.2
+ * </pre>
+ * The options, with their defaults:
+ * <ul>
+ * <li>levels=1,2,4,8,16,32: the numbers of concurrent callers</li>
+ * <li>duration=10: the seconds of each level, after a warmup of a second</li>
+ * <li>latency=20, jitter=0: the latency (ms) of the simulator and its random addition</li>
+ * <li>bandwidth=0, total-bandwidth=0: the caps (bytes per second) of each response and of all of them</li>
+ * <li>error-rate=0, drop-rate=0: the rates of the injected errors and dropped images</li>
+ * <li>images=0.1: the share of the calls that get and save the ZIP of a series</li>
+ * <li>instances=10, instance-size=65536: the shape of the images</li>
+ * <li>retries=1: the attempts of each call, 1 not to hide the injected errors</li>
+ * <li>transport=apache: the transport of the client, apache or http2</li>
+ * </ul>
+ */
+public class LoadTest {
+
+	private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+	static {
+		DEFAULTS.put("levels", "1,2,4,8,16,32");
+		DEFAULTS.put("duration", "10");
+		DEFAULTS.put("latency", "20");
+		DEFAULTS.put("jitter", "0");
+		DEFAULTS.put("bandwidth", "0");
+		DEFAULTS.put("total-bandwidth", "0");
+		DEFAULTS.put("error-rate", "0");
+		DEFAULTS.put("drop-rate", "0");
+		DEFAULTS.put("images", "0.1");
+		DEFAULTS.put("instances", "10");
+		DEFAULTS.put("instance-size", "65536");
+		DEFAULTS.put("retries", "1");
+		DEFAULTS.put("transport", "apache");
+	}
+
+	private final Map<String, String> options;
+	private final TCIASimulator simulator;
+	private final TCIAClientImpl client;
+	private final List<String> collections;
+	private final List<String> seriesInstanceUIDs;
+	private final double images;
+
+
+	private LoadTest(Map<String, String> options, TCIASimulator simulator) {
+		this.options = options;
+		this.simulator = simulator;
+		this.client = new TCIAClientImpl();
+		this.collections = simulator.getCollections();
+		this.seriesInstanceUIDs = simulator.getSeriesInstanceUIDs();
+		this.images = Double.parseDouble(options.get("images"));
+	}
+
+
+	public static void main(String[] args) throws Exception {
+		// Send the small responses of the simulator right away, rather than after the delayed acknowledgement.
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		Map<String, String> options = new HashMap<>(DEFAULTS);
+		for (String arg : args) {
+			String[] option = arg.replaceFirst("^--", "").split("=", 2);
+			if (!DEFAULTS.containsKey(option[0]) || option.length < 2) {
+				System.err.println("Unknown option " + arg + ", expected one of --<option>=<value> with the " +
+						"options " + DEFAULTS.keySet());
+				System.exit(1);
+			}
+			options.put(option[0], option[1]);
+		}
+
+		try (TCIASimulator simulator = new TCIASimulator()
+				.setCollections(4).setPatientsPerCollection(50)
+				.setInstancesPerSeries(Integer.parseInt(options.get("instances")))
+				.setInstanceSize(Integer.parseInt(options.get("instance-size")))
+				.setServerThreads(256)
+				.setLatency(Long.parseLong(options.get("latency")))
+				.setLatencyJitter(Long.parseLong(options.get("jitter")))
+				.setBandwidth(Long.parseLong(options.get("bandwidth")))
+				.setTotalBandwidth(Long.parseLong(options.get("total-bandwidth")))
+				.setErrorRate(Double.parseDouble(options.get("error-rate")))
+				.setDropRate(Double.parseDouble(options.get("drop-rate")))
+				.start()) {
+			TCIAConf tciaConf = simulator.getConf();
+			tciaConf.setTransport(options.get("transport"));
+			TCIAClientUtil.init(tciaConf);
+			TCIAClientUtil.setResponseCache(null);
+			TCIAClientUtil.setImageCache(null);
+			TCIAClientUtil.setRetryPolicy(new RetryPolicy().setMaxAttempts(Integer.parseInt(options.get("retries"))));
+			new LoadTest(options, simulator).run();
+		} finally {
+			TCIAClientUtil.shutdown();
+		}
+	}
+
+
+	private void run() throws Exception {
+		long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+		System.out.println("Load test of " + seriesInstanceUIDs.size() + " series at " + simulator.getBaseUrl() +
+				" with " + options);
+		System.out.println(String.format("%11s %9s %7s %9s %8s %9s %9s %9s %9s", "concurrency", "calls", "errors",
+				"calls/s", "MB/s", "mean ms", "p50 ms", "p99 ms", "max ms"));
+
+		for (String level : options.get("levels").split(",")) {
+			int concurrency = Integer.parseInt(level.trim());
+			runLevel(concurrency, TimeUnit.SECONDS.toNanos(1), null);
+
+			Result result = new Result();
+			long start = System.nanoTime();
+			runLevel(concurrency, duration, result);
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			HistogramSnapshot latency = result.latency.snapshot();
+			System.out.println(String.format("%11d %9d %7d %9.1f %8.2f %9.2f %9.2f %9.2f %9.2f", concurrency,
+					latency.getCount(), result.errors.sum(), latency.getCount() / seconds,
+					result.bytes.sum() / seconds / (1024 * 1024), latency.getMean() / 1e3, latency.getP50() / 1e3,
+					latency.getP99() / 1e3, latency.getMax() / 1e3));
+		}
+	}
+
+
+	/*
+	 * Run the callers of a level for a duration, recording their calls into the result unless warming up.
+	 */
+	private void runLevel(int concurrency, long duration, Result result) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		long deadline = System.nanoTime() + duration;
+		try {
+			List<Future<?>> callers = new ArrayList<>();
+			for (int i = 0; i < concurrency; i++) {
+				callers.add(executor.submit(() -> {
+					Path path = Files.createTempFile("tcia-load-test", ".zip");
+					try {
+						while (System.nanoTime() < deadline) {
+							call(path, result);
+						}
+					} finally {
+						Files.deleteIfExists(path);
+					}
+					return null;
+				}));
+			}
+			for (Future<?> caller : callers) {
+				caller.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	private void call(Path path, Result result) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long start = System.nanoTime();
+		long bytes = 0;
+		boolean failed = false;
+		try {
+			if (random.nextDouble() < images) {
+				String seriesInstanceUID = seriesInstanceUIDs.get(random.nextInt(seriesInstanceUIDs.size()));
+				ImageResult imageResult = client.getImage(seriesInstanceUID);
+				bytes = TCIAClientUtil.saveTo(imageResult, path, new SaveOptions());
+			} else if (random.nextBoolean()) {
+				String collection = collections.get(random.nextInt(collections.size()));
+				bytes = client.getPatient(collection, OutputFormat.json).length();
+			} else {
+				String seriesInstanceUID = seriesInstanceUIDs.get(random.nextInt(seriesInstanceUIDs.size()));
+				bytes = client.getSeries(null, null, null, null, seriesInstanceUID, null, null, null,
+						OutputFormat.json).length();
+			}
+		} catch (Exception e) {
+			failed = true;
+		}
+		if (result != null) {
+			result.latency.record(System.nanoTime() - start);
+			result.bytes.add(bytes);
+			if (failed) {
+				result.errors.increment();
+			}
+		}
+	}
+
+
+	private static class Result {
+		final LatencyHistogram latency = new LatencyHistogram();
+		final LongAdder bytes = new LongAdder();
+		final LongAdder errors = new LongAdder();
+	}
+}
@@ -0,0 +1,110 @@
+package edu.emory.bmi.tcia.client.benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import edu.emory.bmi.tcia.client.util.SaveOptions;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The end-to-end throughput of concurrent requests through the client against the stub server: the pooled
+ * connections, the retry and metrics paths, the decoding and the saving of the images. Run with -t to vary the
+ * number of concurrent callers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmarks.xml")
+@Threads(8)
+@State(Scope.Benchmark)
+public class RequestThroughputBenchmark {
+
+	private static final int IMAGE_SIZE = 1024 * 1024;
+
+	private StubServer server;
+	private TCIAClientImpl client;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		server = new StubServer(IMAGE_SIZE);
+		client = new TCIAClientImpl();
+		server.initClient();
+		TCIAClientUtil.setResponseCache(null);
+		TCIAClientUtil.setImageCache(null);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		TCIAClientUtil.shutdown();
+		server.close();
+	}
+
+
+	/**
+	 * A getSeries of the recorded fixture, decoded into a string.
+	 */
+	@Benchmark
+	public String getSeries(Caller caller) throws Exception {
+		return client.getSeries(caller.collection, null, null, null, null, null, null, null, OutputFormat.json);
+	}
+
+
+	/**
+	 * A getImage of 1 MB, saved to a file of the calling thread.
+	 */
+	@Benchmark
+	public long getImage(Caller caller) throws Exception {
+		ImageResult imageResult = client.getImage(caller.seriesInstanceUID);
+		return TCIAClientUtil.saveTo(imageResult, caller.path, caller.options);
+	}
+
+
+	/**
+	 * A calling thread. Each thread asks for its own collection and series, so that the identical concurrent
+	 * requests are not coalesced into one.
+	 */
+	@State(Scope.Thread)
+	public static class Caller {
+		private static final AtomicInteger THREADS = new AtomicInteger();
+
+		String collection;
+		String seriesInstanceUID;
+		Path path;
+		SaveOptions options = new SaveOptions();
+
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+			int thread = THREADS.incrementAndGet();
+			collection = "TCGA-BRCA-" + thread;
+			seriesInstanceUID = "1.3.6.1.4.1.14519.5.2.1.7695.4001." + thread;
+			path = Files.createTempFile("tcia-benchmark-image", ".zip");
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws Exception {
+			Files.deleteIfExists(path);
+		}
+	}
+}
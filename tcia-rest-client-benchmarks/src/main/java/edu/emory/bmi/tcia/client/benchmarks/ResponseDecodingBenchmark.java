@@ -0,0 +1,84 @@
+package edu.emory.bmi.tcia.client.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.apache.http.client.utils.URIBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * The decoding of the metadata responses, from the recorded fixtures served over the loopback: the whole response
+ * as a string through getStringFromURIBuilder, and the typed records streamed off the response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmarks.xml")
+@State(Scope.Benchmark)
+public class ResponseDecodingBenchmark {
+
+	private StubServer server;
+	private TCIAClientImpl client;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		server = new StubServer(1024);
+		client = new TCIAClientImpl();
+		server.initClient();
+		TCIAClientUtil.setResponseCache(null);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		TCIAClientUtil.shutdown();
+		server.close();
+	}
+
+
+	/**
+	 * Decode the whole response of an endpoint into a string.
+	 */
+	@Benchmark
+	public String decodeString(Endpoint endpoint) throws Exception {
+		return TCIAClientUtil.getStringFromURIBuilder(OutputFormat.json,
+				new URIBuilder(TCIAClientUtil.getResourceUrl() + "/" + endpoint.name));
+	}
+
+
+	/**
+	 * Decode the records of getSeries incrementally, to compare with decodeString of getSeries.
+	 */
+	@Benchmark
+	public void streamSeries(Blackhole blackhole) throws Exception {
+		client.streamSeries("TCGA-BRCA", null, null, null, null, null, null, null).forEach(blackhole::consume);
+	}
+
+
+	/**
+	 * The endpoint of the recorded response to decode.
+	 */
+	@State(Scope.Benchmark)
+	public static class Endpoint {
+		@Param({"getCollectionValues", "getPatient", "getSeries"})
+		public String name;
+	}
+}
@@ -0,0 +1,91 @@
+package edu.emory.bmi.tcia.client.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import edu.emory.bmi.tcia.client.util.SaveOptions;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The throughput of saveTo, from an in-memory stream standing for the network, and from a file standing for the
+ * image cache. Multiply the operations per second by the size for the bytes per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmarks.xml")
+@State(Scope.Benchmark)
+public class SaveToBenchmark {
+
+	@Param({"4194304", "67108864"})
+	public int size;
+
+	@Param({"65536", "1048576"})
+	public int bufferSize;
+
+	private byte[] image;
+	private Path cached;
+	private Path target;
+	private SaveOptions options;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		image = new byte[size];
+		new Random(size).nextBytes(image);
+		cached = Files.createTempFile("tcia-benchmark-cached", ".zip");
+		Files.write(cached, image);
+		target = Files.createTempFile("tcia-benchmark-target", ".zip");
+		options = new SaveOptions().setBufferSize(bufferSize);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(cached);
+		Files.deleteIfExists(target);
+	}
+
+
+	/**
+	 * Save a streamed image, copied through the buffer.
+	 */
+	@Benchmark
+	public long saveStream() throws Exception {
+		ImageResult imageResult = new ImageResult();
+		imageResult.setRawData(new ByteArrayInputStream(image));
+		imageResult.setContentLength(size);
+		return TCIAClientUtil.saveTo(imageResult, target, options);
+	}
+
+
+	/**
+	 * Save a cached image, transferred between the file channels.
+	 */
+	@Benchmark
+	public long saveCached() throws Exception {
+		ImageResult imageResult = new ImageResult();
+		imageResult.setRawData(new FileInputStream(cached.toFile()));
+		return TCIAClientUtil.saveTo(imageResult, target, options);
+	}
+}
@@ -0,0 +1,135 @@
+package edu.emory.bmi.tcia.client.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+
+
+/**
+ * A local stub of the TCIA server. The metadata endpoints replay the recorded responses under /fixtures, whatever
+ * their query parameters, and getImage and getSingleImage return a fixed pseudo-random image of a given size.
+ */
+public class StubServer implements Closeable {
+
+	private static final String RESOURCE = "/query";
+	private static final String[] FIXTURES = {"getCollectionValues", "getPatient", "getSeries"};
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	static {
+		// Send the small responses right away, rather than after the delayed acknowledgement of the client.
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Map<String, byte[]> fixtures = new HashMap<>();
+	private final byte[] image;
+
+
+	/**
+	 * Start a stub server on a free local port.
+	 * @param imageSize the size (bytes) of the images
+	 * @throws IOException if the server could not be started or the fixtures could not be read
+	 */
+	public StubServer(int imageSize) throws IOException {
+		for (String endpoint : FIXTURES) {
+			fixtures.put(endpoint, readFixture(endpoint));
+		}
+		image = new byte[imageSize];
+		new Random(imageSize).nextBytes(image);
+
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		executor = Executors.newFixedThreadPool(16, r -> {
+			Thread thread = new Thread(r, "tcia-stub-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.createContext(RESOURCE, this::handle);
+		server.start();
+	}
+
+
+	/**
+	 * Point the TCIA client at this server.
+	 */
+	public void initClient() {
+		TCIAConf tciaConf = new TCIAConf();
+		tciaConf.setBaseurl("http://localhost:" + server.getAddress().getPort());
+		tciaConf.setResource(RESOURCE);
+		tciaConf.setAuthheader("Authorization");
+		tciaConf.setAuthflag("Basic");
+		tciaConf.setUsername("benchmark");
+		tciaConf.setPassword("benchmark");
+		TCIAClientUtil.init(tciaConf);
+	}
+
+
+	/**
+	 * Get a recorded response.
+	 * @param endpoint the endpoint, such as getSeries
+	 * @return the recorded response
+	 */
+	public byte[] getFixture(String endpoint) {
+		return fixtures.get(endpoint);
+	}
+
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		String endpoint = path.substring(path.lastIndexOf('/') + 1);
+		try (OutputStream out = exchange.getResponseBody()) {
+			if (endpoint.equals("getImage") || endpoint.equals("getSingleImage")) {
+				exchange.getResponseHeaders().set("Content-Type", "application/zip");
+				exchange.getResponseHeaders().set("imageCount", "1");
+				exchange.sendResponseHeaders(200, image.length);
+				for (int offset = 0; offset < image.length; offset += CHUNK_SIZE) {
+					out.write(image, offset, Math.min(CHUNK_SIZE, image.length - offset));
+				}
+			} else if (fixtures.containsKey(endpoint)) {
+				byte[] body = fixtures.get(endpoint);
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, body.length);
+				out.write(body);
+			} else {
+				exchange.sendResponseHeaders(404, -1);
+			}
+		}
+	}
+
+
+	private static byte[] readFixture(String endpoint) throws IOException {
+		try (InputStream in = StubServer.class.getResourceAsStream("/fixtures/" + endpoint + ".json")) {
+			if (in == null) {
+				throw new IOException("Missing fixture of " + endpoint);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+}
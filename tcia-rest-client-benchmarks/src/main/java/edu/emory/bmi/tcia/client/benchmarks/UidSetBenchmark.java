@@ -0,0 +1,98 @@
+package edu.emory.bmi.tcia.client.benchmarks;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import edu.emory.bmi.tcia.client.uid.UidSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The "already have it" check of a series UID, in a HashSet of Strings and in a UID set, over a million generated
+ * SeriesInstanceUIDs. The setup prints the heap that each set takes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog4j.configurationFile=log4j2-benchmarks.xml"})
+@State(Scope.Benchmark)
+public class UidSetBenchmark {
+
+	private static final String PREFIX = "1.3.6.1.4.1.14519.5.2.1.7695.4164.";
+
+	@Param({"1000000"})
+	public int uidCount;
+
+	private Set<String> hashSet;
+	private UidSet uidSet;
+	private char[][] queries;
+	private int next;
+
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		long before = getUsedMemory();
+		hashSet = new HashSet<>();
+		for (int i = 0; i < uidCount; i++) {
+			hashSet.add(getUid(i));
+		}
+		long afterHashSet = getUsedMemory();
+		uidSet = new UidSet();
+		for (int i = 0; i < uidCount; i++) {
+			uidSet.add(getUid(i));
+		}
+		long afterUidSet = getUsedMemory();
+		System.out.println("\nHashSet: " + (afterHashSet - before) / uidCount + " bytes per UID, UidSet: " +
+				(afterUidSet - afterHashSet) / uidCount + " bytes per UID");
+
+		// Half of the queries are in the sets.
+		Random random = new Random(42);
+		queries = new char[4096][];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = getUid(random.nextInt(2 * uidCount)).toCharArray();
+		}
+	}
+
+
+	/**
+	 * The queries are new Strings, as parsed from a response, whose hash code is not cached yet.
+	 */
+	@Benchmark
+	public boolean hashSetContains() {
+		return hashSet.contains(new String(queries[next++ & (queries.length - 1)]));
+	}
+
+
+	@Benchmark
+	public boolean uidSetContains() {
+		return uidSet.contains(new String(queries[next++ & (queries.length - 1)]));
+	}
+
+
+	private static String getUid(int i) {
+		return PREFIX + (100000000000000000L + i * 7919L) + "." + (i % 17);
+	}
+
+
+	private static long getUsedMemory() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,102 @@
+package edu.emory.bmi.tcia.client.benchmarks;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import edu.emory.bmi.tcia.client.cache.ResponseCache;
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
+import edu.emory.bmi.tcia.client.definitions.ServiceEndpoints;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.request.RequestTemplate;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.apache.http.client.utils.URIBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The cost of a request before it reaches the network: building its URI from a template or with a URIBuilder, and
+ * the whole client call when the response is served from the in-memory response cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmarks.xml")
+@State(Scope.Benchmark)
+public class UriConstructionBenchmark {
+
+	private static final String COLLECTION = "TCGA-BRCA";
+	private static final String MODALITY = "MR";
+	private static final String PATIENT_ID = "TCGA-AO-A0J2";
+
+	private StubServer server;
+	private TCIAClientImpl client;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		server = new StubServer(1024);
+		client = new TCIAClientImpl();
+		server.initClient();
+		// The response cache does not cache getSeries by default.
+		TCIAClientUtil.setResponseCache(ResponseCache.create(null, null, null,
+				Collections.singletonMap(ServiceEndpoints.getSeries, TimeUnit.HOURS.toMillis(1))));
+		client.getSeries(COLLECTION, null, MODALITY, PATIENT_ID, null, null, null, null, OutputFormat.json);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		TCIAClientUtil.setResponseCache(null);
+		TCIAClientUtil.shutdown();
+		server.close();
+	}
+
+
+	/**
+	 * Build the URI of getSeries from its compiled template, as TCIAClientImpl does.
+	 */
+	@Benchmark
+	public URI buildSeriesQuery() {
+		return RequestTemplate.GET_SERIES.query().collection(COLLECTION).modality(MODALITY).patientID(PATIENT_ID)
+				.format(OutputFormat.json).toURI(TCIAClientUtil.getResourceUrl());
+	}
+
+
+	/**
+	 * Build the URI of getSeries with a URIBuilder, as getStringFromURIBuilder does, which was the way of
+	 * TCIAClientImpl before the templates.
+	 */
+	@Benchmark
+	public URI buildSeriesUri() throws Exception {
+		URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
+		URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + ServiceEndpoints.getSeries);
+		uriBuilder.addParameter(DICOMAttributes.COLLECTION, COLLECTION);
+		uriBuilder.addParameter(DICOMAttributes.MODALITY, MODALITY);
+		uriBuilder.addParameter(DICOMAttributes.PATIENT_ID, PATIENT_ID);
+		uriBuilder.addParameter("format", OutputFormat.json.name());
+		return uriBuilder.build();
+	}
+
+
+	/**
+	 * A getSeries served from the response cache: the URI, the normalized key and the cache lookup.
+	 */
+	@Benchmark
+	public String cachedGetSeries() throws Exception {
+		return client.getSeries(COLLECTION, null, MODALITY, PATIENT_ID, null, null, null, null, OutputFormat.json);
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * The JMH benchmarks of the hot paths of the TCIA client, run against a local stub server that replays recorded
+ * fixtures.
+ */
+package edu.emory.bmi.tcia.client.benchmarks;
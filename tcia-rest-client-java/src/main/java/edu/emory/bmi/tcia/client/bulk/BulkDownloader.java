@@ -0,0 +1,308 @@
+package edu.emory.bmi.tcia.client.bulk;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import edu.emory.bmi.tcia.client.core.ITCIAClient;
+import edu.emory.bmi.tcia.client.uid.UidMap;
+import edu.emory.bmi.tcia.client.uid.UidSet;
+import edu.emory.bmi.tcia.client.util.SaveOptions;
+import edu.emory.bmi.tcia.client.util.ZipExtractor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Downloads many series concurrently, saving the ZIP of each series as SeriesInstanceUID.zip in a target directory,
+ * or writing its DICOM files into a SeriesInstanceUID subdirectory when an extractor or a series downloader is set.
+ * At most parallelism downloads are in flight at any time. The downloads run on virtual threads when the JVM
+ * supports them, and on a fixed pool of parallelism threads otherwise.
+ */
+public class BulkDownloader {
+
+	private static Logger logger = LogManager.getLogger(BulkDownloader.class.getName());
+
+	private final ITCIAClient client;
+	private final int parallelism;
+	private DownloadListener listener;
+	private ZipExtractor extractor;
+	private SeriesDownloader seriesDownloader;
+	private UidSet downloaded;
+
+
+	/**
+	 * Create a bulk downloader.
+	 * @param client the TCIA client used to get the images
+	 * @param parallelism the maximum number of concurrent downloads
+	 */
+	public BulkDownloader(ITCIAClient client, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1: " + parallelism);
+		}
+		this.client = client;
+		this.parallelism = parallelism;
+	}
+
+
+	/**
+	 * Set a listener that is notified as each series completes.
+	 * @param listener the download listener
+	 * @return this bulk downloader
+	 */
+	public BulkDownloader setListener(DownloadListener listener) {
+		this.listener = listener;
+		return this;
+	}
+
+
+	/**
+	 * Set an extractor, to write the DICOM files of each series to SeriesInstanceUID/SOPInstanceUID.dcm as they are
+	 * downloaded, instead of saving the ZIPs. The extractor is shared by the concurrent downloads.
+	 * @param extractor the ZIP extractor, or null to save the ZIPs
+	 * @return this bulk downloader
+	 */
+	public BulkDownloader setExtractor(ZipExtractor extractor) {
+		this.extractor = extractor;
+		return this;
+	}
+
+
+	/**
+	 * Set a series downloader, to write the DICOM files of each series to SeriesInstanceUID/SOPInstanceUID.dcm with
+	 * its download strategy. The series downloader takes precedence over the extractor. Its parallelism multiplies
+	 * the parallelism of the bulk download, so keep the connection pool large enough for both.
+	 * @param seriesDownloader the series downloader, or null
+	 * @return this bulk downloader
+	 */
+	public BulkDownloader setSeriesDownloader(SeriesDownloader seriesDownloader) {
+		this.seriesDownloader = seriesDownloader;
+		return this;
+	}
+
+
+	/**
+	 * Set the series already downloaded, which are skipped and left out of the results. A series is added to the set
+	 * as its download starts, and removed from it if the download fails. A series listed twice is downloaded once:
+	 * the later occurrence waits for the download of the earlier one, and downloads the series again only if it
+	 * failed. A UID too long to be held by the set fails without being downloaded. The set holds the UIDs packed, for
+	 * downloads of millions of series. The downloader synchronizes on it.
+	 * @param downloaded the UIDs of the series already downloaded, or null to download every series
+	 * @return this bulk downloader
+	 */
+	public BulkDownloader setDownloaded(UidSet downloaded) {
+		this.downloaded = downloaded;
+		return this;
+	}
+
+
+	/**
+	 * Download the given series.
+	 * @param seriesInstanceUIDs the UIDs of the series instances
+	 * @param directory the directory to save the ZIPs
+	 * @return the result of each series, in the order of the given UIDs, the skipped series excepted
+	 * @throws InterruptedException if interrupted while waiting for the downloads
+	 */
+	public List<DownloadResult> download(Iterable<String> seriesInstanceUIDs, String directory)
+			throws InterruptedException {
+		return download(seriesInstanceUIDs.iterator(), directory);
+	}
+
+
+	/**
+	 * Download the given series. The stream is consumed lazily, as download slots become free.
+	 * @param seriesInstanceUIDs the UIDs of the series instances
+	 * @param directory the directory to save the ZIPs
+	 * @return the result of each series, in the order of the given UIDs, the skipped series excepted
+	 * @throws InterruptedException if interrupted while waiting for the downloads
+	 */
+	public List<DownloadResult> download(Stream<String> seriesInstanceUIDs, String directory)
+			throws InterruptedException {
+		return download(seriesInstanceUIDs.iterator(), directory);
+	}
+
+
+	/**
+	 * Download a single series. This is the unit of work of the bulk download, and may be overridden to change
+	 * how a series is fetched and stored.
+	 * @param seriesInstanceUID the UID of the series instance
+	 * @param directory the directory to save the ZIP
+	 * @return the path of the saved series
+	 * @throws Exception if the download failed
+	 */
+	protected String downloadSeries(String seriesInstanceUID, String directory) throws Exception {
+		if (seriesDownloader != null) {
+			String seriesDirectory = directory + File.separator + seriesInstanceUID;
+			seriesDownloader.download(seriesInstanceUID, Paths.get(seriesDirectory));
+			return seriesDirectory;
+		}
+		if (extractor != null) {
+			String seriesDirectory = directory + File.separator + seriesInstanceUID;
+			extractor.extract(client.getImage(seriesInstanceUID), Paths.get(seriesDirectory));
+			return seriesDirectory;
+		}
+
+		// An interrupted download resumes where it stopped, when the same series is downloaded again.
+		Path path = Paths.get(directory, seriesInstanceUID + ".zip");
+		client.downloadImage(seriesInstanceUID, path, new SaveOptions());
+		return path.toString();
+	}
+
+
+	private List<DownloadResult> download(Iterator<String> seriesInstanceUIDs, String directory)
+			throws InterruptedException {
+		new File(directory).mkdirs();
+
+		ExecutorService executor = newExecutor();
+		// Bounds the in-flight downloads, and keeps the lazily consumed UIDs from piling up in the executor queue.
+		Semaphore permits = new Semaphore(parallelism);
+		List<Future<DownloadResult>> futures = new ArrayList<>();
+		// The downloads of this call still running, which a later occurrence of their series waits for. A download
+		// leaves the map as it completes, so the map holds no more series than there are permits.
+		UidMap<CompletableFuture<DownloadResult>> running = new UidMap<>(parallelism);
+		try {
+			while (seriesInstanceUIDs.hasNext()) {
+				String seriesInstanceUID = seriesInstanceUIDs.next();
+				CompletableFuture<DownloadResult> earlier = null;
+				if (downloaded != null) {
+					boolean added;
+					try {
+						added = add(seriesInstanceUID);
+					} catch (IllegalArgumentException e) {
+						// No series has such a UID, so it fails like a series the server does not have.
+						DownloadResult result = new DownloadResult(seriesInstanceUID, null, e, 0);
+						futures.add(CompletableFuture.completedFuture(notifyListener(result)));
+						continue;
+					}
+					if (!added) {
+						synchronized (running) {
+							earlier = running.get(seriesInstanceUID);
+						}
+						// A failed download leaves the downloaded series before the running ones, so a series found
+						// in neither is downloaded again.
+						if (earlier == null && !add(seriesInstanceUID)) {
+							continue;
+						}
+					}
+				}
+
+				// A waiting occurrence holds a permit, so that the downloads it waits for always have a thread.
+				permits.acquire();
+				CompletableFuture<DownloadResult> waited = earlier;
+				CompletableFuture<DownloadResult> future = new CompletableFuture<>();
+				if (downloaded != null) {
+					synchronized (running) {
+						running.put(seriesInstanceUID, future);
+					}
+				}
+				futures.add(future);
+				executor.execute(() -> {
+					try {
+						if (waited != null) {
+							waited.join();
+						}
+						future.complete(waited == null || add(seriesInstanceUID)
+								? downloadAndNotify(seriesInstanceUID, directory) : null);
+					} catch (Throwable t) {
+						future.completeExceptionally(t);
+					} finally {
+						if (downloaded != null) {
+							synchronized (running) {
+								if (running.get(seriesInstanceUID) == future) {
+									running.remove(seriesInstanceUID);
+								}
+							}
+						}
+						permits.release();
+					}
+				});
+			}
+
+			List<DownloadResult> results = new ArrayList<>(futures.size());
+			for (Future<DownloadResult> future : futures) {
+				try {
+					DownloadResult result = future.get();
+					if (result != null) {
+						results.add(result);
+					}
+				} catch (ExecutionException e) {
+					// downloadAndNotify captures the failures, so only an error would reach here.
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	private DownloadResult downloadAndNotify(String seriesInstanceUID, String directory) {
+		long startTime = System.currentTimeMillis();
+		DownloadResult result;
+		try {
+			String path = downloadSeries(seriesInstanceUID, directory);
+			result = new DownloadResult(seriesInstanceUID, path, null, System.currentTimeMillis() - startTime);
+		} catch (Exception e) {
+			logger.error("Exception in downloading the series " + seriesInstanceUID, e);
+			result = new DownloadResult(seriesInstanceUID, null, e, System.currentTimeMillis() - startTime);
+			if (downloaded != null) {
+				synchronized (downloaded) {
+					downloaded.remove(seriesInstanceUID);
+				}
+			}
+		}
+		return notifyListener(result);
+	}
+
+
+	private DownloadResult notifyListener(DownloadResult result) {
+		if (listener != null) {
+			listener.onComplete(result);
+		}
+		return result;
+	}
+
+
+	/*
+	 * Add a series to the downloaded ones, if it is not among them already.
+	 */
+	private boolean add(String seriesInstanceUID) {
+		synchronized (downloaded) {
+			return downloaded.add(seriesInstanceUID);
+		}
+	}
+
+
+	/*
+	 * Use a virtual thread per task on JVMs that support them (Java 21+), found reflectively as the client is built
+	 * for Java 8. The semaphore caps the concurrency either way.
+	 */
+	private ExecutorService newExecutor() {
+		try {
+			Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			final AtomicInteger threadCount = new AtomicInteger();
+			ThreadFactory threadFactory = r -> {
+				Thread thread = new Thread(r, "tcia-bulk-download-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			};
+			return Executors.newFixedThreadPool(parallelism, threadFactory);
+		}
+	}
+}
@@ -0,0 +1,9 @@
+package edu.emory.bmi.tcia.client.bulk;
+
+/**
+ * Receives the outcome of each series of a bulk download as soon as it completes.
+ * The listener is called concurrently from the download threads.
+ */
+public interface DownloadListener {
+	void onComplete(DownloadResult result);
+}
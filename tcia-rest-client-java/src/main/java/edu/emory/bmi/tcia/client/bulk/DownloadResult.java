@@ -0,0 +1,50 @@
+package edu.emory.bmi.tcia.client.bulk;
+
+/**
+ * The outcome of downloading a single series in a bulk download.
+ */
+public class DownloadResult {
+	private final String seriesInstanceUID;
+	private final String path;
+	private final Exception error;
+	private final long elapsedMillis;
+
+	public DownloadResult(String seriesInstanceUID, String path, Exception error, long elapsedMillis) {
+		this.seriesInstanceUID = seriesInstanceUID;
+		this.path = path;
+		this.error = error;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public String getSeriesInstanceUID() {
+		return seriesInstanceUID;
+	}
+
+	/**
+	 * @return the path of the downloaded ZIP, or null if the download failed
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the cause of the failure, or null if the download succeeded
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	@Override
+	public String toString() {
+		return isSuccess() ? String.format("[%s] downloaded to %s in %d ms", seriesInstanceUID, path, elapsedMillis) :
+				String.format("[%s] failed after %d ms: %s", seriesInstanceUID, elapsedMillis, error);
+	}
+}
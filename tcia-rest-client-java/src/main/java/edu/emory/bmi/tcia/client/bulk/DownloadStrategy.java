@@ -0,0 +1,19 @@
+package edu.emory.bmi.tcia.client.bulk;
+
+/**
+ * The strategies of downloading the DICOM files of a series.
+ */
+public enum DownloadStrategy {
+	/**
+	 * A single getImage ZIP, extracted as it is read.
+	 */
+	ZIP,
+	/**
+	 * A getSingleImage per SOP instance, fetched in parallel.
+	 */
+	FAN_OUT,
+	/**
+	 * The strategy estimated to be faster, from the size of the series and the observed latency and throughput.
+	 */
+	AUTO
+}
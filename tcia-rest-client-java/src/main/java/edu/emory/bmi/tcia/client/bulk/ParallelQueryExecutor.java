@@ -0,0 +1,346 @@
+package edu.emory.bmi.tcia.client.bulk;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.model.Patient;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.model.Study;
+import edu.emory.bmi.tcia.client.request.Query;
+import edu.emory.bmi.tcia.client.uid.UidSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Runs a logical query as sub-queries, such as one per collection or one per patient of a collection, concurrently,
+ * and merges their typed records into a single stream as they arrive. The first records are available as soon as the
+ * fastest sub-query answers, rather than after the whole response of a single large query.
+ * <p>
+ * By default the records are merged in the order they arrive, and the records seen in an earlier sub-query are left
+ * out: patients, studies and series by their collection and identifier, the records of other types by equals. In the
+ * ordered mode, the records come in the order of the sub-queries, and of each response, while the later sub-queries
+ * are buffered up to the queue capacity. A failed sub-query fails the stream with a CompletionException. Close the stream, to
+ * stop the sub-queries still running if it is not read to its end.
+ */
+public class ParallelQueryExecutor {
+
+	private static Logger logger = LogManager.getLogger(ParallelQueryExecutor.class.getName());
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	// The marker of the end of the records of a sub-query.
+	private static final Object END = new Object();
+
+	// The identifiers are unique within a collection only, as the same PatientID may be found in several of them.
+	private static final Map<Class<?>, Function<?, String>> COLLECTIONS = new HashMap<>();
+	private static final Map<Class<?>, Function<?, String>> KEYS = new HashMap<>();
+	private static final Map<Class<?>, Function<?, String>> UID_KEYS = new HashMap<>();
+
+	static {
+		COLLECTIONS.put(Patient.class, (Function<Patient, String>) Patient::getCollection);
+		COLLECTIONS.put(Study.class, (Function<Study, String>) Study::getCollection);
+		COLLECTIONS.put(Series.class, (Function<Series, String>) Series::getCollection);
+		KEYS.put(Patient.class, (Function<Patient, String>) Patient::getPatientID);
+		UID_KEYS.put(Study.class, (Function<Study, String>) Study::getStudyInstanceUID);
+		UID_KEYS.put(Series.class, (Function<Series, String>) Series::getSeriesInstanceUID);
+	}
+
+	private final TCIAClientImpl client;
+	private final int parallelism;
+	private boolean ordered;
+	private boolean distinct = true;
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+
+	/**
+	 * Create a parallel query executor.
+	 * @param client the TCIA client used to run the sub-queries
+	 * @param parallelism the maximum number of concurrent sub-queries
+	 */
+	public ParallelQueryExecutor(TCIAClientImpl client, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1: " + parallelism);
+		}
+		this.client = client;
+		this.parallelism = parallelism;
+	}
+
+
+	/**
+	 * Set whether the records come in the order of the sub-queries, rather than as they arrive.
+	 * @param ordered whether the merge is ordered
+	 * @return this executor
+	 */
+	public ParallelQueryExecutor setOrdered(boolean ordered) {
+		this.ordered = ordered;
+		return this;
+	}
+
+
+	/**
+	 * Set whether the records already returned by an earlier sub-query are left out.
+	 * @param distinct whether the records are deduplicated
+	 * @return this executor
+	 */
+	public ParallelQueryExecutor setDistinct(boolean distinct) {
+		this.distinct = distinct;
+		return this;
+	}
+
+
+	/**
+	 * Set the number of records buffered ahead of the reader, per sub-query in the ordered mode.
+	 * @param queueCapacity the capacity of the queues
+	 * @return this executor
+	 */
+	public ParallelQueryExecutor setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("The queue capacity must be at least 1: " + queueCapacity);
+		}
+		this.queueCapacity = queueCapacity;
+		return this;
+	}
+
+
+	/**
+	 * Run sub-queries concurrently, and merge their records.
+	 * @param type the type of the records
+	 * @param queries the sub-queries
+	 * @param <T> the type of the records
+	 * @return the stream of the merged records, to be closed after use
+	 */
+	public <T> Stream<T> execute(Class<T> type, List<Query> queries) {
+		Merge<T> merge = new Merge<>(type, new ArrayList<>(queries));
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merge,
+				Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(merge::close);
+	}
+
+
+	/**
+	 * Run a query in each of the given collections concurrently, and merge their records.
+	 * @param type the type of the records
+	 * @param query the query, whose collection, if any, is replaced
+	 * @param collections the collections
+	 * @param <T> the type of the records
+	 * @return the stream of the merged records, to be closed after use
+	 */
+	public <T> Stream<T> executeByCollection(Class<T> type, Query query, Collection<String> collections) {
+		List<Query> queries = new ArrayList<>(collections.size());
+		for (String collection : collections) {
+			queries.add(query.copy().collection(collection));
+		}
+		return execute(type, queries);
+	}
+
+
+	/**
+	 * Run a query of a collection for each of its patients concurrently, and merge their records. The patients are
+	 * asked from getPatient first.
+	 * @param type the type of the records
+	 * @param query the query, with a collection, of an endpoint that accepts a PatientID
+	 * @param <T> the type of the records
+	 * @return the stream of the merged records, to be closed after use
+	 */
+	public <T> Stream<T> executeByPatient(Class<T> type, Query query) throws TCIAClientException {
+		String collection = query.get(DICOMAttributes.COLLECTION);
+		if (collection == null || !query.getTemplate().accepts(DICOMAttributes.PATIENT_ID)) {
+			throw new IllegalArgumentException("The query must have a collection, and accept a PatientID: " + query);
+		}
+		if (query.get(DICOMAttributes.PATIENT_ID) != null) {
+			return execute(type, Collections.singletonList(query));
+		}
+
+		List<String> patientIDs;
+		try (Stream<Patient> patients = client.streamPatient(collection)) {
+			patientIDs = patients.map(Patient::getPatientID).collect(Collectors.toList());
+		}
+		List<Query> queries = new ArrayList<>(patientIDs.size());
+		for (String patientID : patientIDs) {
+			queries.add(query.copy().patientID(patientID));
+		}
+		return execute(type, queries);
+	}
+
+
+	private ExecutorService newExecutor(int threads) {
+		final AtomicInteger threadCount = new AtomicInteger();
+		ThreadFactory threadFactory = r -> {
+			Thread thread = new Thread(r, "tcia-parallel-query-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		return Executors.newFixedThreadPool(threads, threadFactory);
+	}
+
+
+	/*
+	 * The failure of a sub-query, passed to the reader in place of a record.
+	 */
+	private static class Failure {
+		private final Exception cause;
+
+		Failure(Exception cause) {
+			this.cause = cause;
+		}
+	}
+
+
+	/*
+	 * The merge of the records of the sub-queries. The sub-queries start in their order on a fixed pool, so that in
+	 * the ordered mode the sub-query being read is always running, while the later ones block on their full queues.
+	 */
+	private class Merge<T> implements Iterator<T>, Closeable {
+		private final List<BlockingQueue<Object>> queues = new ArrayList<>();
+		private final ExecutorService executor;
+		private final Predicate<Object> firstSeen;
+		private int current;
+		private int remaining;
+		private T next;
+		private boolean closed;
+
+		Merge(Class<T> type, List<Query> queries) {
+			firstSeen = distinct ? newFirstSeen(type) : null;
+			remaining = queries.size();
+			if (!ordered) {
+				queues.add(new ArrayBlockingQueue<>(queueCapacity));
+			}
+			executor = newExecutor(Math.max(1, Math.min(parallelism, queries.size())));
+			for (Query query : queries) {
+				BlockingQueue<Object> queue = ordered ? new ArrayBlockingQueue<>(queueCapacity) : queues.get(0);
+				if (ordered) {
+					queues.add(queue);
+				}
+				executor.submit(() -> run(type, query, queue));
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && !closed) {
+				if (remaining == 0) {
+					close();
+					break;
+				}
+				Object record;
+				try {
+					record = queues.get(current).take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					close();
+					throw new CompletionException(e);
+				}
+
+				if (record == END) {
+					remaining--;
+					if (ordered) {
+						current++;
+					}
+				} else if (record instanceof Failure) {
+					close();
+					throw new CompletionException(((Failure) record).cause);
+				} else if (firstSeen == null || firstSeen.test(record)) {
+					@SuppressWarnings("unchecked")
+					T t = (T) record;
+					next = t;
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			T t = next;
+			next = null;
+			return t;
+		}
+
+		/*
+		 * Stop the sub-queries still running, interrupting the ones waiting for the reader.
+		 */
+		@Override
+		public void close() {
+			if (!closed) {
+				closed = true;
+				executor.shutdownNow();
+			}
+		}
+
+		/*
+		 * Whether a record is seen for the first time in its collection: the UIDs of the studies and series are held
+		 * packed, in a UID set per collection, and a record without an identifier is always new.
+		 */
+		@SuppressWarnings("unchecked")
+		private Predicate<Object> newFirstSeen(Class<T> type) {
+			Function<Object, String> collection = (Function<Object, String>) COLLECTIONS.get(type);
+			Function<Object, String> uid = (Function<Object, String>) UID_KEYS.get(type);
+			if (uid != null) {
+				Map<String, UidSet> seen = new HashMap<>();
+				return record -> {
+					String value = uid.apply(record);
+					return value == null || seen.computeIfAbsent(collection.apply(record), c -> new UidSet())
+							.add(value);
+				};
+			}
+			Function<Object, String> key = (Function<Object, String>) KEYS.get(type);
+			if (key == null) {
+				Set<Object> seen = new HashSet<>();
+				return seen::add;
+			}
+			Set<String> seen = new HashSet<>();
+			return record -> {
+				String value = key.apply(record);
+				return value == null || seen.add(collection.apply(record) + '\0' + value);
+			};
+		}
+
+		private void run(Class<T> type, Query query, BlockingQueue<Object> queue) {
+			try {
+				try (Stream<T> records = client.getStream(type, query)) {
+					Iterator<T> it = records.iterator();
+					while (it.hasNext()) {
+						queue.put(it.next());
+					}
+				} catch (InterruptedException e) {
+					throw e;
+				} catch (Exception e) {
+					logger.error("Exception in the sub-query " + query, e);
+					queue.put(new Failure(e));
+					return;
+				}
+				queue.put(END);
+			} catch (InterruptedException e) {
+				// The reader closed the stream.
+			}
+		}
+	}
+}
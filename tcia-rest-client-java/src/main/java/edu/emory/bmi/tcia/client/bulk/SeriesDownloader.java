@@ -0,0 +1,209 @@
+package edu.emory.bmi.tcia.client.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.emory.bmi.tcia.client.core.ITCIAClient;
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import edu.emory.bmi.tcia.client.util.SaveOptions;
+import edu.emory.bmi.tcia.client.util.ZipExtractor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Downloads the DICOM files of a series into SOPInstanceUID.dcm files of a directory, either by extracting the
+ * getImage ZIP as it is read, or by fetching each SOP instance with getSingleImage in parallel on a work-stealing
+ * pool. A single ZIP is one serial stream; fanning out over the instances can use more of the bandwidth for large
+ * series, at the cost of a request per instance.
+ * <p>
+ * With the AUTO strategy, each series goes through the strategy estimated to be faster, from its getSeriesSize and
+ * from the latency and throughput observed on the previous downloads of this downloader.
+ */
+public class SeriesDownloader implements Closeable {
+
+	private static final String DICOM_SUFFIX = ".dcm";
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static Logger logger = LogManager.getLogger(SeriesDownloader.class.getName());
+
+	private final ITCIAClient client;
+	private final int parallelism;
+	private final ZipExtractor extractor;
+	private final ForkJoinPool pool;
+	private final TransferEstimator estimator = new TransferEstimator();
+	private DownloadStrategy strategy = DownloadStrategy.AUTO;
+
+
+	/**
+	 * Create a series downloader.
+	 * @param client the TCIA client used to get the images
+	 * @param parallelism the maximum number of concurrent instance downloads of a series
+	 */
+	public SeriesDownloader(ITCIAClient client, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1: " + parallelism);
+		}
+		this.client = client;
+		this.parallelism = parallelism;
+		this.extractor = new ZipExtractor();
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+
+	/**
+	 * Set the download strategy.
+	 * @param strategy the download strategy, AUTO by default
+	 * @return this series downloader
+	 */
+	public SeriesDownloader setStrategy(DownloadStrategy strategy) {
+		this.strategy = strategy;
+		return this;
+	}
+
+
+	/**
+	 * Download the DICOM files of a series.
+	 * @param seriesInstanceUID the UID of the series instance
+	 * @param directory the directory to write the files, created if missing
+	 * @return the paths of the written files
+	 * @throws TCIAClientException if the TCIA client throws an error.
+	 * @throws IOException if reading or writing any of the files failed.
+	 */
+	public List<Path> download(String seriesInstanceUID, Path directory) throws TCIAClientException, IOException {
+		DownloadStrategy chosen = strategy == DownloadStrategy.AUTO ? choose(seriesInstanceUID) : strategy;
+		return chosen == DownloadStrategy.FAN_OUT ? downloadFanOut(seriesInstanceUID, directory) :
+				downloadZip(seriesInstanceUID, directory);
+	}
+
+
+	/**
+	 * Choose the strategy estimated to download a series faster.
+	 * @param seriesInstanceUID the UID of the series instance
+	 * @return ZIP or FAN_OUT
+	 * @throws TCIAClientException if the TCIA client throws an error.
+	 */
+	public DownloadStrategy choose(String seriesInstanceUID) throws TCIAClientException {
+		JsonNode seriesSize = getFirst(readTree(client.getSeriesSize(seriesInstanceUID, OutputFormat.json)));
+		double bytes = seriesSize.path("TotalSizeInBytes").asDouble();
+		int instances = seriesSize.path("ObjectCount").asInt();
+		if (instances < 2 || bytes <= 0) {
+			return DownloadStrategy.ZIP;
+		}
+
+		double zip = estimator.estimateZip(bytes);
+		double fanOut = estimator.estimateFanOut(bytes, instances, parallelism);
+		DownloadStrategy chosen = fanOut < zip ? DownloadStrategy.FAN_OUT : DownloadStrategy.ZIP;
+		logger.debug("Estimated " + Math.round(zip) + " ms with a ZIP and " + Math.round(fanOut) +
+				" ms with a fan-out for the " + instances + " instances of " + seriesInstanceUID + ": using " + chosen);
+		return chosen;
+	}
+
+
+	/**
+	 * Stop the instance downloads and the ZIP extraction.
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+		extractor.close();
+	}
+
+
+	private List<Path> downloadZip(String seriesInstanceUID, Path directory) throws TCIAClientException, IOException {
+		long startTime = System.currentTimeMillis();
+		ImageResult imageResult = client.getImage(seriesInstanceUID);
+		long latency = System.currentTimeMillis() - startTime;
+		List<Path> paths = extractor.extract(imageResult, directory);
+		if (imageResult.getContentLength() >= 0) {
+			estimator.record(latency, imageResult.getContentLength(), System.currentTimeMillis() - startTime - latency);
+		}
+		return paths;
+	}
+
+
+	private List<Path> downloadFanOut(String seriesInstanceUID, Path directory)
+			throws TCIAClientException, IOException {
+		List<String> sopInstanceUIDs = new ArrayList<>();
+		for (JsonNode instance : readTree(client.getSOPInstanceUIDs(seriesInstanceUID, OutputFormat.json))) {
+			sopInstanceUIDs.add(instance.path(DICOMAttributes.SOP_INSTANCE_UID).asText());
+		}
+		Files.createDirectories(directory);
+
+		List<ForkJoinTask<Path>> tasks = new ArrayList<>(sopInstanceUIDs.size());
+		for (String sopInstanceUID : sopInstanceUIDs) {
+			tasks.add(pool.submit(() -> downloadInstance(seriesInstanceUID, sopInstanceUID, directory)));
+		}
+
+		List<Path> paths = new ArrayList<>(tasks.size());
+		Throwable failure = null;
+		for (ForkJoinTask<Path> task : tasks) {
+			if (failure != null) {
+				// Skip the instances not started yet, as the series has failed anyway.
+				task.cancel(false);
+				continue;
+			}
+			try {
+				paths.add(task.get());
+			} catch (ExecutionException e) {
+				failure = e.getCause();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure = e;
+			}
+		}
+
+		if (failure instanceof TCIAClientException) {
+			throw (TCIAClientException) failure;
+		} else if (failure instanceof IOException) {
+			throw (IOException) failure;
+		} else if (failure != null) {
+			throw new IOException("Exception in downloading the instances of " + seriesInstanceUID, failure);
+		}
+		logger.info(paths.size() + " instances of " + seriesInstanceUID + " downloaded to " + directory);
+		return paths;
+	}
+
+
+	private Path downloadInstance(String seriesInstanceUID, String sopInstanceUID, Path directory)
+			throws TCIAClientException, IOException {
+		// The UID names the file, so it must not be able to name anything outside the directory.
+		if (!sopInstanceUID.matches("[0-9][0-9.]*")) {
+			throw new IOException("Invalid SOPInstanceUID of " + seriesInstanceUID + ": " + sopInstanceUID);
+		}
+		long startTime = System.currentTimeMillis();
+		ImageResult imageResult = client.getSingleImage(seriesInstanceUID, sopInstanceUID);
+		long latency = System.currentTimeMillis() - startTime;
+		Path path = directory.resolve(sopInstanceUID + DICOM_SUFFIX);
+		long bytes = client.saveTo(imageResult, path, new SaveOptions());
+		estimator.record(latency, bytes, System.currentTimeMillis() - startTime - latency);
+		return path;
+	}
+
+
+	private JsonNode readTree(String json) throws TCIAClientException {
+		try {
+			return json.isEmpty() ? MAPPER.createArrayNode() : MAPPER.readTree(json);
+		} catch (IOException e) {
+			throw new TCIAClientException(e, client.getResourceUrl());
+		}
+	}
+
+
+	private static JsonNode getFirst(JsonNode node) {
+		return node.isArray() ? node.path(0) : node;
+	}
+}
@@ -0,0 +1,66 @@
+package edu.emory.bmi.tcia.client.bulk;
+
+/**
+ * Estimates the duration of the download strategies of a series, from exponentially weighted moving averages of the
+ * observed request latency and per-stream throughput. The estimates start from conservative defaults, and follow the
+ * observations of the downloads.
+ */
+class TransferEstimator {
+
+	// The weight of a new observation in the moving averages.
+	private static final double ALPHA = 0.2;
+
+	static final double DEFAULT_LATENCY_MS = 250;
+	static final double DEFAULT_BYTES_PER_MS = 5 * 1024;
+
+	private double latencyMs = DEFAULT_LATENCY_MS;
+	private double bytesPerMs = DEFAULT_BYTES_PER_MS;
+
+
+	/**
+	 * Record a request.
+	 * @param latencyMs the time until the response headers were received
+	 * @param bytes the number of bytes of the response body
+	 * @param transferMs the time of reading the response body
+	 */
+	synchronized void record(long latencyMs, long bytes, long transferMs) {
+		this.latencyMs += ALPHA * (latencyMs - this.latencyMs);
+		// Small bodies say more about the latency than about the throughput.
+		if (bytes >= 64 * 1024 && transferMs > 0) {
+			this.bytesPerMs += ALPHA * ((double) bytes / transferMs - this.bytesPerMs);
+		}
+	}
+
+
+	/**
+	 * Estimate the duration of a single ZIP stream.
+	 * @param bytes the size of the series
+	 * @return the estimated duration in ms
+	 */
+	synchronized double estimateZip(double bytes) {
+		return latencyMs + bytes / bytesPerMs;
+	}
+
+
+	/**
+	 * Estimate the duration of fetching the instances in parallel, after listing them.
+	 * @param bytes the size of the series
+	 * @param instances the number of instances of the series
+	 * @param parallelism the number of concurrent requests
+	 * @return the estimated duration in ms
+	 */
+	synchronized double estimateFanOut(double bytes, int instances, int parallelism) {
+		int rounds = (instances + parallelism - 1) / parallelism;
+		return latencyMs + rounds * (latencyMs + bytes / instances / bytesPerMs);
+	}
+
+
+	synchronized double getLatencyMs() {
+		return latencyMs;
+	}
+
+
+	synchronized double getBytesPerMs() {
+		return bytesPerMs;
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * The bulk operations of the TCIA client: the concurrent downloads of many series, and the concurrent queries of many
+ * collections or patients.
+ */
+package edu.emory.bmi.tcia.client.bulk;
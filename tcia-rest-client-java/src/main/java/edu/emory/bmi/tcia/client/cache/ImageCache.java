@@ -0,0 +1,308 @@
+package edu.emory.bmi.tcia.client.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * A persistent, size-bounded cache of the image results of getImage and getSingleImage. Series and SOP instances
+ * are immutable, so an entry never expires; the least recently used entries are evicted when the cache exceeds its
+ * quota.
+ * <p>
+ * Each entry is stored under the SHA-256 of its key, as a ZIP file and a small properties file with the image
+ * count. The cache is safe to share across threads and across JVMs using the same directory: an entry is downloaded
+ * to a temporary file without holding any lock, and moved in place atomically under the file lock of its stripe, so
+ * that readers only ever see complete entries and the downloads of different entries never wait for each other. The
+ * threads of a JVM share the download of an entry; two JVMs may download the same entry, and the first one to
+ * publish it wins. The lock files are a fixed set of stripes, shared by the entries, so that they do not grow with
+ * the cache nor outlive the evicted entries. Readers that opened an entry keep reading it even if it is evicted
+ * meanwhile.
+ */
+public class ImageCache {
+
+	private static final String ZIP_SUFFIX = ".zip";
+	private static final String META_SUFFIX = ".properties";
+	private static final String LOCK_PREFIX = "stripe-";
+	private static final String LOCK_SUFFIX = ".lock";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String IMAGE_COUNT = "imageCount";
+
+	// Striped locks serialize the publication of the entries by the threads of this JVM, as a file lock is held per
+	// JVM. The stripe of an entry is the same in every JVM, as String.hashCode is specified.
+	private static final int LOCK_STRIPES = 64;
+
+	private static Logger logger = LogManager.getLogger(ImageCache.class.getName());
+
+	private final File directory;
+	private final long maxBytes;
+	private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+	private final ConcurrentHashMap<String, CompletableFuture<Void>> loads = new ConcurrentHashMap<>();
+	private final AtomicLong approximateSize;
+
+
+	/**
+	 * Create an image cache.
+	 * @param directory the directory of the cache
+	 * @param maxBytes the quota of the cache, in bytes
+	 */
+	public ImageCache(String directory, long maxBytes) {
+		this.directory = new File(directory);
+		this.directory.mkdirs();
+		this.maxBytes = maxBytes;
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new ReentrantLock();
+		}
+		this.approximateSize = new AtomicLong(computeSize());
+	}
+
+
+	/**
+	 * Get the key of a series.
+	 * @param seriesInstanceUID the UID of the series instance
+	 * @return the key of the series in the cache
+	 */
+	public static String seriesKey(String seriesInstanceUID) {
+		return seriesInstanceUID;
+	}
+
+
+	/**
+	 * Get the key of a single SOP instance of a series.
+	 * @param seriesInstanceUID the UID of the series instance
+	 * @param sopInstanceUID the UID of the SOP instance
+	 * @return the key of the SOP instance in the cache
+	 */
+	public static String instanceKey(String seriesInstanceUID, String sopInstanceUID) {
+		return seriesInstanceUID + "/" + sopInstanceUID;
+	}
+
+
+	/**
+	 * Get an image result from the cache, or load it into the cache if it is missing.
+	 * @param key the key of the image result
+	 * @param loader loads the image result from the server
+	 * @return the image result, reading from the cached file
+	 * @throws TCIAClientException if the TCIA client throws an error while loading.
+	 * @throws IOException an IO Exception while loading or reading the cache.
+	 */
+	public ImageResult get(String key, ImageLoader loader) throws TCIAClientException, IOException {
+		String name = RequestKey.hash(key);
+		while (true) {
+			ImageResult cached = read(name);
+			if (cached != null) {
+				return cached;
+			}
+
+			// A single thread of this JVM loads an entry, and the others wait for it rather than load it again.
+			CompletableFuture<Void> loading = new CompletableFuture<>();
+			CompletableFuture<Void> inFlight = loads.putIfAbsent(name, loading);
+			if (inFlight != null) {
+				// The entry is read again, or loaded by this thread if the other load failed.
+				inFlight.join();
+				continue;
+			}
+			try {
+				cached = read(name);
+				if (cached == null) {
+					// The image is downloaded without any lock, so that the loads of other entries proceed.
+					publish(name, write(name, loader.load()));
+				}
+			} finally {
+				loads.remove(name, loading);
+				loading.complete(null);
+			}
+			if (cached != null) {
+				return cached;
+			}
+
+			evictIfNeeded(name);
+			cached = read(name);
+			if (cached == null) {
+				throw new IOException("The cached image of " + key + " was evicted before it could be read");
+			}
+			return cached;
+		}
+	}
+
+
+	/**
+	 * Check whether an image result is in the cache.
+	 * @param key the key of the image result
+	 * @return true if the image result is cached
+	 */
+	public boolean contains(String key) {
+		return new File(directory, RequestKey.hash(key) + ZIP_SUFFIX).isFile();
+	}
+
+
+	/**
+	 * Get the total size of the cached image results, as known to this JVM.
+	 * @return the size in bytes
+	 */
+	public long getSize() {
+		return approximateSize.get();
+	}
+
+
+	/*
+	 * The private methods of the cache entries.
+	 */
+
+	private ImageResult read(String name) throws IOException {
+		File zip = new File(directory, name + ZIP_SUFFIX);
+		InputStream in;
+		try {
+			in = new FileInputStream(zip);
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+		// The modification time orders the entries for the LRU eviction.
+		zip.setLastModified(System.currentTimeMillis());
+
+		ImageResult imageResult = new ImageResult();
+		imageResult.setRawData(in);
+		imageResult.setContentLength(zip.length());
+		Properties meta = new Properties();
+		try (InputStream metaIn = new FileInputStream(new File(directory, name + META_SUFFIX))) {
+			meta.load(metaIn);
+			String imageCount = meta.getProperty(IMAGE_COUNT);
+			if (imageCount != null) {
+				imageResult.setImageCount(Integer.valueOf(imageCount));
+			}
+		} catch (FileNotFoundException e) {
+			logger.warn("The image count of the cached image " + name + " is missing");
+		}
+		return imageResult;
+	}
+
+
+	/*
+	 * Write the image result and its image count to temporary files, unique to this load.
+	 */
+	private File[] write(String name, ImageResult imageResult) throws IOException {
+		File temp = Files.createTempFile(directory.toPath(), name, ZIP_SUFFIX + TEMP_SUFFIX).toFile();
+		try (InputStream in = imageResult.getRawData(); OutputStream out = new FileOutputStream(temp)) {
+			byte[] buffer = new byte[64 * 1024];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+
+		Properties meta = new Properties();
+		if (imageResult.getImageCount() != null) {
+			meta.setProperty(IMAGE_COUNT, imageResult.getImageCount().toString());
+		}
+		File metaTemp = Files.createTempFile(directory.toPath(), name, META_SUFFIX + TEMP_SUFFIX).toFile();
+		try (OutputStream out = new FileOutputStream(metaTemp)) {
+			meta.store(out, null);
+		} catch (IOException e) {
+			temp.delete();
+			metaTemp.delete();
+			throw e;
+		}
+		return new File[] {temp, metaTemp};
+	}
+
+
+	/*
+	 * Move the written files in place under the lock of the stripe, unless another JVM published the entry first.
+	 */
+	private void publish(String name, File[] temps) throws IOException {
+		File zip = new File(directory, name + ZIP_SUFFIX);
+		int stripe = (name.hashCode() & 0x7fffffff) % LOCK_STRIPES;
+		ReentrantLock lock = locks[stripe];
+		lock.lock();
+		try (FileChannel lockChannel = FileChannel.open(new File(directory, LOCK_PREFIX + stripe + LOCK_SUFFIX)
+				.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			// The file lock is released when the channel is closed.
+			lockChannel.lock();
+			if (!zip.isFile()) {
+				// The properties are moved first, so that a visible ZIP always has its image count.
+				Files.move(temps[1].toPath(), new File(directory, name + META_SUFFIX).toPath(),
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				Files.move(temps[0].toPath(), zip.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				approximateSize.addAndGet(zip.length());
+			}
+		} finally {
+			lock.unlock();
+			temps[0].delete();
+			temps[1].delete();
+		}
+	}
+
+
+	/*
+	 * Evict the least recently used entries, other than the one just added, until the cache is within its quota.
+	 * The directory is rescanned, as other JVMs may have added or evicted entries.
+	 */
+	private synchronized void evictIfNeeded(String keep) {
+		if (approximateSize.get() <= maxBytes) {
+			return;
+		}
+
+		File[] zips = directory.listFiles((dir, name) -> name.endsWith(ZIP_SUFFIX));
+		if (zips == null) {
+			return;
+		}
+		long size = 0;
+		for (File zip : zips) {
+			size += zip.length();
+		}
+
+		Arrays.sort(zips, Comparator.comparingLong(File::lastModified));
+		for (File zip : zips) {
+			if (size <= maxBytes) {
+				break;
+			}
+			String name = zip.getName().substring(0, zip.getName().length() - ZIP_SUFFIX.length());
+			if (name.equals(keep)) {
+				continue;
+			}
+			long length = zip.length();
+			if (zip.delete()) {
+				new File(directory, name + META_SUFFIX).delete();
+				size -= length;
+				logger.info("Evicted the cached image " + name + " of " + length + " bytes");
+			}
+		}
+		approximateSize.set(size);
+	}
+
+
+	private long computeSize() {
+		File[] zips = directory.listFiles((dir, name) -> name.endsWith(ZIP_SUFFIX));
+		long size = 0;
+		if (zips != null) {
+			for (File zip : zips) {
+				size += zip.length();
+			}
+		}
+		return size;
+	}
+}
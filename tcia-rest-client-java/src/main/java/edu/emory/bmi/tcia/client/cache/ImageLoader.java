@@ -0,0 +1,13 @@
+package edu.emory.bmi.tcia.client.cache;
+
+import java.io.IOException;
+
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import edu.emory.bmi.tcia.client.util.ImageResult;
+
+/**
+ * Loads an image result from the TCIA server when it is not in the image cache.
+ */
+public interface ImageLoader {
+	ImageResult load() throws TCIAClientException, IOException;
+}
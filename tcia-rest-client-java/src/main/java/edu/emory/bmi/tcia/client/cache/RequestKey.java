@@ -0,0 +1,64 @@
+package edu.emory.bmi.tcia.client.cache;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+
+/**
+ * Normalized keys of the TCIA requests. Two requests for the same endpoint of the same resource URL, with the same
+ * query parameters in any order, have the same key.
+ */
+public class RequestKey {
+
+	/**
+	 * Get the endpoint of a request, which is the last segment of its path.
+	 * @param uri the URI of the request
+	 * @return the endpoint
+	 */
+	public static String getEndpoint(URI uri) {
+		String path = uri.getPath();
+		return path == null ? "" : path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * Get the normalized key of a request: its scheme, host and path, followed by the query parameters sorted by
+	 * name and value. The output format is one of the parameters. The requests to different servers or resources
+	 * never share a key, even in a cache shared by several clients.
+	 * @param uri the URI of the request
+	 * @return the normalized key
+	 */
+	public static String of(URI uri) {
+		List<NameValuePair> parameters = URLEncodedUtils.parse(uri, StandardCharsets.UTF_8);
+		parameters.sort((a, b) -> {
+			int byName = a.getName().compareTo(b.getName());
+			return byName != 0 ? byName : String.valueOf(a.getValue()).compareTo(String.valueOf(b.getValue()));
+		});
+
+		return uri.getScheme() + "://" + uri.getRawAuthority() + uri.getRawPath() + '?' +
+				URLEncodedUtils.format(parameters, StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * Hash a key into a name that is safe to use as a file name.
+	 * @param key the key
+	 * @return the hexadecimal SHA-256 of the key
+	 */
+	public static String hash(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return name.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
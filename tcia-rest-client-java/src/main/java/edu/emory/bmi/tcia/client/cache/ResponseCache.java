@@ -0,0 +1,415 @@
+package edu.emory.bmi.tcia.client.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.emory.bmi.tcia.client.conf.TCIAConstants;
+import edu.emory.bmi.tcia.client.definitions.ServiceEndpoints;
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * A two-tier cache of the string responses: a size-bounded in-memory LRU tier, backed by an optional persistent
+ * disk tier whose least recently used entries are evicted when it exceeds its quota. The entries are keyed by the
+ * resource URL, the endpoint and the normalized query parameters, including the output format, and expire after the
+ * time-to-live of their endpoint. Endpoints without a time-to-live are not cached.
+ * Entries that keep being read are refreshed in the background before they expire, so that the hot queries
+ * never wait for the server.
+ */
+public class ResponseCache {
+
+	// An entry read at least this many times is hot, and is refreshed ahead of its expiry.
+	private static final int HOT_HITS = 2;
+
+	// The fraction of the time-to-live after which a hot entry is refreshed in the background.
+	private static final double REFRESH_AHEAD = 0.75;
+
+	private static final String CACHE_SUFFIX = ".cache";
+
+	private static Logger logger = LogManager.getLogger(ResponseCache.class.getName());
+
+	private final Map<String, CacheEntry> memory;
+	private final File directory;
+	private final long maxDiskBytes;
+	private final AtomicLong diskSize = new AtomicLong();
+	private final Map<String, Long> endpointTtls;
+	private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+	private final ExecutorService refresher;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+
+	/**
+	 * Create a response cache.
+	 * @param maxMemoryEntries the maximum number of entries of the in-memory tier
+	 * @param directory the directory of the disk tier, or null to keep the cache in memory only
+	 * @param endpointTtls the time-to-live (ms) of each cached endpoint; the other endpoints are not cached
+	 */
+	public ResponseCache(int maxMemoryEntries, String directory, Map<String, Long> endpointTtls) {
+		this(maxMemoryEntries, directory, TCIAConstants.DEFAULT_CACHE_MAX_BYTES, endpointTtls);
+	}
+
+
+	/**
+	 * Create a response cache.
+	 * @param maxMemoryEntries the maximum number of entries of the in-memory tier
+	 * @param directory the directory of the disk tier, or null to keep the cache in memory only
+	 * @param maxDiskBytes the quota of the disk tier, in bytes
+	 * @param endpointTtls the time-to-live (ms) of each cached endpoint; the other endpoints are not cached
+	 */
+	public ResponseCache(final int maxMemoryEntries, String directory, long maxDiskBytes,
+	                     Map<String, Long> endpointTtls) {
+		this.memory = Collections.synchronizedMap(new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+				return size() > maxMemoryEntries;
+			}
+		});
+		this.directory = directory != null ? new File(directory) : null;
+		if (this.directory != null) {
+			this.directory.mkdirs();
+			diskSize.set(computeDiskSize());
+		}
+		this.maxDiskBytes = maxDiskBytes;
+		this.endpointTtls = new HashMap<>(endpointTtls);
+		this.refresher = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "tcia-response-cache-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+	/**
+	 * Get the default times-to-live: the metadata endpoints whose responses rarely change are cached for
+	 * the given time-to-live.
+	 * @param ttl the time-to-live (ms)
+	 * @return the time-to-live of each endpoint
+	 */
+	public static Map<String, Long> getDefaultTtls(long ttl) {
+		Map<String, Long> ttls = new HashMap<>();
+		ttls.put(ServiceEndpoints.getCollectionValues, ttl);
+		ttls.put(ServiceEndpoints.getModalityValues, ttl);
+		ttls.put(ServiceEndpoints.getBodyPartValues, ttl);
+		ttls.put(ServiceEndpoints.getManufacturerValues, ttl);
+		ttls.put(ServiceEndpoints.getPatient, ttl);
+		return ttls;
+	}
+
+
+	/**
+	 * Create a response cache with the default times-to-live, overridden by the given ones.
+	 * @param maxMemoryEntries the maximum number of entries of the in-memory tier, or null for the default
+	 * @param directory the directory of the disk tier, or null to keep the cache in memory only
+	 * @param ttl the time-to-live (ms) of the default cached endpoints, or null for the default
+	 * @param endpointTtls the time-to-live (ms) of specific endpoints, 0 to not cache them, or null
+	 * @return the response cache
+	 */
+	public static ResponseCache create(Integer maxMemoryEntries, String directory, Long ttl,
+	                                   Map<String, Long> endpointTtls) {
+		return create(maxMemoryEntries, directory, null, ttl, endpointTtls);
+	}
+
+
+	/**
+	 * Create a response cache with the default times-to-live, overridden by the given ones.
+	 * @param maxMemoryEntries the maximum number of entries of the in-memory tier, or null for the default
+	 * @param directory the directory of the disk tier, or null to keep the cache in memory only
+	 * @param maxDiskBytes the quota (bytes) of the disk tier, or null for the default
+	 * @param ttl the time-to-live (ms) of the default cached endpoints, or null for the default
+	 * @param endpointTtls the time-to-live (ms) of specific endpoints, 0 to not cache them, or null
+	 * @return the response cache
+	 */
+	public static ResponseCache create(Integer maxMemoryEntries, String directory, Long maxDiskBytes, Long ttl,
+	                                   Map<String, Long> endpointTtls) {
+		Map<String, Long> ttls = getDefaultTtls(ttl != null ? ttl : TCIAConstants.DEFAULT_CACHE_TTL_MS);
+		if (endpointTtls != null) {
+			ttls.putAll(endpointTtls);
+		}
+		return new ResponseCache(maxMemoryEntries != null ? maxMemoryEntries :
+				TCIAConstants.DEFAULT_CACHE_MEMORY_ENTRIES, directory, maxDiskBytes != null ? maxDiskBytes :
+				TCIAConstants.DEFAULT_CACHE_MAX_BYTES, ttls);
+	}
+
+
+	/**
+	 * Get the response of a request from the cache, or load it and cache it if it is missing or expired.
+	 * @param uri the URI of the request
+	 * @param loader loads the response from the server
+	 * @return the response
+	 * @throws TCIAClientException if the TCIA client throws an error while loading.
+	 * @throws IOException an IO Exception while loading.
+	 */
+	public String get(URI uri, ResponseLoader loader) throws TCIAClientException, IOException {
+		long ttl = getTtl(RequestKey.getEndpoint(uri));
+		if (ttl <= 0) {
+			return loader.load();
+		}
+
+		String key = RequestKey.of(uri);
+		CacheEntry entry = getEntry(key);
+		long now = System.currentTimeMillis();
+		if (entry != null && now - entry.createdAt < ttl) {
+			hits.increment();
+			if (entry.hits.incrementAndGet() >= HOT_HITS && now - entry.createdAt >= ttl * REFRESH_AHEAD) {
+				refreshInBackground(key, loader);
+			}
+			return entry.value;
+		}
+
+		misses.increment();
+		String value = loader.load();
+		put(key, new CacheEntry(value, System.currentTimeMillis()));
+		return value;
+	}
+
+
+	/**
+	 * Get the time-to-live of an endpoint.
+	 * @param endpoint the endpoint
+	 * @return the time-to-live (ms), or 0 if the endpoint is not cached
+	 */
+	public long getTtl(String endpoint) {
+		Long ttl = endpointTtls.get(endpoint);
+		return ttl != null ? ttl : 0;
+	}
+
+
+	/**
+	 * Remove all the entries from both tiers.
+	 */
+	public void clear() {
+		memory.clear();
+		if (directory != null) {
+			File[] files = directory.listFiles((dir, name) -> name.endsWith(CACHE_SUFFIX));
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			diskSize.set(0);
+		}
+	}
+
+
+	/**
+	 * Stop the background refresh. The cache remains usable.
+	 */
+	public void shutdown() {
+		refresher.shutdownNow();
+	}
+
+
+	/**
+	 * @return true if the background refresh has been stopped
+	 */
+	public boolean isShutdown() {
+		return refresher.isShutdown();
+	}
+
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+
+	public int getMemorySize() {
+		return memory.size();
+	}
+
+
+	/**
+	 * Get the approximate size of the disk tier. Other JVMs sharing the directory are only accounted for at eviction.
+	 * @return the size of the disk tier, in bytes
+	 */
+	public long getDiskSize() {
+		return diskSize.get();
+	}
+
+
+	/*
+	 * The private methods of the cache tiers.
+	 */
+
+	private CacheEntry getEntry(String key) {
+		CacheEntry entry = memory.get(key);
+		if (entry == null && directory != null) {
+			entry = readFromDisk(key);
+			if (entry != null) {
+				memory.put(key, entry);
+			}
+		}
+		return entry;
+	}
+
+
+	private void put(String key, CacheEntry entry) {
+		memory.put(key, entry);
+		if (directory != null) {
+			writeToDisk(key, entry);
+		}
+	}
+
+
+	private void refreshInBackground(String key, ResponseLoader loader) {
+		if (!refreshing.add(key)) {
+			return;
+		}
+		try {
+			refresher.execute(() -> {
+				try {
+					put(key, new CacheEntry(loader.load(), System.currentTimeMillis()));
+				} catch (Exception e) {
+					logger.warn("Exception in refreshing the cached response of " + key, e);
+				} finally {
+					refreshing.remove(key);
+				}
+			});
+		} catch (RuntimeException e) {
+			// The refresher has been shut down.
+			refreshing.remove(key);
+		}
+	}
+
+
+	private CacheEntry readFromDisk(String key) {
+		File file = getFile(key);
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			long createdAt = in.readLong();
+			ByteArrayOutputStream value = new ByteArrayOutputStream((int) Math.max(0, file.length() - 8));
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				value.write(buffer, 0, read);
+			}
+			// The modification time orders the entries for the LRU eviction.
+			file.setLastModified(System.currentTimeMillis());
+			return new CacheEntry(new String(value.toByteArray(), StandardCharsets.UTF_8), createdAt);
+		} catch (FileNotFoundException e) {
+			return null;
+		} catch (IOException e) {
+			logger.warn("Exception in reading the cached response of " + key, e);
+			return null;
+		}
+	}
+
+
+	/*
+	 * Write to a temporary file and move it in place, so that concurrent readers never see a partial entry.
+	 */
+	private void writeToDisk(String key, CacheEntry entry) {
+		File file = getFile(key);
+		File temp = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+				out.writeLong(entry.createdAt);
+				out.write(entry.value.getBytes(StandardCharsets.UTF_8));
+			}
+			long replaced = file.length();
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			diskSize.addAndGet(file.length() - replaced);
+		} catch (IOException e) {
+			logger.warn("Exception in writing the cached response of " + key, e);
+			temp.delete();
+			return;
+		}
+		evictIfNeeded(file.getName());
+	}
+
+
+	/*
+	 * Evict the least recently used entries of the disk tier, other than the one just written, until the tier is
+	 * within its quota. The directory is rescanned, as other JVMs may have added or evicted entries.
+	 */
+	private synchronized void evictIfNeeded(String keep) {
+		if (diskSize.get() <= maxDiskBytes) {
+			return;
+		}
+
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(CACHE_SUFFIX));
+		if (files == null) {
+			return;
+		}
+		long size = 0;
+		for (File file : files) {
+			size += file.length();
+		}
+
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			if (size <= maxDiskBytes) {
+				break;
+			}
+			if (file.getName().equals(keep)) {
+				continue;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				size -= length;
+			}
+		}
+		diskSize.set(size);
+	}
+
+
+	private long computeDiskSize() {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(CACHE_SUFFIX));
+		long size = 0;
+		if (files != null) {
+			for (File file : files) {
+				size += file.length();
+			}
+		}
+		return size;
+	}
+
+
+	private File getFile(String key) {
+		return new File(directory, RequestKey.hash(key) + CACHE_SUFFIX);
+	}
+
+
+	private static class CacheEntry {
+		private final String value;
+		private final long createdAt;
+		private final AtomicInteger hits = new AtomicInteger();
+
+		CacheEntry(String value, long createdAt) {
+			this.value = value;
+			this.createdAt = createdAt;
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package edu.emory.bmi.tcia.client.cache;
+
+import java.io.IOException;
+
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+
+/**
+ * Loads a response from the TCIA server when it is not in the cache.
+ */
+public interface ResponseLoader {
+	String load() throws TCIAClientException, IOException;
+}
@@ -0,0 +1,88 @@
+package edu.emory.bmi.tcia.client.cache;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+
+
+/**
+ * Coalesces the identical concurrent requests: while a request is in flight, the callers asking for the same key
+ * wait for it and share its response, or its failure, instead of sending their own request. The key is forgotten as
+ * soon as the request completes, so that no response is ever served after it was received; only the callers that
+ * arrived while it was in flight share it.
+ */
+public class SingleFlight {
+
+	private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+	private final LongAdder shared = new LongAdder();
+
+
+	/**
+	 * Load the response of a key, or wait for the identical request in flight.
+	 * @param key the normalized key of the request
+	 * @param loader loads the response from the server
+	 * @return the response
+	 * @throws TCIAClientException if the TCIA client throws an error while loading.
+	 * @throws IOException an IO Exception while loading, or if interrupted while waiting.
+	 */
+	public String get(String key, ResponseLoader loader) throws TCIAClientException, IOException {
+		CompletableFuture<String> future = new CompletableFuture<>();
+		CompletableFuture<String> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			shared.increment();
+			return await(existing);
+		}
+
+		try {
+			String value = loader.load();
+			future.complete(value);
+			return value;
+		} catch (TCIAClientException | IOException | RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+
+	/**
+	 * @return the number of calls that shared the response of another call
+	 */
+	public long getSharedCount() {
+		return shared.sum();
+	}
+
+
+	/**
+	 * @return the number of requests currently in flight
+	 */
+	public int getInFlightCount() {
+		return inFlight.size();
+	}
+
+
+	private static String await(CompletableFuture<String> future) throws TCIAClientException, IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for an identical request");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof TCIAClientException) {
+				throw (TCIAClientException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw (Error) cause;
+		}
+	}
+}
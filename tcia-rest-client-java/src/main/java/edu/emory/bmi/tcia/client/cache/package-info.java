@@ -0,0 +1,4 @@
+/**
+ * The caches of the TCIA responses, consulted before going to the network.
+ */
+package edu.emory.bmi.tcia.client.cache;
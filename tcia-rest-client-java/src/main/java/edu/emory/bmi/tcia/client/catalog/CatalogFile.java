@@ -0,0 +1,72 @@
+package edu.emory.bmi.tcia.client.catalog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import edu.emory.bmi.tcia.client.model.Patient;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.model.Study;
+
+
+/**
+ * The saved form of a catalog: the records and coverages of its tables. The indexes are rebuilt on loading.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+class CatalogFile {
+
+	private List<Patient> patients = new ArrayList<>();
+	private List<Coverage> patientCoverages = new ArrayList<>();
+	private List<Study> studies = new ArrayList<>();
+	private List<Coverage> studyCoverages = new ArrayList<>();
+	private List<Series> series = new ArrayList<>();
+	private List<Coverage> seriesCoverages = new ArrayList<>();
+
+	public List<Patient> getPatients() {
+		return patients;
+	}
+
+	public void setPatients(List<Patient> patients) {
+		this.patients = patients;
+	}
+
+	public List<Coverage> getPatientCoverages() {
+		return patientCoverages;
+	}
+
+	public void setPatientCoverages(List<Coverage> patientCoverages) {
+		this.patientCoverages = patientCoverages;
+	}
+
+	public List<Study> getStudies() {
+		return studies;
+	}
+
+	public void setStudies(List<Study> studies) {
+		this.studies = studies;
+	}
+
+	public List<Coverage> getStudyCoverages() {
+		return studyCoverages;
+	}
+
+	public void setStudyCoverages(List<Coverage> studyCoverages) {
+		this.studyCoverages = studyCoverages;
+	}
+
+	public List<Series> getSeries() {
+		return series;
+	}
+
+	public void setSeries(List<Series> series) {
+		this.series = series;
+	}
+
+	public List<Coverage> getSeriesCoverages() {
+		return seriesCoverages;
+	}
+
+	public void setSeriesCoverages(List<Coverage> seriesCoverages) {
+		this.seriesCoverages = seriesCoverages;
+	}
+}
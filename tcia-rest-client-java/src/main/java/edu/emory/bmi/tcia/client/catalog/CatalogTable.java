@@ -0,0 +1,222 @@
+package edu.emory.bmi.tcia.client.catalog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+
+/**
+ * The records of an endpoint, by their key, with an index of the records by the value of each filterable attribute,
+ * and the coverages of the responses they were loaded from. A table is not thread-safe; the catalog locks it.
+ * @param <T> the type of the records
+ */
+class CatalogTable<T> {
+
+	private final Class<T> type;
+	private final Function<T, String> key;
+	private final Map<String, Function<T, String>> attributes;
+	private final Map<String, T> records = new LinkedHashMap<>();
+	// The records by attribute and value, and key, so that a selection reads the records off its index entry.
+	private final Map<String, Map<String, Map<String, T>>> indexes = new HashMap<>();
+	private final List<Coverage> coverages = new ArrayList<>();
+
+
+	/**
+	 * Create a table.
+	 * @param type the type of the records
+	 * @param key the key of a record
+	 * @param attributes the filterable attributes of a record, by the names of the query parameters
+	 */
+	CatalogTable(Class<T> type, Function<T, String> key, Map<String, Function<T, String>> attributes) {
+		this.type = type;
+		this.key = key;
+		this.attributes = attributes;
+		for (String attribute : attributes.keySet()) {
+			indexes.put(attribute, new HashMap<>());
+		}
+	}
+
+
+	Class<T> getType() {
+		return type;
+	}
+
+
+	/**
+	 * @return whether the query parameter is an attribute of the records, that the table can filter on
+	 */
+	boolean isFilterable(String name) {
+		return attributes.containsKey(name);
+	}
+
+
+	/**
+	 * @param filters the filters of a query
+	 * @param loadedAfter the oldest time (ms since the epoch) a response may have been loaded at
+	 * @return whether a fresh enough response had all the records of the query
+	 */
+	boolean covers(Map<String, String> filters, long loadedAfter) {
+		for (Coverage coverage : coverages) {
+			if (coverage.getLoadedAt() >= loadedAfter && coverage.covers(filters)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Select the records that match all the filters, starting from the smallest index entry among the filters.
+	 * @param filters the filters, on filterable attributes
+	 * @return the matching records, in the order they were loaded
+	 */
+	List<T> select(Map<String, String> filters) {
+		Collection<T> candidates = null;
+		for (Map.Entry<String, String> filter : filters.entrySet()) {
+			Map<String, T> entry = indexes.get(filter.getKey()).get(filter.getValue());
+			if (entry == null) {
+				return Collections.emptyList();
+			}
+			if (candidates == null || entry.size() < candidates.size()) {
+				candidates = entry.values();
+			}
+		}
+		if (candidates == null) {
+			return new ArrayList<>(records.values());
+		}
+
+		List<T> selected = new ArrayList<>(candidates.size());
+		for (T record : candidates) {
+			if (matches(record, filters)) {
+				selected.add(record);
+			}
+		}
+		return selected;
+	}
+
+
+	/**
+	 * Replace the records of a query with its complete response: the records matching the filters that are no
+	 * longer in the response are removed, and the ones of the response are added or updated.
+	 * @param filters the filters of the query
+	 * @param response the records of the response
+	 * @param loadedAt the time (ms since the epoch) the query was sent
+	 */
+	void replace(Map<String, String> filters, List<T> response, long loadedAt) {
+		Set<String> keys = new HashSet<>();
+		for (T record : response) {
+			keys.add(key.apply(record));
+		}
+		for (T record : select(filters)) {
+			String k = key.apply(record);
+			if (!keys.contains(k)) {
+				remove(k);
+			}
+		}
+		for (T record : response) {
+			put(record);
+		}
+
+		// The older coverages of more filters are answered by the new one as well.
+		Coverage loaded = new Coverage(filters, loadedAt);
+		for (Iterator<Coverage> it = coverages.iterator(); it.hasNext(); ) {
+			Coverage coverage = it.next();
+			if (coverage.getLoadedAt() <= loadedAt && loaded.covers(coverage.getFilters())) {
+				it.remove();
+			}
+		}
+		coverages.add(loaded);
+	}
+
+
+	/**
+	 * Add or update a record.
+	 */
+	void put(T record) {
+		String k = key.apply(record);
+		T previous = records.put(k, record);
+		for (Map.Entry<String, Function<T, String>> attribute : attributes.entrySet()) {
+			Map<String, Map<String, T>> index = indexes.get(attribute.getKey());
+			String value = attribute.getValue().apply(record);
+			if (previous != null) {
+				String previousValue = attribute.getValue().apply(previous);
+				if (previousValue != null && !previousValue.equals(value)) {
+					unindex(index, previousValue, k);
+				}
+			}
+			if (value != null) {
+				index.computeIfAbsent(value, v -> new LinkedHashMap<>()).put(k, record);
+			}
+		}
+	}
+
+
+	List<T> getRecords() {
+		return new ArrayList<>(records.values());
+	}
+
+
+	List<Coverage> getCoverages() {
+		return new ArrayList<>(coverages);
+	}
+
+
+	/**
+	 * Restore the coverages of a saved table, after its records.
+	 */
+	void setCoverages(List<Coverage> saved) {
+		coverages.clear();
+		coverages.addAll(saved);
+	}
+
+
+	int size() {
+		return records.size();
+	}
+
+
+	void clear() {
+		records.clear();
+		coverages.clear();
+		for (Map<String, Map<String, T>> index : indexes.values()) {
+			index.clear();
+		}
+	}
+
+
+	private void remove(String k) {
+		T record = records.remove(k);
+		for (Map.Entry<String, Function<T, String>> attribute : attributes.entrySet()) {
+			String value = attribute.getValue().apply(record);
+			if (value != null) {
+				unindex(indexes.get(attribute.getKey()), value, k);
+			}
+		}
+	}
+
+
+	private boolean matches(T record, Map<String, String> filters) {
+		for (Map.Entry<String, String> filter : filters.entrySet()) {
+			if (!filter.getValue().equals(attributes.get(filter.getKey()).apply(record))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	private static <T> void unindex(Map<String, Map<String, T>> index, String value, String k) {
+		Map<String, T> entry = index.get(value);
+		if (entry != null && entry.remove(k) != null && entry.isEmpty()) {
+			index.remove(value);
+		}
+	}
+}
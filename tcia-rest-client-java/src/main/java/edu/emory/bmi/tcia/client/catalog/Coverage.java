@@ -0,0 +1,63 @@
+package edu.emory.bmi.tcia.client.catalog;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * A query whose complete response the catalog holds: the filters of the query, and when it was loaded. The catalog
+ * answers any query with at least these filters, as its records are among the ones of the loaded response.
+ */
+public class Coverage {
+
+	private Map<String, String> filters = new TreeMap<>();
+	private long loadedAt;
+
+	public Coverage() {
+	}
+
+	public Coverage(Map<String, String> filters, long loadedAt) {
+		this.filters = new TreeMap<>(filters);
+		this.loadedAt = loadedAt;
+	}
+
+	/**
+	 * @return the filters of the query, by the names of their DICOM attributes
+	 */
+	public Map<String, String> getFilters() {
+		return filters;
+	}
+
+	public void setFilters(Map<String, String> filters) {
+		this.filters = new TreeMap<>(filters);
+	}
+
+	/**
+	 * @return the time (ms since the epoch) the query was sent
+	 */
+	public long getLoadedAt() {
+		return loadedAt;
+	}
+
+	public void setLoadedAt(long loadedAt) {
+		this.loadedAt = loadedAt;
+	}
+
+	/**
+	 * @param queryFilters the filters of a query
+	 * @return whether the records of the query are all in the response of this coverage
+	 */
+	public boolean covers(Map<String, String> queryFilters) {
+		for (Map.Entry<String, String> filter : filters.entrySet()) {
+			if (!filter.getValue().equals(queryFilters.get(filter.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return filters + "@" + loadedAt;
+	}
+}
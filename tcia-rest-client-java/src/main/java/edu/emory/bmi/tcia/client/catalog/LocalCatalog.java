@@ -0,0 +1,424 @@
+package edu.emory.bmi.tcia.client.catalog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.emory.bmi.tcia.client.conf.TCIAConstants;
+import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
+import edu.emory.bmi.tcia.client.model.Patient;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.model.Study;
+import edu.emory.bmi.tcia.client.request.Query;
+import edu.emory.bmi.tcia.client.request.RequestTemplate;
+import edu.emory.bmi.tcia.client.sync.CollectionSnapshot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * A local catalog of the patients, studies and series, indexed by the DICOM attributes their endpoints filter on:
+ * Collection, PatientID, StudyInstanceUID, SeriesInstanceUID, Modality, BodyPartExamined, Manufacturer and
+ * ManufacturerModelName. The catalog is populated from the complete typed responses of getPatient, getPatientStudy
+ * and getSeries, or from the snapshots of the sync engine, and remembers the filters of each response it holds.
+ * A later query with at least the filters of a held response, within the maximum age, is answered from the
+ * indexes without going to the network: a getSeries of a collection answers all the getSeries of that collection
+ * by modality, patient, body part or manufacturer.
+ * <p>
+ * The records are keyed by their collection and their ID, as the same PatientID, or even UID, may appear in several
+ * collections. The filters match the values exactly. The records returned are shared with the catalog, and must not
+ * be modified. A catalog with a directory is loaded from it when created, and saved to it by save and close.
+ */
+public class LocalCatalog implements Closeable {
+
+	private static Logger logger = LogManager.getLogger(LocalCatalog.class.getName());
+
+	private static final String CATALOG_FILE = "catalog.json";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+			.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+	private final Path directory;
+	private final CatalogTable<Patient> patients = new CatalogTable<>(Patient.class,
+			p -> key(p.getCollection(), p.getPatientID()), patientAttributes());
+	private final CatalogTable<Study> studies = new CatalogTable<>(Study.class,
+			s -> key(s.getCollection(), s.getStudyInstanceUID()), studyAttributes());
+	private final CatalogTable<Series> series = new CatalogTable<>(Series.class,
+			s -> key(s.getCollection(), s.getSeriesInstanceUID()), seriesAttributes());
+	private final Map<RequestTemplate, CatalogTable<?>> tables = new HashMap<>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private volatile long maxAge = TCIAConstants.DEFAULT_CATALOG_MAX_AGE_MS;
+	private volatile Clock clock = Clock.systemUTC();
+
+
+	/**
+	 * Create a catalog in memory.
+	 */
+	public LocalCatalog() {
+		this.directory = null;
+		tables.put(RequestTemplate.GET_PATIENT, patients);
+		tables.put(RequestTemplate.GET_PATIENT_STUDY, studies);
+		tables.put(RequestTemplate.GET_SERIES, series);
+	}
+
+
+	/**
+	 * Create a catalog saved in a directory, loading the catalog saved there if any.
+	 * @param directory the directory of the catalog, created if it does not exist
+	 * @throws IOException if the directory could not be created, or the saved catalog could not be read
+	 */
+	public LocalCatalog(String directory) throws IOException {
+		this.directory = Paths.get(directory);
+		Files.createDirectories(this.directory);
+		tables.put(RequestTemplate.GET_PATIENT, patients);
+		tables.put(RequestTemplate.GET_PATIENT_STUDY, studies);
+		tables.put(RequestTemplate.GET_SERIES, series);
+		load();
+	}
+
+
+	/**
+	 * Set how old a response may be and still answer the queries it covers.
+	 * @param maxAge the maximum age, in ms
+	 * @return this catalog
+	 */
+	public LocalCatalog setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+		return this;
+	}
+
+
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+
+	/**
+	 * Set the clock the ages of the responses are measured with.
+	 * @param clock the clock
+	 * @return this catalog
+	 */
+	public LocalCatalog setClock(Clock clock) {
+		this.clock = clock;
+		return this;
+	}
+
+
+	/**
+	 * Answer a query from the catalog.
+	 * @param type the type of the records
+	 * @param query the query
+	 * @param <T> the type of the records
+	 * @return the stream of the records of the query, or null if the catalog does not hold a fresh enough response
+	 * that covers it
+	 */
+	public <T> Stream<T> query(Class<T> type, Query query) {
+		CatalogTable<T> table = getTable(type, query);
+		Map<String, String> filters = table != null ? getFilters(table, query) : null;
+		if (filters == null) {
+			return null;
+		}
+		lock.readLock().lock();
+		try {
+			if (!table.covers(filters, clock.millis() - maxAge)) {
+				misses.increment();
+				return null;
+			}
+			hits.increment();
+			return table.select(filters).stream();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Record the response of a query as it is read. The catalog takes the records when the stream is exhausted, as
+	 * a stream closed before its end may not hold all the records of the query.
+	 * @param type the type of the records
+	 * @param query the query
+	 * @param response the stream of the records of the response
+	 * @param <T> the type of the records
+	 * @return the stream of the records, to read instead of the response
+	 */
+	public <T> Stream<T> record(Class<T> type, Query query, Stream<T> response) {
+		CatalogTable<T> table = getTable(type, query);
+		Map<String, String> filters = table != null ? getFilters(table, query) : null;
+		if (filters == null) {
+			return response;
+		}
+		long loadedAt = clock.millis();
+		Iterator<T> records = response.iterator();
+		List<T> loaded = new ArrayList<>();
+		Iterator<T> recording = new Iterator<T>() {
+			private boolean complete;
+
+			@Override
+			public boolean hasNext() {
+				boolean hasNext = records.hasNext();
+				if (!hasNext && !complete) {
+					complete = true;
+					replace(table, filters, loaded, loadedAt);
+				}
+				return hasNext;
+			}
+
+			@Override
+			public T next() {
+				T record = records.next();
+				loaded.add(record);
+				return record;
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(recording,
+				Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(response::close);
+	}
+
+
+	/**
+	 * Add the records of a collection from its snapshot, as the complete responses of the collection at the time of
+	 * the sync.
+	 * @param snapshot the snapshot of the collection
+	 */
+	public void add(CollectionSnapshot snapshot) {
+		Map<String, String> filters = Collections.singletonMap(DICOMAttributes.COLLECTION, snapshot.getCollection());
+		lock.writeLock().lock();
+		try {
+			patients.replace(filters, snapshot.getPatients(), snapshot.getSyncedAt());
+			studies.replace(filters, snapshot.getStudies(), snapshot.getSyncedAt());
+			series.replace(filters, snapshot.getSeries(), snapshot.getSyncedAt());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Remove all the records and coverages.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			for (CatalogTable<?> table : tables.values()) {
+				table.clear();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+
+	/**
+	 * Save the catalog to its directory, if any. The file is replaced atomically where the file system supports it.
+	 * @throws IOException if the catalog could not be saved, in which case the previous one is kept
+	 */
+	public void save() throws IOException {
+		if (directory == null) {
+			return;
+		}
+		CatalogFile catalogFile = new CatalogFile();
+		lock.readLock().lock();
+		try {
+			catalogFile.setPatients(patients.getRecords());
+			catalogFile.setPatientCoverages(patients.getCoverages());
+			catalogFile.setStudies(studies.getRecords());
+			catalogFile.setStudyCoverages(studies.getCoverages());
+			catalogFile.setSeries(series.getRecords());
+			catalogFile.setSeriesCoverages(series.getCoverages());
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		Path path = directory.resolve(CATALOG_FILE);
+		Path temp = Files.createTempFile(directory, CATALOG_FILE, TEMP_SUFFIX);
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(MAPPER.writeValueAsBytes(catalogFile));
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			try {
+				Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+
+	/**
+	 * Save the catalog.
+	 */
+	@Override
+	public void close() throws IOException {
+		save();
+	}
+
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+
+	public int getPatientCount() {
+		return count(patients);
+	}
+
+
+	public int getStudyCount() {
+		return count(studies);
+	}
+
+
+	public int getSeriesCount() {
+		return count(series);
+	}
+
+
+	private void load() throws IOException {
+		CatalogFile catalogFile;
+		try (InputStream in = Files.newInputStream(directory.resolve(CATALOG_FILE))) {
+			catalogFile = MAPPER.readValue(in, CatalogFile.class);
+		} catch (NoSuchFileException e) {
+			return;
+		}
+		for (Patient patient : catalogFile.getPatients()) {
+			patients.put(patient);
+		}
+		patients.setCoverages(catalogFile.getPatientCoverages());
+		for (Study study : catalogFile.getStudies()) {
+			studies.put(study);
+		}
+		studies.setCoverages(catalogFile.getStudyCoverages());
+		for (Series s : catalogFile.getSeries()) {
+			series.put(s);
+		}
+		series.setCoverages(catalogFile.getSeriesCoverages());
+		logger.info("Loaded the catalog of " + getPatientCount() + " patients, " + getStudyCount() + " studies and " +
+				getSeriesCount() + " series from " + directory);
+	}
+
+
+	private <T> void replace(CatalogTable<T> table, Map<String, String> filters, List<T> records, long loadedAt) {
+		lock.writeLock().lock();
+		try {
+			table.replace(filters, records, loadedAt);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+
+	private int count(CatalogTable<?> table) {
+		lock.readLock().lock();
+		try {
+			return table.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+
+	@SuppressWarnings("unchecked")
+	private <T> CatalogTable<T> getTable(Class<T> type, Query query) {
+		CatalogTable<?> table = tables.get(query.getTemplate());
+		return table != null && table.getType() == type ? (CatalogTable<T>) table : null;
+	}
+
+
+	/*
+	 * The key of a record: its collection and its ID, separated by a character neither of them holds.
+	 */
+	private static String key(String collection, String id) {
+		return collection + '\0' + id;
+	}
+
+
+	/*
+	 * The filters of a query, or null if it has a parameter the records cannot be filtered on.
+	 */
+	private static Map<String, String> getFilters(CatalogTable<?> table, Query query) {
+		Map<String, String> filters = new LinkedHashMap<>();
+		for (String name : query.getTemplate().getParameters()) {
+			String value = query.get(name);
+			if (value != null) {
+				if (!table.isFilterable(name)) {
+					return null;
+				}
+				filters.put(name, value);
+			}
+		}
+		return filters;
+	}
+
+
+	private static Map<String, Function<Patient, String>> patientAttributes() {
+		Map<String, Function<Patient, String>> attributes = new LinkedHashMap<>();
+		attributes.put(DICOMAttributes.COLLECTION, Patient::getCollection);
+		return attributes;
+	}
+
+
+	private static Map<String, Function<Study, String>> studyAttributes() {
+		Map<String, Function<Study, String>> attributes = new LinkedHashMap<>();
+		attributes.put(DICOMAttributes.COLLECTION, Study::getCollection);
+		attributes.put(DICOMAttributes.PATIENT_ID, Study::getPatientID);
+		attributes.put(DICOMAttributes.STUDY_INSTANCE_UID, Study::getStudyInstanceUID);
+		return attributes;
+	}
+
+
+	private static Map<String, Function<Series, String>> seriesAttributes() {
+		Map<String, Function<Series, String>> attributes = new LinkedHashMap<>();
+		attributes.put(DICOMAttributes.COLLECTION, Series::getCollection);
+		attributes.put(DICOMAttributes.STUDY_INSTANCE_UID, Series::getStudyInstanceUID);
+		attributes.put(DICOMAttributes.MODALITY, Series::getModality);
+		attributes.put(DICOMAttributes.PATIENT_ID, Series::getPatientID);
+		attributes.put(DICOMAttributes.SERIES_INSTANCE_UID, Series::getSeriesInstanceUID);
+		attributes.put(DICOMAttributes.BODY_PART_EXAMINED, Series::getBodyPartExamined);
+		attributes.put(DICOMAttributes.MANUFACTURER, Series::getManufacturer);
+		attributes.put(DICOMAttributes.MANUFACTURER_MODEL_NAME, Series::getManufacturerModelName);
+		return attributes;
+	}
+}
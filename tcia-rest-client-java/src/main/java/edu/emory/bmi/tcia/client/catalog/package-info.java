@@ -0,0 +1,5 @@
+/**
+ * The local catalog of the metadata, which answers the typed queries it holds the responses of without going to the
+ * network.
+ */
+package edu.emory.bmi.tcia.client.catalog;
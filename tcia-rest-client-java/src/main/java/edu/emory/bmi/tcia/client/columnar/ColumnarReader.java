@@ -0,0 +1,330 @@
+package edu.emory.bmi.tcia.client.columnar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import edu.emory.bmi.tcia.client.columnar.ColumnarSchema.Column;
+import edu.emory.bmi.tcia.client.columnar.ColumnarSchema.Kind;
+import edu.emory.bmi.tcia.client.uid.Uid;
+
+
+/**
+ * Reads a columnar snapshot written by a ColumnarWriter, memory-mapped. Opening a snapshot reads its header and its
+ * dictionaries only; the rows are decoded as they are read, and a scan by the value of a column compares the codes
+ * or the packed bytes of the column, without decoding the rows that do not match.
+ * <p>
+ * A reader is safe to share between threads. The mapping is released when the reader is garbage collected, and a
+ * snapshot is limited to 2 GB.
+ * @param <T> the type of the records
+ */
+public class ColumnarReader<T> {
+
+	private final ColumnarSchema<T> schema;
+	private final ByteBuffer buffer;
+	private final int rowCount;
+	private final Map<String, ColumnReader> columns = new LinkedHashMap<>();
+
+
+	/**
+	 * Open a columnar snapshot. The columns of the file that the schema does not have are ignored, and the attributes
+	 * of the schema that the file does not have are left null.
+	 * @param file the file of the snapshot
+	 * @param schema the schema of the records
+	 * @throws IOException if the file could not be read, or is not a snapshot of the schema
+	 */
+	public ColumnarReader(String file, ColumnarSchema<T> schema) throws IOException {
+		this.schema = schema;
+		Path path = Paths.get(file);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("The snapshot is larger than 2 GB: " + path);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		ByteBuffer header = buffer.duplicate();
+		if (header.remaining() < 8 || header.getInt() != ColumnarWriter.MAGIC) {
+			throw new IOException("Not a columnar snapshot: " + path);
+		}
+		int version = header.getInt();
+		if (version != ColumnarWriter.VERSION) {
+			throw new IOException("Unsupported version of columnar snapshot " + version + ": " + path);
+		}
+		String name = readUTF(header);
+		if (!name.equals(schema.getName())) {
+			throw new IOException("The snapshot is of " + name + ", not " + schema.getName() + ": " + path);
+		}
+		rowCount = header.getInt();
+		int columnCount = header.getInt();
+		for (int i = 0; i < columnCount; i++) {
+			String columnName = readUTF(header);
+			Kind kind = Kind.values()[header.get()];
+			ColumnReader column;
+			switch (kind) {
+			case DICTIONARY:
+				column = new DictionaryReader(header);
+				break;
+			case UID:
+				column = new UidReader(header);
+				break;
+			default:
+				column = new IntegerReader(header);
+			}
+			Column<T> schemaColumn = schema.getColumn(columnName);
+			if (schemaColumn != null && schemaColumn.kind == kind) {
+				columns.put(columnName, column);
+			}
+		}
+	}
+
+
+	/**
+	 * @return the number of records
+	 */
+	public int size() {
+		return rowCount;
+	}
+
+
+	/**
+	 * @param row the index of a record
+	 * @return the record
+	 */
+	public T get(int row) {
+		if (row < 0 || row >= rowCount) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+		}
+		T record = schema.newRecord();
+		for (Column<T> column : schema.getColumns()) {
+			ColumnReader reader = columns.get(column.name);
+			if (reader != null) {
+				column.setter.accept(record, reader.get(row));
+			}
+		}
+		return record;
+	}
+
+
+	/**
+	 * @param row the index of a record
+	 * @param column the name of a column
+	 * @return the value of the column for the record, as a string, or null
+	 */
+	public String getValue(int row, String column) {
+		Object value = getColumn(column).get(row);
+		return value == null ? null : value.toString();
+	}
+
+
+	/**
+	 * @return the stream of the records, in the order they were written
+	 */
+	public Stream<T> stream() {
+		return IntStream.range(0, rowCount).mapToObj(this::get);
+	}
+
+
+	/**
+	 * @param column the name of a column
+	 * @param value a value, or null
+	 * @return the stream of the records whose column has the value, in the order they were written
+	 */
+	public Stream<T> stream(String column, String value) {
+		return rows(column, value).mapToObj(this::get);
+	}
+
+
+	/**
+	 * @param column the name of a column
+	 * @param value a value, or null
+	 * @return the number of records whose column has the value
+	 */
+	public long count(String column, String value) {
+		return rows(column, value).count();
+	}
+
+
+	/**
+	 * @param column the name of a dictionary-encoded column
+	 * @return the distinct values of the column, null excepted, in the order they were first written
+	 */
+	public List<String> getDistinctValues(String column) {
+		String[] dictionary = getColumn(column).getDictionary();
+		if (dictionary == null) {
+			throw new IllegalArgumentException("Not a dictionary-encoded column: " + column);
+		}
+		return Collections.unmodifiableList(Arrays.asList(dictionary));
+	}
+
+
+	private IntStream rows(String column, String value) {
+		return IntStream.range(0, rowCount).filter(getColumn(column).matcher(value));
+	}
+
+
+	private ColumnReader getColumn(String column) {
+		ColumnReader reader = columns.get(column);
+		if (reader == null) {
+			throw new IllegalArgumentException("No such column in the snapshot: " + column);
+		}
+		return reader;
+	}
+
+
+	private static String readUTF(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		// The names are ASCII, where the modified UTF-8 of writeUTF is UTF-8.
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+	/*
+	 * The values of a column, read from the mapped file by absolute positions.
+	 */
+	private abstract static class ColumnReader {
+		abstract Object get(int row);
+
+		abstract IntPredicate matcher(String value);
+
+		String[] getDictionary() {
+			return null;
+		}
+	}
+
+
+	private class DictionaryReader extends ColumnReader {
+		private final String[] dictionary;
+		private final int width;
+		private final int codes;
+
+		DictionaryReader(ByteBuffer header) {
+			dictionary = new String[header.getInt()];
+			for (int i = 0; i < dictionary.length; i++) {
+				byte[] utf8 = new byte[header.getInt()];
+				header.get(utf8);
+				dictionary[i] = new String(utf8, StandardCharsets.UTF_8);
+			}
+			width = header.get();
+			codes = header.position();
+			header.position(codes + width * rowCount);
+		}
+
+		int getCode(int row) {
+			if (width == 1) {
+				return buffer.get(codes + row) & 0xFF;
+			} else if (width == 2) {
+				return buffer.getShort(codes + 2 * row) & 0xFFFF;
+			}
+			return buffer.getInt(codes + 4 * row);
+		}
+
+		@Override
+		Object get(int row) {
+			int code = getCode(row);
+			return code == 0 ? null : dictionary[code - 1];
+		}
+
+		@Override
+		IntPredicate matcher(String value) {
+			int code = value == null ? 0 : Arrays.asList(dictionary).indexOf(value) + 1;
+			if (code == 0 && value != null) {
+				return row -> false;
+			}
+			return row -> getCode(row) == code;
+		}
+
+		@Override
+		String[] getDictionary() {
+			return dictionary;
+		}
+	}
+
+
+	private class UidReader extends ColumnReader {
+		private final int offsets;
+		private final int heap;
+
+		UidReader(ByteBuffer header) {
+			int heapSize = header.getInt();
+			offsets = header.position();
+			heap = offsets + 4 * rowCount;
+			header.position(heap + heapSize);
+		}
+
+		int getStart(int row) {
+			return row == 0 ? 0 : buffer.getInt(offsets + 4 * (row - 1));
+		}
+
+		int getEnd(int row) {
+			return buffer.getInt(offsets + 4 * row);
+		}
+
+		@Override
+		Object get(int row) {
+			int start = getStart(row);
+			int length = getEnd(row) - start;
+			return length == 0 ? null : Uid.decode(buffer, heap + start, length);
+		}
+
+		@Override
+		IntPredicate matcher(String value) {
+			byte[] encoded = value == null ? new byte[0] : Uid.encode(value);
+			return row -> {
+				int start = getStart(row);
+				if (getEnd(row) - start != encoded.length) {
+					return false;
+				}
+				for (int i = 0; i < encoded.length; i++) {
+					if (buffer.get(heap + start + i) != encoded[i]) {
+						return false;
+					}
+				}
+				return true;
+			};
+		}
+	}
+
+
+	private class IntegerReader extends ColumnReader {
+		private final int values;
+
+		IntegerReader(ByteBuffer header) {
+			values = header.position();
+			header.position(values + 4 * rowCount);
+		}
+
+		@Override
+		Object get(int row) {
+			int value = buffer.getInt(values + 4 * row);
+			return value == Integer.MIN_VALUE ? null : value;
+		}
+
+		@Override
+		IntPredicate matcher(String value) {
+			if (value == null) {
+				return row -> buffer.getInt(values + 4 * row) == Integer.MIN_VALUE;
+			}
+			int n;
+			try {
+				n = Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				return row -> false;
+			}
+			return row -> buffer.getInt(values + 4 * row) == n;
+		}
+	}
+}
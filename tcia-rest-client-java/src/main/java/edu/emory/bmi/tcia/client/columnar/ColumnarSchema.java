@@ -0,0 +1,163 @@
+package edu.emory.bmi.tcia.client.columnar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
+import edu.emory.bmi.tcia.client.model.Patient;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.model.Study;
+
+
+/**
+ * The columns of a columnar snapshot of a record type, named as the attributes of the TCIA responses. The UIDs are
+ * packed, the counts stored as integers, and the other attributes dictionary-encoded.
+ * @param <T> the type of the records
+ */
+public final class ColumnarSchema<T> {
+
+	/**
+	 * The series of getSeries.
+	 */
+	public static final ColumnarSchema<Series> SERIES = new ColumnarSchema<>("Series", Series::new)
+			.uid(DICOMAttributes.SERIES_INSTANCE_UID, Series::getSeriesInstanceUID, Series::setSeriesInstanceUID)
+			.uid(DICOMAttributes.STUDY_INSTANCE_UID, Series::getStudyInstanceUID, Series::setStudyInstanceUID)
+			.dictionary(DICOMAttributes.COLLECTION, Series::getCollection, Series::setCollection)
+			.dictionary(DICOMAttributes.PATIENT_ID, Series::getPatientID, Series::setPatientID)
+			.dictionary(DICOMAttributes.MODALITY, Series::getModality, Series::setModality)
+			.dictionary("ProtocolName", Series::getProtocolName, Series::setProtocolName)
+			.dictionary("SeriesDate", Series::getSeriesDate, Series::setSeriesDate)
+			.dictionary("SeriesDescription", Series::getSeriesDescription, Series::setSeriesDescription)
+			.dictionary(DICOMAttributes.BODY_PART_EXAMINED, Series::getBodyPartExamined, Series::setBodyPartExamined)
+			.dictionary("SeriesNumber", Series::getSeriesNumber, Series::setSeriesNumber)
+			.dictionary("AnnotationsFlag", Series::getAnnotationsFlag, Series::setAnnotationsFlag)
+			.dictionary(DICOMAttributes.MANUFACTURER, Series::getManufacturer, Series::setManufacturer)
+			.dictionary(DICOMAttributes.MANUFACTURER_MODEL_NAME, Series::getManufacturerModelName,
+					Series::setManufacturerModelName)
+			.dictionary("SoftwareVersions", Series::getSoftwareVersions, Series::setSoftwareVersions)
+			.integer("ImageCount", Series::getImageCount, Series::setImageCount);
+
+	/**
+	 * The studies of getPatientStudy.
+	 */
+	public static final ColumnarSchema<Study> STUDY = new ColumnarSchema<>("Study", Study::new)
+			.uid(DICOMAttributes.STUDY_INSTANCE_UID, Study::getStudyInstanceUID, Study::setStudyInstanceUID)
+			.dictionary("StudyDate", Study::getStudyDate, Study::setStudyDate)
+			.dictionary("StudyDescription", Study::getStudyDescription, Study::setStudyDescription)
+			.dictionary("AdmittingDiagnosesDescription", Study::getAdmittingDiagnosesDescription,
+					Study::setAdmittingDiagnosesDescription)
+			.dictionary("StudyID", Study::getStudyID, Study::setStudyID)
+			.dictionary("PatientAge", Study::getPatientAge, Study::setPatientAge)
+			.dictionary(DICOMAttributes.PATIENT_ID, Study::getPatientID, Study::setPatientID)
+			.dictionary("PatientName", Study::getPatientName, Study::setPatientName)
+			.dictionary("PatientSex", Study::getPatientSex, Study::setPatientSex)
+			.dictionary("EthnicGroup", Study::getEthnicGroup, Study::setEthnicGroup)
+			.dictionary(DICOMAttributes.COLLECTION, Study::getCollection, Study::setCollection)
+			.integer("SeriesCount", Study::getSeriesCount, Study::setSeriesCount);
+
+	/**
+	 * The patients of getPatient.
+	 */
+	public static final ColumnarSchema<Patient> PATIENT = new ColumnarSchema<>("Patient", Patient::new)
+			.dictionary(DICOMAttributes.PATIENT_ID, Patient::getPatientID, Patient::setPatientID)
+			.dictionary("PatientName", Patient::getPatientName, Patient::setPatientName)
+			.dictionary("PatientSex", Patient::getPatientSex, Patient::setPatientSex)
+			.dictionary(DICOMAttributes.COLLECTION, Patient::getCollection, Patient::setCollection);
+
+	/*
+	 * The encodings of the columns, by their code in the file.
+	 */
+	enum Kind {
+		DICTIONARY, UID, INTEGER
+	}
+
+	/*
+	 * A column, with the accessors of its attribute.
+	 */
+	static class Column<T> {
+		final String name;
+		final Kind kind;
+		final Function<T, ?> getter;
+		final BiConsumer<T, Object> setter;
+
+		@SuppressWarnings("unchecked")
+		<V> Column(String name, Kind kind, Function<T, V> getter, BiConsumer<T, V> setter) {
+			this.name = name;
+			this.kind = kind;
+			this.getter = getter;
+			this.setter = (BiConsumer<T, Object>) setter;
+		}
+	}
+
+	private final String name;
+	private final Supplier<T> factory;
+	private final List<Column<T>> columns = new ArrayList<>();
+
+
+	private ColumnarSchema(String name, Supplier<T> factory) {
+		this.name = name;
+		this.factory = factory;
+	}
+
+
+	/**
+	 * @return the name of the schema, stored in the snapshots
+	 */
+	public String getName() {
+		return name;
+	}
+
+
+	/**
+	 * @return the names of the columns, in the order of the file
+	 */
+	public List<String> getColumnNames() {
+		List<String> names = new ArrayList<>(columns.size());
+		for (Column<T> column : columns) {
+			names.add(column.name);
+		}
+		return names;
+	}
+
+
+	List<Column<T>> getColumns() {
+		return Collections.unmodifiableList(columns);
+	}
+
+
+	Column<T> getColumn(String name) {
+		for (Column<T> column : columns) {
+			if (column.name.equals(name)) {
+				return column;
+			}
+		}
+		return null;
+	}
+
+
+	T newRecord() {
+		return factory.get();
+	}
+
+
+	private ColumnarSchema<T> dictionary(String name, Function<T, String> getter, BiConsumer<T, String> setter) {
+		columns.add(new Column<>(name, Kind.DICTIONARY, getter, setter));
+		return this;
+	}
+
+
+	private ColumnarSchema<T> uid(String name, Function<T, String> getter, BiConsumer<T, String> setter) {
+		columns.add(new Column<>(name, Kind.UID, getter, setter));
+		return this;
+	}
+
+
+	private ColumnarSchema<T> integer(String name, Function<T, Integer> getter, BiConsumer<T, Integer> setter) {
+		columns.add(new Column<>(name, Kind.INTEGER, getter, setter));
+		return this;
+	}
+}
@@ -0,0 +1,295 @@
+package edu.emory.bmi.tcia.client.columnar;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import edu.emory.bmi.tcia.client.columnar.ColumnarSchema.Column;
+import edu.emory.bmi.tcia.client.uid.Uid;
+
+
+/**
+ * Writes the records of a streaming result, such as the series of getSeries, to a columnar snapshot. The records are
+ * encoded as they are added, so that only their columns are held in memory: a code per row for the dictionary-encoded
+ * attributes, the packed bytes of the UIDs, and the integers. The snapshot is written when the writer is closed, to a
+ * temporary file moved over the file atomically.
+ * <p>
+ * The file is made of a header, with the magic number, the version, the schema name, the number of rows and the
+ * number of columns, followed by the columns. A dictionary column is its distinct values and a code per row, of 1, 2
+ * or 4 bytes as the size of the dictionary requires, 0 being null. A UID column is the offsets of the rows and the
+ * values packed by Uid.encode, an empty value being null. An integer column is an int per row, Integer.MIN_VALUE
+ * being null.
+ * @param <T> the type of the records
+ */
+public class ColumnarWriter<T> implements Closeable {
+
+	static final int MAGIC = 0x54434943;
+	static final int VERSION = 1;
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final Path path;
+	private final ColumnarSchema<T> schema;
+	private final List<Encoder<T>> encoders = new ArrayList<>();
+	private int rowCount;
+	private boolean closed;
+
+
+	/**
+	 * Create a columnar writer.
+	 * @param file the file of the snapshot, replaced when the writer is closed
+	 * @param schema the schema of the records
+	 */
+	public ColumnarWriter(String file, ColumnarSchema<T> schema) {
+		this.path = Paths.get(file);
+		this.schema = schema;
+		for (Column<T> column : schema.getColumns()) {
+			switch (column.kind) {
+			case DICTIONARY:
+				encoders.add(new DictionaryEncoder<>(column));
+				break;
+			case UID:
+				encoders.add(new UidEncoder<>(column));
+				break;
+			default:
+				encoders.add(new IntegerEncoder<>(column));
+			}
+		}
+	}
+
+
+	/**
+	 * Add a record.
+	 * @param record the record
+	 * @return this writer
+	 */
+	public ColumnarWriter<T> add(T record) {
+		if (closed) {
+			throw new IllegalStateException("The writer is closed: " + path);
+		}
+		for (Encoder<T> encoder : encoders) {
+			encoder.add(record);
+		}
+		rowCount++;
+		return this;
+	}
+
+
+	/**
+	 * Add the records of a stream, as they come. The stream is read to its end, and closed.
+	 * @param records the records
+	 * @return this writer
+	 */
+	public ColumnarWriter<T> addAll(Stream<T> records) {
+		try (Stream<T> s = records) {
+			Iterator<T> it = s.iterator();
+			while (it.hasNext()) {
+				add(it.next());
+			}
+		}
+		return this;
+	}
+
+
+	/**
+	 * @return the number of records added
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+
+	/**
+	 * Write the snapshot, replacing the file atomically.
+	 * @throws IOException if the snapshot could not be written, in which case the previous file is kept
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		Path directory = path.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temp = Files.createTempFile(directory, path.getFileName().toString(), TEMP_SUFFIX);
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel),
+						1 << 16));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(schema.getName());
+				out.writeInt(rowCount);
+				out.writeInt(encoders.size());
+				for (Encoder<T> encoder : encoders) {
+					out.writeUTF(encoder.column.name);
+					out.writeByte(encoder.column.kind.ordinal());
+					encoder.write(out);
+				}
+				out.flush();
+				channel.force(true);
+			}
+			try {
+				Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+
+	/*
+	 * The values of a column, as encoded so far.
+	 */
+	private abstract static class Encoder<T> {
+		final Column<T> column;
+		int[] values = new int[1024];
+		int size;
+
+		Encoder(Column<T> column) {
+			this.column = column;
+		}
+
+		abstract void add(T record);
+
+		abstract void write(DataOutputStream out) throws IOException;
+
+		void addValue(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+	}
+
+
+	/*
+	 * The distinct values of a column, in the order they were first seen, and the code of each row.
+	 */
+	private static class DictionaryEncoder<T> extends Encoder<T> {
+		private final Map<String, Integer> codes = new HashMap<>();
+		private final List<String> dictionary = new ArrayList<>();
+
+		DictionaryEncoder(Column<T> column) {
+			super(column);
+		}
+
+		@Override
+		void add(T record) {
+			String value = (String) column.getter.apply(record);
+			if (value == null) {
+				addValue(0);
+				return;
+			}
+			Integer code = codes.get(value);
+			if (code == null) {
+				dictionary.add(value);
+				code = dictionary.size();
+				codes.put(value, code);
+			}
+			addValue(code);
+		}
+
+		@Override
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(dictionary.size());
+			for (String value : dictionary) {
+				byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(utf8.length);
+				out.write(utf8);
+			}
+			int width = getWidth(dictionary.size());
+			out.writeByte(width);
+			for (int i = 0; i < size; i++) {
+				if (width == 1) {
+					out.writeByte(values[i]);
+				} else if (width == 2) {
+					out.writeShort(values[i]);
+				} else {
+					out.writeInt(values[i]);
+				}
+			}
+		}
+
+		private static int getWidth(int dictionarySize) {
+			if (dictionarySize < 0xFF) {
+				return 1;
+			}
+			return dictionarySize < 0xFFFF ? 2 : 4;
+		}
+	}
+
+
+	/*
+	 * The packed values of a column, and the end offset of each row.
+	 */
+	private static class UidEncoder<T> extends Encoder<T> {
+		private final ByteArrayOutputStream heap = new ByteArrayOutputStream(1 << 16);
+
+		UidEncoder(Column<T> column) {
+			super(column);
+		}
+
+		@Override
+		void add(T record) {
+			String value = (String) column.getter.apply(record);
+			if (value != null) {
+				byte[] encoded = Uid.encode(value);
+				heap.write(encoded, 0, encoded.length);
+			}
+			addValue(heap.size());
+		}
+
+		@Override
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(heap.size());
+			for (int i = 0; i < size; i++) {
+				out.writeInt(values[i]);
+			}
+			heap.writeTo(out);
+		}
+	}
+
+
+	/*
+	 * The integers of a column.
+	 */
+	private static class IntegerEncoder<T> extends Encoder<T> {
+		IntegerEncoder(Column<T> column) {
+			super(column);
+		}
+
+		@Override
+		void add(T record) {
+			Integer value = (Integer) column.getter.apply(record);
+			addValue(value == null ? Integer.MIN_VALUE : value);
+		}
+
+		@Override
+		void write(DataOutputStream out) throws IOException {
+			for (int i = 0; i < size; i++) {
+				out.writeInt(values[i]);
+			}
+		}
+	}
+}
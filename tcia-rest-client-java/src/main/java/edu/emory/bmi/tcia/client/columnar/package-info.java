@@ -0,0 +1,5 @@
+/**
+ * The compact columnar snapshots of the metadata: the patients, studies or series of a crawl, written from the
+ * streaming results to a binary file of dictionary-encoded and packed columns, and read back memory-mapped.
+ */
+package edu.emory.bmi.tcia.client.columnar;
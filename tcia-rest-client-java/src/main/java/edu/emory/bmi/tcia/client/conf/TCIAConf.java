@@ -1,5 +1,7 @@
 package edu.emory.bmi.tcia.client.conf;
 
+import java.util.Map;
+
 /**
  * Configurations read from the conf file.
  */
@@ -10,6 +12,33 @@ public class TCIAConf {
 	private String password;
 	private String baseurl;
 	private String resource;
+	private Integer maxtotalconnections;
+	private Integer maxconnectionsperroute;
+	private Long keepalive;
+	private Long idletimeout;
+	private Integer connecttimeout;
+	private Integer sockettimeout;
+	private String transport;
+	private Boolean compressionenabled;
+	private Boolean cacheenabled;
+	private String cachedirectory;
+	private Integer cachememoryentries;
+	private Long cachemaxbytes;
+	private Long cachettl;
+	private Map<String, Long> cachettls;
+	private String imagecachedirectory;
+	private Long imagecachemaxbytes;
+	private Boolean catalogenabled;
+	private String catalogdirectory;
+	private Long catalogmaxage;
+	private Boolean adaptiveconcurrency;
+	private Integer maxconcurrency;
+	private Integer retrymaxattempts;
+	private Long retrybasedelay;
+	private Long retrymaxdelay;
+	private Integer circuitbreakerthreshold;
+	private Long circuitbreakeropentime;
+	private Boolean metricsenabled;
 
 	public String getBaseurl() {
 		return baseurl;
@@ -58,4 +87,219 @@ public class TCIAConf {
 	public void setPassword(String password) {
 		this.password = password;
 	}
+
+	public Integer getMaxtotalconnections() {
+		return maxtotalconnections;
+	}
+
+	public void setMaxtotalconnections(Integer maxtotalconnections) {
+		this.maxtotalconnections = maxtotalconnections;
+	}
+
+	public Integer getMaxconnectionsperroute() {
+		return maxconnectionsperroute;
+	}
+
+	public void setMaxconnectionsperroute(Integer maxconnectionsperroute) {
+		this.maxconnectionsperroute = maxconnectionsperroute;
+	}
+
+	public Long getKeepalive() {
+		return keepalive;
+	}
+
+	public void setKeepalive(Long keepalive) {
+		this.keepalive = keepalive;
+	}
+
+	public Long getIdletimeout() {
+		return idletimeout;
+	}
+
+	public void setIdletimeout(Long idletimeout) {
+		this.idletimeout = idletimeout;
+	}
+
+	public Integer getConnecttimeout() {
+		return connecttimeout;
+	}
+
+	public void setConnecttimeout(Integer connecttimeout) {
+		this.connecttimeout = connecttimeout;
+	}
+
+	public Integer getSockettimeout() {
+		return sockettimeout;
+	}
+
+	public void setSockettimeout(Integer sockettimeout) {
+		this.sockettimeout = sockettimeout;
+	}
+
+	public String getTransport() {
+		return transport;
+	}
+
+	public void setTransport(String transport) {
+		this.transport = transport;
+	}
+
+	public Boolean getCompressionenabled() {
+		return compressionenabled;
+	}
+
+	public void setCompressionenabled(Boolean compressionenabled) {
+		this.compressionenabled = compressionenabled;
+	}
+
+	public Boolean getCacheenabled() {
+		return cacheenabled;
+	}
+
+	public void setCacheenabled(Boolean cacheenabled) {
+		this.cacheenabled = cacheenabled;
+	}
+
+	public String getCachedirectory() {
+		return cachedirectory;
+	}
+
+	public void setCachedirectory(String cachedirectory) {
+		this.cachedirectory = cachedirectory;
+	}
+
+	public Integer getCachememoryentries() {
+		return cachememoryentries;
+	}
+
+	public void setCachememoryentries(Integer cachememoryentries) {
+		this.cachememoryentries = cachememoryentries;
+	}
+
+	public Long getCachemaxbytes() {
+		return cachemaxbytes;
+	}
+
+	public void setCachemaxbytes(Long cachemaxbytes) {
+		this.cachemaxbytes = cachemaxbytes;
+	}
+
+	public Long getCachettl() {
+		return cachettl;
+	}
+
+	public void setCachettl(Long cachettl) {
+		this.cachettl = cachettl;
+	}
+
+	public Map<String, Long> getCachettls() {
+		return cachettls;
+	}
+
+	public void setCachettls(Map<String, Long> cachettls) {
+		this.cachettls = cachettls;
+	}
+
+	public String getImagecachedirectory() {
+		return imagecachedirectory;
+	}
+
+	public void setImagecachedirectory(String imagecachedirectory) {
+		this.imagecachedirectory = imagecachedirectory;
+	}
+
+	public Long getImagecachemaxbytes() {
+		return imagecachemaxbytes;
+	}
+
+	public void setImagecachemaxbytes(Long imagecachemaxbytes) {
+		this.imagecachemaxbytes = imagecachemaxbytes;
+	}
+
+	public Boolean getCatalogenabled() {
+		return catalogenabled;
+	}
+
+	public void setCatalogenabled(Boolean catalogenabled) {
+		this.catalogenabled = catalogenabled;
+	}
+
+	public String getCatalogdirectory() {
+		return catalogdirectory;
+	}
+
+	public void setCatalogdirectory(String catalogdirectory) {
+		this.catalogdirectory = catalogdirectory;
+	}
+
+	public Long getCatalogmaxage() {
+		return catalogmaxage;
+	}
+
+	public void setCatalogmaxage(Long catalogmaxage) {
+		this.catalogmaxage = catalogmaxage;
+	}
+
+	public Boolean getAdaptiveconcurrency() {
+		return adaptiveconcurrency;
+	}
+
+	public void setAdaptiveconcurrency(Boolean adaptiveconcurrency) {
+		this.adaptiveconcurrency = adaptiveconcurrency;
+	}
+
+	public Integer getMaxconcurrency() {
+		return maxconcurrency;
+	}
+
+	public void setMaxconcurrency(Integer maxconcurrency) {
+		this.maxconcurrency = maxconcurrency;
+	}
+	public Integer getRetrymaxattempts() {
+		return retrymaxattempts;
+	}
+
+	public void setRetrymaxattempts(Integer retrymaxattempts) {
+		this.retrymaxattempts = retrymaxattempts;
+	}
+
+	public Long getRetrybasedelay() {
+		return retrybasedelay;
+	}
+
+	public void setRetrybasedelay(Long retrybasedelay) {
+		this.retrybasedelay = retrybasedelay;
+	}
+
+	public Long getRetrymaxdelay() {
+		return retrymaxdelay;
+	}
+
+	public void setRetrymaxdelay(Long retrymaxdelay) {
+		this.retrymaxdelay = retrymaxdelay;
+	}
+
+	public Integer getCircuitbreakerthreshold() {
+		return circuitbreakerthreshold;
+	}
+
+	public void setCircuitbreakerthreshold(Integer circuitbreakerthreshold) {
+		this.circuitbreakerthreshold = circuitbreakerthreshold;
+	}
+
+	public Long getCircuitbreakeropentime() {
+		return circuitbreakeropentime;
+	}
+
+	public void setCircuitbreakeropentime(Long circuitbreakeropentime) {
+		this.circuitbreakeropentime = circuitbreakeropentime;
+	}
+
+	public Boolean getMetricsenabled() {
+		return metricsenabled;
+	}
+
+	public void setMetricsenabled(Boolean metricsenabled) {
+		this.metricsenabled = metricsenabled;
+	}
 }
@@ -13,4 +13,41 @@ public class TCIAConstants {
 
 	// The character that separates the auth mechanism against the value, as in "ldap base64EncodedUNandPW"
 	public static final String AUTH_VAL_SEPARATOR = " ";
+
+	// The maximum number of pooled connections across all routes, unless overridden by maxtotalconnections.
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 64;
+
+	// The maximum number of pooled connections to the TCIA host, unless overridden by maxconnectionsperroute.
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 32;
+
+	// How long (ms) an idle connection is kept alive when the server does not send a Keep-Alive timeout.
+	public static final long DEFAULT_KEEP_ALIVE_MS = 30000;
+
+	// Pooled connections idle for longer than this (ms) are evicted by the background monitor.
+	public static final long DEFAULT_IDLE_TIMEOUT_MS = 60000;
+
+	// Connect timeout (ms) for new connections. 0 waits indefinitely.
+	public static final int DEFAULT_CONNECT_TIMEOUT_MS = 30000;
+
+	// Socket read timeout (ms). 0 waits indefinitely, as large getImage responses may stall for a while.
+	public static final int DEFAULT_SOCKET_TIMEOUT_MS = 0;
+
+	// The transport of the requests: apache, the pooled HTTP/1.1 client, or http2, multiplexed on a JDK 11+ runtime.
+	public static final String DEFAULT_TRANSPORT = "apache";
+
+	// How long (ms) the cached metadata responses remain valid, unless overridden by cachettl.
+	public static final long DEFAULT_CACHE_TTL_MS = 60 * 60 * 1000;
+
+	// The maximum number of responses in the in-memory cache tier, unless overridden by cachememoryentries.
+	public static final int DEFAULT_CACHE_MEMORY_ENTRIES = 1024;
+
+	// The quota (bytes) of the disk tier of the response cache, unless overridden by cachemaxbytes.
+	public static final long DEFAULT_CACHE_MAX_BYTES = 1024L * 1024 * 1024;
+
+	// The quota (bytes) of the image cache, unless overridden by imagecachemaxbytes.
+	public static final long DEFAULT_IMAGE_CACHE_MAX_BYTES = 10L * 1024 * 1024 * 1024;
+
+	// How old (ms) a response held by the local catalog may be and still answer queries, unless overridden by
+	// catalogmaxage.
+	public static final long DEFAULT_CATALOG_MAX_AGE_MS = 24 * 60 * 60 * 1000;
 }
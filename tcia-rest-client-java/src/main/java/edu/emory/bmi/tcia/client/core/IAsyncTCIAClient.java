@@ -0,0 +1,30 @@
+package edu.emory.bmi.tcia.client.core;
+
+import java.util.concurrent.CompletableFuture;
+
+import edu.emory.bmi.tcia.client.util.ImageResult;
+
+/**
+ * The Interface consisting of the method definitions for the asynchronous TCIA client.
+ * The futures complete exceptionally with a TCIAClientException when the request fails.
+ */
+public interface IAsyncTCIAClient {
+	CompletableFuture<String> getModalityValues(String collection, String bodyPartExamined, OutputFormat format);
+	CompletableFuture<String> getManufacturerValues(String collection, String bodyPartExamined, String modality, OutputFormat format);
+	CompletableFuture<String> getCollectionValues(OutputFormat format);
+	CompletableFuture<String> getBodyPartValues(String collection, String modality, OutputFormat format);
+	CompletableFuture<String> getPatientStudy(String collection, String patientID, String studyInstanceUID, OutputFormat format);
+	CompletableFuture<String> getSeries(String collection, String studyInstanceUID, String modality, String patientID,
+	                                    String seriesInstanceUID, String bodyPartExamined, String manufacturer,
+	                                    String manufacturerModelName, OutputFormat format);
+	CompletableFuture<String> getPatient(String collection, OutputFormat format);
+	CompletableFuture<ImageResult> getImage(String seriesInstanceUID);
+	CompletableFuture<ImageResult> getSingleImage(String seriesInstanceUID, String sopInstanceUID);
+	CompletableFuture<String> getSeriesSize(String seriesInstanceUID, OutputFormat format);
+
+	CompletableFuture<String> NewStudiesInPatientCollection(String date, String collection, String patientID, OutputFormat format);
+	CompletableFuture<String> getSOPInstanceUIDs(String seriesInstanceUID, OutputFormat format);
+	CompletableFuture<String> PatientsByModality(String collection, String modality, OutputFormat format);
+	CompletableFuture<String> NewPatientsInCollection(String date, String collection, OutputFormat format);
+	CompletableFuture<String> getSharedList(String name, OutputFormat format);
+}
@@ -1,7 +1,19 @@
 package edu.emory.bmi.tcia.client.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
 import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import edu.emory.bmi.tcia.client.model.Patient;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.model.Study;
 import edu.emory.bmi.tcia.client.util.ImageResult;
+import edu.emory.bmi.tcia.client.util.JsonResultIterator;
+import edu.emory.bmi.tcia.client.util.SaveOptions;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
 
 /**
  * The Interface consisting of the method definitions for the TCIA client
@@ -18,6 +30,52 @@ public interface ITCIAClient {
 	String getPatient(String collection, OutputFormat format) throws TCIAClientException;
 	ImageResult getImage(String seriesInstanceUID) throws TCIAClientException;
 	ImageResult getSingleImage(String seriesInstanceUID, String sopInstanceUID) throws TCIAClientException;
+
+	/**
+	 * Download a zip of matching images into a file. The default method saves the result of getImage, without
+	 * resuming an interrupted download; TCIAClientImpl resumes it.
+	 *
+	 * @param seriesInstanceUID the UID of the series instance : mandatory
+	 * @param path              the path of the zip file : mandatory
+	 * @param options           the options of saving the zip : mandatory
+	 * @return the image result, whose raw data has been saved to the file
+	 */
+	default ImageResult downloadImage(String seriesInstanceUID, Path path, SaveOptions options)
+			throws TCIAClientException {
+		ImageResult imageResult = getImage(seriesInstanceUID);
+		try {
+			imageResult.setContentLength(saveTo(imageResult, path, options));
+		} catch (IOException e) {
+			throw new TCIAClientException(e, getResourceUrl());
+		}
+		imageResult.setRawData(null);
+		return imageResult;
+	}
+
+	/**
+	 * Save an image result of this client into a file. The default method saves it as TCIAClientUtil.saveTo does;
+	 * TCIAClientImpl records the disk writes into the metrics of its configured client.
+	 *
+	 * @param imageResult the image result, whose raw data is consumed and closed
+	 * @param path        the path of the file
+	 * @param options     the options of saving the file
+	 * @return the number of bytes saved
+	 * @throws IOException an IO Exception while saving.
+	 */
+	default long saveTo(ImageResult imageResult, Path path, SaveOptions options) throws IOException {
+		return TCIAClientUtil.saveTo(imageResult, path, options);
+	}
+
+	/**
+	 * Get the resource url of the server of this client, which the exceptions of the client report.
+	 * The default method returns the resource url of TCIAClientUtil.
+	 *
+	 * @return the url of the resource
+	 */
+	default String getResourceUrl() {
+		return TCIAClientUtil.getResourceUrl();
+	}
+
 	String getSeriesSize(String seriesInstanceUID, OutputFormat format) throws TCIAClientException;
 
 	String NewStudiesInPatientCollection(String date, String collection, String patientID, OutputFormat format) throws TCIAClientException;
@@ -26,5 +84,28 @@ public interface ITCIAClient {
 	String NewPatientsInCollection(String date,String collection, OutputFormat format) throws TCIAClientException;
 	String getSharedList(String name, OutputFormat format) throws TCIAClientException;
 
+	/*
+	 * Typed results, lazily decoded from the response. Close the streams when done.
+	 * The default methods decode the JSON string of the corresponding method, so that the implementations written
+	 * before the typed results keep working; TCIAClientImpl decodes the response stream instead.
+	 */
+	default Stream<Series> streamSeries(String collection, String studyInstanceUID, String modality, String patientID,
+	                                    String seriesInstanceUID, String bodyPartExamined, String manufacturer,
+	                                    String manufacturerModelName) throws TCIAClientException {
+		String json = getSeries(collection, studyInstanceUID, modality, patientID, seriesInstanceUID, bodyPartExamined,
+				manufacturer, manufacturerModelName, OutputFormat.json);
+		return JsonResultIterator.stream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), Series.class);
+	}
+
+	default Stream<Patient> streamPatient(String collection) throws TCIAClientException {
+		String json = getPatient(collection, OutputFormat.json);
+		return JsonResultIterator.stream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), Patient.class);
+	}
+
+	default Stream<Study> streamPatientStudy(String collection, String patientID, String studyInstanceUID)
+			throws TCIAClientException {
+		String json = getPatientStudy(collection, patientID, studyInstanceUID, OutputFormat.json);
+		return JsonResultIterator.stream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), Study.class);
+	}
 
 }
@@ -0,0 +1,23 @@
+package edu.emory.bmi.tcia.client.exceptions;
+
+/**
+ * The TCIA Client Exception of a request that was not sent, as the circuit breaker of its endpoint is open
+ */
+public class CircuitBreakerOpenException extends TCIAClientException {
+
+	private static final long serialVersionUID = -6084229714518390127L;
+	private final long retryAfterMillis;
+
+
+	public CircuitBreakerOpenException(String message, String requestUrl, long retryAfterMillis) {
+		super(message, requestUrl);
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	/**
+	 * @return the time (ms) until the circuit breaker lets a trial request through
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+}
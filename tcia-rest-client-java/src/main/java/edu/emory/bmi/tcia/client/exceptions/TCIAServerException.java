@@ -0,0 +1,36 @@
+package edu.emory.bmi.tcia.client.exceptions;
+
+/**
+ * The TCIA Client Exception of an error response of the TCIA server, with its status code
+ */
+public class TCIAServerException extends TCIAClientException {
+
+	private static final long serialVersionUID = 4410977419335683920L;
+	private final int statusCode;
+	private final long retryAfterMillis;
+
+
+	public TCIAServerException(String message, String requestUrl, int statusCode, long retryAfterMillis) {
+		super(message, requestUrl);
+		this.statusCode = statusCode;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * @return the delay (ms) requested by the Retry-After header of the response, or -1 if absent
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+
+	/**
+	 * @return true if the server is overloaded or failing (429 or 5xx), rather than rejecting the request
+	 */
+	public boolean isOverloaded() {
+		return statusCode == 429 || statusCode >= 500;
+	}
+}
@@ -0,0 +1,239 @@
+package edu.emory.bmi.tcia.client.impl;
+
+import java.util.concurrent.CompletableFuture;
+
+import edu.emory.bmi.tcia.client.core.IAsyncTCIAClient;
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.request.RequestTemplate;
+import edu.emory.bmi.tcia.client.util.AsyncTCIAClientUtil;
+import edu.emory.bmi.tcia.client.util.ImageResult;
+
+
+/**
+ * The asynchronous TCIA Client implementation. The methods return immediately, and the requests are executed
+ * by the non-blocking HTTP client of AsyncTCIAClientUtil, so that a few threads can keep many requests in flight.
+ */
+public class AsyncTCIAClientImpl implements IAsyncTCIAClient {
+
+	/**
+	 * The default constructor of the asynchronous TCIA Client. The shared asynchronous client is initialized by
+	 * the first request, unless AsyncTCIAClientUtil.init has been called.
+	 */
+	public AsyncTCIAClientImpl() {
+	}
+
+
+	/**
+	 * Get the modality values
+	 *
+	 * @param collection       the collection name : optional
+	 * @param bodyPartExamined the body part examined : optional
+	 * @param format           the format
+	 * @return the future of the modality values
+	 */
+	public CompletableFuture<String> getModalityValues(String collection, String bodyPartExamined, OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.GET_MODALITY_VALUES.query()
+				.collection(collection).bodyPartExamined(bodyPartExamined));
+	}
+
+
+	/**
+	 * Get the manufacturer Values
+	 *
+	 * @param collection       the name of the collection : optional
+	 * @param bodyPartExamined the examined body part : optional
+	 * @param modality         the modality : optional
+	 * @param format           the format
+	 * @return the future of the manufacturer values
+	 */
+	public CompletableFuture<String> getManufacturerValues(String collection, String bodyPartExamined, String modality,
+	                                                       OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.GET_MANUFACTURER_VALUES.query()
+				.collection(collection).bodyPartExamined(bodyPartExamined).modality(modality));
+	}
+
+
+	/**
+	 * Get the values of the collections
+	 *
+	 * @param format the format to return the output
+	 * @return the future of the collection values
+	 */
+	public CompletableFuture<String> getCollectionValues(OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.GET_COLLECTION_VALUES.query());
+	}
+
+
+	/**
+	 * Get the body part values
+	 *
+	 * @param collection the name of the collection : optional
+	 * @param modality   the modality : optional
+	 * @param format     the output format
+	 * @return the future of the body part values
+	 */
+	public CompletableFuture<String> getBodyPartValues(String collection, String modality, OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.GET_BODY_PART_VALUES.query()
+				.collection(collection).modality(modality));
+	}
+
+
+	/**
+	 * Get the relevant patient studies
+	 *
+	 * @param collection       the collection name : optional
+	 * @param patientID        the ID of the patient : optional
+	 * @param studyInstanceUID the UID of the study instance : optional
+	 * @param format           the output format
+	 * @return the future of the patient study
+	 */
+	public CompletableFuture<String> getPatientStudy(String collection, String patientID, String studyInstanceUID,
+	                                                 OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.GET_PATIENT_STUDY.query()
+				.collection(collection).patientID(patientID).studyInstanceUID(studyInstanceUID));
+	}
+
+
+	/**
+	 * Get the series
+	 *
+	 * @param collection            the collection name : optional
+	 * @param studyInstanceUID      the UID of the study instance : optional
+	 * @param modality              the modality : optional
+	 * @param patientID             ID of the patient : optional
+	 * @param seriesInstanceUID     UID of the series instance : optional
+	 * @param bodyPartExamined      the examined body part : optional
+	 * @param manufacturer          name of the manufacturer : optional
+	 * @param manufacturerModelName the model of the manufacturer : optional
+	 * @param format                the output format
+	 * @return the future of the series
+	 */
+	public CompletableFuture<String> getSeries(String collection, String studyInstanceUID, String modality,
+	                                           String patientID, String seriesInstanceUID, String bodyPartExamined,
+	                                           String manufacturer, String manufacturerModelName, OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.GET_SERIES.query()
+				.collection(collection).studyInstanceUID(studyInstanceUID).modality(modality).patientID(patientID)
+				.seriesInstanceUID(seriesInstanceUID).bodyPartExamined(bodyPartExamined).manufacturer(manufacturer)
+				.manufacturerModelName(manufacturerModelName));
+	}
+
+
+	/**
+	 * Get the patients
+	 *
+	 * @param collection the collection name : optional
+	 * @param format     the output format
+	 * @return the future of the patients
+	 */
+	public CompletableFuture<String> getPatient(String collection, OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.GET_PATIENT.query().collection(collection));
+	}
+
+
+	/**
+	 * Get a zip of matching images. The future completes when the response headers arrive,
+	 * and the zip streams through the raw data of the image result.
+	 *
+	 * @param seriesInstanceUID the UID of the series instance. : mandatory
+	 * @return the future of the zip of images
+	 */
+	public CompletableFuture<ImageResult> getImage(String seriesInstanceUID) {
+		return AsyncTCIAClientUtil.authenticateAndGetImage(RequestTemplate.GET_IMAGE.query()
+				.seriesInstanceUID(seriesInstanceUID));
+	}
+
+
+	/**
+	 * Get a single image
+	 *
+	 * @param seriesInstanceUID the UID of the series instance. : mandatory
+	 * @param sopInstanceUID    the UID of the Service-Object Pair (SOP). : mandatory
+	 * @return the future of the single image
+	 */
+	public CompletableFuture<ImageResult> getSingleImage(String seriesInstanceUID, String sopInstanceUID) {
+		return AsyncTCIAClientUtil.authenticateAndGetImage(RequestTemplate.GET_SINGLE_IMAGE.query()
+				.seriesInstanceUID(seriesInstanceUID).sopInstanceUID(sopInstanceUID));
+	}
+
+
+	/**
+	 * Get the size of the given series
+	 *
+	 * @param seriesInstanceUID UID of the series instance : mandatory
+	 * @param format            the output format
+	 * @return the future of the size of the series
+	 */
+	public CompletableFuture<String> getSeriesSize(String seriesInstanceUID, OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.GET_SERIES_SIZE.query()
+				.seriesInstanceUID(seriesInstanceUID));
+	}
+
+
+	/**
+	 * Gets the new studies in a patient collection
+	 *
+	 * @param date       the date of the studies  : mandatory
+	 * @param collection the collection name : mandatory
+	 * @param patientID  the ID of the patient : optional
+	 * @param format     the output format
+	 * @return the future of the new studies in the patient collection
+	 */
+	public CompletableFuture<String> NewStudiesInPatientCollection(String date, String collection, String patientID,
+	                                                               OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.NEW_STUDIES_IN_PATIENT_COLLECTION.query()
+				.date(date).collection(collection).patientID(patientID));
+	}
+
+
+	/**
+	 * Gets the SOP (Service Object Pair) Instance UIDs
+	 *
+	 * @param seriesInstanceUID the service instance UIDs : mandatory
+	 * @param format            the output format
+	 * @return the future of the SOP Instance UIDs
+	 */
+	public CompletableFuture<String> getSOPInstanceUIDs(String seriesInstanceUID, OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.GET_SOP_INSTANCE_UIDS.query()
+				.seriesInstanceUID(seriesInstanceUID));
+	}
+
+
+	/**
+	 * Get the patients by modality
+	 *
+	 * @param collection the name of the collection : mandatory
+	 * @param modality   the modality : mandatory
+	 * @param format     the output format
+	 * @return the future of the patients by modality
+	 */
+	public CompletableFuture<String> PatientsByModality(String collection, String modality, OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.PATIENTS_BY_MODALITY.query()
+				.collection(collection).modality(modality));
+	}
+
+
+	/**
+	 * Get the new patients in collection
+	 *
+	 * @param date       the given date : mandatory
+	 * @param collection the collection name : mandatory
+	 * @param format     the output format
+	 * @return the future of the new patients in collection
+	 */
+	public CompletableFuture<String> NewPatientsInCollection(String date, String collection, OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.NEW_PATIENTS_IN_COLLECTION.query()
+				.date(date).collection(collection));
+	}
+
+
+	/**
+	 * Get the contents of a shared list
+	 *
+	 * @param name   the name of the shared list : mandatory
+	 * @param format the output format
+	 * @return the future of the contents of the shared list
+	 */
+	public CompletableFuture<String> getSharedList(String name, OutputFormat format) {
+		return AsyncTCIAClientUtil.getStringFromQuery(format, RequestTemplate.GET_SHARED_LIST.query().name(name));
+	}
+}
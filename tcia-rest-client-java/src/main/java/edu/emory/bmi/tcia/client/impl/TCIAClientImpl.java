@@ -1,43 +1,27 @@
 package edu.emory.bmi.tcia.client.impl;
 
-import java.net.URI;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.Stream;
 
+import edu.emory.bmi.tcia.client.cache.ImageCache;
+import edu.emory.bmi.tcia.client.catalog.LocalCatalog;
 import edu.emory.bmi.tcia.client.core.ITCIAClient;
 import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.model.Patient;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.model.Study;
+import edu.emory.bmi.tcia.client.request.Query;
+import edu.emory.bmi.tcia.client.request.RequestTemplate;
 import edu.emory.bmi.tcia.client.util.ImageResult;
-import org.apache.http.client.utils.URIBuilder;
+import edu.emory.bmi.tcia.client.util.SaveOptions;
+import edu.emory.bmi.tcia.client.util.TCIAClient;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
 import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
 import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
 
-/*
- * Static imports of the service endpoint definitions
- */
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.NewPatientsInCollection;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.NewStudiesInPatientCollection;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.PatientsByModality;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.getBodyPartValues;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.getCollectionValues;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.getImage;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.getManufacturerValues;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.getModalityValues;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.getPatient;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.getPatientStudy;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.getSOPInstanceUIDs;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.getSeries;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.getSeriesSize;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.getSharedList;
-import static edu.emory.bmi.tcia.client.definitions.ServiceEndpoints.getSingleImage;
-
-/*
- * Static imports of the utility methods.
- */
-import static edu.emory.bmi.tcia.client.util.TCIAClientUtil.authenticateAndGetImage;
-import static edu.emory.bmi.tcia.client.util.TCIAClientUtil.getStringFromURIBuilder;
-
 
 /**
  * The core class of the TCIA Client implementation
@@ -45,11 +29,65 @@ import static edu.emory.bmi.tcia.client.util.TCIAClientUtil.getStringFromURIBuil
 public class TCIAClientImpl implements ITCIAClient {
 	private static Logger logger = LogManager.getLogger(TCIAClientImpl.class.getName());
 
+	// The client of the queries, or null for the default client of TCIAClientUtil.
+	private final TCIAClient tcia;
+
 	/**
-	 * The default constructor of the TCIA Client
+	 * The default constructor of the TCIA Client, running the queries against the default client of TCIAClientUtil.
+	 * The configuration file is read on the first use of the default client only.
 	 */
 	public TCIAClientImpl() {
-		TCIAClientUtil.init();
+		TCIAClientUtil.getDefault();
+		this.tcia = null;
+	}
+
+
+	/**
+	 * Create a TCIA Client running the queries against a configured client. Creating it is cheap, and shares the
+	 * transport, the caches and the resilience of the configured client.
+	 *
+	 * @param tcia the configured client
+	 */
+	public TCIAClientImpl(TCIAClient tcia) {
+		if (tcia == null) {
+			throw new IllegalArgumentException("The client must not be null");
+		}
+		this.tcia = tcia;
+	}
+
+
+	/**
+	 * Get the configured client of the queries. The default client is looked up on each query, so that it follows
+	 * the static configuration of TCIAClientUtil.
+	 *
+	 * @return the configured client
+	 */
+	public TCIAClient getTCIAClient() {
+		return tcia != null ? tcia : TCIAClientUtil.getDefault();
+	}
+
+
+	/**
+	 * Save an image result into a file, recording the disk writes into the metrics of the configured client.
+	 *
+	 * @param imageResult the image result, whose raw data is consumed and closed
+	 * @param path        the path of the file
+	 * @param options     the options of saving the file
+	 * @return the number of bytes saved
+	 * @throws IOException an IO Exception while saving.
+	 */
+	@Override
+	public long saveTo(ImageResult imageResult, Path path, SaveOptions options) throws IOException {
+		return getTCIAClient().saveTo(imageResult, path, options);
+	}
+
+
+	/**
+	 * @return the resource url of the configured client
+	 */
+	@Override
+	public String getResourceUrl() {
+		return getTCIAClient().getResourceUrl();
 	}
 
 
@@ -63,23 +101,8 @@ public class TCIAClientImpl implements ITCIAClient {
 	 */
 	public String getModalityValues(String collection, String bodyPartExamined,
 	                                OutputFormat format) throws TCIAClientException {
-		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + getModalityValues);
-
-			if (collection != null)
-				uriBuilder.addParameter(DICOMAttributes.COLLECTION, collection);
-
-			if (bodyPartExamined != null)
-				uriBuilder.addParameter(DICOMAttributes.BODY_PART_EXAMINED, bodyPartExamined);
-
-			return getStringFromURIBuilder(format, uriBuilder);
-
-		} catch (TCIAClientException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
-		}
+		return getString(RequestTemplate.GET_MODALITY_VALUES.query()
+				.collection(collection).bodyPartExamined(bodyPartExamined), format);
 	}
 
 
@@ -95,26 +118,8 @@ public class TCIAClientImpl implements ITCIAClient {
 	public String getManufacturerValues(String collection,
 	                                    String bodyPartExamined, String modality, OutputFormat format)
 			throws TCIAClientException {
-		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + getManufacturerValues);
-
-			if (collection != null)
-				uriBuilder.addParameter(DICOMAttributes.COLLECTION, collection);
-
-			if (bodyPartExamined != null)
-				uriBuilder.addParameter(DICOMAttributes.BODY_PART_EXAMINED, bodyPartExamined);
-
-			if (modality != null)
-				uriBuilder.addParameter(DICOMAttributes.MODALITY, modality);
-
-			return getStringFromURIBuilder(format, uriBuilder);
-
-		} catch (TCIAClientException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
-		}
+		return getString(RequestTemplate.GET_MANUFACTURER_VALUES.query()
+				.collection(collection).bodyPartExamined(bodyPartExamined).modality(modality), format);
 	}
 
 	/**
@@ -125,16 +130,7 @@ public class TCIAClientImpl implements ITCIAClient {
 	 */
 	public String getCollectionValues(OutputFormat format)
 			throws TCIAClientException {
-		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + getCollectionValues);
-			return getStringFromURIBuilder(format, uriBuilder);
-
-		} catch (TCIAClientException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
-		}
+		return getString(RequestTemplate.GET_COLLECTION_VALUES.query(), format);
 	}
 
 	/**
@@ -146,7 +142,7 @@ public class TCIAClientImpl implements ITCIAClient {
 	 * @return the body part values
 	 */
 	public String getBodyPartValues(String collection, String modality, OutputFormat format) throws TCIAClientException {
-		return getModalityProperties(collection, modality, format, getBodyPartValues);
+		return getString(RequestTemplate.GET_BODY_PART_VALUES.query().collection(collection).modality(modality), format);
 	}
 
 	/**
@@ -161,26 +157,20 @@ public class TCIAClientImpl implements ITCIAClient {
 	public String getPatientStudy(String collection, String patientID,
 	                              String studyInstanceUID, OutputFormat format)
 			throws TCIAClientException {
-		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + getPatientStudy);
-
-			if (collection != null)
-				uriBuilder.addParameter(DICOMAttributes.COLLECTION, collection);
-
-			if (patientID != null)
-				uriBuilder.addParameter(DICOMAttributes.PATIENT_ID, patientID);
-
-			if (studyInstanceUID != null)
-				uriBuilder.addParameter(DICOMAttributes.STUDY_INSTANCE_UID, studyInstanceUID);
-
-			return getStringFromURIBuilder(format, uriBuilder);
+		return getString(getPatientStudyQuery(collection, patientID, studyInstanceUID), format);
+	}
 
-		} catch (TCIAClientException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
-		}
+	/**
+	 * Get the relevant patient studies as a stream of typed records, decoded lazily from the response
+	 *
+	 * @param collection       the collection name : optional
+	 * @param patientID        the ID of the patient : optional
+	 * @param studyInstanceUID the UID of the study instance : optional
+	 * @return the stream of patient studies, to be closed after use
+	 */
+	public Stream<Study> streamPatientStudy(String collection, String patientID, String studyInstanceUID)
+			throws TCIAClientException {
+		return getStream(Study.class, getPatientStudyQuery(collection, patientID, studyInstanceUID));
 	}
 
 	/**
@@ -201,47 +191,29 @@ public class TCIAClientImpl implements ITCIAClient {
 	                        String seriesInstanceUID, String bodyPartExamined, String manufacturer,
 	                        String manufacturerModelName, OutputFormat format)
 			throws TCIAClientException {
-		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + getSeries);
-
-			if (collection != null)
-				uriBuilder.addParameter(DICOMAttributes.COLLECTION, collection);
-
-			if (studyInstanceUID != null)
-				uriBuilder.addParameter(DICOMAttributes.STUDY_INSTANCE_UID, studyInstanceUID);
-
-			if (modality != null) {
-				uriBuilder.addParameter(DICOMAttributes.MODALITY, modality);
-			}
-
-			if (patientID != null) {
-				uriBuilder.addParameter(DICOMAttributes.PATIENT_ID, patientID);
-			}
-
-			if (seriesInstanceUID != null) {
-				uriBuilder.addParameter(DICOMAttributes.SERIES_INSTANCE_UID, seriesInstanceUID);
-			}
-
-			if (bodyPartExamined != null) {
-				uriBuilder.addParameter(DICOMAttributes.BODY_PART_EXAMINED, bodyPartExamined);
-			}
-
-			if (manufacturer != null) {
-				uriBuilder.addParameter(DICOMAttributes.MANUFACTURER, manufacturer);
-			}
-
-			if (manufacturerModelName != null) {
-				uriBuilder.addParameter(DICOMAttributes.MANUFACTURER_MODEL_NAME, manufacturerModelName);
-			}
-
-			return getStringFromURIBuilder(format, uriBuilder);
+		return getString(getSeriesQuery(collection, studyInstanceUID, modality, patientID, seriesInstanceUID,
+				bodyPartExamined, manufacturer, manufacturerModelName), format);
+	}
 
-		} catch (TCIAClientException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
-		}
+	/**
+	 * Get the series as a stream of typed records, decoded lazily from the response
+	 *
+	 * @param collection            the collection name : optional
+	 * @param studyInstanceUID      the UID of the study instance : optional
+	 * @param modality              the modality : optional
+	 * @param patientID             ID of the patient : optional
+	 * @param seriesInstanceUID     UID of the series instance : optional
+	 * @param bodyPartExamined      the examined body part : optional
+	 * @param manufacturer          name of the manufacturer : optional
+	 * @param manufacturerModelName the model of the manufacturer : optional
+	 * @return the stream of series, to be closed after use
+	 */
+	public Stream<Series> streamSeries(String collection, String studyInstanceUID, String modality, String patientID,
+	                                   String seriesInstanceUID, String bodyPartExamined, String manufacturer,
+	                                   String manufacturerModelName)
+			throws TCIAClientException {
+		return getStream(Series.class, getSeriesQuery(collection, studyInstanceUID, modality, patientID,
+				seriesInstanceUID, bodyPartExamined, manufacturer, manufacturerModelName));
 	}
 
 	/**
@@ -253,20 +225,17 @@ public class TCIAClientImpl implements ITCIAClient {
 	 */
 	public String getPatient(String collection, OutputFormat format)
 			throws TCIAClientException {
-		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + getPatient);
-
-			if (collection != null)
-				uriBuilder.addParameter(DICOMAttributes.COLLECTION, collection);
-
-			return getStringFromURIBuilder(format, uriBuilder);
+		return getString(RequestTemplate.GET_PATIENT.query().collection(collection), format);
+	}
 
-		} catch (TCIAClientException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
-		}
+	/**
+	 * Get the patients as a stream of typed records, decoded lazily from the response
+	 *
+	 * @param collection the collection name : optional
+	 * @return the stream of patients, to be closed after use
+	 */
+	public Stream<Patient> streamPatient(String collection) throws TCIAClientException {
+		return getStream(Patient.class, RequestTemplate.GET_PATIENT.query().collection(collection));
 	}
 
 
@@ -278,7 +247,7 @@ public class TCIAClientImpl implements ITCIAClient {
 	 * @return the size of the series
 	 */
 	public String getSeriesSize(String seriesInstanceUID, OutputFormat format) throws TCIAClientException {
-		return getSeriesProperties(seriesInstanceUID, format, getSeriesSize);
+		return getString(RequestTemplate.GET_SERIES_SIZE.query().seriesInstanceUID(seriesInstanceUID), format);
 	}
 
 
@@ -291,18 +260,43 @@ public class TCIAClientImpl implements ITCIAClient {
 	public ImageResult getImage(String seriesInstanceUID)
 			throws TCIAClientException {
 		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + getImage);
+			return getImageResult(ImageCache.seriesKey(seriesInstanceUID),
+					RequestTemplate.GET_IMAGE.query().seriesInstanceUID(seriesInstanceUID));
 
-			if (seriesInstanceUID != null)
-				uriBuilder.addParameter(DICOMAttributes.SERIES_INSTANCE_UID, seriesInstanceUID);
+		} catch (TCIAClientException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new TCIAClientException(e, getTCIAClient().getResourceUrl());
+		}
+	}
 
-			return authenticateAndGetImage(uriBuilder);
+	/**
+	 * Download a zip of matching images into a file, resuming an interrupted download of the same series
+	 *
+	 * @param seriesInstanceUID, the UID of the series instance. : mandatory
+	 * @param path,              the path of the zip file. : mandatory
+	 * @param options,           the options of saving the zip. : mandatory
+	 * @return the image result, whose raw data has been saved to the file
+	 */
+	public ImageResult downloadImage(String seriesInstanceUID, Path path, SaveOptions options)
+			throws TCIAClientException {
+		try {
+			Query query = RequestTemplate.GET_IMAGE.query().seriesInstanceUID(seriesInstanceUID);
+
+			TCIAClient client = getTCIAClient();
+			if (client.getImageCache() != null) {
+				// A cached series is copied from the cache, which never leaves a partial file behind.
+				ImageResult imageResult = getImageResult(ImageCache.seriesKey(seriesInstanceUID), query);
+				imageResult.setContentLength(client.saveTo(imageResult, path, options));
+				imageResult.setRawData(null);
+				return imageResult;
+			}
+			return client.downloadImage(query, path, options);
 
 		} catch (TCIAClientException e) {
 			throw e;
 		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
+			throw new TCIAClientException(e, getTCIAClient().getResourceUrl());
 		}
 	}
 
@@ -316,21 +310,14 @@ public class TCIAClientImpl implements ITCIAClient {
 	public ImageResult getSingleImage(String seriesInstanceUID, String sopInstanceUID)
 			throws TCIAClientException {
 		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + getSingleImage);
-
-			if (seriesInstanceUID != null)
-				uriBuilder.addParameter(DICOMAttributes.SERIES_INSTANCE_UID, seriesInstanceUID);
-
-			if (sopInstanceUID != null)
-				uriBuilder.addParameter(DICOMAttributes.SOP_INSTANCE_UID, sopInstanceUID);
-
-			return authenticateAndGetImage(uriBuilder);
+			return getImageResult(ImageCache.instanceKey(seriesInstanceUID, sopInstanceUID),
+					RequestTemplate.GET_SINGLE_IMAGE.query().seriesInstanceUID(seriesInstanceUID)
+							.sopInstanceUID(sopInstanceUID));
 
 		} catch (TCIAClientException e) {
 			throw e;
 		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
+			throw new TCIAClientException(e, getTCIAClient().getResourceUrl());
 		}
 	}
 
@@ -346,26 +333,8 @@ public class TCIAClientImpl implements ITCIAClient {
 	 */
 	public String NewStudiesInPatientCollection(String date, String collection, String patientID, OutputFormat format)
 			throws TCIAClientException {
-		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + NewStudiesInPatientCollection);
-
-			if (date != null)
-				uriBuilder.addParameter(DICOMAttributes.DATE, date);
-
-			if (collection != null)
-				uriBuilder.addParameter(DICOMAttributes.COLLECTION, collection);
-
-			if (collection != null)
-				uriBuilder.addParameter(DICOMAttributes.PATIENT_ID, patientID);
-
-			return getStringFromURIBuilder(format, uriBuilder);
-
-		} catch (TCIAClientException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
-		}
+		return getString(RequestTemplate.NEW_STUDIES_IN_PATIENT_COLLECTION.query()
+				.date(date).collection(collection).patientID(patientID), format);
 	}
 
 	/**
@@ -376,27 +345,10 @@ public class TCIAClientImpl implements ITCIAClient {
 	 * @return the SOP Instance UIDs
 	 */
 	public String getSOPInstanceUIDs(String seriesInstanceUID, OutputFormat format) throws TCIAClientException {
-		return getSeriesProperties(seriesInstanceUID, format, getSOPInstanceUIDs);
+		return getString(RequestTemplate.GET_SOP_INSTANCE_UIDS.query().seriesInstanceUID(seriesInstanceUID), format);
 	}
 
 
-	private String getSeriesProperties(String seriesInstanceUID, OutputFormat format, String propertiesOfSeriesInstance) throws TCIAClientException {
-		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + propertiesOfSeriesInstance);
-
-			if (seriesInstanceUID != null)
-				uriBuilder.addParameter(DICOMAttributes.SERIES_INSTANCE_UID, seriesInstanceUID);
-
-			return getStringFromURIBuilder(format, uriBuilder);
-
-		} catch (TCIAClientException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
-		}
-	}
-
 	/**
 	 * Get the patients by modality
 	 *
@@ -407,27 +359,7 @@ public class TCIAClientImpl implements ITCIAClient {
 	 */
 
 	public String PatientsByModality(String collection, String modality, OutputFormat format) throws TCIAClientException {
-		return getModalityProperties(collection, modality, format, PatientsByModality);
-	}
-
-	private String getModalityProperties(String collection, String modality, OutputFormat format, String propertiesOfModality) throws TCIAClientException {
-		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + propertiesOfModality);
-
-			if (collection != null)
-				uriBuilder.addParameter(DICOMAttributes.COLLECTION, collection);
-
-			if (modality != null)
-				uriBuilder.addParameter(DICOMAttributes.MODALITY, modality);
-
-			return getStringFromURIBuilder(format, uriBuilder);
-
-		} catch (TCIAClientException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
-		}
+		return getString(RequestTemplate.PATIENTS_BY_MODALITY.query().collection(collection).modality(modality), format);
 	}
 
 	/**
@@ -439,46 +371,107 @@ public class TCIAClientImpl implements ITCIAClient {
 	 * @return the new patients in collection
 	 */
 	public String NewPatientsInCollection(String date, String collection, OutputFormat format) throws TCIAClientException {
-		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + NewPatientsInCollection);
+		return getString(RequestTemplate.NEW_PATIENTS_IN_COLLECTION.query().date(date).collection(collection), format);
+	}
 
-			if (date != null)
-				uriBuilder.addParameter(DICOMAttributes.DATE, date);
+	/**
+	 * Get the contents of a shared list
+	 *
+	 * @param name   the name of the shared list : mandatory
+	 * @param format the output format
+	 * @return the contents of the shared list
+	 */
+	public String getSharedList(String name, OutputFormat format) throws TCIAClientException {
+		return getString(RequestTemplate.GET_SHARED_LIST.query().name(name), format);
+	}
 
-			if (collection != null)
-				uriBuilder.addParameter(DICOMAttributes.COLLECTION, collection);
 
-			return getStringFromURIBuilder(format, uriBuilder);
+	/**
+	 * Get the response of a query of a metadata endpoint, such as one of a new endpoint without a method here
+	 *
+	 * @param query  the query
+	 * @param format the output format
+	 * @return the response
+	 */
+	public String getString(Query query, OutputFormat format) throws TCIAClientException {
+		try {
+			return getTCIAClient().getString(format, query);
 
 		} catch (TCIAClientException e) {
 			throw e;
 		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
+			throw new TCIAClientException(e, getTCIAClient().getResourceUrl());
 		}
 	}
 
 	/**
-	 * Get the contents of a shared list
+	 * Get the response of a query of a metadata endpoint as a stream of typed records, decoded lazily. The local
+	 * catalog, if any, answers the queries it covers, and records the others
 	 *
-	 * @param name   the name of the shared list : mandatory
-	 * @param format the output format
-	 * @return the contents of the shared list
+	 * @param type  the type of the records
+	 * @param query the query
+	 * @param <T>   the type of the records
+	 * @return the stream of records, to be closed after use
 	 */
-	public String getSharedList(String name, OutputFormat format) throws TCIAClientException {
+	public <T> Stream<T> getStream(Class<T> type, Query query) throws TCIAClientException {
 		try {
-			URI baseUri = new URI(TCIAClientUtil.getResourceUrl());
-			URIBuilder uriBuilder = new URIBuilder(baseUri.toString() + "/" + getSharedList);
+			LocalCatalog catalog = getTCIAClient().getCatalog();
+			Stream<T> local = catalog != null ? catalog.query(type, query) : null;
+			return local != null ? local : getRemoteStream(type, query);
 
-			if (name != null)
-				uriBuilder.addParameter(DICOMAttributes.NAME, name);
+		} catch (TCIAClientException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new TCIAClientException(e, getTCIAClient().getResourceUrl());
+		}
+	}
 
-			return getStringFromURIBuilder(format, uriBuilder);
+	/**
+	 * Get the response of a query of a metadata endpoint from the TCIA service as a stream of typed records, without
+	 * consulting the local catalog. The catalog, if any, still records the response
+	 *
+	 * @param type  the type of the records
+	 * @param query the query
+	 * @param <T>   the type of the records
+	 * @return the stream of records, to be closed after use
+	 */
+	public <T> Stream<T> getRemoteStream(Class<T> type, Query query) throws TCIAClientException {
+		try {
+			LocalCatalog catalog = getTCIAClient().getCatalog();
+			Stream<T> remote = getTCIAClient().getStream(type, query);
+			return catalog != null ? catalog.record(type, query, remote) : remote;
 
 		} catch (TCIAClientException e) {
 			throw e;
 		} catch (Exception e) {
-			throw new TCIAClientException(e, TCIAClientUtil.getResourceUrl());
+			throw new TCIAClientException(e, getTCIAClient().getResourceUrl());
+		}
+	}
+
+
+	/*
+	 * Series and SOP instances are immutable, so the image cache, if any, serves them without going to the network.
+	 */
+	private ImageResult getImageResult(String cacheKey, Query query) throws Exception {
+		TCIAClient client = getTCIAClient();
+		ImageCache imageCache = client.getImageCache();
+		if (imageCache == null || !query.hasParameters()) {
+			return client.getImage(query);
 		}
+		return imageCache.get(cacheKey, () -> client.getImage(query));
+	}
+
+	private static Query getPatientStudyQuery(String collection, String patientID, String studyInstanceUID) {
+		return RequestTemplate.GET_PATIENT_STUDY.query().collection(collection).patientID(patientID)
+				.studyInstanceUID(studyInstanceUID);
+	}
+
+	private static Query getSeriesQuery(String collection, String studyInstanceUID, String modality, String patientID,
+	                                    String seriesInstanceUID, String bodyPartExamined, String manufacturer,
+	                                    String manufacturerModelName) {
+		return RequestTemplate.GET_SERIES.query().collection(collection).studyInstanceUID(studyInstanceUID)
+				.modality(modality).patientID(patientID).seriesInstanceUID(seriesInstanceUID)
+				.bodyPartExamined(bodyPartExamined).manufacturer(manufacturer)
+				.manufacturerModelName(manufacturerModelName);
 	}
 }
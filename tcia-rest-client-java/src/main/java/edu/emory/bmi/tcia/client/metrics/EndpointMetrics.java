@@ -0,0 +1,75 @@
+package edu.emory.bmi.tcia.client.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of an endpoint, updated without locks.
+ */
+class EndpointMetrics {
+
+	private final String endpoint;
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder inFlight = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+	private final LongAdder encodedBytesReceived = new LongAdder();
+	private final LongAdder decodedBytes = new LongAdder();
+	private final ConcurrentHashMap<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram transfer = new LatencyHistogram();
+
+
+	EndpointMetrics(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+
+	void onRequestStart() {
+		requests.increment();
+		inFlight.increment();
+	}
+
+
+	void onResponse(int statusCode, long latencyNanos) {
+		latency.record(latencyNanos);
+		LongAdder count = statusCodes.get(statusCode);
+		if (count == null) {
+			count = statusCodes.computeIfAbsent(statusCode, code -> new LongAdder());
+		}
+		count.increment();
+		if (statusCode >= 400) {
+			errors.increment();
+		}
+	}
+
+
+	void onFailure(long latencyNanos) {
+		latency.record(latencyNanos);
+		errors.increment();
+		inFlight.decrement();
+	}
+
+
+	void onTransferComplete(long bytes, long transferNanos) {
+		bytesReceived.add(bytes);
+		transfer.record(transferNanos);
+		inFlight.decrement();
+	}
+
+
+	void onContentDecoded(long encodedBytes, long decodedBytes) {
+		encodedBytesReceived.add(encodedBytes);
+		this.decodedBytes.add(decodedBytes);
+	}
+
+
+	EndpointSnapshot snapshot() {
+		Map<Integer, Long> counts = new TreeMap<>();
+		statusCodes.forEach((statusCode, count) -> counts.put(statusCode, count.sum()));
+		return new EndpointSnapshot(endpoint, requests.sum(), errors.sum(), inFlight.sum(), bytesReceived.sum(),
+				encodedBytesReceived.sum(), decodedBytes.sum(), counts, latency.snapshot(), transfer.snapshot());
+	}
+}
@@ -0,0 +1,120 @@
+package edu.emory.bmi.tcia.client.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of the metrics of an endpoint.
+ */
+public class EndpointSnapshot {
+
+	private final String endpoint;
+	private final long requests;
+	private final long errors;
+	private final long inFlight;
+	private final long bytesReceived;
+	private final long encodedBytesReceived;
+	private final long decodedBytes;
+	private final Map<Integer, Long> statusCodes;
+	private final HistogramSnapshot latency;
+	private final HistogramSnapshot transfer;
+
+
+	public EndpointSnapshot(String endpoint, long requests, long errors, long inFlight, long bytesReceived,
+	                        long encodedBytesReceived, long decodedBytes, Map<Integer, Long> statusCodes, HistogramSnapshot latency, HistogramSnapshot transfer) {
+		this.endpoint = endpoint;
+		this.requests = requests;
+		this.errors = errors;
+		this.inFlight = inFlight;
+		this.bytesReceived = bytesReceived;
+		this.encodedBytesReceived = encodedBytesReceived;
+		this.decodedBytes = decodedBytes;
+		this.statusCodes = Collections.unmodifiableMap(statusCodes);
+		this.latency = latency;
+		this.transfer = transfer;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return the number of requests sent, including the retries
+	 */
+	public long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return the number of requests that failed, or that received a 4xx or 5xx response
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return the number of requests whose response has not been consumed yet
+	 */
+	public long getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @return the number of bytes received, as transferred, whether compressed or not
+	 */
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * @return the number of bytes received of the compressed responses, a part of the bytes received
+	 */
+	public long getEncodedBytesReceived() {
+		return encodedBytesReceived;
+	}
+
+	/**
+	 * @return the number of bytes the compressed responses decoded to
+	 */
+	public long getDecodedBytes() {
+		return decodedBytes;
+	}
+
+	/**
+	 * @return the number of bytes of the response bodies once decoded, compressed or not
+	 */
+	public long getContentBytes() {
+		return bytesReceived - encodedBytesReceived + decodedBytes;
+	}
+
+	/**
+	 * @return the number of responses by status code
+	 */
+	public Map<Integer, Long> getStatusCodes() {
+		return statusCodes;
+	}
+
+	/**
+	 * @return the time from sending a request to receiving its response head, which is spent by the server and the
+	 * network round trip
+	 */
+	public HistogramSnapshot getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return the time from receiving a response head to the end of its body, which is spent by the network
+	 * transfer and by the consumer of the body
+	 */
+	public HistogramSnapshot getTransfer() {
+		return transfer;
+	}
+
+	@Override
+	public String toString() {
+		return endpoint + ": requests=" + requests + " errors=" + errors + " inFlight=" + inFlight +
+				" bytesReceived=" + bytesReceived + " encodedBytesReceived=" + encodedBytesReceived +
+				" decodedBytes=" + decodedBytes + " statusCodes=" + statusCodes + " latency[" + latency +
+				"] transfer[" + transfer + "]";
+	}
+}
@@ -0,0 +1,104 @@
+package edu.emory.bmi.tcia.client.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations, in microseconds. The durations are counted in log-linear buckets: each power
+ * of two is divided into 8 buckets, so that a percentile is reported within 12.5% of its exact value, in a fixed
+ * memory. Recording is a few atomic increments, without allocation.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+	// Up to 2^40 us, about 12 days.
+	private static final int MAX_EXPONENT = 40;
+	// The last bucket counts the longer durations.
+	private static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + 1;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+
+	/**
+	 * Record a duration.
+	 * @param nanos the duration (ns)
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+		buckets.incrementAndGet(getBucket(micros));
+		sum.add(micros);
+
+		long current = max.get();
+		while (micros > current && !max.compareAndSet(current, micros)) {
+			current = max.get();
+		}
+	}
+
+
+	/**
+	 * Take a snapshot of the histogram. The histogram keeps recording while the snapshot is taken, so the
+	 * snapshot may include some of the durations recorded meanwhile.
+	 * @return the snapshot
+	 */
+	public HistogramSnapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		long maxMicros = max.get();
+		return new HistogramSnapshot(total, total > 0 ? sum.sum() / total : 0,
+				getPercentile(counts, total, 0.5, maxMicros), getPercentile(counts, total, 0.9, maxMicros),
+				getPercentile(counts, total, 0.99, maxMicros), maxMicros);
+	}
+
+
+	static int getBucket(long micros) {
+		if (micros < LINEAR_LIMIT) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent >= MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+	}
+
+
+	/*
+	 * The highest duration of a bucket.
+	 */
+	static long getUpperBound(int bucket) {
+		if (bucket < LINEAR_LIMIT) {
+			return bucket;
+		}
+		int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+		int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (1L << exponent) + (subBucket + 1) * width - 1;
+	}
+
+
+	private static long getPercentile(long[] counts, long total, double percentile, long maxMicros) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(getUpperBound(i), maxMicros);
+			}
+		}
+		return maxMicros;
+	}
+}
@@ -0,0 +1,59 @@
+package edu.emory.bmi.tcia.client.metrics;
+
+/**
+ * Records the metrics of the requests of the TCIA client. Each request starts with onRequestStart, then ends with
+ * either onFailure, or onResponse followed by onTransferComplete once its body has been consumed or closed. The
+ * implementations are called on the request path, and must be thread-safe and must not block.
+ */
+public interface MetricsRecorder {
+
+	/**
+	 * Record a request sent to the server.
+	 * @param endpoint the endpoint of the request, such as getSeries
+	 */
+	void onRequestStart(String endpoint);
+
+
+	/**
+	 * Record the response head of a request.
+	 * @param endpoint the endpoint of the request
+	 * @param statusCode the status code of the response
+	 * @param latencyNanos the time (ns) from sending the request to receiving the response head
+	 */
+	void onResponse(String endpoint, int statusCode, long latencyNanos);
+
+
+	/**
+	 * Record a request that failed before a response was received, such as on a connection or a timeout error.
+	 * @param endpoint the endpoint of the request
+	 * @param latencyNanos the time (ns) from sending the request to the failure
+	 */
+	void onFailure(String endpoint, long latencyNanos);
+
+
+	/**
+	 * Record the end of the transfer of a response body.
+	 * @param endpoint the endpoint of the request
+	 * @param bytes the number of bytes received
+	 * @param transferNanos the time (ns) from receiving the response head to the end of the body
+	 */
+	void onTransferComplete(String endpoint, long bytes, long transferNanos);
+
+
+	/**
+	 * Record the decoding of a compressed response body, after its transfer completed.
+	 * @param endpoint the endpoint of the request
+	 * @param encodedBytes the number of bytes received, as compressed
+	 * @param decodedBytes the number of bytes they decoded to
+	 */
+	default void onContentDecoded(String endpoint, long encodedBytes, long decodedBytes) {
+	}
+
+
+	/**
+	 * Record a write of the received data to the disk.
+	 * @param bytes the number of bytes written
+	 * @param nanos the time (ns) spent writing
+	 */
+	void onDiskWrite(long bytes, long nanos);
+}
@@ -0,0 +1,73 @@
+package edu.emory.bmi.tcia.client.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The in-process registry of the metrics of the TCIA client. The metrics are updated with atomic counters and
+ * lock-free histograms, so that recording does not contend between the threads of the client; snapshot returns a
+ * consistent enough view of them to be scraped periodically.
+ */
+public class MetricsRegistry implements MetricsRecorder {
+
+	private final ConcurrentHashMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+	private final LongAdder diskBytesWritten = new LongAdder();
+	private final LatencyHistogram diskWrites = new LatencyHistogram();
+
+
+	@Override
+	public void onRequestStart(String endpoint) {
+		getEndpoint(endpoint).onRequestStart();
+	}
+
+
+	@Override
+	public void onResponse(String endpoint, int statusCode, long latencyNanos) {
+		getEndpoint(endpoint).onResponse(statusCode, latencyNanos);
+	}
+
+
+	@Override
+	public void onFailure(String endpoint, long latencyNanos) {
+		getEndpoint(endpoint).onFailure(latencyNanos);
+	}
+
+
+	@Override
+	public void onTransferComplete(String endpoint, long bytes, long transferNanos) {
+		getEndpoint(endpoint).onTransferComplete(bytes, transferNanos);
+	}
+
+
+	@Override
+	public void onContentDecoded(String endpoint, long encodedBytes, long decodedBytes) {
+		getEndpoint(endpoint).onContentDecoded(encodedBytes, decodedBytes);
+	}
+
+
+	@Override
+	public void onDiskWrite(long bytes, long nanos) {
+		diskBytesWritten.add(bytes);
+		diskWrites.record(nanos);
+	}
+
+
+	/**
+	 * Take a snapshot of the metrics.
+	 * @return the snapshot, with the endpoints sorted by name
+	 */
+	public MetricsSnapshot snapshot() {
+		Map<String, EndpointSnapshot> snapshots = new TreeMap<>();
+		endpoints.forEach((endpoint, metrics) -> snapshots.put(endpoint, metrics.snapshot()));
+		return new MetricsSnapshot(System.currentTimeMillis(), snapshots, diskBytesWritten.sum(),
+				diskWrites.snapshot());
+	}
+
+
+	private EndpointMetrics getEndpoint(String endpoint) {
+		EndpointMetrics metrics = endpoints.get(endpoint);
+		return metrics != null ? metrics : endpoints.computeIfAbsent(endpoint, EndpointMetrics::new);
+	}
+}
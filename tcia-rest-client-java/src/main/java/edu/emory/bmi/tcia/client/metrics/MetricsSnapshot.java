@@ -0,0 +1,102 @@
+package edu.emory.bmi.tcia.client.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of the metrics of the TCIA client, to be scraped.
+ */
+public class MetricsSnapshot {
+
+	private final long timestamp;
+	private final Map<String, EndpointSnapshot> endpoints;
+	private final long diskBytesWritten;
+	private final HistogramSnapshot diskWrites;
+
+
+	public MetricsSnapshot(long timestamp, Map<String, EndpointSnapshot> endpoints, long diskBytesWritten,
+	                       HistogramSnapshot diskWrites) {
+		this.timestamp = timestamp;
+		this.endpoints = Collections.unmodifiableMap(endpoints);
+		this.diskBytesWritten = diskBytesWritten;
+		this.diskWrites = diskWrites;
+	}
+
+	/**
+	 * @return the time (ms since the epoch) of the snapshot
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the metrics of the endpoints, by endpoint
+	 */
+	public Map<String, EndpointSnapshot> getEndpoints() {
+		return endpoints;
+	}
+
+	public long getDiskBytesWritten() {
+		return diskBytesWritten;
+	}
+
+	/**
+	 * @return the time spent in each write of the received data to the disk
+	 */
+	public HistogramSnapshot getDiskWrites() {
+		return diskWrites;
+	}
+
+
+	/**
+	 * Format the snapshot in the Prometheus text exposition format. The durations are in seconds.
+	 * @return the text of the snapshot
+	 */
+	public String toText() {
+		StringBuilder text = new StringBuilder();
+		for (EndpointSnapshot endpoint : endpoints.values()) {
+			String label = "{endpoint=\"" + endpoint.getEndpoint() + "\"}";
+			appendLine(text, "tcia_requests_total", label, endpoint.getRequests());
+			appendLine(text, "tcia_errors_total", label, endpoint.getErrors());
+			appendLine(text, "tcia_requests_in_flight", label, endpoint.getInFlight());
+			appendLine(text, "tcia_received_bytes_total", label, endpoint.getBytesReceived());
+			appendLine(text, "tcia_received_encoded_bytes_total", label, endpoint.getEncodedBytesReceived());
+			appendLine(text, "tcia_decoded_bytes_total", label, endpoint.getDecodedBytes());
+			endpoint.getStatusCodes().forEach((statusCode, count) -> appendLine(text, "tcia_responses_total",
+					"{endpoint=\"" + endpoint.getEndpoint() + "\",status=\"" + statusCode + "\"}", count));
+			appendHistogram(text, "tcia_latency_seconds", endpoint.getEndpoint(), endpoint.getLatency());
+			appendHistogram(text, "tcia_transfer_seconds", endpoint.getEndpoint(), endpoint.getTransfer());
+		}
+		appendLine(text, "tcia_disk_written_bytes_total", "", diskBytesWritten);
+		appendHistogram(text, "tcia_disk_write_seconds", null, diskWrites);
+		return text.toString();
+	}
+
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for (EndpointSnapshot endpoint : endpoints.values()) {
+			text.append(endpoint).append('\n');
+		}
+		return text.append("disk: bytesWritten=").append(diskBytesWritten).append(" writes[").append(diskWrites)
+				.append("]").toString();
+	}
+
+
+	private static void appendHistogram(StringBuilder text, String name, String endpoint, HistogramSnapshot histogram) {
+		String prefix = endpoint != null ? "{endpoint=\"" + endpoint + "\"," : "{";
+		appendLine(text, name, prefix + "quantile=\"0.5\"}", histogram.getP50() / 1e6);
+		appendLine(text, name, prefix + "quantile=\"0.9\"}", histogram.getP90() / 1e6);
+		appendLine(text, name, prefix + "quantile=\"0.99\"}", histogram.getP99() / 1e6);
+		appendLine(text, name, prefix + "quantile=\"1\"}", histogram.getMax() / 1e6);
+		String label = endpoint != null ? "{endpoint=\"" + endpoint + "\"}" : "";
+		appendLine(text, name + "_count", label, histogram.getCount());
+		appendLine(text, name + "_sum", label, histogram.getCount() * histogram.getMean() / 1e6);
+	}
+
+
+	private static void appendLine(StringBuilder text, String name, String labels, Object value) {
+		text.append(name).append(labels).append(' ').append(value).append('\n');
+	}
+}
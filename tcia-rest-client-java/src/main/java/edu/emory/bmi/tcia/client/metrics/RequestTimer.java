@@ -0,0 +1,97 @@
+package edu.emory.bmi.tcia.client.metrics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Times a single request, and reports it to a metrics recorder. The request is completed once, by whichever of the
+ * end of its body, the close of its body or its failure comes first.
+ */
+public class RequestTimer {
+
+	private final MetricsRecorder recorder;
+	private final String endpoint;
+	private final long startTime;
+	private final AtomicBoolean completed = new AtomicBoolean();
+	private volatile long responseTime;
+	private volatile long bytes;
+	private volatile long decodedBytes = -1;
+
+
+	private RequestTimer(MetricsRecorder recorder, String endpoint) {
+		this.recorder = recorder;
+		this.endpoint = endpoint;
+		this.startTime = System.nanoTime();
+	}
+
+
+	/**
+	 * Start timing a request.
+	 * @param recorder the metrics recorder, or null to not time the request
+	 * @param endpoint the endpoint of the request
+	 * @return the timer of the request, or null if there is no recorder
+	 */
+	public static RequestTimer start(MetricsRecorder recorder, String endpoint) {
+		if (recorder == null) {
+			return null;
+		}
+		recorder.onRequestStart(endpoint);
+		return new RequestTimer(recorder, endpoint);
+	}
+
+
+	/**
+	 * Record the response head of the request.
+	 * @param statusCode the status code of the response
+	 * @return the latency (ns) of the response
+	 */
+	public long onResponse(int statusCode) {
+		responseTime = System.nanoTime();
+		long latency = responseTime - startTime;
+		recorder.onResponse(endpoint, statusCode, latency);
+		return latency;
+	}
+
+
+	/**
+	 * Record the bytes received of the response body. The body is read by a single thread.
+	 * @param count the number of bytes received
+	 */
+	public void onBytes(long count) {
+		if (count > 0) {
+			bytes += count;
+		}
+	}
+
+
+	/**
+	 * Record the bytes decoded from a compressed response body. The body is read by a single thread.
+	 * @param count the number of bytes decoded
+	 */
+	public void onDecodedBytes(long count) {
+		if (count > 0) {
+			decodedBytes = Math.max(decodedBytes, 0) + count;
+		} else if (decodedBytes < 0) {
+			decodedBytes = 0;
+		}
+	}
+
+
+	/**
+	 * Complete the request: record the transfer of its body if a response was received, and its failure otherwise.
+	 * Only the first call has an effect.
+	 */
+	public void complete() {
+		if (!completed.compareAndSet(false, true)) {
+			return;
+		}
+		long now = System.nanoTime();
+		if (responseTime != 0) {
+			recorder.onTransferComplete(endpoint, bytes, now - responseTime);
+			if (decodedBytes >= 0) {
+				recorder.onContentDecoded(endpoint, bytes, decodedBytes);
+			}
+		} else {
+			recorder.onFailure(endpoint, now - startTime);
+		}
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * The metrics of the requests of the TCIA client: the latency, throughput and errors of each endpoint, and the time
+ * spent writing to the disk.
+ */
+package edu.emory.bmi.tcia.client.metrics;
@@ -0,0 +1,51 @@
+package edu.emory.bmi.tcia.client.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A patient returned by getPatient.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Patient {
+	@JsonProperty("PatientID")
+	private String patientID;
+	@JsonProperty("PatientName")
+	private String patientName;
+	@JsonProperty("PatientSex")
+	private String patientSex;
+	@JsonProperty("Collection")
+	private String collection;
+
+	public String getPatientID() {
+		return patientID;
+	}
+
+	public void setPatientID(String patientID) {
+		this.patientID = patientID;
+	}
+
+	public String getPatientName() {
+		return patientName;
+	}
+
+	public void setPatientName(String patientName) {
+		this.patientName = patientName;
+	}
+
+	public String getPatientSex() {
+		return patientSex;
+	}
+
+	public void setPatientSex(String patientSex) {
+		this.patientSex = patientSex;
+	}
+
+	public String getCollection() {
+		return collection;
+	}
+
+	public void setCollection(String collection) {
+		this.collection = collection;
+	}
+}
@@ -0,0 +1,161 @@
+package edu.emory.bmi.tcia.client.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A series returned by getSeries.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Series {
+	@JsonProperty("SeriesInstanceUID")
+	private String seriesInstanceUID;
+	@JsonProperty("StudyInstanceUID")
+	private String studyInstanceUID;
+	@JsonProperty("Collection")
+	private String collection;
+	@JsonProperty("PatientID")
+	private String patientID;
+	@JsonProperty("Modality")
+	private String modality;
+	@JsonProperty("ProtocolName")
+	private String protocolName;
+	@JsonProperty("SeriesDate")
+	private String seriesDate;
+	@JsonProperty("SeriesDescription")
+	private String seriesDescription;
+	@JsonProperty("BodyPartExamined")
+	private String bodyPartExamined;
+	@JsonProperty("SeriesNumber")
+	private String seriesNumber;
+	@JsonProperty("AnnotationsFlag")
+	private String annotationsFlag;
+	@JsonProperty("Manufacturer")
+	private String manufacturer;
+	@JsonProperty("ManufacturerModelName")
+	private String manufacturerModelName;
+	@JsonProperty("SoftwareVersions")
+	private String softwareVersions;
+	@JsonProperty("ImageCount")
+	private Integer imageCount;
+
+	public String getSeriesInstanceUID() {
+		return seriesInstanceUID;
+	}
+
+	public void setSeriesInstanceUID(String seriesInstanceUID) {
+		this.seriesInstanceUID = seriesInstanceUID;
+	}
+
+	public String getStudyInstanceUID() {
+		return studyInstanceUID;
+	}
+
+	public void setStudyInstanceUID(String studyInstanceUID) {
+		this.studyInstanceUID = studyInstanceUID;
+	}
+
+	public String getCollection() {
+		return collection;
+	}
+
+	public void setCollection(String collection) {
+		this.collection = collection;
+	}
+
+	public String getPatientID() {
+		return patientID;
+	}
+
+	public void setPatientID(String patientID) {
+		this.patientID = patientID;
+	}
+
+	public String getModality() {
+		return modality;
+	}
+
+	public void setModality(String modality) {
+		this.modality = modality;
+	}
+
+	public String getProtocolName() {
+		return protocolName;
+	}
+
+	public void setProtocolName(String protocolName) {
+		this.protocolName = protocolName;
+	}
+
+	public String getSeriesDate() {
+		return seriesDate;
+	}
+
+	public void setSeriesDate(String seriesDate) {
+		this.seriesDate = seriesDate;
+	}
+
+	public String getSeriesDescription() {
+		return seriesDescription;
+	}
+
+	public void setSeriesDescription(String seriesDescription) {
+		this.seriesDescription = seriesDescription;
+	}
+
+	public String getBodyPartExamined() {
+		return bodyPartExamined;
+	}
+
+	public void setBodyPartExamined(String bodyPartExamined) {
+		this.bodyPartExamined = bodyPartExamined;
+	}
+
+	public String getSeriesNumber() {
+		return seriesNumber;
+	}
+
+	public void setSeriesNumber(String seriesNumber) {
+		this.seriesNumber = seriesNumber;
+	}
+
+	public String getAnnotationsFlag() {
+		return annotationsFlag;
+	}
+
+	public void setAnnotationsFlag(String annotationsFlag) {
+		this.annotationsFlag = annotationsFlag;
+	}
+
+	public String getManufacturer() {
+		return manufacturer;
+	}
+
+	public void setManufacturer(String manufacturer) {
+		this.manufacturer = manufacturer;
+	}
+
+	public String getManufacturerModelName() {
+		return manufacturerModelName;
+	}
+
+	public void setManufacturerModelName(String manufacturerModelName) {
+		this.manufacturerModelName = manufacturerModelName;
+	}
+
+	public String getSoftwareVersions() {
+		return softwareVersions;
+	}
+
+	public void setSoftwareVersions(String softwareVersions) {
+		this.softwareVersions = softwareVersions;
+	}
+
+	public Integer getImageCount() {
+		return imageCount;
+	}
+
+	public void setImageCount(Integer imageCount) {
+		this.imageCount = imageCount;
+	}
+}
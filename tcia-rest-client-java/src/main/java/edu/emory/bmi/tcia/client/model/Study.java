@@ -0,0 +1,131 @@
+package edu.emory.bmi.tcia.client.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A study of a patient returned by getPatientStudy.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Study {
+	@JsonProperty("StudyInstanceUID")
+	private String studyInstanceUID;
+	@JsonProperty("StudyDate")
+	private String studyDate;
+	@JsonProperty("StudyDescription")
+	private String studyDescription;
+	@JsonProperty("AdmittingDiagnosesDescription")
+	private String admittingDiagnosesDescription;
+	@JsonProperty("StudyID")
+	private String studyID;
+	@JsonProperty("PatientAge")
+	private String patientAge;
+	@JsonProperty("PatientID")
+	private String patientID;
+	@JsonProperty("PatientName")
+	private String patientName;
+	@JsonProperty("PatientSex")
+	private String patientSex;
+	@JsonProperty("EthnicGroup")
+	private String ethnicGroup;
+	@JsonProperty("Collection")
+	private String collection;
+	@JsonProperty("SeriesCount")
+	private Integer seriesCount;
+
+	public String getStudyInstanceUID() {
+		return studyInstanceUID;
+	}
+
+	public void setStudyInstanceUID(String studyInstanceUID) {
+		this.studyInstanceUID = studyInstanceUID;
+	}
+
+	public String getStudyDate() {
+		return studyDate;
+	}
+
+	public void setStudyDate(String studyDate) {
+		this.studyDate = studyDate;
+	}
+
+	public String getStudyDescription() {
+		return studyDescription;
+	}
+
+	public void setStudyDescription(String studyDescription) {
+		this.studyDescription = studyDescription;
+	}
+
+	public String getAdmittingDiagnosesDescription() {
+		return admittingDiagnosesDescription;
+	}
+
+	public void setAdmittingDiagnosesDescription(String admittingDiagnosesDescription) {
+		this.admittingDiagnosesDescription = admittingDiagnosesDescription;
+	}
+
+	public String getStudyID() {
+		return studyID;
+	}
+
+	public void setStudyID(String studyID) {
+		this.studyID = studyID;
+	}
+
+	public String getPatientAge() {
+		return patientAge;
+	}
+
+	public void setPatientAge(String patientAge) {
+		this.patientAge = patientAge;
+	}
+
+	public String getPatientID() {
+		return patientID;
+	}
+
+	public void setPatientID(String patientID) {
+		this.patientID = patientID;
+	}
+
+	public String getPatientName() {
+		return patientName;
+	}
+
+	public void setPatientName(String patientName) {
+		this.patientName = patientName;
+	}
+
+	public String getPatientSex() {
+		return patientSex;
+	}
+
+	public void setPatientSex(String patientSex) {
+		this.patientSex = patientSex;
+	}
+
+	public String getEthnicGroup() {
+		return ethnicGroup;
+	}
+
+	public void setEthnicGroup(String ethnicGroup) {
+		this.ethnicGroup = ethnicGroup;
+	}
+
+	public String getCollection() {
+		return collection;
+	}
+
+	public void setCollection(String collection) {
+		this.collection = collection;
+	}
+
+	public Integer getSeriesCount() {
+		return seriesCount;
+	}
+
+	public void setSeriesCount(Integer seriesCount) {
+		this.seriesCount = seriesCount;
+	}
+}
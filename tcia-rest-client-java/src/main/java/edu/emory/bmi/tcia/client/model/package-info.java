@@ -0,0 +1,4 @@
+/**
+ * The typed records of the TCIA query results, decoded from the JSON responses.
+ */
+package edu.emory.bmi.tcia.client.model;
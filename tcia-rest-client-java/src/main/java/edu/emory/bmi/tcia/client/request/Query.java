@@ -0,0 +1,215 @@
+package edu.emory.bmi.tcia.client.request;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
+
+
+/**
+ * A query of a request template. The parameters are set fluently, a null value leaving its parameter out, and the
+ * query is encoded in a single pass into the URI of the request, in the order of the template:
+ * <pre>
+ * URI uri = RequestTemplate.GET_PATIENT.query().collection("TCGA-BRCA").format(OutputFormat.csv)
+ *         .toURI(tcia.getResourceUrl());
+ * </pre>
+ * The values are encoded as form fields, as the URIBuilder of HttpClient does. A query is not thread-safe, and a
+ * parameter the endpoint does not accept is rejected with an IllegalArgumentException.
+ */
+public class Query {
+
+	private static final String FORMAT_PREFIX = "format=";
+
+	private final RequestTemplate template;
+	private final String[] values;
+	private OutputFormat format;
+
+
+	Query(RequestTemplate template) {
+		this.template = template;
+		this.values = new String[template.getParameterCount()];
+	}
+
+
+	/**
+	 * Set a parameter.
+	 * @param name the name of the parameter, which the endpoint must accept
+	 * @param value the value, or null to leave the parameter out
+	 * @return this query
+	 */
+	public Query set(String name, String value) {
+		int index = template.indexOf(name);
+		if (index < 0) {
+			throw new IllegalArgumentException(template.getEndpoint() + " does not accept the parameter " + name);
+		}
+		values[index] = value;
+		return this;
+	}
+
+
+	/**
+	 * @param name the name of a parameter
+	 * @return the value of the parameter, or null if it is not set
+	 */
+	public String get(String name) {
+		int index = template.indexOf(name);
+		return index >= 0 ? values[index] : null;
+	}
+
+
+	public Query collection(String collection) {
+		return set(DICOMAttributes.COLLECTION, collection);
+	}
+
+	public Query patientID(String patientID) {
+		return set(DICOMAttributes.PATIENT_ID, patientID);
+	}
+
+	public Query studyInstanceUID(String studyInstanceUID) {
+		return set(DICOMAttributes.STUDY_INSTANCE_UID, studyInstanceUID);
+	}
+
+	public Query seriesInstanceUID(String seriesInstanceUID) {
+		return set(DICOMAttributes.SERIES_INSTANCE_UID, seriesInstanceUID);
+	}
+
+	public Query sopInstanceUID(String sopInstanceUID) {
+		return set(DICOMAttributes.SOP_INSTANCE_UID, sopInstanceUID);
+	}
+
+	public Query modality(String modality) {
+		return set(DICOMAttributes.MODALITY, modality);
+	}
+
+	public Query bodyPartExamined(String bodyPartExamined) {
+		return set(DICOMAttributes.BODY_PART_EXAMINED, bodyPartExamined);
+	}
+
+	public Query manufacturer(String manufacturer) {
+		return set(DICOMAttributes.MANUFACTURER, manufacturer);
+	}
+
+	public Query manufacturerModelName(String manufacturerModelName) {
+		return set(DICOMAttributes.MANUFACTURER_MODEL_NAME, manufacturerModelName);
+	}
+
+	public Query date(String date) {
+		return set(DICOMAttributes.DATE, date);
+	}
+
+	public Query name(String name) {
+		return set(DICOMAttributes.NAME, name);
+	}
+
+
+	/**
+	 * @param format the output format, sent as the last parameter, or null for the images
+	 * @return this query
+	 */
+	public Query format(OutputFormat format) {
+		this.format = format;
+		return this;
+	}
+
+
+	public OutputFormat getFormat() {
+		return format;
+	}
+
+
+	public RequestTemplate getTemplate() {
+		return template;
+	}
+
+
+	/**
+	 * @return a copy of this query, whose parameters can be set without changing this one
+	 */
+	public Query copy() {
+		Query copy = new Query(template);
+		System.arraycopy(values, 0, copy.values, 0, values.length);
+		copy.format = format;
+		return copy;
+	}
+
+
+	/**
+	 * @return whether any parameter, apart from the output format, is set
+	 */
+	public boolean hasParameters() {
+		for (String value : values) {
+			if (value != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * @param resourceUrl the resource URL, such as https://services.cancerimagingarchive.net/services/v4/TCIA/query
+	 * @return the URI of the request, under the given resource URL
+	 */
+	public URI toURI(String resourceUrl) {
+		return URI.create(appendTarget(new StringBuilder(resourceUrl.length() + 128).append(resourceUrl))
+				.toString());
+	}
+
+
+	/**
+	 * @return the path of the endpoint and the encoded query, such as /getPatient?Collection=TCGA-BRCA&amp;format=csv
+	 */
+	@Override
+	public String toString() {
+		return appendTarget(new StringBuilder(128)).toString();
+	}
+
+
+	private StringBuilder appendTarget(StringBuilder target) {
+		target.append(template.getPath());
+		char separator = '?';
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				target.append(separator).append(template.getPrefix(i));
+				appendEncoded(target, values[i]);
+				separator = '&';
+			}
+		}
+		if (format != null) {
+			target.append(separator).append(FORMAT_PREFIX).append(format.name());
+		}
+		return target;
+	}
+
+
+	/*
+	 * Append a value encoded as a form field. The values of the TCIA queries are mostly UIDs and names that need no
+	 * encoding, which are appended as they are.
+	 */
+	static void appendEncoded(StringBuilder target, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (!isUnreserved(value.charAt(i))) {
+				target.append(value, 0, i).append(encode(value.substring(i)));
+				return;
+			}
+		}
+		target.append(value);
+	}
+
+
+	static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	private static boolean isUnreserved(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+				c == '.' || c == '-' || c == '_' || c == '*';
+	}
+}
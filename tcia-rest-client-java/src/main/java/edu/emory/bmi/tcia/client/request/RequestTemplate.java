@@ -0,0 +1,184 @@
+package edu.emory.bmi.tcia.client.request;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
+import edu.emory.bmi.tcia.client.definitions.ServiceEndpoints;
+
+
+/**
+ * The compiled template of the requests to an endpoint: its path and the query parameters it accepts, with their
+ * encoded prefixes computed once. A template is immutable and shared; each request starts a Query from it:
+ * <pre>
+ * URI uri = RequestTemplate.GET_SERIES.query().collection("TCGA-BRCA").modality("MR").format(OutputFormat.json)
+ *         .toURI(tcia.getResourceUrl());
+ * </pre>
+ * A new endpoint is a new template here, and a method of the clients calling it.
+ */
+public final class RequestTemplate {
+
+	private static final Map<String, RequestTemplate> TEMPLATES = new LinkedHashMap<>();
+
+	public static final RequestTemplate GET_COLLECTION_VALUES = register(ServiceEndpoints.getCollectionValues);
+	public static final RequestTemplate GET_MODALITY_VALUES = register(ServiceEndpoints.getModalityValues,
+			DICOMAttributes.COLLECTION, DICOMAttributes.BODY_PART_EXAMINED);
+	public static final RequestTemplate GET_BODY_PART_VALUES = register(ServiceEndpoints.getBodyPartValues,
+			DICOMAttributes.COLLECTION, DICOMAttributes.MODALITY);
+	public static final RequestTemplate GET_MANUFACTURER_VALUES = register(ServiceEndpoints.getManufacturerValues,
+			DICOMAttributes.COLLECTION, DICOMAttributes.BODY_PART_EXAMINED, DICOMAttributes.MODALITY);
+	public static final RequestTemplate GET_PATIENT = register(ServiceEndpoints.getPatient,
+			DICOMAttributes.COLLECTION);
+	public static final RequestTemplate PATIENTS_BY_MODALITY = register(ServiceEndpoints.PatientsByModality,
+			DICOMAttributes.COLLECTION, DICOMAttributes.MODALITY);
+	public static final RequestTemplate NEW_PATIENTS_IN_COLLECTION = register(ServiceEndpoints.NewPatientsInCollection,
+			DICOMAttributes.DATE, DICOMAttributes.COLLECTION);
+	public static final RequestTemplate GET_PATIENT_STUDY = register(ServiceEndpoints.getPatientStudy,
+			DICOMAttributes.COLLECTION, DICOMAttributes.PATIENT_ID, DICOMAttributes.STUDY_INSTANCE_UID);
+	public static final RequestTemplate NEW_STUDIES_IN_PATIENT_COLLECTION = register(
+			ServiceEndpoints.NewStudiesInPatientCollection,
+			DICOMAttributes.DATE, DICOMAttributes.COLLECTION, DICOMAttributes.PATIENT_ID);
+	public static final RequestTemplate GET_SERIES = register(ServiceEndpoints.getSeries,
+			DICOMAttributes.COLLECTION, DICOMAttributes.STUDY_INSTANCE_UID, DICOMAttributes.MODALITY,
+			DICOMAttributes.PATIENT_ID, DICOMAttributes.SERIES_INSTANCE_UID, DICOMAttributes.BODY_PART_EXAMINED,
+			DICOMAttributes.MANUFACTURER, DICOMAttributes.MANUFACTURER_MODEL_NAME);
+	public static final RequestTemplate GET_SERIES_SIZE = register(ServiceEndpoints.getSeriesSize,
+			DICOMAttributes.SERIES_INSTANCE_UID);
+	public static final RequestTemplate GET_SOP_INSTANCE_UIDS = register(ServiceEndpoints.getSOPInstanceUIDs,
+			DICOMAttributes.SERIES_INSTANCE_UID);
+	public static final RequestTemplate GET_IMAGE = register(ServiceEndpoints.getImage,
+			DICOMAttributes.SERIES_INSTANCE_UID);
+	public static final RequestTemplate GET_SINGLE_IMAGE = register(ServiceEndpoints.getSingleImage,
+			DICOMAttributes.SERIES_INSTANCE_UID, DICOMAttributes.SOP_INSTANCE_UID);
+	public static final RequestTemplate GET_SHARED_LIST = register(ServiceEndpoints.getSharedList,
+			DICOMAttributes.NAME);
+
+	private final String endpoint;
+	private final String path;
+	private final String[] parameters;
+	private final String[] prefixes;
+
+
+	/**
+	 * Compile a template.
+	 * @param endpoint the endpoint, such as getSeries
+	 * @param parameters the names of the query parameters the endpoint accepts, in the order they are sent
+	 */
+	public RequestTemplate(String endpoint, String... parameters) {
+		this.endpoint = endpoint;
+		this.path = "/" + endpoint;
+		this.parameters = parameters.clone();
+		this.prefixes = new String[parameters.length];
+		for (int i = 0; i < parameters.length; i++) {
+			prefixes[i] = Query.encode(parameters[i]) + "=";
+		}
+	}
+
+
+	/**
+	 * Get the template of an endpoint of the TCIA service.
+	 * @param endpoint the endpoint, such as getSeries
+	 * @return the template, or null if the endpoint is unknown
+	 */
+	public static RequestTemplate forEndpoint(String endpoint) {
+		return TEMPLATES.get(endpoint);
+	}
+
+
+	/**
+	 * @return the templates of all the endpoints of the TCIA service
+	 */
+	public static List<RequestTemplate> getTemplates() {
+		return Collections.unmodifiableList(new ArrayList<>(TEMPLATES.values()));
+	}
+
+
+	/**
+	 * Start a query of this template, without any parameter.
+	 * @return the new query
+	 */
+	public Query query() {
+		return new Query(this);
+	}
+
+
+	/**
+	 * @return the endpoint
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+
+	/**
+	 * @return the names of the query parameters the endpoint accepts
+	 */
+	public List<String> getParameters() {
+		return Collections.unmodifiableList(Arrays.asList(parameters));
+	}
+
+
+	/**
+	 * @param name the name of a query parameter
+	 * @return whether the endpoint accepts the parameter
+	 */
+	public boolean accepts(String name) {
+		return indexOf(name) >= 0;
+	}
+
+
+	@Override
+	public String toString() {
+		return parameters.length == 0 ? endpoint : endpoint + Arrays.toString(parameters);
+	}
+
+
+	/*
+	 * The position of a parameter, compared by identity first as the callers mostly pass the DICOMAttributes
+	 * constants.
+	 */
+	int indexOf(String name) {
+		for (int i = 0; i < parameters.length; i++) {
+			if (parameters[i] == name) {
+				return i;
+			}
+		}
+		for (int i = 0; i < parameters.length; i++) {
+			if (parameters[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+
+	int getParameterCount() {
+		return parameters.length;
+	}
+
+
+	String getParameter(int index) {
+		return parameters[index];
+	}
+
+
+	String getPrefix(int index) {
+		return prefixes[index];
+	}
+
+
+	String getPath() {
+		return path;
+	}
+
+
+	private static RequestTemplate register(String endpoint, String... parameters) {
+		RequestTemplate template = new RequestTemplate(endpoint, parameters);
+		TEMPLATES.put(endpoint, template);
+		return template;
+	}
+}
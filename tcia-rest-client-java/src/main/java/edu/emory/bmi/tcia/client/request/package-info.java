@@ -0,0 +1,4 @@
+/**
+ * The compiled request templates of the TCIA endpoints, and the fluent queries that encode them into request URIs.
+ */
+package edu.emory.bmi.tcia.client.request;
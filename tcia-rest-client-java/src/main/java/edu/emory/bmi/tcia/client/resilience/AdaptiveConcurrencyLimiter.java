@@ -0,0 +1,207 @@
+package edu.emory.bmi.tcia.client.resilience;
+
+import java.io.InterruptedIOException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * An adaptive limit of the concurrent requests to the TCIA server, by additive increase and multiplicative decrease
+ * (AIMD). Each successful request with a latency close to the baseline grows the limit by about one per round of
+ * requests. A 5xx or 429 response, a failed connection or a latency spike shrinks it by the backoff ratio, at most
+ * once per round, so that a burst of failures from the same round counts as a single signal.
+ * <p>
+ * The baseline latency is a slow moving average of the latencies within the tolerance, so that the limit stops
+ * growing as soon as the server starts queueing the requests.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	public static final int DEFAULT_INITIAL_LIMIT = 4;
+	public static final int DEFAULT_MAX_LIMIT = 64;
+
+	// The decrease of the limit on an overload signal.
+	private static final double BACKOFF_RATIO = 0.7;
+
+	// A latency above the baseline by this factor, and by at least the floor (ms), is a spike.
+	private static final double LATENCY_TOLERANCE = 2.0;
+	private static final long LATENCY_SPIKE_FLOOR = 50;
+
+	// The weight of a new latency in the baseline and in the smoothed latency.
+	private static final double BASELINE_ALPHA = 0.05;
+	private static final double SMOOTHED_ALPHA = 0.2;
+
+	private static Logger logger = LogManager.getLogger(AdaptiveConcurrencyLimiter.class.getName());
+
+	private final int minLimit;
+	private final int maxLimit;
+
+	private double limit;
+	private int inFlight;
+	private double baselineLatency = -1;
+	private double smoothedLatency = -1;
+	private long lastDecrease;
+
+
+	/**
+	 * Create a limiter with the default bounds.
+	 */
+	public AdaptiveConcurrencyLimiter() {
+		this(DEFAULT_MIN_LIMIT, DEFAULT_INITIAL_LIMIT, DEFAULT_MAX_LIMIT);
+	}
+
+
+	/**
+	 * Create a limiter.
+	 * @param minLimit the lowest limit
+	 * @param initialLimit the limit to start from
+	 * @param maxLimit the highest limit
+	 */
+	public AdaptiveConcurrencyLimiter(int minLimit, int initialLimit, int maxLimit) {
+		if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+			throw new IllegalArgumentException("Invalid limits: " + minLimit + " <= " + initialLimit + " <= " +
+					maxLimit);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = initialLimit;
+	}
+
+
+	/**
+	 * Wait until a request may be sent under the current limit.
+	 * @return the permit of the request, to be released when the request completes
+	 * @throws InterruptedIOException if interrupted while waiting
+	 */
+	public Permit acquire() throws InterruptedIOException {
+		synchronized (this) {
+			while (inFlight >= (int) limit) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for a request permit");
+				}
+			}
+			inFlight++;
+		}
+		return new Permit();
+	}
+
+
+	/**
+	 * @return the current limit of concurrent requests
+	 */
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+
+	/**
+	 * @return the number of requests currently holding a permit
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+
+	/**
+	 * @return the baseline latency (ms), or -1 before the first request
+	 */
+	public synchronized double getBaselineLatency() {
+		return baselineLatency;
+	}
+
+
+	private synchronized void onSuccess(long latency) {
+		if (baselineLatency < 0) {
+			baselineLatency = latency;
+			smoothedLatency = latency;
+		}
+		smoothedLatency += SMOOTHED_ALPHA * (latency - smoothedLatency);
+		if (latency > baselineLatency * LATENCY_TOLERANCE && latency - baselineLatency > LATENCY_SPIKE_FLOOR) {
+			onOverload("a latency of " + latency + " ms over a baseline of " + Math.round(baselineLatency) + " ms");
+			return;
+		}
+		baselineLatency += BASELINE_ALPHA * (latency - baselineLatency);
+		// Only grow a limit that is being used, so that an idle client does not accumulate a large limit.
+		if (inFlight >= (int) limit / 2) {
+			limit = Math.min(maxLimit, limit + 1 / limit);
+		}
+	}
+
+
+	private synchronized void onOverload(String reason) {
+		long now = System.currentTimeMillis();
+		// A round of requests lasts about the smoothed latency; decrease once per round.
+		if (now - lastDecrease < Math.max(smoothedLatency, 1)) {
+			return;
+		}
+		lastDecrease = now;
+		double previous = limit;
+		limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+		if ((int) previous != (int) limit) {
+			logger.info("Concurrency limit decreased from " + (int) previous + " to " + (int) limit + " on " + reason);
+		}
+	}
+
+
+	private synchronized void release() {
+		inFlight--;
+		notifyAll();
+	}
+
+
+	/**
+	 * The permit of a single request. Report the outcome of the request once, and release the permit when its
+	 * response has been consumed.
+	 */
+	public class Permit {
+		private final long startTime = System.currentTimeMillis();
+		private boolean recorded;
+		private boolean released;
+
+		/**
+		 * Record the status code of the response, with the latency since the permit was acquired.
+		 * @param statusCode the status code of the response
+		 */
+		public void onResponse(int statusCode) {
+			if (markRecorded()) {
+				if (statusCode == 429 || statusCode >= 500) {
+					onOverload("a response " + statusCode);
+				} else if (statusCode < 400) {
+					onSuccess(System.currentTimeMillis() - startTime);
+				}
+			}
+		}
+
+		/**
+		 * Record a request that failed without a response, such as a reset connection or a timeout.
+		 */
+		public void onFailure() {
+			if (markRecorded()) {
+				onOverload("a failed request");
+			}
+		}
+
+		/**
+		 * Release the permit. Releasing more than once has no effect.
+		 */
+		public void release() {
+			synchronized (this) {
+				if (released) {
+					return;
+				}
+				released = true;
+			}
+			AdaptiveConcurrencyLimiter.this.release();
+		}
+
+		private synchronized boolean markRecorded() {
+			boolean first = !recorded;
+			recorded = true;
+			return first;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package edu.emory.bmi.tcia.client.resilience;
+
+import edu.emory.bmi.tcia.client.exceptions.CircuitBreakerOpenException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * A circuit breaker of an endpoint. After a number of consecutive failures, the breaker opens, and the requests fail
+ * fast without reaching the server. Once the open duration has elapsed, a single trial request is let through: its
+ * success closes the breaker, and its failure opens it again.
+ */
+public class CircuitBreaker {
+
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	public static final long DEFAULT_OPEN_MILLIS = 30000;
+
+	private static Logger logger = LogManager.getLogger(CircuitBreaker.class.getName());
+
+	/**
+	 * The states of a circuit breaker.
+	 */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+	private final int failureThreshold;
+	private final long openMillis;
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+	private boolean trialInFlight;
+
+
+	/**
+	 * Create a circuit breaker.
+	 * @param name the name of the breaker, such as its endpoint
+	 * @param failureThreshold the number of consecutive failures that opens the breaker
+	 * @param openMillis how long (ms) the breaker stays open before a trial request
+	 */
+	public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+		if (failureThreshold < 1) {
+			throw new IllegalArgumentException("The failure threshold must be at least 1: " + failureThreshold);
+		}
+		this.name = name;
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+
+	/**
+	 * Let a request through, or fail fast if the breaker is open.
+	 * @param requestUrl the URL of the request, for the exception
+	 * @throws CircuitBreakerOpenException if the breaker is open, or if its trial request is in flight
+	 */
+	public synchronized void acquire(String requestUrl) throws CircuitBreakerOpenException {
+		long now = System.currentTimeMillis();
+		if (state == State.OPEN) {
+			if (now - openedAt < openMillis) {
+				throw new CircuitBreakerOpenException("The circuit breaker of " + name + " is open", requestUrl,
+						openMillis - (now - openedAt));
+			}
+			state = State.HALF_OPEN;
+			trialInFlight = false;
+		}
+		if (state == State.HALF_OPEN) {
+			if (trialInFlight) {
+				throw new CircuitBreakerOpenException("The circuit breaker of " + name + " is waiting for a trial",
+						requestUrl, 0);
+			}
+			trialInFlight = true;
+		}
+	}
+
+
+	/**
+	 * Record a request that reached a healthy server.
+	 */
+	public synchronized void onSuccess() {
+		if (state != State.CLOSED) {
+			logger.info("The circuit breaker of " + name + " is closed");
+		}
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		trialInFlight = false;
+	}
+
+
+	/**
+	 * Record a request that failed on a transient error.
+	 */
+	public synchronized void onFailure() {
+		trialInFlight = false;
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+			logger.warn("The circuit breaker of " + name + " is open after " + consecutiveFailures +
+					" consecutive failures");
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+
+	public synchronized State getState() {
+		return state;
+	}
+
+
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,13 @@
+package edu.emory.bmi.tcia.client.resilience;
+
+import java.io.IOException;
+
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+
+/**
+ * A single attempt of a request to the TCIA server.
+ * @param <T> the result of the request
+ */
+public interface RequestCall<T> {
+	T call() throws TCIAClientException, IOException;
+}
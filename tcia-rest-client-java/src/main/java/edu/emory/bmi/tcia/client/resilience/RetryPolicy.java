@@ -0,0 +1,272 @@
+package edu.emory.bmi.tcia.client.resilience;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import edu.emory.bmi.tcia.client.exceptions.CircuitBreakerOpenException;
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import edu.emory.bmi.tcia.client.exceptions.TCIAServerException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * The retry policy of the idempotent GET requests. A request failing on a transient error, that is an IO error such
+ * as a reset connection or a timeout, or a 429, 502, 503 or 504 response, is attempted again after an exponential
+ * backoff with full jitter: a random delay between 0 and min(maxDelay, baseDelay * 2^(attempt - 1)). A Retry-After
+ * sent by the server is honoured, unless it exceeds the maximum delay, in which case the request fails right away.
+ * <p>
+ * The policy of the client may be overridden for the requests of the current thread:
+ * <pre>
+ * try (RetryPolicy.Scope ignored = RetryPolicy.override(RetryPolicy.none())) {
+ *     client.getSeries(...);
+ * }
+ * </pre>
+ */
+public class RetryPolicy {
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final long DEFAULT_BASE_DELAY_MS = 200;
+	public static final long DEFAULT_MAX_DELAY_MS = 30000;
+
+	private static final ThreadLocal<RetryPolicy> OVERRIDE = new ThreadLocal<>();
+
+	private static Logger logger = LogManager.getLogger(RetryPolicy.class.getName());
+
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private long baseDelay = DEFAULT_BASE_DELAY_MS;
+	private long maxDelay = DEFAULT_MAX_DELAY_MS;
+
+
+	/**
+	 * @return a policy that never retries
+	 */
+	public static RetryPolicy none() {
+		return new RetryPolicy().setMaxAttempts(1);
+	}
+
+
+	/**
+	 * Override the policy of the client for the requests of the current thread, until the override is closed.
+	 * @param policy the retry policy of the current thread
+	 * @return the scope of the override, which restores the previous policy on close
+	 */
+	public static Scope override(RetryPolicy policy) {
+		Scope scope = new Scope(OVERRIDE.get());
+		OVERRIDE.set(policy);
+		return scope;
+	}
+
+
+	/**
+	 * Get the policy of the current thread.
+	 * @param defaultPolicy the policy of the client
+	 * @return the overriding policy of the current thread, or the default policy
+	 */
+	public static RetryPolicy current(RetryPolicy defaultPolicy) {
+		RetryPolicy policy = OVERRIDE.get();
+		return policy != null ? policy : defaultPolicy;
+	}
+
+
+	/**
+	 * Execute a request under this policy, and under the given circuit breaker.
+	 * @param breaker the circuit breaker of the endpoint, or null
+	 * @param requestUrl the URL of the request, for the logs and exceptions
+	 * @param call a single attempt of the request
+	 * @param <T> the result of the request
+	 * @return the result of the first successful attempt
+	 * @throws TCIAClientException if the last attempt failed with a TCIA client exception, or if the breaker is open
+	 * @throws IOException if the last attempt failed with an IO exception
+	 */
+	public <T> T execute(CircuitBreaker breaker, String requestUrl, RequestCall<T> call)
+			throws TCIAClientException, IOException {
+		return execute(breaker, requestUrl, call, maxAttempts);
+	}
+
+
+	/**
+	 * Execute a request under this policy with a specific number of attempts, and under the given circuit breaker.
+	 * @param breaker the circuit breaker of the endpoint, or null
+	 * @param requestUrl the URL of the request, for the logs and exceptions
+	 * @param call a single attempt of the request
+	 * @param attempts the maximum number of attempts
+	 * @param <T> the result of the request
+	 * @return the result of the first successful attempt
+	 * @throws TCIAClientException if the last attempt failed with a TCIA client exception, or if the breaker is open
+	 * @throws IOException if the last attempt failed with an IO exception
+	 */
+	public <T> T execute(CircuitBreaker breaker, String requestUrl, RequestCall<T> call, int attempts)
+			throws TCIAClientException, IOException {
+		for (int attempt = 1; ; attempt++) {
+			if (breaker != null) {
+				breaker.acquire(requestUrl);
+			}
+
+			Exception failure;
+			try {
+				T result = call.call();
+				if (breaker != null) {
+					breaker.onSuccess();
+				}
+				return result;
+			} catch (TCIAClientException | IOException e) {
+				failure = e;
+			} catch (RuntimeException e) {
+				if (breaker != null) {
+					breaker.onFailure();
+				}
+				throw e;
+			}
+
+			boolean transientFailure = isTransient(failure);
+			if (breaker != null) {
+				// A server that rejects a request (4xx) is still healthy, while a 5xx counts even if not retried.
+				if (transientFailure || isServerError(failure)) {
+					breaker.onFailure();
+				} else {
+					breaker.onSuccess();
+				}
+			}
+			long delay = transientFailure && attempt < attempts ? getDelay(attempt, getRetryAfter(failure)) : -1;
+			if (delay < 0) {
+				throw rethrow(failure);
+			}
+
+			logger.warn("Attempt " + attempt + " of " + attempts + " of " + requestUrl + " failed, retrying in " +
+					delay + " ms: " + failure);
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to retry " + requestUrl);
+			}
+		}
+	}
+
+
+	/**
+	 * Check whether a failure is transient, and worth another attempt.
+	 * @param e the failure of an attempt
+	 * @return true for the IO errors and the 429, 502, 503 and 504 responses
+	 */
+	public boolean isTransient(Exception e) {
+		if (Thread.currentThread().isInterrupted() || e instanceof CircuitBreakerOpenException) {
+			return false;
+		}
+		if (e instanceof TCIAServerException) {
+			int statusCode = ((TCIAServerException) e).getStatusCode();
+			return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+		}
+		return e instanceof IOException;
+	}
+
+
+	/*
+	 * Whether a failure is a 5xx response, which shows that the server is unhealthy.
+	 */
+	private static boolean isServerError(Exception e) {
+		return e instanceof TCIAServerException && ((TCIAServerException) e).getStatusCode() >= 500;
+	}
+
+
+	/**
+	 * Get the delay before the next attempt.
+	 * @param attempt the number of the failed attempt, from 1
+	 * @param retryAfter the delay (ms) requested by the server, or -1
+	 * @return the delay (ms), or -1 if the server asks to wait longer than the maximum delay
+	 */
+	public long getDelay(int attempt, long retryAfter) {
+		if (retryAfter >= 0) {
+			return retryAfter <= maxDelay ? retryAfter : -1;
+		}
+		// The doubling saturates at the maximum delay rather than overflowing.
+		int shift = Math.max(0, attempt - 1);
+		long ceiling = shift >= Long.SIZE - 1 || baseDelay > maxDelay >> shift ? maxDelay : baseDelay << shift;
+		return ThreadLocalRandom.current().nextLong(ceiling < Long.MAX_VALUE ? ceiling + 1 : ceiling);
+	}
+
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @param maxAttempts the maximum number of attempts of a request, 1 to never retry
+	 * @return this policy
+	 */
+	public RetryPolicy setMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("The maximum attempts must be at least 1: " + maxAttempts);
+		}
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+	public long getBaseDelay() {
+		return baseDelay;
+	}
+
+	/**
+	 * @param baseDelay the ceiling (ms) of the delay after the first failed attempt, doubled after each attempt
+	 * @return this policy
+	 */
+	public RetryPolicy setBaseDelay(long baseDelay) {
+		if (baseDelay < 0) {
+			throw new IllegalArgumentException("The base delay must not be negative: " + baseDelay);
+		}
+		this.baseDelay = baseDelay;
+		return this;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * @param maxDelay the maximum delay (ms) between two attempts
+	 * @return this policy
+	 */
+	public RetryPolicy setMaxDelay(long maxDelay) {
+		if (maxDelay < 0) {
+			throw new IllegalArgumentException("The maximum delay must not be negative: " + maxDelay);
+		}
+		this.maxDelay = maxDelay;
+		return this;
+	}
+
+
+	private static long getRetryAfter(Exception e) {
+		return e instanceof TCIAServerException ? ((TCIAServerException) e).getRetryAfterMillis() : -1;
+	}
+
+
+	private static TCIAClientException rethrow(Exception e) throws IOException {
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		}
+		return (TCIAClientException) e;
+	}
+
+
+	/**
+	 * The scope of an override of the policy of the current thread, which restores the previous policy on close.
+	 */
+	public static class Scope implements AutoCloseable {
+		private final RetryPolicy previous;
+
+		private Scope(RetryPolicy previous) {
+			this.previous = previous;
+		}
+
+		@Override
+		public void close() {
+			if (previous != null) {
+				OVERRIDE.set(previous);
+			} else {
+				OVERRIDE.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,4 @@
+/**
+ * The controls that protect the TCIA server and the client from overload and transient failures.
+ */
+package edu.emory.bmi.tcia.client.resilience;
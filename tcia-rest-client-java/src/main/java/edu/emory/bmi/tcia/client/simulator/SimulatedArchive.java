@@ -0,0 +1,327 @@
+package edu.emory.bmi.tcia.client.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
+
+/**
+ * A generated archive of collections, patients, studies, series and instances. The archive is a function of its
+ * seed and shape, so that two simulators with the same configuration serve the same data. The content of the
+ * instances is generated on request, rather than kept in memory.
+ */
+class SimulatedArchive {
+
+	// The UUID-derived root, which needs no registration.
+	private static final String UID_ROOT = "2.25.";
+	private static final String CT_IMAGE_STORAGE = "1.2.840.10008.5.1.4.1.1.2";
+	private static final String EXPLICIT_VR_LITTLE_ENDIAN = "1.2.840.10008.1.2.1";
+	private static final int PREAMBLE_LENGTH = 128;
+
+	private static final String[][] EQUIPMENT = {
+			{"CT", "CHEST", "SIEMENS", "SOMATOM Definition AS+", "syngo CT 2012B", "Recon 2: CHEST 1.25mm"},
+			{"MR", "BRAIN", "GE MEDICAL SYSTEMS", "GENESIS_SIGNA", "LX", "AX T1 POST"},
+			{"PT", "WHOLEBODY", "Philips Medical Systems", "GEMINI TF TOF 64", "3.3.2", "WB 3D MAC"},
+			{"MR", "BREAST", "GE MEDICAL SYSTEMS", "SIGNA HDxt", "15", "SAG T2 FSE"}
+	};
+
+	private final long seed;
+	private final int instanceSize;
+	private final int seriesPerStudy;
+	private final int instancesPerSeries;
+	private final String root;
+	private final Random random;
+	// The rows are replaced rather than updated by a new study, so that the server threads iterate them unlocked.
+	private volatile List<Map<String, Object>> patients = new ArrayList<>();
+	private volatile List<Map<String, Object>> studies = new ArrayList<>();
+	private volatile List<Map<String, Object>> series = new ArrayList<>();
+	private final Map<String, Map<String, Object>> patientByID = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, Object>> seriesByUID = new ConcurrentHashMap<>();
+	private final Map<String, List<String>> instances = new ConcurrentHashMap<>();
+	private final Map<String, String> seriesOfInstance = new ConcurrentHashMap<>();
+
+
+	SimulatedArchive(long seed, int collections, int patientsPerCollection, int studiesPerPatient,
+	                 int seriesPerStudy, int instancesPerSeries, int instanceSize) {
+		this.seed = seed;
+		this.instanceSize = instanceSize;
+		this.seriesPerStudy = seriesPerStudy;
+		this.instancesPerSeries = instancesPerSeries;
+		this.root = UID_ROOT + (seed & 0xffffffffL) + ".";
+		this.random = new Random(seed);
+
+		for (int c = 1; c <= collections; c++) {
+			String collection = "SIM-COLLECTION-" + c;
+			for (int p = 1; p <= patientsPerCollection; p++) {
+				String patientID = String.format("SIM-%d-%04d", c, p);
+				Map<String, Object> patient = addPatient(patients, collection, patientID, p % 2 == 0 ? "F" : "M");
+				for (int st = 1; st <= studiesPerPatient; st++) {
+					String studyDate = LocalDate.of(2000, 1, 1).plusDays(random.nextInt(19 * 365)).toString();
+					addStudy(studies, series, patient, root + c + "." + p + "." + st, studyDate,
+							"Simulated study " + st);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Publish a new study, with its series and instances, as the TCIA service does when a collection grows.
+	 * @return the StudyInstanceUID of the new study
+	 */
+	synchronized String publishStudy(String collection, String patientID, String date) {
+		List<Map<String, Object>> newPatients = new ArrayList<>(patients);
+		List<Map<String, Object>> newStudies = new ArrayList<>(studies);
+		List<Map<String, Object>> newSeries = new ArrayList<>(series);
+		Map<String, Object> patient = patientByID.get(patientID);
+		if (patient == null) {
+			patient = addPatient(newPatients, collection, patientID, "O");
+		}
+		String studyUID = root + "9." + newStudies.size();
+		addStudy(newStudies, newSeries, patient, studyUID, date, "Published study");
+		patients = newPatients;
+		studies = newStudies;
+		series = newSeries;
+		return studyUID;
+	}
+
+
+	private Map<String, Object> addPatient(List<Map<String, Object>> patientRows, String collection, String patientID,
+	                                       String sex) {
+		Map<String, Object> patient = new LinkedHashMap<>();
+		patient.put(DICOMAttributes.PATIENT_ID, patientID);
+		patient.put("PatientName", patientID);
+		patient.put("PatientSex", sex);
+		patient.put(DICOMAttributes.COLLECTION, collection);
+		patientRows.add(patient);
+		patientByID.put(patientID, patient);
+		return patient;
+	}
+
+
+	private void addStudy(List<Map<String, Object>> studyRows, List<Map<String, Object>> seriesRows,
+	                      Map<String, Object> patient, String studyUID, String studyDate, String description) {
+		Map<String, Object> study = new LinkedHashMap<>();
+		study.put(DICOMAttributes.STUDY_INSTANCE_UID, studyUID);
+		study.put("StudyDate", studyDate);
+		study.put("StudyDescription", description);
+		study.put("PatientAge", String.format("%03dY", 20 + random.nextInt(60)));
+		study.put(DICOMAttributes.PATIENT_ID, patient.get(DICOMAttributes.PATIENT_ID));
+		study.put("PatientName", patient.get("PatientName"));
+		study.put("PatientSex", patient.get("PatientSex"));
+		study.put(DICOMAttributes.COLLECTION, patient.get(DICOMAttributes.COLLECTION));
+		study.put("SeriesCount", seriesPerStudy);
+		studyRows.add(study);
+
+		for (int se = 1; se <= seriesPerStudy; se++) {
+			String seriesUID = studyUID + "." + se;
+			String[] equipment = EQUIPMENT[random.nextInt(EQUIPMENT.length)];
+			Map<String, Object> s = new LinkedHashMap<>();
+			s.put(DICOMAttributes.SERIES_INSTANCE_UID, seriesUID);
+			s.put(DICOMAttributes.STUDY_INSTANCE_UID, studyUID);
+			s.put(DICOMAttributes.MODALITY, equipment[0]);
+			s.put("ProtocolName", equipment[1] + " routine");
+			s.put("SeriesDate", studyDate);
+			s.put("SeriesDescription", equipment[5]);
+			s.put(DICOMAttributes.BODY_PART_EXAMINED, equipment[1]);
+			s.put("SeriesNumber", String.valueOf(se));
+			s.put("AnnotationsFlag", "NO");
+			s.put(DICOMAttributes.COLLECTION, patient.get(DICOMAttributes.COLLECTION));
+			s.put(DICOMAttributes.PATIENT_ID, patient.get(DICOMAttributes.PATIENT_ID));
+			s.put(DICOMAttributes.MANUFACTURER, equipment[2]);
+			s.put(DICOMAttributes.MANUFACTURER_MODEL_NAME, equipment[3]);
+			s.put("SoftwareVersions", equipment[4]);
+			s.put("ImageCount", instancesPerSeries);
+			seriesRows.add(s);
+			seriesByUID.put(seriesUID, s);
+
+			List<String> sopInstanceUIDs = new ArrayList<>();
+			for (int i = 1; i <= instancesPerSeries; i++) {
+				String sopInstanceUID = seriesUID + "." + i;
+				sopInstanceUIDs.add(sopInstanceUID);
+				seriesOfInstance.put(sopInstanceUID, seriesUID);
+			}
+			instances.put(seriesUID, sopInstanceUIDs);
+		}
+	}
+
+
+	List<Map<String, Object>> getPatients() {
+		return patients;
+	}
+
+
+	List<Map<String, Object>> getStudies() {
+		return studies;
+	}
+
+
+	List<Map<String, Object>> getSeries() {
+		return series;
+	}
+
+
+	boolean hasSeries(String seriesInstanceUID) {
+		return seriesByUID.containsKey(seriesInstanceUID);
+	}
+
+
+	/**
+	 * @return the SOPInstanceUIDs of a series, or null if the series does not exist
+	 */
+	List<String> getSOPInstanceUIDs(String seriesInstanceUID) {
+		return instances.get(seriesInstanceUID);
+	}
+
+
+	/**
+	 * @return whether the instance exists and belongs to the series
+	 */
+	boolean hasInstance(String seriesInstanceUID, String sopInstanceUID) {
+		return seriesInstanceUID.equals(seriesOfInstance.get(sopInstanceUID));
+	}
+
+
+	long getInstanceSize() {
+		return instanceSize;
+	}
+
+
+	/**
+	 * Select the rows that match the given query parameters. The rows must have an equal value for each of the
+	 * given names whose parameter is set.
+	 */
+	static List<Map<String, Object>> select(List<Map<String, Object>> rows, Map<String, String> parameters,
+	                                        String... names) {
+		List<Map<String, Object>> selected = new ArrayList<>();
+		for (Map<String, Object> row : rows) {
+			if (matches(row, parameters, names)) {
+				selected.add(row);
+			}
+		}
+		return selected;
+	}
+
+
+	static boolean matches(Map<String, Object> row, Map<String, String> parameters, String... names) {
+		for (String name : names) {
+			String value = parameters.get(name);
+			if (value != null && !value.equals(String.valueOf(row.get(name)))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * The distinct values of a field, in order of appearance, as rows of that single field.
+	 */
+	static List<Map<String, Object>> distinct(List<Map<String, Object>> rows, String field) {
+		Set<Object> values = new LinkedHashSet<>();
+		for (Map<String, Object> row : rows) {
+			values.add(row.get(field));
+		}
+		List<Map<String, Object>> distinct = new ArrayList<>();
+		for (Object value : values) {
+			Map<String, Object> row = new LinkedHashMap<>();
+			row.put(field, value);
+			distinct.add(row);
+		}
+		return distinct;
+	}
+
+
+	/**
+	 * Generate a DICOM Part 10 file: the file meta information in explicit VR little endian, with the SOP Instance
+	 * UID in (0002,0003), followed by pixel data of pseudo-random bytes, up to the instance size.
+	 */
+	byte[] getInstance(String sopInstanceUID) {
+		ByteBuffer meta = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+		putElement(meta, 0x0001, "OB", new byte[]{0, 1});
+		putElement(meta, 0x0002, "UI", uid(CT_IMAGE_STORAGE));
+		putElement(meta, 0x0003, "UI", uid(sopInstanceUID));
+		putElement(meta, 0x0010, "UI", uid(EXPLICIT_VR_LITTLE_ENDIAN));
+		meta.flip();
+
+		int header = PREAMBLE_LENGTH + 4 + 12 + meta.remaining() + 12;
+		int pixelLength = Math.max(0, instanceSize - header) & ~1;
+		ByteBuffer data = ByteBuffer.allocate(header + pixelLength).order(ByteOrder.LITTLE_ENDIAN);
+		data.position(PREAMBLE_LENGTH);
+		data.put("DICM".getBytes(StandardCharsets.US_ASCII));
+		// The group length (0002,0000) counts the bytes of the other meta elements.
+		data.putShort((short) 0x0002).putShort((short) 0x0000).put("UL".getBytes(StandardCharsets.US_ASCII))
+				.putShort((short) 4).putInt(meta.remaining());
+		data.put(meta);
+		data.putShort((short) 0x7FE0).putShort((short) 0x0010).put("OB".getBytes(StandardCharsets.US_ASCII))
+				.putShort((short) 0).putInt(pixelLength);
+
+		byte[] pixels = new byte[pixelLength];
+		new Random(seed ^ sopInstanceUID.hashCode()).nextBytes(pixels);
+		data.put(pixels);
+		return data.array();
+	}
+
+
+	/**
+	 * Generate the ZIP of a series, with an entry per instance, stored without compression as the pixel data
+	 * would barely compress.
+	 */
+	byte[] getImage(String seriesInstanceUID) throws IOException {
+		List<String> sopInstanceUIDs = instances.get(seriesInstanceUID);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(sopInstanceUIDs.size() * (instanceSize + 128));
+		try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+			int number = 1;
+			for (String sopInstanceUID : sopInstanceUIDs) {
+				byte[] instance = getInstance(sopInstanceUID);
+				CRC32 crc = new CRC32();
+				crc.update(instance);
+				ZipEntry entry = new ZipEntry(String.format("1-%03d.dcm", number++));
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(instance.length);
+				entry.setCompressedSize(instance.length);
+				entry.setCrc(crc.getValue());
+				zip.putNextEntry(entry);
+				zip.write(instance);
+				zip.closeEntry();
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+
+	private static void putElement(ByteBuffer buffer, int element, String vr, byte[] value) {
+		buffer.putShort((short) 0x0002).putShort((short) element).put(vr.getBytes(StandardCharsets.US_ASCII));
+		if (vr.equals("OB")) {
+			buffer.putShort((short) 0).putInt(value.length);
+		} else {
+			buffer.putShort((short) value.length);
+		}
+		buffer.put(value);
+	}
+
+
+	/*
+	 * A UID value, padded with a null byte to an even length.
+	 */
+	private static byte[] uid(String uid) {
+		byte[] bytes = uid.getBytes(StandardCharsets.US_ASCII);
+		return bytes.length % 2 == 0 ? bytes : Arrays.copyOf(bytes, bytes.length + 1);
+	}
+}
@@ -0,0 +1,808 @@
+package edu.emory.bmi.tcia.client.simulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
+import edu.emory.bmi.tcia.client.definitions.ServiceEndpoints;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * An in-process simulator of the TCIA server, which implements all the service endpoints over a generated archive,
+ * to test and load-test the client offline. The responses may be shaped with a latency, a bandwidth cap, injected
+ * errors and dropped connections, and a limit of concurrent requests. The metadata of an endpoint, or the ZIP of a
+ * series, may be replaced by a recorded response.
+ * <pre>
+ * try (TCIASimulator simulator = new TCIASimulator().setLatency(50).setBandwidth(10 * 1024 * 1024).start()) {
+ *     TCIAClientUtil.init(simulator.getConf());
+ *     ...
+ * }
+ * </pre>
+ * The shape of the archive is set before start, and the shaping of the responses may change at any time.
+ * <p>
+ * The JDK server delays the small responses until the client acknowledges the previous packet, which adds tens of
+ * milliseconds to each metadata request. The simulator leaves the system properties alone: set
+ * sun.net.httpserver.nodelay to true before the first server of the JVM starts, as the tests and LoadTest do, to
+ * send them right away.
+ */
+public class TCIASimulator implements Closeable {
+
+	public static final String RESOURCE = "/query";
+
+	private static final int CHUNK_SIZE = 16 * 1024;
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static Logger logger = LogManager.getLogger(TCIASimulator.class.getName());
+
+	private long seed = 1;
+	private int collections = 3;
+	private int patientsPerCollection = 10;
+	private int studiesPerPatient = 2;
+	private int seriesPerStudy = 3;
+	private int instancesPerSeries = 10;
+	private int instanceSize = 64 * 1024;
+	private int serverThreads = 32;
+
+	private volatile long latency;
+	private volatile long latencyJitter;
+	private volatile long bandwidth;
+	private volatile Throttle totalThrottle;
+	private volatile double errorRate;
+	private volatile int errorStatus = 503;
+	private volatile int retryAfter = -1;
+	private volatile double dropRate;
+	private volatile int maxConcurrency;
+	private volatile boolean compression = true;
+
+	private final Map<String, byte[]> recordedResponses = new ConcurrentHashMap<>();
+	private final Map<String, byte[]> recordedImages = new ConcurrentHashMap<>();
+	private final Map<String, Integer> recordedImageCounts = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final Random random = new Random();
+
+	private SimulatedArchive archive;
+	private HttpServer server;
+	private ExecutorService executor;
+
+
+	/**
+	 * Start serving on a free port of the loopback interface.
+	 * @return this simulator
+	 * @throws IOException if the server could not be started
+	 */
+	public synchronized TCIASimulator start() throws IOException {
+		random.setSeed(seed);
+		archive = new SimulatedArchive(seed, collections, patientsPerCollection, studiesPerPatient, seriesPerStudy,
+				instancesPerSeries, instanceSize);
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		executor = Executors.newFixedThreadPool(serverThreads, r -> {
+			Thread thread = new Thread(r, "tcia-simulator");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.createContext(RESOURCE, this::handle);
+		server.start();
+		logger.info("The TCIA simulator serves " + archive.getSeries().size() + " series at " + getBaseUrl());
+		return this;
+	}
+
+
+	@Override
+	public synchronized void close() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+
+	/**
+	 * @return the base URL of the simulator, such as http://localhost:port
+	 */
+	public String getBaseUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+
+	/**
+	 * Get a configuration of the client that points to the simulator.
+	 * @return the TCIA configuration, to be given to TCIAClientUtil.init
+	 */
+	public TCIAConf getConf() {
+		TCIAConf tciaConf = new TCIAConf();
+		tciaConf.setBaseurl(getBaseUrl());
+		tciaConf.setResource(RESOURCE);
+		tciaConf.setAuthheader("Authorization");
+		tciaConf.setAuthflag("Basic");
+		tciaConf.setUsername("simulator");
+		tciaConf.setPassword("simulator");
+		return tciaConf;
+	}
+
+
+	/**
+	 * @return the names of the collections of the archive
+	 */
+	public List<String> getCollections() {
+		List<String> names = new ArrayList<>();
+		for (Map<String, Object> row : SimulatedArchive.distinct(archive.getPatients(), DICOMAttributes.COLLECTION)) {
+			names.add((String) row.get(DICOMAttributes.COLLECTION));
+		}
+		return names;
+	}
+
+
+	/**
+	 * @return the patient identifiers of the archive
+	 */
+	public List<String> getPatientIDs() {
+		List<String> patientIDs = new ArrayList<>();
+		for (Map<String, Object> patient : archive.getPatients()) {
+			patientIDs.add((String) patient.get(DICOMAttributes.PATIENT_ID));
+		}
+		return patientIDs;
+	}
+
+
+	/**
+	 * @return the SeriesInstanceUIDs of the archive
+	 */
+	public List<String> getSeriesInstanceUIDs() {
+		List<String> seriesInstanceUIDs = new ArrayList<>();
+		for (Map<String, Object> series : archive.getSeries()) {
+			seriesInstanceUIDs.add((String) series.get(DICOMAttributes.SERIES_INSTANCE_UID));
+		}
+		return seriesInstanceUIDs;
+	}
+
+
+	/**
+	 * @param seriesInstanceUID a SeriesInstanceUID of the archive
+	 * @return the SOPInstanceUIDs of the series, or null if the series does not exist
+	 */
+	public List<String> getSOPInstanceUIDs(String seriesInstanceUID) {
+		return archive.getSOPInstanceUIDs(seriesInstanceUID);
+	}
+
+
+	/**
+	 * Publish a new study in a collection, with the series and instances of the shape of the archive. The new
+	 * patients and studies endpoints return it for any date up to the date of the study.
+	 * @param collection the collection
+	 * @param patientID the patient of the study, a new one if it is not in the archive
+	 * @param date the date of the study, such as 2024-05-31
+	 * @return the StudyInstanceUID of the new study
+	 */
+	public String publishStudy(String collection, String patientID, String date) {
+		return archive.publishStudy(collection, patientID, date);
+	}
+
+
+	/**
+	 * @param endpoint an endpoint, such as getSeries
+	 * @return the number of requests received by the endpoint
+	 */
+	public long getRequestCount(String endpoint) {
+		LongAdder count = requests.get(endpoint);
+		return count != null ? count.sum() : 0;
+	}
+
+
+	/**
+	 * Serve a recorded response for an endpoint, whatever the query parameters and the output format.
+	 * @param endpoint the endpoint, such as getSeries
+	 * @param body the recorded response, or null to serve the generated archive again
+	 * @return this simulator
+	 */
+	public TCIASimulator setRecordedResponse(String endpoint, String body) {
+		if (body != null) {
+			recordedResponses.put(endpoint, body.getBytes(StandardCharsets.UTF_8));
+		} else {
+			recordedResponses.remove(endpoint);
+		}
+		return this;
+	}
+
+
+	/**
+	 * Serve a recorded ZIP for a series, with the number of its files as the imageCount header.
+	 * @param seriesInstanceUID the SeriesInstanceUID
+	 * @param zip the recorded ZIP, or null to serve the generated one again
+	 * @return this simulator
+	 */
+	public TCIASimulator setRecordedImage(String seriesInstanceUID, byte[] zip) {
+		return setRecordedImage(seriesInstanceUID, zip, zip != null ? countFiles(zip) : -1);
+	}
+
+
+	/**
+	 * Serve a recorded ZIP for a series.
+	 * @param seriesInstanceUID the SeriesInstanceUID
+	 * @param zip the recorded ZIP, or null to serve the generated one again
+	 * @param imageCount the imageCount header of the ZIP, or -1 to leave it out
+	 * @return this simulator
+	 */
+	public TCIASimulator setRecordedImage(String seriesInstanceUID, byte[] zip, int imageCount) {
+		if (zip != null) {
+			recordedImages.put(seriesInstanceUID, zip);
+			if (imageCount >= 0) {
+				recordedImageCounts.put(seriesInstanceUID, imageCount);
+			} else {
+				recordedImageCounts.remove(seriesInstanceUID);
+			}
+		} else {
+			recordedImages.remove(seriesInstanceUID);
+			recordedImageCounts.remove(seriesInstanceUID);
+		}
+		return this;
+	}
+
+
+	/**
+	 * @param seed the seed of the generated archive and of the injected failures
+	 * @return this simulator
+	 */
+	public TCIASimulator setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * @param collections the number of collections of the archive
+	 * @return this simulator
+	 */
+	public TCIASimulator setCollections(int collections) {
+		this.collections = collections;
+		return this;
+	}
+
+	/**
+	 * @param patientsPerCollection the number of patients of each collection
+	 * @return this simulator
+	 */
+	public TCIASimulator setPatientsPerCollection(int patientsPerCollection) {
+		this.patientsPerCollection = patientsPerCollection;
+		return this;
+	}
+
+	/**
+	 * @param studiesPerPatient the number of studies of each patient
+	 * @return this simulator
+	 */
+	public TCIASimulator setStudiesPerPatient(int studiesPerPatient) {
+		this.studiesPerPatient = studiesPerPatient;
+		return this;
+	}
+
+	/**
+	 * @param seriesPerStudy the number of series of each study
+	 * @return this simulator
+	 */
+	public TCIASimulator setSeriesPerStudy(int seriesPerStudy) {
+		this.seriesPerStudy = seriesPerStudy;
+		return this;
+	}
+
+	/**
+	 * @param instancesPerSeries the number of instances of each series, which is its imageCount
+	 * @return this simulator
+	 */
+	public TCIASimulator setInstancesPerSeries(int instancesPerSeries) {
+		this.instancesPerSeries = instancesPerSeries;
+		return this;
+	}
+
+	/**
+	 * @param instanceSize the approximate size (bytes) of each DICOM instance
+	 * @return this simulator
+	 */
+	public TCIASimulator setInstanceSize(int instanceSize) {
+		this.instanceSize = instanceSize;
+		return this;
+	}
+
+	/**
+	 * @param serverThreads the number of threads serving the requests, beyond which the requests queue
+	 * @return this simulator
+	 */
+	public TCIASimulator setServerThreads(int serverThreads) {
+		this.serverThreads = serverThreads;
+		return this;
+	}
+
+	/**
+	 * @param latency the delay (ms) before the response head of every request
+	 * @return this simulator
+	 */
+	public TCIASimulator setLatency(long latency) {
+		this.latency = latency;
+		return this;
+	}
+
+	/**
+	 * @param latencyJitter the maximum random delay (ms) added to the latency
+	 * @return this simulator
+	 */
+	public TCIASimulator setLatencyJitter(long latencyJitter) {
+		this.latencyJitter = latencyJitter;
+		return this;
+	}
+
+	/**
+	 * @param bandwidth the cap (bytes per second) of each response, or 0 for none
+	 * @return this simulator
+	 */
+	public TCIASimulator setBandwidth(long bandwidth) {
+		this.bandwidth = bandwidth;
+		return this;
+	}
+
+	/**
+	 * @param totalBandwidth the cap (bytes per second) shared by all the responses, or 0 for none
+	 * @return this simulator
+	 */
+	public TCIASimulator setTotalBandwidth(long totalBandwidth) {
+		this.totalThrottle = totalBandwidth > 0 ? new Throttle(totalBandwidth) : null;
+		return this;
+	}
+
+	/**
+	 * @param errorRate the probability, from 0 to 1, that a request fails with the error status
+	 * @return this simulator
+	 */
+	public TCIASimulator setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+		return this;
+	}
+
+	/**
+	 * @param errorStatus the status code of the injected errors, 503 by default
+	 * @return this simulator
+	 */
+	public TCIASimulator setErrorStatus(int errorStatus) {
+		this.errorStatus = errorStatus;
+		return this;
+	}
+
+	/**
+	 * @param retryAfter the Retry-After (seconds) of the injected errors and of the overloaded responses, or -1 for
+	 * none
+	 * @return this simulator
+	 */
+	public TCIASimulator setRetryAfter(int retryAfter) {
+		this.retryAfter = retryAfter;
+		return this;
+	}
+
+	/**
+	 * @param dropRate the probability, from 0 to 1, that the connection of an image is dropped halfway
+	 * @return this simulator
+	 */
+	public TCIASimulator setDropRate(double dropRate) {
+		this.dropRate = dropRate;
+		return this;
+	}
+
+	/**
+	 * @param maxConcurrency the number of concurrent requests beyond which the requests are rejected with a 503,
+	 * or 0 for no limit
+	 * @return this simulator
+	 */
+	public TCIASimulator setMaxConcurrency(int maxConcurrency) {
+		this.maxConcurrency = maxConcurrency;
+		return this;
+	}
+
+	/**
+	 * @param compression whether to compress the metadata with gzip or deflate, when the request accepts it
+	 * @return this simulator
+	 */
+	public TCIASimulator setCompression(boolean compression) {
+		this.compression = compression;
+		return this;
+	}
+
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		String endpoint = path.substring(path.lastIndexOf('/') + 1);
+		requests.computeIfAbsent(endpoint, e -> new LongAdder()).increment();
+
+		int concurrent = inFlight.incrementAndGet();
+		try {
+			int limit = maxConcurrency;
+			if (limit > 0 && concurrent > limit) {
+				sendError(exchange, 503);
+				return;
+			}
+			delay();
+			if (errorRate > 0 && nextDouble() < errorRate) {
+				sendError(exchange, errorStatus);
+				return;
+			}
+
+			Map<String, String> parameters = new HashMap<>();
+			for (NameValuePair pair : URLEncodedUtils.parse(exchange.getRequestURI(), StandardCharsets.UTF_8)) {
+				parameters.put(pair.getName(), pair.getValue());
+			}
+			if (endpoint.equals(ServiceEndpoints.getImage)) {
+				sendImage(exchange, parameters);
+			} else if (endpoint.equals(ServiceEndpoints.getSingleImage)) {
+				sendSingleImage(exchange, parameters);
+			} else {
+				sendMetadata(exchange, endpoint, parameters);
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.debug("The simulated response of " + exchange.getRequestURI() + " failed", e);
+		} finally {
+			inFlight.decrementAndGet();
+			exchange.close();
+		}
+	}
+
+
+	private void sendMetadata(HttpExchange exchange, String endpoint, Map<String, String> parameters)
+			throws IOException {
+		byte[] body = recordedResponses.get(endpoint);
+		String format = parameters.getOrDefault("format", OutputFormat.json.name());
+		if (body == null) {
+			List<Map<String, Object>> rows = query(endpoint, parameters);
+			if (rows == null) {
+				sendError(exchange, 404);
+				return;
+			}
+			body = render(rows, format);
+		}
+		exchange.getResponseHeaders().set("Content-Type", format.equals(OutputFormat.json.name()) ?
+				"application/json" : format.equals(OutputFormat.xml.name()) ? "application/xml" : "text/plain");
+		send(exchange, 200, compress(exchange, body), 0, false);
+	}
+
+
+	/*
+	 * Compress a body with the first of gzip and deflate the request accepts, as a web server would.
+	 */
+	private byte[] compress(HttpExchange exchange, byte[] body) throws IOException {
+		String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (!compression || acceptEncoding == null) {
+			return body;
+		}
+		String encoding = null;
+		for (String accepted : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+			String name = accepted.split(";")[0].trim();
+			if ((name.equals("gzip") || name.equals("deflate")) && !accepted.replace(" ", "").endsWith(";q=0")) {
+				encoding = name;
+				break;
+			}
+		}
+		if (encoding == null) {
+			return body;
+		}
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+		try (OutputStream out = encoding.equals("gzip") ? new GZIPOutputStream(compressed) :
+				new DeflaterOutputStream(compressed)) {
+			out.write(body);
+		}
+		exchange.getResponseHeaders().set("Content-Encoding", encoding);
+		exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+		return compressed.toByteArray();
+	}
+
+
+	/*
+	 * Select the rows of an endpoint, as the TCIA service does.
+	 */
+	private List<Map<String, Object>> query(String endpoint, Map<String, String> parameters) {
+		String collection = DICOMAttributes.COLLECTION;
+		String patientID = DICOMAttributes.PATIENT_ID;
+		String modality = DICOMAttributes.MODALITY;
+		String bodyPart = DICOMAttributes.BODY_PART_EXAMINED;
+		String date = parameters.get(DICOMAttributes.DATE);
+
+		if (endpoint.equals(ServiceEndpoints.getCollectionValues)) {
+			return SimulatedArchive.distinct(archive.getPatients(), collection);
+		} else if (endpoint.equals(ServiceEndpoints.getModalityValues)) {
+			return SimulatedArchive.distinct(SimulatedArchive.select(archive.getSeries(), parameters, collection,
+					bodyPart), modality);
+		} else if (endpoint.equals(ServiceEndpoints.getBodyPartValues)) {
+			return SimulatedArchive.distinct(SimulatedArchive.select(archive.getSeries(), parameters, collection,
+					modality), bodyPart);
+		} else if (endpoint.equals(ServiceEndpoints.getManufacturerValues)) {
+			return SimulatedArchive.distinct(SimulatedArchive.select(archive.getSeries(), parameters, collection,
+					bodyPart, modality), DICOMAttributes.MANUFACTURER);
+		} else if (endpoint.equals(ServiceEndpoints.getPatient)) {
+			return SimulatedArchive.select(archive.getPatients(), parameters, collection);
+		} else if (endpoint.equals(ServiceEndpoints.PatientsByModality)) {
+			return getPatients(SimulatedArchive.select(archive.getSeries(), parameters, collection, modality));
+		} else if (endpoint.equals(ServiceEndpoints.NewPatientsInCollection)) {
+			return getPatients(selectSince(SimulatedArchive.select(archive.getStudies(), parameters, collection),
+					date));
+		} else if (endpoint.equals(ServiceEndpoints.getPatientStudy)) {
+			return SimulatedArchive.select(archive.getStudies(), parameters, collection, patientID,
+					DICOMAttributes.STUDY_INSTANCE_UID);
+		} else if (endpoint.equals(ServiceEndpoints.NewStudiesInPatientCollection)) {
+			return selectSince(SimulatedArchive.select(archive.getStudies(), parameters, collection, patientID), date);
+		} else if (endpoint.equals(ServiceEndpoints.getSeries)) {
+			return SimulatedArchive.select(archive.getSeries(), parameters, collection,
+					DICOMAttributes.STUDY_INSTANCE_UID, modality, patientID, DICOMAttributes.SERIES_INSTANCE_UID,
+					bodyPart, DICOMAttributes.MANUFACTURER, DICOMAttributes.MANUFACTURER_MODEL_NAME);
+		} else if (endpoint.equals(ServiceEndpoints.getSeriesSize)) {
+			List<String> sopInstanceUIDs = getSOPInstanceUIDs(parameters);
+			if (sopInstanceUIDs == null) {
+				return null;
+			}
+			Map<String, Object> row = new LinkedHashMap<>();
+			row.put("TotalSizeInBytes", (double) sopInstanceUIDs.size() * archive.getInstanceSize() + "");
+			row.put("ObjectCount", sopInstanceUIDs.size());
+			return Collections.singletonList(row);
+		} else if (endpoint.equals(ServiceEndpoints.getSOPInstanceUIDs)) {
+			List<String> sopInstanceUIDs = getSOPInstanceUIDs(parameters);
+			if (sopInstanceUIDs == null) {
+				return null;
+			}
+			List<Map<String, Object>> rows = new ArrayList<>();
+			for (String sopInstanceUID : sopInstanceUIDs) {
+				rows.add(Collections.singletonMap(DICOMAttributes.SOP_INSTANCE_UID, sopInstanceUID));
+			}
+			return rows;
+		} else if (endpoint.equals(ServiceEndpoints.getSharedList)) {
+			// The shared lists are not simulated: any list holds the first series of each collection.
+			List<Map<String, Object>> rows = new ArrayList<>();
+			Set<Object> seen = new LinkedHashSet<>();
+			for (Map<String, Object> series : archive.getSeries()) {
+				if (seen.add(series.get(collection))) {
+					rows.add(series);
+				}
+			}
+			return rows;
+		}
+		return null;
+	}
+
+
+	private void sendImage(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+		String seriesInstanceUID = parameters.get(DICOMAttributes.SERIES_INSTANCE_UID);
+		byte[] zip = seriesInstanceUID != null ? recordedImages.get(seriesInstanceUID) : null;
+		if (zip == null) {
+			if (seriesInstanceUID == null || !archive.hasSeries(seriesInstanceUID)) {
+				sendError(exchange, 404);
+				return;
+			}
+			zip = archive.getImage(seriesInstanceUID);
+			exchange.getResponseHeaders().set("imageCount",
+					String.valueOf(archive.getSOPInstanceUIDs(seriesInstanceUID).size()));
+		} else {
+			Integer imageCount = recordedImageCounts.get(seriesInstanceUID);
+			if (imageCount != null) {
+				exchange.getResponseHeaders().set("imageCount", imageCount.toString());
+			}
+		}
+		exchange.getResponseHeaders().set("Content-Type", "application/zip");
+
+		// The ZIP of a series never changes, so a download may be resumed with a range.
+		String etag = "\"" + Integer.toHexString(seriesInstanceUID.hashCode()) + "-" + zip.length + "\"";
+		exchange.getResponseHeaders().set("ETag", etag);
+		exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		if (range != null && range.startsWith("bytes=") && range.endsWith("-") &&
+				(ifRange == null || ifRange.equals(etag))) {
+			long start = Long.parseLong(range.substring(6, range.length() - 1));
+			if (start >= zip.length) {
+				exchange.getResponseHeaders().set("Content-Range", "bytes */" + zip.length);
+				sendError(exchange, 416);
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (zip.length - 1) + "/" +
+					zip.length);
+			send(exchange, 206, zip, (int) start, true);
+		} else {
+			send(exchange, 200, zip, 0, true);
+		}
+	}
+
+
+	private void sendSingleImage(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+		String seriesInstanceUID = parameters.get(DICOMAttributes.SERIES_INSTANCE_UID);
+		String sopInstanceUID = parameters.get(DICOMAttributes.SOP_INSTANCE_UID);
+		if (seriesInstanceUID == null || sopInstanceUID == null ||
+				!archive.hasInstance(seriesInstanceUID, sopInstanceUID)) {
+			sendError(exchange, 404);
+			return;
+		}
+		exchange.getResponseHeaders().set("Content-Type", "application/dicom");
+		exchange.getResponseHeaders().set("imageCount", "1");
+		send(exchange, 200, archive.getInstance(sopInstanceUID), 0, true);
+	}
+
+
+	/*
+	 * Send a body from an offset, in chunks under the bandwidth caps. A dropped response closes the connection
+	 * halfway, short of its announced length.
+	 */
+	private void send(HttpExchange exchange, int statusCode, byte[] body, int offset, boolean droppable)
+			throws IOException {
+		int length = body.length - offset;
+		int end = droppable && dropRate > 0 && nextDouble() < dropRate ? offset + length / 2 : body.length;
+		exchange.sendResponseHeaders(statusCode, length > 0 ? length : -1);
+
+		long responseBandwidth = bandwidth;
+		Throttle throttle = responseBandwidth > 0 ? new Throttle(responseBandwidth) : null;
+		Throttle total = totalThrottle;
+		OutputStream out = exchange.getResponseBody();
+		for (int position = offset; position < end; position += CHUNK_SIZE) {
+			int chunk = Math.min(CHUNK_SIZE, end - position);
+			if (throttle != null) {
+				throttle.acquire(chunk);
+			}
+			if (total != null) {
+				total.acquire(chunk);
+			}
+			out.write(body, position, chunk);
+		}
+		if (end == body.length) {
+			out.close();
+		}
+	}
+
+
+	private void sendError(HttpExchange exchange, int statusCode) throws IOException {
+		if (retryAfter >= 0 && (statusCode == 429 || statusCode == 503)) {
+			exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfter));
+		}
+		// A short body, as the server closes the connection after a response without one.
+		byte[] body = ("Simulated error " + statusCode).getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain");
+		exchange.sendResponseHeaders(statusCode, body.length);
+		exchange.getResponseBody().write(body);
+	}
+
+
+	private void delay() throws IOException {
+		long delay = latency + (latencyJitter > 0 ? (long) (nextDouble() * latencyJitter) : 0);
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while simulating the latency");
+			}
+		}
+	}
+
+
+	private double nextDouble() {
+		return random.nextDouble();
+	}
+
+
+	private List<String> getSOPInstanceUIDs(Map<String, String> parameters) {
+		String seriesInstanceUID = parameters.get(DICOMAttributes.SERIES_INSTANCE_UID);
+		return seriesInstanceUID != null ? archive.getSOPInstanceUIDs(seriesInstanceUID) : null;
+	}
+
+
+	/*
+	 * The distinct patients of a selection of studies or series.
+	 */
+	private List<Map<String, Object>> getPatients(List<Map<String, Object>> rows) {
+		Set<Object> patientIDs = new LinkedHashSet<>();
+		for (Map<String, Object> row : rows) {
+			patientIDs.add(row.get(DICOMAttributes.PATIENT_ID));
+		}
+		List<Map<String, Object>> patients = new ArrayList<>();
+		for (Map<String, Object> patient : archive.getPatients()) {
+			if (patientIDs.contains(patient.get(DICOMAttributes.PATIENT_ID))) {
+				patients.add(patient);
+			}
+		}
+		return patients;
+	}
+
+
+	private static List<Map<String, Object>> selectSince(List<Map<String, Object>> studies, String date) {
+		if (date == null) {
+			return studies;
+		}
+		List<Map<String, Object>> selected = new ArrayList<>();
+		for (Map<String, Object> study : studies) {
+			// The ISO dates compare as strings.
+			if (String.valueOf(study.get("StudyDate")).compareTo(date) >= 0) {
+				selected.add(study);
+			}
+		}
+		return selected;
+	}
+
+
+	/*
+	 * The number of files of a ZIP, or -1 if it cannot be read, in which case it is served without an imageCount.
+	 */
+	private static int countFiles(byte[] zip) {
+		int files = 0;
+		try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+			for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+				if (!entry.isDirectory()) {
+					files++;
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("The recorded ZIP could not be read to count its files", e);
+			return -1;
+		}
+		return files;
+	}
+
+
+	/*
+	 * Render the rows in an output format of the TCIA service.
+	 */
+	static byte[] render(List<Map<String, Object>> rows, String format) throws IOException {
+		if (format.equals(OutputFormat.csv.name())) {
+			StringBuilder csv = new StringBuilder();
+			if (!rows.isEmpty()) {
+				csv.append(String.join(",", rows.get(0).keySet())).append('\n');
+			}
+			for (Map<String, Object> row : rows) {
+				List<String> values = new ArrayList<>();
+				for (Object value : row.values()) {
+					String text = String.valueOf(value);
+					values.add(text.contains(",") || text.contains("\"") ?
+							"\"" + text.replace("\"", "\"\"") + "\"" : text);
+				}
+				csv.append(String.join(",", values)).append('\n');
+			}
+			return csv.toString().getBytes(StandardCharsets.UTF_8);
+		} else if (format.equals(OutputFormat.xml.name())) {
+			StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<dataset>");
+			for (Map<String, Object> row : rows) {
+				xml.append("<row>");
+				for (Map.Entry<String, Object> field : row.entrySet()) {
+					xml.append('<').append(field.getKey()).append('>')
+							.append(String.valueOf(field.getValue()).replace("&", "&amp;").replace("<", "&lt;"))
+							.append("</").append(field.getKey()).append('>');
+				}
+				xml.append("</row>");
+			}
+			return xml.append("</dataset>\n").toString().getBytes(StandardCharsets.UTF_8);
+		}
+		return MAPPER.writeValueAsBytes(rows);
+	}
+}
@@ -0,0 +1,43 @@
+package edu.emory.bmi.tcia.client.simulator;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the rate of the bytes sent, by delaying each chunk until the budget of its bytes has accrued.
+ */
+class Throttle {
+
+	private final long bytesPerSecond;
+	private long nextFree;
+
+
+	Throttle(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+		this.nextFree = System.nanoTime();
+	}
+
+
+	/**
+	 * Wait until a chunk may be sent.
+	 * @param bytes the size of the chunk
+	 * @throws InterruptedIOException if interrupted while waiting
+	 */
+	void acquire(int bytes) throws InterruptedIOException {
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			long start = Math.max(now, nextFree);
+			nextFree = start + bytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+			wait = start - now;
+		}
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while throttling");
+			}
+		}
+	}
+}
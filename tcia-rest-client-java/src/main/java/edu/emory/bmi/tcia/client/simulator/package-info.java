@@ -0,0 +1,4 @@
+/**
+ * An embedded simulator of the TCIA server, to test and load-test the client offline.
+ */
+package edu.emory.bmi.tcia.client.simulator;
@@ -0,0 +1,79 @@
+package edu.emory.bmi.tcia.client.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import edu.emory.bmi.tcia.client.model.Patient;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.model.Study;
+
+
+/**
+ * The local mirror of the metadata of a collection: its patients, studies and series, and the watermark from which
+ * the next synchronization asks for the new patients and studies. The records are sorted by their identifiers.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class CollectionSnapshot {
+
+	private String collection;
+	private String watermark;
+	private long syncedAt;
+	private List<Patient> patients = new ArrayList<>();
+	private List<Study> studies = new ArrayList<>();
+	private List<Series> series = new ArrayList<>();
+
+	public String getCollection() {
+		return collection;
+	}
+
+	public void setCollection(String collection) {
+		this.collection = collection;
+	}
+
+	/**
+	 * @return the date (yyyy-MM-dd) the last synchronization started on, from which the next one asks for changes
+	 */
+	public String getWatermark() {
+		return watermark;
+	}
+
+	public void setWatermark(String watermark) {
+		this.watermark = watermark;
+	}
+
+	/**
+	 * @return the time (ms since the epoch) the last synchronization completed at
+	 */
+	public long getSyncedAt() {
+		return syncedAt;
+	}
+
+	public void setSyncedAt(long syncedAt) {
+		this.syncedAt = syncedAt;
+	}
+
+	public List<Patient> getPatients() {
+		return patients;
+	}
+
+	public void setPatients(List<Patient> patients) {
+		this.patients = patients;
+	}
+
+	public List<Study> getStudies() {
+		return studies;
+	}
+
+	public void setStudies(List<Study> studies) {
+		this.studies = studies;
+	}
+
+	public List<Series> getSeries() {
+		return series;
+	}
+
+	public void setSeries(List<Series> series) {
+		this.series = series;
+	}
+}
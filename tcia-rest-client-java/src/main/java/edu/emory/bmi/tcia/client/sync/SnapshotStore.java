@@ -0,0 +1,125 @@
+package edu.emory.bmi.tcia.client.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+
+/**
+ * Stores the snapshots of the collections in a directory, as a JSON file per collection. A snapshot is replaced
+ * atomically: it is written to a temporary file, flushed to the disk and moved over the previous one, so that a
+ * reader, or a crash, only ever sees a complete snapshot.
+ */
+public class SnapshotStore {
+
+	private static final String SUFFIX = ".json";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+			.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+	private final Path directory;
+
+
+	/**
+	 * Create a snapshot store.
+	 * @param directory the directory of the snapshots, created if it does not exist
+	 * @throws IOException if the directory could not be created
+	 */
+	public SnapshotStore(String directory) throws IOException {
+		this.directory = Paths.get(directory);
+		Files.createDirectories(this.directory);
+	}
+
+
+	/**
+	 * Load the snapshot of a collection.
+	 * @param collection the collection
+	 * @return the snapshot, or null if the collection has not been synchronized yet
+	 * @throws IOException if the snapshot could not be read
+	 */
+	public CollectionSnapshot load(String collection) throws IOException {
+		try (InputStream in = Files.newInputStream(getPath(collection))) {
+			return MAPPER.readValue(in, CollectionSnapshot.class);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Replace the snapshot of a collection atomically.
+	 * @param snapshot the snapshot
+	 * @throws IOException if the snapshot could not be written, in which case the previous one is kept
+	 */
+	public void save(CollectionSnapshot snapshot) throws IOException {
+		Path path = getPath(snapshot.getCollection());
+		Path temp = Files.createTempFile(directory, path.getFileName().toString(), TEMP_SUFFIX);
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(MAPPER.writeValueAsBytes(snapshot));
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			try {
+				Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+
+	/**
+	 * @return the collections that have a snapshot, sorted
+	 * @throws IOException if the directory could not be listed
+	 */
+	public List<String> getCollections() throws IOException {
+		List<String> collections = new ArrayList<>();
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path path : paths) {
+				String name = path.getFileName().toString();
+				collections.add(URLDecoder.decode(name.substring(0, name.length() - SUFFIX.length()), "UTF-8"));
+			}
+		}
+		Collections.sort(collections);
+		return collections;
+	}
+
+
+	/**
+	 * @param collection a collection
+	 * @return the path of the snapshot of the collection, whose name is the encoded collection name
+	 */
+	public Path getPath(String collection) {
+		try {
+			// The asterisk is left as is by the form encoding, but is not valid in a Windows file name.
+			return directory.resolve(URLEncoder.encode(collection, "UTF-8").replace("*", "%2A") + SUFFIX);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
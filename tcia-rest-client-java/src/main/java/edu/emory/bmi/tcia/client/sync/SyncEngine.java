@@ -0,0 +1,339 @@
+package edu.emory.bmi.tcia.client.sync;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.model.Patient;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.model.Study;
+import edu.emory.bmi.tcia.client.request.Query;
+import edu.emory.bmi.tcia.client.request.RequestTemplate;
+import edu.emory.bmi.tcia.client.uid.UidSet;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Keeps the snapshots of collections up to date. The first synchronization of a collection crawls it in full; the
+ * next ones ask NewPatientsInCollection and NewStudiesInPatientCollection for what changed since the watermark of
+ * the snapshot, and fetch the series of the changed studies only, so that a sync costs a request per changed study
+ * rather than a crawl of the collection. The requests bypass the local catalog, if any, and refresh it.
+ * <p>
+ * The changes are asked from some days before the watermark, so that a record published while the previous sync
+ * ran is not missed; the records seen again are updated in place. A sync either saves a complete snapshot or, on any
+ * failure, leaves the previous one as is. The new records endpoints report no deletions: a patient, study or series
+ * removed from TCIA stays in the snapshot until the collection is resynchronized in full.
+ */
+public class SyncEngine {
+
+	private static Logger logger = LogManager.getLogger(SyncEngine.class.getName());
+
+	public static final int DEFAULT_PARALLELISM = 4;
+	public static final int DEFAULT_OVERLAP_DAYS = 1;
+
+	private final TCIAClientImpl client;
+	private final SnapshotStore store;
+	private final Map<String, Object> locks = new ConcurrentHashMap<>();
+	private int parallelism = DEFAULT_PARALLELISM;
+	private int overlapDays = DEFAULT_OVERLAP_DAYS;
+	private Clock clock = Clock.systemUTC();
+
+
+	/**
+	 * Create a sync engine.
+	 * @param client the TCIA client used to get the metadata
+	 * @param store the store of the snapshots
+	 */
+	public SyncEngine(TCIAClientImpl client, SnapshotStore store) {
+		this.client = client;
+		this.store = store;
+	}
+
+
+	/**
+	 * Set the maximum number of concurrent requests for the series of the changed studies.
+	 * @param parallelism the parallelism
+	 * @return this sync engine
+	 */
+	public SyncEngine setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1: " + parallelism);
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+
+	/**
+	 * Set the number of days before the watermark the changes are asked from.
+	 * @param overlapDays the overlap, in days
+	 * @return this sync engine
+	 */
+	public SyncEngine setOverlapDays(int overlapDays) {
+		if (overlapDays < 0) {
+			throw new IllegalArgumentException("The overlap must not be negative: " + overlapDays);
+		}
+		this.overlapDays = overlapDays;
+		return this;
+	}
+
+
+	/**
+	 * Set the clock of the watermarks.
+	 * @param clock the clock
+	 * @return this sync engine
+	 */
+	public SyncEngine setClock(Clock clock) {
+		this.clock = clock;
+		return this;
+	}
+
+
+	/**
+	 * Synchronize a collection: from its watermark if it has a snapshot, in full otherwise.
+	 * @param collection the collection
+	 * @return the result of the synchronization
+	 */
+	public SyncResult sync(String collection) throws TCIAClientException {
+		return sync(collection, false);
+	}
+
+
+	/**
+	 * Synchronize a collection in full, replacing its snapshot. This is the only way the deletions reach the
+	 * snapshot.
+	 * @param collection the collection
+	 * @return the result of the synchronization
+	 */
+	public SyncResult resync(String collection) throws TCIAClientException {
+		return sync(collection, true);
+	}
+
+
+	/**
+	 * Synchronize collections, one after the other.
+	 * @param collections the collections
+	 * @return the result of each synchronization, in the order of the collections
+	 */
+	public List<SyncResult> syncAll(Collection<String> collections) throws TCIAClientException {
+		List<SyncResult> results = new ArrayList<>(collections.size());
+		for (String collection : collections) {
+			results.add(sync(collection));
+		}
+		return results;
+	}
+
+
+	private SyncResult sync(String collection, boolean full) throws TCIAClientException {
+		// Concurrent syncs of a collection would each save their own snapshot, losing the changes of the other.
+		synchronized (locks.computeIfAbsent(collection, c -> new Object())) {
+			try {
+				long startTime = System.currentTimeMillis();
+				// The watermark is the day the sync starts, as a record published during the sync may be missed.
+				LocalDate today = LocalDate.now(clock);
+				CollectionSnapshot previous = full ? null : store.load(collection);
+				SyncResult result = previous == null || previous.getWatermark() == null ?
+						crawl(collection, today, startTime) : delta(previous, today, startTime);
+				logger.info(result);
+				return result;
+
+			} catch (TCIAClientException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new TCIAClientException(e, client.getResourceUrl());
+			}
+		}
+	}
+
+
+	private SyncResult crawl(String collection, LocalDate today, long startTime) throws Exception {
+		CollectionSnapshot snapshot = new CollectionSnapshot();
+		snapshot.setCollection(collection);
+		snapshot.setPatients(sortedByID(toList(client.getRemoteStream(Patient.class,
+				RequestTemplate.GET_PATIENT.query().collection(collection))), Patient::getPatientID));
+		snapshot.setStudies(sortedByID(toList(client.getRemoteStream(Study.class,
+				RequestTemplate.GET_PATIENT_STUDY.query().collection(collection))), Study::getStudyInstanceUID));
+		snapshot.setSeries(sortedByID(toList(client.getRemoteStream(Series.class,
+				RequestTemplate.GET_SERIES.query().collection(collection))), Series::getSeriesInstanceUID));
+		return save(snapshot, today, true, null, snapshot.getPatients().size(), snapshot.getStudies().size(),
+				snapshot.getSeries().size(), 0, startTime);
+	}
+
+
+	private SyncResult delta(CollectionSnapshot previous, LocalDate today, long startTime) throws Exception {
+		String collection = previous.getCollection();
+		String since = LocalDate.parse(previous.getWatermark()).minusDays(overlapDays).toString();
+		List<Patient> newPatients = toList(client.getRemoteStream(Patient.class,
+				RequestTemplate.NEW_PATIENTS_IN_COLLECTION.query().date(since).collection(collection)));
+		List<Study> newStudies = toList(client.getRemoteStream(Study.class,
+				RequestTemplate.NEW_STUDIES_IN_PATIENT_COLLECTION.query().date(since).collection(collection)));
+		Map<String, List<Series>> newSeries = getSeries(collection, newStudies);
+
+		// The changes are applied to copies, so that a failure above leaves the previous snapshot untouched.
+		Map<String, Patient> patients = byID(previous.getPatients(), Patient::getPatientID);
+		Map<String, Study> studies = byID(previous.getStudies(), Study::getStudyInstanceUID);
+
+		int patientsAdded = 0;
+		for (Patient patient : newPatients) {
+			if (patients.put(patient.getPatientID(), patient) == null) {
+				patientsAdded++;
+			}
+		}
+		for (Study study : newStudies) {
+			studies.put(study.getStudyInstanceUID(), study);
+			if (!patients.containsKey(study.getPatientID())) {
+				patients.put(study.getPatientID(), toPatient(study));
+				patientsAdded++;
+			}
+		}
+
+		// The series of the changed studies are replaced by the ones fetched, checked by UID in packed UID sets.
+		UidSet known = new UidSet(previous.getSeries().size());
+		for (Series s : previous.getSeries()) {
+			known.add(s.getSeriesInstanceUID());
+		}
+		UidSet changedStudies = new UidSet(newSeries.size());
+		UidSet fetched = new UidSet();
+		List<Series> series = new ArrayList<>(previous.getSeries().size());
+		int seriesAdded = 0;
+		int seriesRemoved = 0;
+		for (Map.Entry<String, List<Series>> studySeries : newSeries.entrySet()) {
+			changedStudies.add(studySeries.getKey());
+			for (Series s : studySeries.getValue()) {
+				if (fetched.add(s.getSeriesInstanceUID())) {
+					series.add(s);
+					if (!known.contains(s.getSeriesInstanceUID())) {
+						seriesAdded++;
+					}
+				}
+			}
+		}
+		for (Series s : previous.getSeries()) {
+			if (fetched.contains(s.getSeriesInstanceUID())) {
+				continue;
+			}
+			if (changedStudies.contains(s.getStudyInstanceUID())) {
+				seriesRemoved++;
+			} else {
+				series.add(s);
+			}
+		}
+
+		CollectionSnapshot snapshot = new CollectionSnapshot();
+		snapshot.setCollection(collection);
+		snapshot.setPatients(new ArrayList<>(patients.values()));
+		snapshot.setStudies(new ArrayList<>(studies.values()));
+		snapshot.setSeries(sortedByID(series, Series::getSeriesInstanceUID));
+		return save(snapshot, today, false, since, patientsAdded, newStudies.size(), seriesAdded, seriesRemoved,
+				startTime);
+	}
+
+
+	/*
+	 * Fetch the series of the changed studies concurrently, a request per study.
+	 */
+	private Map<String, List<Series>> getSeries(String collection, List<Study> studies) throws Exception {
+		Map<String, List<Series>> series = new LinkedHashMap<>();
+		if (studies.isEmpty()) {
+			return series;
+		}
+		ExecutorService executor = newExecutor(Math.min(parallelism, studies.size()));
+		try {
+			Map<String, Future<List<Series>>> futures = new LinkedHashMap<>();
+			for (Study study : studies) {
+				Query query = RequestTemplate.GET_SERIES.query().collection(collection)
+						.studyInstanceUID(study.getStudyInstanceUID());
+				futures.put(study.getStudyInstanceUID(), executor.submit(() -> toList(client.getRemoteStream(
+						Series.class, query))));
+			}
+			for (Map.Entry<String, Future<List<Series>>> future : futures.entrySet()) {
+				try {
+					series.put(future.getKey(), future.getValue().get());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+			return series;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	private SyncResult save(CollectionSnapshot snapshot, LocalDate today, boolean full, String since,
+	                        int patientsAdded, int studiesChanged, int seriesAdded, int seriesRemoved,
+	                        long startTime) throws Exception {
+		snapshot.setWatermark(today.toString());
+		snapshot.setSyncedAt(clock.millis());
+		store.save(snapshot);
+		return new SyncResult(snapshot.getCollection(), full, since, snapshot.getWatermark(), patientsAdded,
+				studiesChanged, seriesAdded, seriesRemoved, snapshot.getPatients().size(),
+				snapshot.getStudies().size(), snapshot.getSeries().size(), System.currentTimeMillis() - startTime);
+	}
+
+
+	/*
+	 * A patient first seen in a study, when NewPatientsInCollection did not return it.
+	 */
+	private static Patient toPatient(Study study) {
+		Patient patient = new Patient();
+		patient.setPatientID(study.getPatientID());
+		patient.setPatientName(study.getPatientName());
+		patient.setPatientSex(study.getPatientSex());
+		patient.setCollection(study.getCollection());
+		return patient;
+	}
+
+
+	private static <T> List<T> toList(Stream<T> stream) {
+		try (Stream<T> records = stream) {
+			return records.collect(Collectors.toList());
+		}
+	}
+
+
+	private static <T> Map<String, T> byID(List<T> records, Function<T, String> id) {
+		Map<String, T> map = new TreeMap<>();
+		for (T record : records) {
+			map.put(id.apply(record), record);
+		}
+		return map;
+	}
+
+
+	private static <T> List<T> sortedByID(List<T> records, Function<T, String> id) {
+		return new ArrayList<>(byID(records, id).values());
+	}
+
+
+	private ExecutorService newExecutor(int threads) {
+		final AtomicInteger threadCount = new AtomicInteger();
+		ThreadFactory threadFactory = r -> {
+			Thread thread = new Thread(r, "tcia-sync-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		return Executors.newFixedThreadPool(threads, threadFactory);
+	}
+}
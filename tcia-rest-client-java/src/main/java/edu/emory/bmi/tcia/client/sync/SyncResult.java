@@ -0,0 +1,107 @@
+package edu.emory.bmi.tcia.client.sync;
+
+/**
+ * The outcome of synchronizing a collection: what changed in its snapshot, and the totals after the change.
+ */
+public class SyncResult {
+	private final String collection;
+	private final boolean full;
+	private final String since;
+	private final String watermark;
+	private final int patientsAdded;
+	private final int studiesChanged;
+	private final int seriesAdded;
+	private final int seriesRemoved;
+	private final int patientCount;
+	private final int studyCount;
+	private final int seriesCount;
+	private final long elapsedMillis;
+
+	public SyncResult(String collection, boolean full, String since, String watermark, int patientsAdded,
+	                  int studiesChanged, int seriesAdded, int seriesRemoved, int patientCount, int studyCount,
+	                  int seriesCount, long elapsedMillis) {
+		this.collection = collection;
+		this.full = full;
+		this.since = since;
+		this.watermark = watermark;
+		this.patientsAdded = patientsAdded;
+		this.studiesChanged = studiesChanged;
+		this.seriesAdded = seriesAdded;
+		this.seriesRemoved = seriesRemoved;
+		this.patientCount = patientCount;
+		this.studyCount = studyCount;
+		this.seriesCount = seriesCount;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public String getCollection() {
+		return collection;
+	}
+
+	/**
+	 * @return whether the collection was crawled in full, rather than from its watermark
+	 */
+	public boolean isFull() {
+		return full;
+	}
+
+	/**
+	 * @return the date the changes were asked from, or null for a full crawl
+	 */
+	public String getSince() {
+		return since;
+	}
+
+	/**
+	 * @return the new watermark of the snapshot
+	 */
+	public String getWatermark() {
+		return watermark;
+	}
+
+	public int getPatientsAdded() {
+		return patientsAdded;
+	}
+
+	/**
+	 * @return the number of studies that were added or updated
+	 */
+	public int getStudiesChanged() {
+		return studiesChanged;
+	}
+
+	public int getSeriesAdded() {
+		return seriesAdded;
+	}
+
+	/**
+	 * @return the number of series of the changed studies that are no longer returned
+	 */
+	public int getSeriesRemoved() {
+		return seriesRemoved;
+	}
+
+	public int getPatientCount() {
+		return patientCount;
+	}
+
+	public int getStudyCount() {
+		return studyCount;
+	}
+
+	public int getSeriesCount() {
+		return seriesCount;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[%s] %s sync since %s: +%d patients, %d studies changed, +%d/-%d series; " +
+						"%d patients, %d studies, %d series in %d ms", collection, full ? "full" : "delta",
+				since, patientsAdded, studiesChanged, seriesAdded, seriesRemoved, patientCount, studyCount,
+				seriesCount, elapsedMillis);
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * The incremental synchronization of a local mirror of the metadata of collections, from the new patients and new
+ * studies endpoints.
+ */
+package edu.emory.bmi.tcia.client.sync;
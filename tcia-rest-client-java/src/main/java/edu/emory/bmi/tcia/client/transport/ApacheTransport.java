@@ -0,0 +1,194 @@
+package edu.emory.bmi.tcia.client.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.conf.TCIAConstants;
+import edu.emory.bmi.tcia.client.util.WebClientDevWrapper;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import static edu.emory.bmi.tcia.client.util.TCIAClientUtil.valueOrDefault;
+
+
+/**
+ * The default transport, on Apache HttpClient over a pool of HTTP/1.1 connections. Each request in flight holds a
+ * connection of the pool, up to maxconnectionsperroute connections to the TCIA host.
+ */
+public class ApacheTransport implements Transport {
+
+	public static final String NAME = "apache";
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient httpClient;
+
+
+	/**
+	 * Build the pooled client of a configuration.
+	 * @param tciaConf the configuration, for the sizes of the pool and the timeouts
+	 */
+	public ApacheTransport(TCIAConf tciaConf) {
+		RegistryBuilder<ConnectionSocketFactory> registryBuilder = RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory());
+		SSLConnectionSocketFactory sslSocketFactory = WebClientDevWrapper.getSSLConnectionSocketFactory();
+		registryBuilder.register("https", sslSocketFactory != null ? sslSocketFactory :
+				SSLConnectionSocketFactory.getSocketFactory());
+		Registry<ConnectionSocketFactory> registry = registryBuilder.build();
+
+		connectionManager = new PoolingHttpClientConnectionManager(registry);
+		connectionManager.setMaxTotal(valueOrDefault(tciaConf.getMaxtotalconnections(),
+				TCIAConstants.DEFAULT_MAX_TOTAL_CONNECTIONS));
+		connectionManager.setDefaultMaxPerRoute(valueOrDefault(tciaConf.getMaxconnectionsperroute(),
+				TCIAConstants.DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+
+		long idleTimeout = valueOrDefault(tciaConf.getIdletimeout(), TCIAConstants.DEFAULT_IDLE_TIMEOUT_MS);
+		// Validate connections that were idle for a while, rather than failing on a stale one.
+		connectionManager.setValidateAfterInactivity((int) Math.min(idleTimeout, 2000));
+
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(valueOrDefault(tciaConf.getConnecttimeout(), TCIAConstants.DEFAULT_CONNECT_TIMEOUT_MS))
+				.setSocketTimeout(valueOrDefault(tciaConf.getSockettimeout(), TCIAConstants.DEFAULT_SOCKET_TIMEOUT_MS))
+				.build();
+
+		httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(keepAliveStrategy(valueOrDefault(tciaConf.getKeepalive(),
+						TCIAConstants.DEFAULT_KEEP_ALIVE_MS)))
+				// The client layer negotiates and decodes the compressed bodies, and counts their bytes as received.
+				.disableContentCompression()
+				.evictExpiredConnections()
+				.evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+
+	@Override
+	public TransportResponse execute(TransportRequest request) throws IOException {
+		HttpGet httpGet = new HttpGet(request.getURI());
+		for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			httpGet.setHeader(header.getKey(), header.getValue());
+		}
+		return new Response(httpClient.execute(httpGet));
+	}
+
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+
+	/**
+	 * @return the pool of connections, to monitor its use
+	 */
+	public PoolingHttpClientConnectionManager getConnectionManager() {
+		return connectionManager;
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		httpClient.close();
+	}
+
+
+	/**
+	 * Adapt a response of Apache HttpClient, such as one of the asynchronous client.
+	 * @param response the response
+	 * @return the transport response
+	 */
+	public static TransportResponse adapt(HttpResponse response) {
+		return new Response(response);
+	}
+
+
+	/**
+	 * Honour the Keep-Alive timeout sent by the server, and fall back to the configured value otherwise.
+	 * @param defaultKeepAlive the keep-alive (ms) of the connections when the server sends none
+	 * @return the keep-alive strategy
+	 */
+	public static ConnectionKeepAliveStrategy keepAliveStrategy(final long defaultKeepAlive) {
+		return (response, context) -> {
+			long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return keepAlive > 0 ? keepAlive : defaultKeepAlive;
+		};
+	}
+
+
+	private static class Response implements TransportResponse {
+		private final HttpResponse response;
+		private InputStream content;
+
+		Response(HttpResponse response) {
+			this.response = response;
+		}
+
+		@Override
+		public int getStatusCode() {
+			return response.getStatusLine().getStatusCode();
+		}
+
+		@Override
+		public String getReasonPhrase() {
+			return response.getStatusLine().getReasonPhrase();
+		}
+
+		@Override
+		public String getHeader(String name) {
+			Header header = response.getFirstHeader(name);
+			return header != null ? header.getValue() : null;
+		}
+
+		@Override
+		public long getContentLength() {
+			HttpEntity entity = response.getEntity();
+			return entity != null ? entity.getContentLength() : -1;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			if (content == null) {
+				HttpEntity entity = response.getEntity();
+				content = entity != null ? entity.getContent() : null;
+			}
+			return content;
+		}
+
+		/*
+		 * Closing the content reads the rest of the body, which returns the connection to the pool.
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				if (content != null) {
+					content.close();
+				} else {
+					EntityUtils.consume(response.getEntity());
+				}
+			} finally {
+				if (response instanceof CloseableHttpResponse) {
+					((CloseableHttpResponse) response).close();
+				}
+			}
+		}
+	}
+}
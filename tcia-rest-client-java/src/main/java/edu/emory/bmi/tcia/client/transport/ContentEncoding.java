@@ -0,0 +1,98 @@
+package edu.emory.bmi.tcia.client.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+
+/**
+ * The content encodings the client negotiates, and their streaming decoders. The body is inflated as it is read,
+ * so that a decoder, such as the JSON parser of the typed results, consumes it without buffering the whole body.
+ */
+public class ContentEncoding {
+
+	public static final String ACCEPT_ENCODING = "Accept-Encoding";
+	public static final String CONTENT_ENCODING = "Content-Encoding";
+
+	public static final String GZIP = "gzip";
+	public static final String DEFLATE = "deflate";
+	public static final String IDENTITY = "identity";
+
+	// The encodings accepted for the metadata, in the order of preference.
+	public static final String ACCEPTED = GZIP + ", " + DEFLATE;
+
+	private static final int BUFFER_SIZE = 8192;
+
+
+	/**
+	 * @param contentEncoding the Content-Encoding of a response, or null
+	 * @return whether the body is encoded, and must be decoded before use
+	 */
+	public static boolean isEncoded(String contentEncoding) {
+		return contentEncoding != null && !contentEncoding.trim().isEmpty() &&
+				!IDENTITY.equalsIgnoreCase(contentEncoding.trim());
+	}
+
+
+	/**
+	 * Wrap the body of a response in the decoder of its encoding.
+	 * @param in the encoded body
+	 * @param contentEncoding the Content-Encoding of the response, or null
+	 * @return the decoded body, or the body itself if it is not encoded
+	 * @throws IOException if the encoding is not supported, or the gzip header is invalid
+	 */
+	public static InputStream decode(InputStream in, String contentEncoding) throws IOException {
+		if (!isEncoded(contentEncoding)) {
+			return in;
+		}
+		String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+		if (GZIP.equals(encoding) || "x-gzip".equals(encoding)) {
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		} else if (DEFLATE.equals(encoding)) {
+			return inflate(in);
+		}
+		throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+	}
+
+
+	/*
+	 * The deflate encoding is a zlib stream, but some servers send the raw deflate data instead. A zlib header is
+	 * recognized by its compression method and its check bits.
+	 */
+	private static InputStream inflate(InputStream in) throws IOException {
+		PushbackInputStream pushback = new PushbackInputStream(in, 2);
+		int first = pushback.read();
+		int second = first != -1 ? pushback.read() : -1;
+		if (second != -1) {
+			pushback.unread(second);
+		}
+		if (first != -1) {
+			pushback.unread(first);
+		}
+		boolean zlib = first != -1 && second != -1 && (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0;
+		return new InflaterStream(pushback, new Inflater(!zlib));
+	}
+
+
+	/*
+	 * An inflater stream that releases its inflater when closed, as the one of a GZIPInputStream is.
+	 */
+	private static class InflaterStream extends InflaterInputStream {
+		InflaterStream(InputStream in, Inflater inflater) {
+			super(in, inflater, BUFFER_SIZE);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				inf.end();
+			}
+		}
+	}
+}
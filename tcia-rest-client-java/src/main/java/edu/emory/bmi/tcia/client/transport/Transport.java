@@ -0,0 +1,27 @@
+package edu.emory.bmi.tcia.client.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * The transport beneath the TCIA client, which executes a single HTTP request. The retries, the concurrency limit,
+ * the metrics and the decoding of the responses are layered above it, so that a transport only moves bytes.
+ * A transport is shared by all the threads of the client.
+ */
+public interface Transport extends Closeable {
+
+	/**
+	 * Execute a GET request, and return once the response head has been received.
+	 * @param request the request
+	 * @return the response, whose content streams the body, to be closed after use
+	 * @throws IOException if the request could not be sent, or no response was received
+	 */
+	TransportResponse execute(TransportRequest request) throws IOException;
+
+
+	/**
+	 * @return the name of the transport, such as apache or http2
+	 */
+	String getName();
+}
@@ -0,0 +1,45 @@
+package edu.emory.bmi.tcia.client.transport;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A GET request to a transport: its URI and its headers.
+ */
+public class TransportRequest {
+
+	private final URI uri;
+	private final Map<String, String> headers = new LinkedHashMap<>();
+
+
+	public TransportRequest(URI uri) {
+		this.uri = uri;
+	}
+
+
+	public URI getURI() {
+		return uri;
+	}
+
+
+	/**
+	 * @param name the name of the header
+	 * @param value the value of the header, replacing any previous one
+	 * @return this request
+	 */
+	public TransportRequest setHeader(String name, String value) {
+		headers.put(name, value);
+		return this;
+	}
+
+
+	/**
+	 * @return the headers, by name
+	 */
+	public Map<String, String> getHeaders() {
+		return Collections.unmodifiableMap(headers);
+	}
+}
@@ -0,0 +1,43 @@
+package edu.emory.bmi.tcia.client.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * The response of a transport. Closing the response, or its content, releases its connection or stream.
+ */
+public interface TransportResponse extends Closeable {
+
+	/**
+	 * @return the status code
+	 */
+	int getStatusCode();
+
+
+	/**
+	 * @return the reason phrase of the status code
+	 */
+	String getReasonPhrase();
+
+
+	/**
+	 * @param name the name of a header, in any case
+	 * @return the first value of the header, or null if it is absent
+	 */
+	String getHeader(String name);
+
+
+	/**
+	 * @return the length of the body, or -1 if it is unknown
+	 */
+	long getContentLength();
+
+
+	/**
+	 * @return the stream of the body, or null if the response has no body
+	 * @throws IOException if the body could not be opened
+	 */
+	InputStream getContent() throws IOException;
+}
@@ -0,0 +1,63 @@
+package edu.emory.bmi.tcia.client.transport;
+
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.conf.TCIAConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Creates the transport named by the configuration.
+ */
+public class Transports {
+
+	public static final String HTTP2 = "http2";
+
+	// Compiled for Java 11 and later only, and so loaded by name.
+	private static final String HTTP2_TRANSPORT_CLASS = "edu.emory.bmi.tcia.client.transport.HttpClientTransport";
+
+	private static Logger logger = LogManager.getLogger(Transports.class.getName());
+
+
+	/**
+	 * Create the transport of a configuration. The http2 transport needs a Java 11 runtime, and falls back to the
+	 * Apache transport on an older one.
+	 * @param tciaConf the configuration
+	 * @return the new transport
+	 * @throws IllegalArgumentException if the configuration names an unknown transport
+	 */
+	public static Transport create(TCIAConf tciaConf) {
+		String name = tciaConf.getTransport() != null ? tciaConf.getTransport().trim() : TCIAConstants.DEFAULT_TRANSPORT;
+		if (ApacheTransport.NAME.equalsIgnoreCase(name)) {
+			return new ApacheTransport(tciaConf);
+		} else if (HTTP2.equalsIgnoreCase(name)) {
+			if (isHttp2Available()) {
+				try {
+					return (Transport) Class.forName(HTTP2_TRANSPORT_CLASS).getConstructor(TCIAConf.class)
+							.newInstance(tciaConf);
+				} catch (ReflectiveOperationException | LinkageError e) {
+					logger.warn("The http2 transport could not be created, using the apache transport", e);
+				}
+			} else {
+				logger.warn("The http2 transport needs Java 11 or later, using the apache transport");
+			}
+			return new ApacheTransport(tciaConf);
+		}
+		throw new IllegalArgumentException("Unknown transport " + name + ", expected " + ApacheTransport.NAME +
+				" or " + HTTP2);
+	}
+
+
+	/**
+	 * @return whether the runtime has the HTTP/2 client of Java 11, and the http2 transport was compiled for it
+	 */
+	public static boolean isHttp2Available() {
+		try {
+			Class.forName("java.net.http.HttpClient");
+			Class.forName(HTTP2_TRANSPORT_CLASS);
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+}
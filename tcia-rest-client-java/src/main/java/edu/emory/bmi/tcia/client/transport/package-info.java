@@ -0,0 +1,5 @@
+/**
+ * The transports that execute the HTTP requests of the TCIA client: Apache HttpClient by default, and the
+ * multiplexed HTTP/2 client of Java 11 and later.
+ */
+package edu.emory.bmi.tcia.client.transport;
@@ -0,0 +1,176 @@
+package edu.emory.bmi.tcia.client.uid;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * A DICOM UID, such as a StudyInstanceUID, SeriesInstanceUID or SOPInstanceUID, packed into a nibble per character:
+ * the digits as 0 to 9, the dot as 10, and a padding of 15 after an odd number of characters. A UID of 64 characters
+ * takes 32 bytes. A value that is not made of digits and dots only is kept as a RAW byte followed by its UTF-8 bytes,
+ * which a packed value never starts with, so that any identifier can be held.
+ */
+public final class Uid {
+
+	static final int RAW = 0xFE;
+
+	private static final int DOT = 0xA;
+	private static final int PAD = 0xF;
+
+	private final byte[] encoded;
+	private final int hash;
+
+
+	private Uid(byte[] encoded) {
+		this.encoded = encoded;
+		this.hash = hash(encoded, 0, encoded.length);
+	}
+
+
+	/**
+	 * @param value a UID
+	 * @return the packed UID
+	 */
+	public static Uid of(String value) {
+		if (value == null) {
+			throw new NullPointerException("The UID is null");
+		}
+		return new Uid(encode(value));
+	}
+
+
+	/**
+	 * @param value a UID, or any other string
+	 * @return the encoded value
+	 */
+	public static byte[] encode(String value) {
+		int length = value.length();
+		byte[] packed = new byte[(length + 1) / 2];
+		if (pack(value, packed) >= 0) {
+			return packed;
+		}
+		byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+		byte[] raw = new byte[utf8.length + 1];
+		raw[0] = (byte) RAW;
+		System.arraycopy(utf8, 0, raw, 1, utf8.length);
+		return raw;
+	}
+
+
+	/*
+	 * Pack a UID into an array, in a single pass, and return its packed length, or -1 if it is not a UID made of
+	 * digits and dots, or does not fit in the array.
+	 */
+	static int pack(String value, byte[] target) {
+		int length = value.length();
+		if (length == 0 || (length + 1) / 2 > target.length) {
+			return -1;
+		}
+		int high = 0;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			int nibble;
+			if (c >= '0' && c <= '9') {
+				nibble = c - '0';
+			} else if (c == '.') {
+				nibble = DOT;
+			} else {
+				return -1;
+			}
+			if ((i & 1) == 0) {
+				high = nibble << 4;
+			} else {
+				target[i >> 1] = (byte) (high | nibble);
+			}
+		}
+		if ((length & 1) == 1) {
+			target[length >> 1] = (byte) (high | PAD);
+		}
+		return (length + 1) >> 1;
+	}
+
+
+	/**
+	 * @param buffer a buffer
+	 * @param offset the absolute offset of an encoded value in the buffer
+	 * @param length the length of the encoded value
+	 * @return the decoded value
+	 */
+	public static String decode(ByteBuffer buffer, int offset, int length) {
+		if ((buffer.get(offset) & 0xFF) == RAW) {
+			byte[] utf8 = new byte[length - 1];
+			for (int i = 0; i < utf8.length; i++) {
+				utf8[i] = buffer.get(offset + 1 + i);
+			}
+			return new String(utf8, StandardCharsets.UTF_8);
+		}
+		char[] chars = new char[length * 2];
+		int n = 0;
+		for (int i = 0; i < length; i++) {
+			int b = buffer.get(offset + i) & 0xFF;
+			chars[n++] = toChar(b >>> 4);
+			if ((b & PAD) != PAD) {
+				chars[n++] = toChar(b & PAD);
+			}
+		}
+		return new String(chars, 0, n);
+	}
+
+
+	/**
+	 * @param bytes an array
+	 * @param offset the offset of an encoded value in the array
+	 * @param length the length of the encoded value
+	 * @return the decoded value
+	 */
+	public static String decode(byte[] bytes, int offset, int length) {
+		return decode(ByteBuffer.wrap(bytes), offset, length);
+	}
+
+
+	byte[] getEncoded() {
+		return encoded;
+	}
+
+
+	static int hash(byte[] bytes, int offset, int length) {
+		// Four bytes at a time, rotated so that every byte reaches the low bits, which index the tables.
+		int h = length;
+		int end = offset + length;
+		int i = offset;
+		for (; i + 4 <= end; i += 4) {
+			int word = (bytes[i] & 0xFF) << 24 | (bytes[i + 1] & 0xFF) << 16 | (bytes[i + 2] & 0xFF) << 8 |
+					(bytes[i + 3] & 0xFF);
+			h = Integer.rotateLeft(h * 0x9E3779B9, 5) ^ word;
+		}
+		for (; i < end; i++) {
+			h = Integer.rotateLeft(h * 0x9E3779B9, 5) ^ (bytes[i] & 0xFF);
+		}
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Uid && hash == ((Uid) o).hash && Arrays.equals(encoded, ((Uid) o).encoded);
+	}
+
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+
+	@Override
+	public String toString() {
+		return decode(encoded, 0, encoded.length);
+	}
+
+
+	private static char toChar(int nibble) {
+		return nibble == DOT ? '.' : (char) ('0' + nibble);
+	}
+}
@@ -0,0 +1,125 @@
+package edu.emory.bmi.tcia.client.uid;
+
+import java.util.function.BiConsumer;
+
+
+/**
+ * A map from UIDs to values, with the UIDs held packed in an open-addressing hash table as in a UidSet. The UIDs are
+ * given as Strings, packed on the way in, or as Uids. A UID map is not thread-safe.
+ * @param <V> the type of the values
+ */
+public class UidMap<V> extends UidTable {
+
+	/**
+	 * Create an empty UID map.
+	 */
+	public UidMap() {
+		this(16);
+	}
+
+
+	/**
+	 * Create an empty UID map sized for a number of UIDs.
+	 * @param expectedSize the expected number of UIDs
+	 */
+	public UidMap(int expectedSize) {
+		super(expectedSize, true);
+	}
+
+
+	/**
+	 * @param uid a UID
+	 * @return the value of the UID, or null if the UID is not in the map
+	 */
+	public V get(String uid) {
+		return get(find(uid));
+	}
+
+
+	/**
+	 * @param uid a UID
+	 * @return the value of the UID, or null if the UID is not in the map
+	 */
+	public V get(Uid uid) {
+		return get(find(uid));
+	}
+
+
+	/**
+	 * @param uid a UID
+	 * @return whether the UID is in the map
+	 */
+	public boolean containsKey(String uid) {
+		return find(uid) >= 0;
+	}
+
+
+	/**
+	 * @param uid a UID
+	 * @param value the value
+	 * @return the previous value of the UID, or null if it was not in the map
+	 */
+	public V put(String uid, V value) {
+		return put(find(uid), value);
+	}
+
+
+	/**
+	 * @param uid a UID
+	 * @param value the value
+	 * @return the previous value of the UID, or null if it was not in the map
+	 */
+	public V put(Uid uid, V value) {
+		return put(find(uid), value);
+	}
+
+
+	/**
+	 * @param uid a UID
+	 * @return the value of the UID, or null if it was not in the map
+	 */
+	public V remove(String uid) {
+		int slot = find(uid);
+		if (slot < 0) {
+			return null;
+		}
+		V previous = getValue(slot);
+		removeAt(slot);
+		return previous;
+	}
+
+
+	/**
+	 * Pass each UID of the map and its value to an action, in no particular order.
+	 * @param action the action
+	 */
+	public void forEach(BiConsumer<String, V> action) {
+		for (int slot = 0; slot < getSlotCount(); slot++) {
+			if (isUsed(slot)) {
+				action.accept(keyAt(slot), getValue(slot));
+			}
+		}
+	}
+
+
+	private V get(int slot) {
+		return slot < 0 ? null : getValue(slot);
+	}
+
+
+	private V put(int slot, V value) {
+		if (slot < 0) {
+			insert(-slot - 1, value);
+			return null;
+		}
+		V previous = getValue(slot);
+		setValueAt(slot, value);
+		return previous;
+	}
+
+
+	@SuppressWarnings("unchecked")
+	private V getValue(int slot) {
+		return (V) valueAt(slot);
+	}
+}
@@ -0,0 +1,113 @@
+package edu.emory.bmi.tcia.client.uid;
+
+import java.util.function.Consumer;
+
+
+/**
+ * A set of UIDs, held packed in an open-addressing hash table: a UID of 64 characters costs about 40 bytes, where a
+ * HashSet of Strings costs several times as much. The UIDs are given as Strings, packed on the way in, or as Uids.
+ * A UID set is not thread-safe.
+ */
+public class UidSet extends UidTable {
+
+	/**
+	 * Create an empty UID set.
+	 */
+	public UidSet() {
+		this(16);
+	}
+
+
+	/**
+	 * Create an empty UID set sized for a number of UIDs.
+	 * @param expectedSize the expected number of UIDs
+	 */
+	public UidSet(int expectedSize) {
+		super(expectedSize, false);
+	}
+
+
+	/**
+	 * @param uid a UID
+	 * @return whether the UID was added, and was not in the set
+	 */
+	public boolean add(String uid) {
+		return add(find(uid));
+	}
+
+
+	/**
+	 * @param uid a UID
+	 * @return whether the UID was added, and was not in the set
+	 */
+	public boolean add(Uid uid) {
+		return add(find(uid));
+	}
+
+
+	/**
+	 * @param uid a UID
+	 * @return whether the UID is in the set
+	 */
+	public boolean contains(String uid) {
+		return find(uid) >= 0;
+	}
+
+
+	/**
+	 * @param uid a UID
+	 * @return whether the UID is in the set
+	 */
+	public boolean contains(Uid uid) {
+		return find(uid) >= 0;
+	}
+
+
+	/**
+	 * @param uid a UID
+	 * @return whether the UID was in the set
+	 */
+	public boolean remove(String uid) {
+		return remove(find(uid));
+	}
+
+
+	/**
+	 * @param uid a UID
+	 * @return whether the UID was in the set
+	 */
+	public boolean remove(Uid uid) {
+		return remove(find(uid));
+	}
+
+
+	/**
+	 * Pass each UID of the set to an action, in no particular order.
+	 * @param action the action
+	 */
+	public void forEach(Consumer<String> action) {
+		for (int slot = 0; slot < getSlotCount(); slot++) {
+			if (isUsed(slot)) {
+				action.accept(keyAt(slot));
+			}
+		}
+	}
+
+
+	private boolean add(int slot) {
+		if (slot >= 0) {
+			return false;
+		}
+		insert(-slot - 1, null);
+		return true;
+	}
+
+
+	private boolean remove(int slot) {
+		if (slot < 0) {
+			return false;
+		}
+		removeAt(slot);
+		return true;
+	}
+}
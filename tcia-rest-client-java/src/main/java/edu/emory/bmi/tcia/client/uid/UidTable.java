@@ -0,0 +1,269 @@
+package edu.emory.bmi.tcia.client.uid;
+
+import java.util.Arrays;
+
+
+/**
+ * The open-addressing hash table of the UID sets and maps. The encoded UIDs are appended to a byte arena, each after
+ * its length, and the table holds the offset of each entry in the arena, so that a UID costs its packed bytes and a
+ * few bytes of the table, rather than a String and a hash entry. The collisions are resolved by linear probing, and a
+ * removal shifts back the entries that follow it, so that the table has no tombstones. The arena is compacted when
+ * the table grows, or when half of it is removed entries.
+ */
+abstract class UidTable {
+
+	private static final int MAX_ENCODED_LENGTH = 0xFF;
+	private static final double LOAD_FACTOR = 0.7;
+
+	private byte[] arena;
+	private int arenaSize;
+	private int garbage;
+	// The arena offset of the entry in each slot, plus one, or 0 for an empty slot.
+	private int[] slots;
+	private Object[] values;
+	private final boolean hasValues;
+	private int size;
+	private int threshold;
+	private final byte[] scratch = new byte[128];
+	private byte[] lookupKey;
+	private int lookupLength;
+	private int lookupHash;
+
+
+	UidTable(int expectedSize, boolean hasValues) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("The expected size must not be negative: " + expectedSize);
+		}
+		this.hasValues = hasValues;
+		arena = new byte[Math.max(64, expectedSize * 24)];
+		allocate(getCapacity(expectedSize));
+	}
+
+
+	/**
+	 * @return the number of UIDs
+	 */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * @return whether there is no UID
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+
+	/**
+	 * Remove all the UIDs.
+	 */
+	public void clear() {
+		Arrays.fill(slots, 0);
+		if (hasValues) {
+			Arrays.fill(values, null);
+		}
+		arenaSize = 0;
+		garbage = 0;
+		size = 0;
+	}
+
+
+	/*
+	 * The slot of a UID, or -(the empty slot where it would be inserted) - 1. The UID is packed into a scratch array,
+	 * so that a lookup does not allocate, and is kept for an insert that follows.
+	 */
+	final int find(String uid) {
+		lookupLength = Uid.pack(uid, scratch);
+		if (lookupLength >= 0) {
+			lookupKey = scratch;
+		} else {
+			lookupKey = Uid.encode(uid);
+			lookupLength = lookupKey.length;
+		}
+		lookupHash = Uid.hash(lookupKey, 0, lookupLength);
+		return find(lookupKey, lookupLength, lookupHash);
+	}
+
+
+	final int find(Uid uid) {
+		lookupKey = uid.getEncoded();
+		lookupLength = lookupKey.length;
+		lookupHash = uid.hashCode();
+		return find(lookupKey, lookupLength, lookupHash);
+	}
+
+
+	/*
+	 * Insert the UID of the last find, which did not find it, and return its slot.
+	 */
+	final int insert(int emptySlot, Object value) {
+		if (lookupLength > MAX_ENCODED_LENGTH) {
+			throw new IllegalArgumentException("The UID is longer than " + MAX_ENCODED_LENGTH + " bytes encoded");
+		}
+		if (size >= threshold) {
+			rehash(getCapacity(size + 1));
+			emptySlot = -find(lookupKey, lookupLength, lookupHash) - 1;
+		}
+		if (arenaSize + lookupLength + 1 > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arena.length + (arena.length >> 1), arenaSize + lookupLength + 1));
+		}
+		int offset = arenaSize;
+		arena[arenaSize++] = (byte) lookupLength;
+		System.arraycopy(lookupKey, 0, arena, arenaSize, lookupLength);
+		arenaSize += lookupLength;
+		slots[emptySlot] = offset + 1;
+		if (hasValues) {
+			values[emptySlot] = value;
+		}
+		size++;
+		return emptySlot;
+	}
+
+
+	/*
+	 * Remove the UID of a slot, and shift back the entries of the same probe sequence that follow it.
+	 */
+	final void removeAt(int i) {
+		garbage += (arena[slots[i] - 1] & 0xFF) + 1;
+		int mask = slots.length - 1;
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			int slot = slots[j];
+			if (slot == 0) {
+				break;
+			}
+			int home = getHash(slot - 1) & mask;
+			// The entry at j moves to i unless its home slot is cyclically in (i, j].
+			boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+			if (!between) {
+				slots[i] = slot;
+				if (hasValues) {
+					values[i] = values[j];
+				}
+				i = j;
+			}
+		}
+		slots[i] = 0;
+		if (hasValues) {
+			values[i] = null;
+		}
+		size--;
+		if (garbage > arenaSize / 2) {
+			rehash(slots.length);
+		}
+	}
+
+
+	final Object valueAt(int slot) {
+		return values[slot];
+	}
+
+
+	final void setValueAt(int slot, Object value) {
+		values[slot] = value;
+	}
+
+
+	/*
+	 * The slots in use, for iteration: a slot is in use if isUsed.
+	 */
+	final int getSlotCount() {
+		return slots.length;
+	}
+
+
+	final boolean isUsed(int slot) {
+		return slots[slot] != 0;
+	}
+
+
+	final String keyAt(int slot) {
+		int offset = slots[slot] - 1;
+		return Uid.decode(arena, offset + 1, arena[offset] & 0xFF);
+	}
+
+
+	private int find(byte[] key, int length, int hash) {
+		int mask = slots.length - 1;
+		int i = hash & mask;
+		while (true) {
+			int slot = slots[i];
+			if (slot == 0) {
+				return -i - 1;
+			}
+			if (matches(slot - 1, key, length)) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+	}
+
+
+	private boolean matches(int offset, byte[] key, int length) {
+		if ((arena[offset] & 0xFF) != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (arena[offset + 1 + i] != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	private int getHash(int offset) {
+		return Uid.hash(arena, offset + 1, arena[offset] & 0xFF);
+	}
+
+
+	/*
+	 * Move the entries to a table of the given capacity, and to a compacted arena.
+	 */
+	private void rehash(int capacity) {
+		byte[] oldArena = arena;
+		int[] oldSlots = slots;
+		Object[] oldValues = values;
+		arena = new byte[Math.max(64, arenaSize - garbage)];
+		arenaSize = 0;
+		garbage = 0;
+		allocate(capacity);
+		int mask = capacity - 1;
+		for (int j = 0; j < oldSlots.length; j++) {
+			if (oldSlots[j] == 0) {
+				continue;
+			}
+			int offset = oldSlots[j] - 1;
+			int length = (oldArena[offset] & 0xFF) + 1;
+			int i = Uid.hash(oldArena, offset + 1, length - 1) & mask;
+			while (slots[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			System.arraycopy(oldArena, offset, arena, arenaSize, length);
+			slots[i] = arenaSize + 1;
+			arenaSize += length;
+			if (hasValues) {
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+
+	private void allocate(int capacity) {
+		slots = new int[capacity];
+		values = hasValues ? new Object[capacity] : null;
+		threshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+
+	private static int getCapacity(int size) {
+		int capacity = 16;
+		while (capacity * LOAD_FACTOR < size + 1) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+}
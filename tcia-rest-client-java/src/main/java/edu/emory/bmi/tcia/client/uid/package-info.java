@@ -0,0 +1,4 @@
+/**
+ * The compact representation of the DICOM UIDs, and the sets and maps of UIDs that hold them without a String per UID.
+ */
+package edu.emory.bmi.tcia.client.uid;
@@ -0,0 +1,519 @@
+package edu.emory.bmi.tcia.client.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import edu.emory.bmi.tcia.client.cache.RequestKey;
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.conf.TCIAConstants;
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import edu.emory.bmi.tcia.client.metrics.RequestTimer;
+import edu.emory.bmi.tcia.client.request.Query;
+import edu.emory.bmi.tcia.client.transport.ApacheTransport;
+import edu.emory.bmi.tcia.client.transport.ContentEncoding;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.entity.ContentInputStream;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.protocol.BasicAsyncRequestProducer;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.util.SharedInputBuffer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * The utility methods of the asynchronous TCIA client, built on the non-blocking Apache HttpAsyncClient.
+ * A few I/O dispatcher threads keep all the requests in flight, and the results are delivered as CompletableFutures.
+ * The requests run against the default client of TCIAClientUtil, for its credentials, resource url, compression and
+ * metrics, unless the asynchronous client is initialized with its own configuration.
+ */
+public class AsyncTCIAClientUtil {
+
+	// Size of the buffer between the I/O dispatcher and the reader of an image stream.
+	private static final int IMAGE_BUFFER_SIZE = 256 * 1024;
+
+	// Completes the futures off the I/O dispatcher, which alone feeds the image streams their dependent stages read.
+	private static final Executor COMPLETION_EXECUTOR = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "tcia-async-completion");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static volatile CloseableHttpAsyncClient httpAsyncClient;
+	private static PoolingNHttpClientConnectionManager connectionManager;
+	private static ScheduledExecutorService connectionMonitor;
+	private static volatile TCIAClient client;
+
+	private static Logger logger = LogManager.getLogger(AsyncTCIAClientUtil.class.getName());
+
+
+	/**
+	 * Initialize the asynchronous client on the default client of TCIAClientUtil, itself initialized from the
+	 * configuration file unless TCIAClientUtil.init has been called. The first request initializes the asynchronous
+	 * client if need be, and an initialized client is left unchanged.
+	 */
+	public static void init() {
+		getHttpAsyncClient();
+	}
+
+
+	/**
+	 * Initialize the asynchronous client based on the given configuration, which it keeps apart from the default
+	 * client of TCIAClientUtil. The non-blocking HTTP client is created and started on the first initialization and
+	 * shared by the later ones.
+	 * @param tciaConf the TCIA configuration
+	 */
+	public static synchronized void init(TCIAConf tciaConf) {
+		// The requests only use the credentials, resource url, compression and metrics of the client.
+		client = TCIAClient.builder().conf(tciaConf).transport(null).responseCache(null).imageCache(null)
+				.catalog(null).concurrencyLimiter(null).build();
+		initHttpAsyncClient(tciaConf);
+	}
+
+
+	/**
+	 * Get the client the asynchronous requests run against.
+	 * @return the client of the configuration given to init, or the default client of TCIAClientUtil
+	 */
+	public static TCIAClient getClient() {
+		TCIAClient configured = client;
+		return configured != null ? configured : TCIAClientUtil.getDefault();
+	}
+
+
+	/**
+	 * Stop the asynchronous client and close its connections. The next request, or init, creates a new client on
+	 * the default client of TCIAClientUtil, unless init is given a configuration again.
+	 */
+	public static synchronized void shutdown() {
+		client = null;
+		if (httpAsyncClient != null) {
+			connectionMonitor.shutdownNow();
+			try {
+				httpAsyncClient.close();
+			} catch (IOException e) {
+				logger.error("Exception in closing the asynchronous HTTP client", e);
+			}
+			httpAsyncClient = null;
+			connectionManager = null;
+			connectionMonitor = null;
+		}
+	}
+
+
+	private static synchronized void initHttpAsyncClient(TCIAConf tciaConf) {
+		if (httpAsyncClient != null) {
+			return;
+		}
+
+		try {
+			Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+					.register("http", NoopIOSessionStrategy.INSTANCE)
+					.register("https", new SSLIOSessionStrategy(WebClientDevWrapper.createSSLContext(),
+							NoopHostnameVerifier.INSTANCE))
+					.build();
+			connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(), registry);
+		} catch (IOReactorException e) {
+			logger.error("Exception in initializing the asynchronous TCIA Client", e);
+			return;
+		} catch (Exception e) {
+			logger.error("Web Client Dev Wrapper Exception", e);
+			return;
+		}
+
+		connectionManager.setMaxTotal(TCIAClientUtil.valueOrDefault(tciaConf.getMaxtotalconnections(),
+				TCIAConstants.DEFAULT_MAX_TOTAL_CONNECTIONS));
+		connectionManager.setDefaultMaxPerRoute(TCIAClientUtil.valueOrDefault(tciaConf.getMaxconnectionsperroute(),
+				TCIAConstants.DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(TCIAClientUtil.valueOrDefault(tciaConf.getConnecttimeout(),
+						TCIAConstants.DEFAULT_CONNECT_TIMEOUT_MS))
+				.setSocketTimeout(TCIAClientUtil.valueOrDefault(tciaConf.getSockettimeout(),
+						TCIAConstants.DEFAULT_SOCKET_TIMEOUT_MS))
+				.build();
+
+		httpAsyncClient = HttpAsyncClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(ApacheTransport.keepAliveStrategy(TCIAClientUtil.valueOrDefault(
+						tciaConf.getKeepalive(), TCIAConstants.DEFAULT_KEEP_ALIVE_MS)))
+				.build();
+		httpAsyncClient.start();
+
+		// The non-blocking pool has no built-in eviction thread, so evict the expired and idle connections here.
+		final long idleTimeout = TCIAClientUtil.valueOrDefault(tciaConf.getIdletimeout(),
+				TCIAConstants.DEFAULT_IDLE_TIMEOUT_MS);
+		final PoolingNHttpClientConnectionManager monitored = connectionManager;
+		connectionMonitor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "tcia-async-connection-monitor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		connectionMonitor.scheduleWithFixedDelay(() -> {
+			monitored.closeExpiredConnections();
+			monitored.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+		}, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Return a future of the string in a specified output format from a URI Builder object.
+	 * The future completes once the whole response has been received.
+	 * @param format the output format
+	 * @param uriBuilder the URI Builder object
+	 * @return the future of the string in the specified output format
+	 */
+	public static CompletableFuture<String> getStringFromURIBuilder(OutputFormat format, URIBuilder uriBuilder) {
+		TCIAClient tcia = getClient();
+		try {
+			uriBuilder.addParameter("format", format.name());
+			return getString(tcia, uriBuilder.build());
+		} catch (URISyntaxException e) {
+			return failedFuture(tcia, e);
+		}
+	}
+
+
+	/**
+	 * Return a future of the string in a specified output format from a query.
+	 * The future completes once the whole response has been received.
+	 * @param format the output format
+	 * @param query the query of a metadata endpoint
+	 * @return the future of the string in the specified output format
+	 */
+	public static CompletableFuture<String> getStringFromQuery(OutputFormat format, Query query) {
+		TCIAClient tcia = getClient();
+		try {
+			return getString(tcia, query.format(format).toURI(tcia.getResourceUrl()));
+		} catch (IllegalArgumentException e) {
+			return failedFuture(tcia, e);
+		}
+	}
+
+
+	private static CompletableFuture<String> getString(TCIAClient tcia, URI uri) {
+		CompletableFuture<String> future = new CompletableFuture<>();
+		HttpGet request = newRequest(tcia, uri);
+		if (tcia.isCompressionEnabled()) {
+			request.setHeader(ContentEncoding.ACCEPT_ENCODING, ContentEncoding.ACCEPTED);
+		}
+		// The response is buffered before it is handed over, so its latency includes the transfer of its body.
+		RequestTimer timer = RequestTimer.start(tcia.getMetricsRecorder(), RequestKey.getEndpoint(uri));
+		getHttpAsyncClient().execute(new BasicAsyncRequestProducer(URIUtils.extractHost(uri), request),
+				new BasicAsyncResponseConsumer(), new FutureCallback<HttpResponse>() {
+
+					public void completed(HttpResponse response) {
+						if (timer != null) {
+							timer.onResponse(response.getStatusLine().getStatusCode());
+							if (response.getEntity() != null) {
+								timer.onBytes(response.getEntity().getContentLength());
+							}
+						}
+						try {
+							if (response.getStatusLine().getStatusCode() != 200) {
+								TCIAClientUtil.getStatus(uri, response);
+							}
+							HttpEntity entity = response.getEntity();
+							if (entity == null) {
+								throw new TCIAClientException(tcia.getResourceUrl(), "No Content");
+							}
+							Header contentEncoding = response.getFirstHeader(ContentEncoding.CONTENT_ENCODING);
+							if (contentEncoding != null && ContentEncoding.isEncoded(contentEncoding.getValue())) {
+								ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+								try (InputStream in = ContentEncoding.decode(entity.getContent(),
+										contentEncoding.getValue())) {
+									byte[] buffer = new byte[8192];
+									for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+										decoded.write(buffer, 0, read);
+									}
+								}
+								if (timer != null) {
+									timer.onDecodedBytes(decoded.size());
+								}
+								completeAsync(future, new String(decoded.toByteArray(), StandardCharsets.UTF_8));
+							} else {
+								completeAsync(future, EntityUtils.toString(entity, StandardCharsets.UTF_8));
+							}
+						} catch (Exception e) {
+							failAsync(future, e);
+						} finally {
+							if (timer != null) {
+								timer.complete();
+							}
+						}
+					}
+
+					public void failed(Exception ex) {
+						if (timer != null) {
+							timer.complete();
+						}
+						failAsync(future, new TCIAClientException(ex, uri.toString()));
+					}
+
+					public void cancelled() {
+						if (timer != null) {
+							timer.complete();
+						}
+						future.cancel(false);
+					}
+				});
+		return future;
+	}
+
+
+	/**
+	 * Authenticate with the given authentication mechanism and return a future of the image result.
+	 * The future completes as soon as the response headers are received, and the raw data of the image result
+	 * streams the rest of the response as it arrives, without buffering the whole ZIP in memory.
+	 * @param uriBuilder the URIBuilder object
+	 * @return the future of the ImageResult
+	 */
+	public static CompletableFuture<ImageResult> authenticateAndGetImage(URIBuilder uriBuilder) {
+		TCIAClient tcia = getClient();
+		try {
+			return getImage(tcia, uriBuilder.build());
+		} catch (URISyntaxException e) {
+			return failedFuture(tcia, e);
+		}
+	}
+
+
+	/**
+	 * Authenticate with the given authentication mechanism and return a future of the image result of a query,
+	 * which streams as authenticateAndGetImage of a URIBuilder does.
+	 * @param query the query of an image endpoint
+	 * @return the future of the ImageResult
+	 */
+	public static CompletableFuture<ImageResult> authenticateAndGetImage(Query query) {
+		TCIAClient tcia = getClient();
+		try {
+			return getImage(tcia, query.toURI(tcia.getResourceUrl()));
+		} catch (IllegalArgumentException e) {
+			return failedFuture(tcia, e);
+		}
+	}
+
+
+	private static CompletableFuture<ImageResult> getImage(TCIAClient tcia, URI uri) {
+		CompletableFuture<ImageResult> future = new CompletableFuture<>();
+		HttpGet request = newRequest(tcia, uri);
+		getHttpAsyncClient().execute(new BasicAsyncRequestProducer(URIUtils.extractHost(uri), request),
+				new ImageResponseConsumer(uri, future, RequestTimer.start(tcia.getMetricsRecorder(),
+						RequestKey.getEndpoint(uri))), null);
+		return future;
+	}
+
+
+	/*
+	 * The private utility methods to be used by the public utility methods of this class.
+	 */
+
+	private static <T> CompletableFuture<T> failedFuture(TCIAClient tcia, Exception e) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(new TCIAClientException(e, tcia.getResourceUrl()));
+		return future;
+	}
+
+
+	/*
+	 * Complete the future on the completion executor, so that the dependent stages of the caller never run on, and
+	 * never block, the I/O dispatcher.
+	 */
+	private static <T> void completeAsync(CompletableFuture<T> future, T value) {
+		COMPLETION_EXECUTOR.execute(() -> future.complete(value));
+	}
+
+
+	private static void failAsync(CompletableFuture<?> future, Throwable failure) {
+		COMPLETION_EXECUTOR.execute(() -> future.completeExceptionally(failure));
+	}
+
+
+	private static CloseableHttpAsyncClient getHttpAsyncClient() {
+		CloseableHttpAsyncClient started = httpAsyncClient;
+		return started != null ? started : initDefault();
+	}
+
+
+	/*
+	 * Start the non-blocking HTTP client with the configuration of the default client, read only once.
+	 */
+	private static synchronized CloseableHttpAsyncClient initDefault() {
+		if (httpAsyncClient == null) {
+			getClient();
+			TCIAConf tciaConf = TCIAClientUtil.getConf();
+			initHttpAsyncClient(tciaConf != null ? tciaConf : new TCIAConf());
+		}
+		return httpAsyncClient;
+	}
+
+
+	private static HttpGet newRequest(TCIAClient tcia, URI uri) {
+		HttpGet request = new HttpGet(uri);
+		// add authentication header
+		request.setHeader(tcia.getAuthorizationHeader(), tcia.getAuthValue());
+		return request;
+	}
+
+
+	/**
+	 * Completes the image future on the response head, and hands the body over to the reader through a bounded
+	 * buffer. The I/O dispatcher suspends the input when the buffer is full, so a slow reader never stalls other
+	 * connections nor grows the heap.
+	 */
+	private static class ImageResponseConsumer extends AbstractAsyncResponseConsumer<Void> {
+		private final URI uri;
+		private final CompletableFuture<ImageResult> future;
+		private final RequestTimer timer;
+		private final SharedInputBuffer buffer = new SharedInputBuffer(IMAGE_BUFFER_SIZE);
+		private volatile Exception failure;
+		private volatile boolean rejected;
+
+		ImageResponseConsumer(URI uri, CompletableFuture<ImageResult> future, RequestTimer timer) {
+			this.uri = uri;
+			this.future = future;
+			this.timer = timer;
+		}
+
+		@Override
+		protected void onResponseReceived(HttpResponse response) {
+			if (timer != null) {
+				timer.onResponse(response.getStatusLine().getStatusCode());
+			}
+			try {
+				if (response.getStatusLine().getStatusCode() != 200) {
+					TCIAClientUtil.getStatus(uri, response);
+				}
+			} catch (TCIAClientException e) {
+				rejected = true;
+				failAsync(future, e);
+				return;
+			}
+
+			ImageResult imageResult = new ImageResult();
+			imageResult.setRawData(new FilterInputStream(new ContentInputStream(buffer)) {
+				@Override
+				public int read() throws IOException {
+					int read = super.read();
+					return read == -1 ? checkFailure(-1) : received(read, 1);
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					int read = super.read(b, off, len);
+					return read == -1 ? checkFailure(-1) : received(read, read);
+				}
+
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						complete();
+					}
+				}
+
+				private int checkFailure(int read) throws IOException {
+					complete();
+					if (failure != null) {
+						throw new IOException("The image transfer failed", failure);
+					}
+					return read;
+				}
+
+				private int received(int read, int count) {
+					if (timer != null) {
+						timer.onBytes(count);
+					}
+					return read;
+				}
+			});
+			Header imageCount = response.getFirstHeader("imageCount");
+			if (imageCount != null) {
+				imageResult.setImageCount(Integer.parseInt(imageCount.getValue()));
+			}
+			if (response.getEntity() != null) {
+				imageResult.setContentLength(response.getEntity().getContentLength());
+			}
+			completeAsync(future, imageResult);
+		}
+
+		@Override
+		protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+			if (rejected) {
+				// Discard the body of an error response.
+				buffer.consumeContent(decoder, ioControl);
+				buffer.reset();
+				return;
+			}
+			buffer.consumeContent(decoder, ioControl);
+		}
+
+		private void complete() {
+			if (timer != null) {
+				timer.complete();
+			}
+		}
+
+		@Override
+		protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+		}
+
+		@Override
+		protected Void buildResult(HttpContext context) {
+			return null;
+		}
+
+		@Override
+		protected void releaseResources() {
+			failure = getException();
+			if (failure != null || rejected) {
+				// A failed or rejected response has no reader to complete the request.
+				complete();
+			}
+			if (failure != null) {
+				failAsync(future, new TCIAClientException(failure, uri.toString()));
+				// Wake up the reader, which then observes the failure.
+				buffer.shutdown();
+			} else {
+				// Mark the end of the stream, also for a response without a body.
+				buffer.close();
+			}
+		}
+	}
+}
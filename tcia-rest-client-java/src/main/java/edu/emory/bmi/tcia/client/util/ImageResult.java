@@ -8,6 +8,7 @@ import java.io.InputStream;
 public class ImageResult {
 	private InputStream rawData;
 	private Integer imageCount;
+	private long contentLength = -1;
 	public InputStream getRawData() {
 		return rawData;
 	}
@@ -20,4 +21,13 @@ public class ImageResult {
 	public void setImageCount(Integer imageCount) {
 		this.imageCount = imageCount;
 	}
+	/**
+	 * @return the length of the raw data in bytes, as announced by the server, or -1 if unknown
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+	public void setContentLength(long contentLength) {
+		this.contentLength = contentLength;
+	}
 }
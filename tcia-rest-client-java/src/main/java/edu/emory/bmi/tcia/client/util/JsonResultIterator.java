@@ -0,0 +1,129 @@
+package edu.emory.bmi.tcia.client.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+
+/**
+ * Lazily decodes a JSON array of records from a response stream with the Jackson streaming parser.
+ * Only the current record is held in memory, regardless of the size of the response.
+ * The response stream is closed when the array is exhausted, when decoding fails, or on close.
+ * @param <T> the type of the records
+ */
+public class JsonResultIterator<T> implements Iterator<T>, Closeable {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	private final InputStream inputStream;
+	private final Class<T> type;
+	private JsonParser parser;
+	private T next;
+	private boolean closed;
+
+
+	/**
+	 * Create an iterator over the records of the given stream.
+	 * @param inputStream the JSON response stream
+	 * @param type the type of the records
+	 */
+	public JsonResultIterator(InputStream inputStream, Class<T> type) {
+		this.inputStream = inputStream;
+		this.type = type;
+	}
+
+
+	/**
+	 * Wrap the given stream of records as a sequential Stream, which closes the response stream on close.
+	 * @param inputStream the JSON response stream
+	 * @param type the type of the records
+	 * @param <T> the type of the records
+	 * @return the stream of records
+	 */
+	public static <T> Stream<T> stream(InputStream inputStream, Class<T> type) {
+		JsonResultIterator<T> iterator = new JsonResultIterator<>(inputStream, type);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+				Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(iterator::close);
+	}
+
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !closed) {
+			try {
+				next = readNext();
+			} catch (IOException e) {
+				close();
+				throw new UncheckedIOException(e);
+			}
+		}
+		return next != null;
+	}
+
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		T result = next;
+		next = null;
+		return result;
+	}
+
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (parser != null) {
+				parser.close();
+			}
+			inputStream.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+
+	private T readNext() throws IOException {
+		if (parser == null) {
+			parser = MAPPER.getFactory().createParser(inputStream);
+			JsonToken token = parser.nextToken();
+			if (token == null) {
+				// TCIA returns an empty body when nothing matches.
+				close();
+				return null;
+			}
+			if (token != JsonToken.START_ARRAY) {
+				throw new IOException("Expected a JSON array of results, but found " + token);
+			}
+		}
+
+		JsonToken token = parser.nextToken();
+		if (token == JsonToken.START_OBJECT) {
+			return MAPPER.readValue(parser, type);
+		}
+		if (token == JsonToken.END_ARRAY || token == null) {
+			close();
+			return null;
+		}
+		throw new IOException("Expected a JSON object in the results, but found " + token);
+	}
+}
@@ -0,0 +1,12 @@
+package edu.emory.bmi.tcia.client.util;
+
+/**
+ * Receives the progress of saving an image result.
+ */
+public interface ProgressListener {
+	/**
+	 * @param bytesWritten the number of bytes written so far
+	 * @param totalBytes the expected number of bytes, or -1 if unknown
+	 */
+	void onProgress(long bytesWritten, long totalBytes);
+}
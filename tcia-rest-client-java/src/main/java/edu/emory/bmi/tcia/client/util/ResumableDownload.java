@@ -0,0 +1,307 @@
+package edu.emory.bmi.tcia.client.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import edu.emory.bmi.tcia.client.transport.TransportRequest;
+import edu.emory.bmi.tcia.client.transport.TransportResponse;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * A download of an image into a file that survives interruptions. The bytes received so far are kept in a partial
+ * file, and a checkpoint sidecar records the URI, the validator and the length of the image, and the number of
+ * bytes flushed to the disk. A later attempt continues from the checkpoint with a Range request, guarded by an
+ * If-Range on the validator, so that a changed image is downloaded again rather than spliced. An image served without
+ * a validator, such as a zip generated on the fly, is downloaded again from the first byte, and a partial response
+ * whose total length differs from the checkpoint restarts the download.
+ * A server ignoring the range answers with the whole image, and the download restarts.
+ */
+class ResumableDownload {
+
+	private static final String PART_SUFFIX = ".part";
+	private static final String CHECKPOINT_SUFFIX = ".part.checkpoint";
+
+	private static final String URI_PROPERTY = "uri";
+	private static final String VALIDATOR_PROPERTY = "validator";
+	private static final String LENGTH_PROPERTY = "length";
+	private static final String IMAGE_COUNT_PROPERTY = "imageCount";
+	private static final String OFFSET_PROPERTY = "offset";
+
+	// The number of bytes between two checkpoints, each of which flushes the partial file to the disk.
+	private static final long CHECKPOINT_INTERVAL = 16L * 1024 * 1024;
+
+	private static Logger logger = LogManager.getLogger(ResumableDownload.class.getName());
+
+	private final TCIAClient client;
+	private final URI uri;
+	private final Path path;
+	private final Path part;
+	private final Path checkpointPath;
+	private final SaveOptions options;
+
+	private String validator;
+	private long length = -1;
+	private Integer imageCount;
+
+
+	ResumableDownload(TCIAClient client, URI uri, Path path, SaveOptions options) {
+		this.client = client;
+		this.uri = uri;
+		this.path = path;
+		this.part = path.resolveSibling(path.getFileName() + PART_SUFFIX);
+		this.checkpointPath = path.resolveSibling(path.getFileName() + CHECKPOINT_SUFFIX);
+		this.options = options;
+	}
+
+
+	/**
+	 * Download the image, resuming after each failed transfer up to the resume attempts, with the backoff of the
+	 * retry policy.
+	 * @return the image result, without raw data
+	 * @throws TCIAClientException if the server rejected the request
+	 * @throws IOException if the last attempt failed
+	 */
+	ImageResult download() throws TCIAClientException, IOException {
+		return client.retry(uri, this::downloadOnce, options.getResumeAttempts());
+	}
+
+
+	private ImageResult downloadOnce() throws TCIAClientException, IOException {
+		long offset = readCheckpoint();
+		if (offset > 0 && validator == null) {
+			// Without a validator, the server cannot tell whether the image changed since the partial file.
+			logger.info("No validator for " + uri + ", restarting the download");
+			offset = 0;
+		}
+
+		TransportRequest request = new TransportRequest(uri)
+				.setHeader(client.getAuthorizationHeader(), client.getAuthValue());
+		// The byte offsets refer to the image as stored, rather than to a compressed encoding of it.
+		request.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+		if (offset > 0) {
+			request.setHeader(HttpHeaders.RANGE, "bytes=" + offset + "-");
+			request.setHeader(HttpHeaders.IF_RANGE, validator);
+		}
+
+		try (TransportResponse response = client.execute(request)) {
+			int statusCode = response.getStatusCode();
+			if (statusCode == HttpStatus.SC_PARTIAL_CONTENT && offset > 0) {
+				long[] contentRange = getContentRange(response);
+				if (contentRange[0] != offset) {
+					deletePartial();
+					throw new IOException("Unexpected range from " + contentRange[0] + " instead of " + offset +
+							" for " + uri);
+				}
+				if (length >= 0 && contentRange[1] >= 0 && contentRange[1] != length) {
+					deletePartial();
+					throw new IOException("The length of " + uri + " changed from " + length + " to " +
+							contentRange[1] + " bytes, restarting the download");
+				}
+				if (length < 0) {
+					length = contentRange[1];
+				}
+				logger.info("Resuming the download of " + uri + " from byte " + offset);
+			} else if (statusCode == HttpStatus.SC_OK) {
+				if (offset > 0) {
+					logger.info("The server sent the whole image of " + uri + ", restarting the download");
+				}
+				offset = 0;
+				validator = getValidator(response);
+				length = response.getContentLength();
+				String imageCountHeader = response.getHeader("imageCount");
+				imageCount = imageCountHeader != null ? Integer.valueOf(imageCountHeader) : null;
+			} else if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && offset == length) {
+				// The previous attempt received every byte, but did not get to complete.
+				return complete(offset);
+			} else {
+				if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+					deletePartial();
+				}
+				TCIAClientUtil.getStatus(uri, response);
+			}
+
+			InputStream content = response.getContent();
+			if (content == null) {
+				throw new TCIAClientException(client.getResourceUrl(), "No Content");
+			}
+			writeCheckpoint(offset);
+			try (InputStream in = content) {
+				offset = copy(in, offset);
+			}
+		}
+
+		if (length >= 0 && offset < length) {
+			throw new IOException("Truncated image: received " + offset + " of " + length + " bytes for " + uri);
+		}
+		return complete(offset);
+	}
+
+
+	/*
+	 * Append the stream to the partial file from the offset, checkpointing periodically.
+	 */
+	private long copy(InputStream in, long offset) throws IOException {
+		ProgressListener listener = options.getProgressListener();
+		long nextProgress = offset + options.getProgressInterval();
+		long nextCheckpoint = offset + CHECKPOINT_INTERVAL;
+		long position = offset;
+
+		try (FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			// Drop any bytes past the checkpoint, which may not have reached the disk intact.
+			out.truncate(offset);
+			out.position(offset);
+			byte[] buffer = new byte[options.getBufferSize()];
+			ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+			int filled;
+			try {
+				while ((filled = TCIAClientUtil.fill(in, buffer)) > 0) {
+					byteBuffer.clear().limit(filled);
+					long writeStart = System.nanoTime();
+					while (byteBuffer.hasRemaining()) {
+						out.write(byteBuffer);
+					}
+					TCIAClientUtil.recordDiskWrite(client.getMetricsRecorder(), filled, System.nanoTime() - writeStart);
+					position += filled;
+					if (position >= nextProgress) {
+						TCIAClientUtil.notifyProgress(listener, position, length);
+						nextProgress = position + options.getProgressInterval();
+					}
+					if (position >= nextCheckpoint) {
+						out.force(false);
+						writeCheckpoint(position);
+						nextCheckpoint = position + CHECKPOINT_INTERVAL;
+					}
+				}
+			} finally {
+				// Keep what was received before a failure, for the next attempt.
+				out.force(false);
+				writeCheckpoint(position);
+			}
+		}
+		TCIAClientUtil.notifyProgress(listener, position, length);
+		return position;
+	}
+
+
+	private ImageResult complete(long offset) throws IOException {
+		Files.move(part, path, StandardCopyOption.REPLACE_EXISTING);
+		Files.deleteIfExists(checkpointPath);
+		logger.info(offset + " bytes of " + uri + " downloaded to " + path);
+
+		ImageResult imageResult = new ImageResult();
+		imageResult.setImageCount(imageCount);
+		imageResult.setContentLength(offset);
+		return imageResult;
+	}
+
+
+	/*
+	 * Read the checkpoint of a previous attempt at the same URI, and return the offset to resume from,
+	 * or 0 to start over.
+	 */
+	private long readCheckpoint() throws IOException {
+		Properties checkpoint = new Properties();
+		try (InputStream in = Files.newInputStream(checkpointPath)) {
+			checkpoint.load(in);
+		} catch (NoSuchFileException | FileNotFoundException e) {
+			deletePartial();
+			return 0;
+		}
+		if (!uri.toString().equals(checkpoint.getProperty(URI_PROPERTY)) || !Files.exists(part)) {
+			deletePartial();
+			return 0;
+		}
+
+		validator = checkpoint.getProperty(VALIDATOR_PROPERTY);
+		length = Long.parseLong(checkpoint.getProperty(LENGTH_PROPERTY, "-1"));
+		String imageCountValue = checkpoint.getProperty(IMAGE_COUNT_PROPERTY);
+		imageCount = imageCountValue != null ? Integer.valueOf(imageCountValue) : null;
+		return Math.min(Long.parseLong(checkpoint.getProperty(OFFSET_PROPERTY, "0")), Files.size(part));
+	}
+
+
+	/*
+	 * Write to a temporary file and move it in place, so that a crash never leaves a partial checkpoint.
+	 */
+	private void writeCheckpoint(long offset) throws IOException {
+		Properties checkpoint = new Properties();
+		checkpoint.setProperty(URI_PROPERTY, uri.toString());
+		if (validator != null) {
+			checkpoint.setProperty(VALIDATOR_PROPERTY, validator);
+		}
+		checkpoint.setProperty(LENGTH_PROPERTY, Long.toString(length));
+		if (imageCount != null) {
+			checkpoint.setProperty(IMAGE_COUNT_PROPERTY, imageCount.toString());
+		}
+		checkpoint.setProperty(OFFSET_PROPERTY, Long.toString(offset));
+
+		Path temp = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp)) {
+			checkpoint.store(out, null);
+		}
+		Files.move(temp, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+
+	private void deletePartial() throws IOException {
+		Files.deleteIfExists(part);
+		Files.deleteIfExists(checkpointPath);
+		validator = null;
+		length = -1;
+		imageCount = null;
+	}
+
+
+	/*
+	 * A strong ETag identifies the image exactly; the Last-Modified date is the weaker fallback of If-Range.
+	 */
+	private static String getValidator(TransportResponse response) {
+		String etag = response.getHeader(HttpHeaders.ETAG);
+		if (etag != null && !etag.startsWith("W/")) {
+			return etag;
+		}
+		return response.getHeader(HttpHeaders.LAST_MODIFIED);
+	}
+
+
+	/*
+	 * Parse the first byte position and the total length of a Content-Range of the form bytes first-last/length,
+	 * the length being -1 if it is unknown.
+	 */
+	private static long[] getContentRange(TransportResponse response) throws IOException {
+		String contentRange = response.getHeader(HttpHeaders.CONTENT_RANGE);
+		if (contentRange == null) {
+			throw new IOException("A partial response without a Content-Range");
+		}
+		String value = contentRange.trim();
+		int space = value.indexOf(' ');
+		int dash = value.indexOf('-', space + 1);
+		int slash = value.indexOf('/', dash + 1);
+		if (!value.startsWith("bytes") || space < 0 || dash < 0 || slash < 0) {
+			throw new IOException("Unsupported Content-Range: " + value);
+		}
+		try {
+			String total = value.substring(slash + 1).trim();
+			return new long[] {Long.parseLong(value.substring(space + 1, dash).trim()),
+					"*".equals(total) ? -1 : Long.parseLong(total)};
+		} catch (NumberFormatException e) {
+			throw new IOException("Unsupported Content-Range: " + value, e);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package edu.emory.bmi.tcia.client.util;
+
+/**
+ * The options of saving an image result to a file.
+ */
+public class SaveOptions {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+	public static final long DEFAULT_PROGRESS_INTERVAL = 8L * 1024 * 1024;
+	public static final int DEFAULT_RESUME_ATTEMPTS = 3;
+
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+	private ProgressListener progressListener;
+	private int resumeAttempts = DEFAULT_RESUME_ATTEMPTS;
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @param bufferSize the size of the copy buffer, which is filled before each write to the file
+	 * @return these options
+	 */
+	public SaveOptions setBufferSize(int bufferSize) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("The buffer size must be positive: " + bufferSize);
+		}
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+	public long getProgressInterval() {
+		return progressInterval;
+	}
+
+	/**
+	 * @param progressInterval the number of bytes between two progress notifications
+	 * @return these options
+	 */
+	public SaveOptions setProgressInterval(long progressInterval) {
+		if (progressInterval < 1) {
+			throw new IllegalArgumentException("The progress interval must be positive: " + progressInterval);
+		}
+		this.progressInterval = progressInterval;
+		return this;
+	}
+
+	public ProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	/**
+	 * @param progressListener the listener of the progress, or null
+	 * @return these options
+	 */
+	public SaveOptions setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+		return this;
+	}
+
+	public int getResumeAttempts() {
+		return resumeAttempts;
+	}
+
+	/**
+	 * @param resumeAttempts the number of attempts of a resumable download, each continuing the previous one
+	 * @return these options
+	 */
+	public SaveOptions setResumeAttempts(int resumeAttempts) {
+		if (resumeAttempts < 1) {
+			throw new IllegalArgumentException("The resume attempts must be at least 1: " + resumeAttempts);
+		}
+		this.resumeAttempts = resumeAttempts;
+		return this;
+	}
+}
@@ -0,0 +1,917 @@
+package edu.emory.bmi.tcia.client.util;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import edu.emory.bmi.tcia.client.cache.ImageCache;
+import edu.emory.bmi.tcia.client.cache.RequestKey;
+import edu.emory.bmi.tcia.client.cache.ResponseCache;
+import edu.emory.bmi.tcia.client.cache.SingleFlight;
+import edu.emory.bmi.tcia.client.catalog.LocalCatalog;
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.conf.TCIAConstants;
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import edu.emory.bmi.tcia.client.metrics.MetricsRecorder;
+import edu.emory.bmi.tcia.client.metrics.MetricsRegistry;
+import edu.emory.bmi.tcia.client.metrics.MetricsSnapshot;
+import edu.emory.bmi.tcia.client.metrics.RequestTimer;
+import edu.emory.bmi.tcia.client.request.Query;
+import edu.emory.bmi.tcia.client.resilience.AdaptiveConcurrencyLimiter;
+import edu.emory.bmi.tcia.client.resilience.CircuitBreaker;
+import edu.emory.bmi.tcia.client.resilience.RequestCall;
+import edu.emory.bmi.tcia.client.resilience.RetryPolicy;
+import edu.emory.bmi.tcia.client.transport.ContentEncoding;
+import edu.emory.bmi.tcia.client.transport.Transport;
+import edu.emory.bmi.tcia.client.transport.TransportRequest;
+import edu.emory.bmi.tcia.client.transport.TransportResponse;
+import edu.emory.bmi.tcia.client.transport.Transports;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * A configured TCIA client: the credentials and the resource url of a server, and the transport, caches, catalog,
+ * concurrency limiter, retry policy, circuit breakers and metrics recorder of its requests. A client is immutable
+ * once built, and safe to share between threads, so that clients of different servers or credentials coexist in
+ * a JVM. The API of ITCIAClient runs against a client through a TCIAClientImpl of it:
+ * <pre>
+ * TCIAClient tcia = TCIAClient.builder().conf(conf).build();
+ * ITCIAClient client = new TCIAClientImpl(tcia);
+ * </pre>
+ * The static methods of TCIAClientUtil run against a default client, rebuilt when their configuration changes.
+ */
+public final class TCIAClient implements Closeable {
+
+	private static Logger logger = LogManager.getLogger(TCIAClient.class.getName());
+
+	private final String authorizationHeader;
+	private final String authValue;
+	private final String resourceUrl;
+	private final Transport transport;
+	private final ResponseCache responseCache;
+	private final ImageCache imageCache;
+	private final LocalCatalog catalog;
+	private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+	private final RetryPolicy retryPolicy;
+	private final int circuitBreakerThreshold;
+	private final long circuitBreakerOpenTime;
+	private final Map<String, CircuitBreaker> circuitBreakers;
+	private final SingleFlight singleFlight;
+	private final MetricsRecorder metricsRecorder;
+	private final boolean compressionEnabled;
+	// The components created from the configuration, which the client shuts down when it is closed.
+	private final boolean ownsTransport;
+	private final boolean ownsResponseCache;
+
+
+	private TCIAClient(Builder builder) {
+		TCIAConf tciaConf = builder.conf != null ? builder.conf : new TCIAConf();
+		if (builder.conf != null) {
+			authorizationHeader = tciaConf.getAuthheader();
+			String authString = tciaConf.getUsername() + TCIAConstants.AUTH_SEPARATOR + tciaConf.getPassword();
+			authValue = tciaConf.getAuthflag() + TCIAConstants.AUTH_VAL_SEPARATOR +
+					Base64.getEncoder().encodeToString(authString.getBytes());
+			resourceUrl = tciaConf.getBaseurl() + tciaConf.getResource();
+		} else {
+			authorizationHeader = null;
+			authValue = null;
+			resourceUrl = null;
+		}
+
+		if (builder.transportSet) {
+			transport = builder.transport;
+		} else {
+			transport = Transports.create(tciaConf);
+			logger.info("Using the " + transport.getName() + " transport");
+		}
+		ownsTransport = !builder.transportSet;
+		responseCache = builder.responseCacheSet ? builder.responseCache : newResponseCache(tciaConf);
+		ownsResponseCache = !builder.responseCacheSet;
+		imageCache = builder.imageCacheSet ? builder.imageCache : newImageCache(tciaConf);
+		catalog = builder.catalogSet ? builder.catalog : newCatalog(tciaConf);
+		concurrencyLimiter = builder.concurrencyLimiterSet ? builder.concurrencyLimiter :
+				newConcurrencyLimiter(tciaConf);
+		RetryPolicy configured = builder.retryPolicy != null ? builder.retryPolicy : newRetryPolicy(tciaConf);
+		retryPolicy = configured != null ? configured : new RetryPolicy();
+		if (builder.circuitBreakerSet) {
+			circuitBreakerThreshold = builder.circuitBreakerThreshold;
+			circuitBreakerOpenTime = builder.circuitBreakerOpenTime;
+		} else {
+			circuitBreakerThreshold = TCIAClientUtil.valueOrDefault(tciaConf.getCircuitbreakerthreshold(),
+					CircuitBreaker.DEFAULT_FAILURE_THRESHOLD);
+			circuitBreakerOpenTime = TCIAClientUtil.valueOrDefault(tciaConf.getCircuitbreakeropentime(),
+					CircuitBreaker.DEFAULT_OPEN_MILLIS);
+		}
+		circuitBreakers = builder.circuitBreakers != null ? builder.circuitBreakers : new ConcurrentHashMap<>();
+		singleFlight = builder.singleFlight != null ? builder.singleFlight : new SingleFlight();
+		if (builder.metricsRecorderSet) {
+			metricsRecorder = builder.metricsRecorder;
+		} else {
+			metricsRecorder = Boolean.FALSE.equals(tciaConf.getMetricsenabled()) ? null : new MetricsRegistry();
+		}
+		compressionEnabled = builder.compressionEnabled != null ? builder.compressionEnabled :
+				!Boolean.FALSE.equals(tciaConf.getCompressionenabled());
+	}
+
+
+	/**
+	 * @return a new builder of a client
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+
+	/**
+	 * Get the complete url of the resource
+	 * @return the url of the resource, or null if the client has no configuration
+	 */
+	public String getResourceUrl() {
+		return resourceUrl;
+	}
+
+
+	/**
+	 * @return the transport of the requests
+	 */
+	public Transport getTransport() {
+		return transport;
+	}
+
+
+	/**
+	 * @return the response cache, or null if caching is disabled
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+
+	/**
+	 * @return the image cache, or null if caching the images is disabled
+	 */
+	public ImageCache getImageCache() {
+		return imageCache;
+	}
+
+
+	/**
+	 * @return the local catalog, or null if there is none
+	 */
+	public LocalCatalog getCatalog() {
+		return catalog;
+	}
+
+
+	/**
+	 * @return the concurrency limiter, or null if the requests are not limited
+	 */
+	public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+
+	/**
+	 * @return the retry policy of the requests
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+
+	/**
+	 * Get the circuit breaker of an endpoint, for monitoring its state.
+	 * @param endpoint the endpoint, such as getSeries
+	 * @return the circuit breaker, or null if the circuit breakers are disabled
+	 */
+	public CircuitBreaker getCircuitBreaker(String endpoint) {
+		if (circuitBreakerThreshold <= 0) {
+			return null;
+		}
+		return circuitBreakers.computeIfAbsent(endpoint, name -> new CircuitBreaker(name, circuitBreakerThreshold,
+				circuitBreakerOpenTime));
+	}
+
+
+	/**
+	 * @return the single-flight coalescing of the string requests
+	 */
+	public SingleFlight getSingleFlight() {
+		return singleFlight;
+	}
+
+
+	/**
+	 * @return the metrics recorder, or null if the metrics are not recorded
+	 */
+	public MetricsRecorder getMetricsRecorder() {
+		return metricsRecorder;
+	}
+
+
+	/**
+	 * Take a snapshot of the metrics of the requests of this client.
+	 * @return the snapshot, or null if the metrics are not recorded in a MetricsRegistry
+	 */
+	public MetricsSnapshot getMetricsSnapshot() {
+		return metricsRecorder instanceof MetricsRegistry ? ((MetricsRegistry) metricsRecorder).snapshot() : null;
+	}
+
+
+	/**
+	 * @return whether the string endpoints accept compressed bodies
+	 */
+	public boolean isCompressionEnabled() {
+		return compressionEnabled;
+	}
+
+
+	/**
+	 * Return a string in a specified output format from a query. Identical concurrent calls share a single request
+	 * to the server.
+	 * @param format the output format
+	 * @param query the query of a metadata endpoint
+	 * @return the string in the specified output format
+	 * @throws TCIAClientException if the TCIA client throws an error.
+	 * @throws IOException an IO Exception during the execution.
+	 */
+	public String getString(OutputFormat format, Query query) throws TCIAClientException, IOException {
+		return getCachedString(query.format(format).toURI(resourceUrl));
+	}
+
+
+	/**
+	 * Return a lazily decoded stream of typed records from a query, requesting the JSON output format. Close the
+	 * returned stream, to release the connection if it is not fully consumed.
+	 * @param type the type of the records
+	 * @param query the query of a metadata endpoint
+	 * @param <T> the type of the records
+	 * @return the stream of records
+	 * @throws TCIAClientException if the TCIA client throws an error.
+	 * @throws IOException an IO Exception during the execution.
+	 */
+	public <T> Stream<T> getStream(Class<T> type, Query query) throws TCIAClientException, IOException {
+		return getStream(type, query.format(OutputFormat.json).toURI(resourceUrl));
+	}
+
+
+	/**
+	 * Return the image result of a query.
+	 * @param query the query of an image endpoint
+	 * @return the ImageResult
+	 * @throws TCIAClientException if TCIA client exception occurred
+	 * @throws IOException if an IO Exception occurred
+	 */
+	public ImageResult getImage(Query query) throws TCIAClientException, IOException {
+		return getImage(query.toURI(resourceUrl));
+	}
+
+
+	/**
+	 * Download the image of a query into a file, resuming an interrupted download of the same image where it
+	 * stopped, as TCIAClientUtil.authenticateAndDownloadImage does.
+	 * @param query the query of an image endpoint
+	 * @param path the path of the file to be saved
+	 * @param options the options of saving, such as the buffer size, the progress listener and the resume attempts
+	 * @return the image result of the download, without raw data
+	 * @throws TCIAClientException if TCIA client exception occurred
+	 * @throws IOException if the download failed after all the resume attempts
+	 */
+	public ImageResult downloadImage(Query query, Path path, SaveOptions options)
+			throws TCIAClientException, IOException {
+		return downloadImage(query.toURI(resourceUrl), path, options);
+	}
+
+
+	/**
+	 * Save the image result object as a file, as TCIAClientUtil.saveTo does, recording the disk writes into the
+	 * metrics of this client.
+	 * @param imageResult an instance of the ImageResult
+	 * @param path the path of the file to be saved
+	 * @param options the options of saving, such as the buffer size and the progress listener
+	 * @return the number of bytes written
+	 * @throws IOException if saving the image result failed, or if fewer bytes than the announced content length
+	 * were received.
+	 */
+	public long saveTo(ImageResult imageResult, Path path, SaveOptions options) throws IOException {
+		return TCIAClientUtil.saveTo(imageResult, path, options, metricsRecorder);
+	}
+
+
+	/**
+	 * Save the local catalog, if any, and shut down the transport and the response cache the client created from
+	 * its configuration. The components given to the builder are left to their owner. The client is not usable
+	 * afterwards.
+	 */
+	@Override
+	public void close() {
+		if (catalog != null) {
+			try {
+				catalog.save();
+			} catch (IOException e) {
+				logger.error("Exception in saving the catalog", e);
+			}
+		}
+		if (ownsResponseCache && responseCache != null) {
+			responseCache.shutdown();
+		}
+		if (ownsTransport && transport != null) {
+			try {
+				transport.close();
+			} catch (IOException e) {
+				logger.error("Exception in closing the transport", e);
+			}
+		}
+	}
+
+
+	ImageResult getImage(URI uri) throws TCIAClientException, IOException {
+		return retry(uri, () -> {
+			// create a new request, with the authentication header
+			TransportRequest request = new TransportRequest(uri).setHeader(authorizationHeader, authValue);
+
+			long startTime = System.currentTimeMillis();
+			TransportResponse response = execute(request);
+			long diff = System.currentTimeMillis() - startTime;
+
+			logger.info("Server Response Received in " + diff + " ms");
+			return getImageResult(uri, response);
+		});
+	}
+
+
+	ImageResult downloadImage(URI uri, Path path, SaveOptions options) throws TCIAClientException, IOException {
+		return new ResumableDownload(this, uri, path, options).download();
+	}
+
+
+	<T> Stream<T> getStream(Class<T> type, URI uri) throws TCIAClientException, IOException {
+		return JsonResultIterator.stream(retry(uri, () -> getRawData(uri)), type);
+	}
+
+
+	String getCachedString(URI uri) throws TCIAClientException, IOException {
+		ResponseCache cache = responseCache;
+		if (cache != null) {
+			return cache.get(uri, () -> getSharedString(uri));
+		}
+		return getSharedString(uri);
+	}
+
+
+	/*
+	 * Get a string, joining the identical request in flight if any. The key is normalized, so that the order of
+	 * the query parameters does not matter.
+	 */
+	private String getSharedString(URI uri) throws TCIAClientException, IOException {
+		return singleFlight.get(RequestKey.of(uri), () -> getString(uri));
+	}
+
+
+	private String getString(URI uri) throws TCIAClientException, IOException {
+		return retry(uri, () -> {
+			// Closing the stream releases the connection back to the pool.
+			try (InputStream is = getRawData(uri)) { // Get the raw data from the given uri
+				java.util.Scanner s = new java.util.Scanner(is).useDelimiter("\\A");
+				String value = s.hasNext() ? s.next() : "";
+				// The scanner swallows the IO exceptions, which would pass a truncated response as a complete one.
+				if (s.ioException() != null) {
+					throw s.ioException();
+				}
+				return value;
+			}
+		});
+	}
+
+
+	/*
+	 * Execute a request under the retry policy of the current thread, and the circuit breaker of its endpoint.
+	 */
+	<T> T retry(URI uri, RequestCall<T> call) throws TCIAClientException, IOException {
+		return retry(uri, call, RetryPolicy.current(retryPolicy).getMaxAttempts());
+	}
+
+
+	<T> T retry(URI uri, RequestCall<T> call, int attempts) throws TCIAClientException, IOException {
+		return RetryPolicy.current(retryPolicy).execute(getCircuitBreaker(RequestKey.getEndpoint(uri)),
+				uri.toString(), call, attempts);
+	}
+
+
+	private InputStream getRawData(URI uri) throws TCIAClientException, IOException {
+		// create a new request, with the api_key in the header
+		TransportRequest request = new TransportRequest(uri).setHeader(authorizationHeader, authValue);
+		if (compressionEnabled) {
+			request.setHeader(ContentEncoding.ACCEPT_ENCODING, ContentEncoding.ACCEPTED);
+		}
+		TransportResponse response = execute(request);
+		if (response.getStatusCode() != 200) // TCIA Server
+		// error
+		{
+			return TCIAClientUtil.getStatus(uri, response);
+
+		} else {
+			InputStream content = response.getContent();
+			if (content != null) {
+				return content;
+			} else {
+				response.close();
+				throw new TCIAClientException(resourceUrl, "No Content");
+			}
+		}
+	}
+
+
+	private ImageResult getImageResult(URI uri, TransportResponse response) throws TCIAClientException,
+			IOException {
+		if (response.getStatusCode() != 200) {
+			TCIAClientUtil.getStatus(uri, response);
+		} else {
+			InputStream content = response.getContent();
+			if (content != null) {
+				ImageResult imageResult = new ImageResult();
+				imageResult.setRawData(content);
+				String imageCount = response.getHeader("imageCount");
+				if (imageCount != null) {
+					imageResult.setImageCount(Integer.parseInt(imageCount));
+				}
+				imageResult.setContentLength(response.getContentLength());
+				return imageResult;
+			} else {
+				response.close();
+				throw new TCIAClientException(resourceUrl, "No Content");
+			}
+		}
+		return null;
+	}
+
+
+	/*
+	 * Execute a request, under the concurrency limiter if any, and record its metrics. The permit is held, and the
+	 * request is counted in flight, until the content is read to the end or the response or its content is closed.
+	 * The latency is measured from the permit, so that it does not include the wait for the limiter.
+	 * A compressed body is decoded as it is read.
+	 */
+	TransportResponse execute(TransportRequest request) throws IOException {
+		if (transport == null) {
+			throw new IllegalStateException("The TCIA client has not been initialized");
+		}
+		AdaptiveConcurrencyLimiter.Permit permit = concurrencyLimiter != null ? concurrencyLimiter.acquire() : null;
+		RequestTimer timer = RequestTimer.start(metricsRecorder, RequestKey.getEndpoint(request.getURI()));
+
+		TransportResponse response;
+		try {
+			response = transport.execute(request);
+		} catch (IOException | RuntimeException e) {
+			if (timer != null) {
+				timer.complete();
+			}
+			if (permit != null) {
+				permit.onFailure();
+				permit.release();
+			}
+			throw e;
+		}
+
+		int statusCode = response.getStatusCode();
+		if (timer != null) {
+			timer.onResponse(statusCode);
+		}
+		if (permit != null) {
+			permit.onResponse(statusCode);
+		}
+		String contentEncoding = response.getHeader(ContentEncoding.CONTENT_ENCODING);
+		boolean encoded = ContentEncoding.isEncoded(contentEncoding);
+		if (timer == null && permit == null && !encoded) {
+			return response;
+		}
+		MeteredResponse metered = new MeteredResponse(response, permit, timer, encoded ? contentEncoding : null);
+		// An empty body might never be read nor closed.
+		if (response.getContentLength() == 0) {
+			metered.end();
+		}
+		return metered;
+	}
+
+
+	String getAuthValue() {
+		return authValue;
+	}
+
+
+	String getAuthorizationHeader() {
+		return authorizationHeader;
+	}
+
+
+	/*
+	 * The components created from a configuration, shared with the static initialization of TCIAClientUtil.
+	 */
+
+	static ResponseCache newResponseCache(TCIAConf tciaConf) {
+		if (!Boolean.TRUE.equals(tciaConf.getCacheenabled())) {
+			return null;
+		}
+		return ResponseCache.create(tciaConf.getCachememoryentries(), tciaConf.getCachedirectory(),
+				tciaConf.getCachemaxbytes(), tciaConf.getCachettl(), tciaConf.getCachettls());
+	}
+
+
+	static ImageCache newImageCache(TCIAConf tciaConf) {
+		if (tciaConf.getImagecachedirectory() == null) {
+			return null;
+		}
+		return new ImageCache(tciaConf.getImagecachedirectory(), TCIAClientUtil.valueOrDefault(
+				tciaConf.getImagecachemaxbytes(), TCIAConstants.DEFAULT_IMAGE_CACHE_MAX_BYTES));
+	}
+
+
+	static LocalCatalog newCatalog(TCIAConf tciaConf) {
+		if (!Boolean.TRUE.equals(tciaConf.getCatalogenabled())) {
+			return null;
+		}
+		LocalCatalog catalog;
+		try {
+			catalog = tciaConf.getCatalogdirectory() != null ? new LocalCatalog(tciaConf.getCatalogdirectory()) :
+					new LocalCatalog();
+		} catch (IOException e) {
+			logger.error("Exception in loading the catalog, starting an empty one", e);
+			catalog = new LocalCatalog();
+		}
+		catalog.setMaxAge(TCIAClientUtil.valueOrDefault(tciaConf.getCatalogmaxage(),
+				TCIAConstants.DEFAULT_CATALOG_MAX_AGE_MS));
+		return catalog;
+	}
+
+
+	static AdaptiveConcurrencyLimiter newConcurrencyLimiter(TCIAConf tciaConf) {
+		if (!Boolean.TRUE.equals(tciaConf.getAdaptiveconcurrency())) {
+			return null;
+		}
+		int maxLimit = TCIAClientUtil.valueOrDefault(tciaConf.getMaxconcurrency(),
+				AdaptiveConcurrencyLimiter.DEFAULT_MAX_LIMIT);
+		return new AdaptiveConcurrencyLimiter(AdaptiveConcurrencyLimiter.DEFAULT_MIN_LIMIT,
+				Math.min(AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, maxLimit), maxLimit);
+	}
+
+
+	/*
+	 * The retry policy of the configuration, or null if the configuration does not set one.
+	 */
+	static RetryPolicy newRetryPolicy(TCIAConf tciaConf) {
+		if (tciaConf.getRetrymaxattempts() == null && tciaConf.getRetrybasedelay() == null &&
+				tciaConf.getRetrymaxdelay() == null) {
+			return null;
+		}
+		return new RetryPolicy()
+				.setMaxAttempts(TCIAClientUtil.valueOrDefault(tciaConf.getRetrymaxattempts(),
+						RetryPolicy.DEFAULT_MAX_ATTEMPTS))
+				.setBaseDelay(TCIAClientUtil.valueOrDefault(tciaConf.getRetrybasedelay(),
+						RetryPolicy.DEFAULT_BASE_DELAY_MS))
+				.setMaxDelay(TCIAClientUtil.valueOrDefault(tciaConf.getRetrymaxdelay(),
+						RetryPolicy.DEFAULT_MAX_DELAY_MS));
+	}
+
+
+	/**
+	 * The builder of a client. The components not given to the builder are created from the configuration, as
+	 * TCIAClientUtil.init creates them; a component given as null is disabled, whatever the configuration.
+	 * The configuration is read when the client is built, and later changes to it do not affect the client.
+	 */
+	public static final class Builder {
+		private TCIAConf conf;
+		private Transport transport;
+		private boolean transportSet;
+		private ResponseCache responseCache;
+		private boolean responseCacheSet;
+		private ImageCache imageCache;
+		private boolean imageCacheSet;
+		private LocalCatalog catalog;
+		private boolean catalogSet;
+		private AdaptiveConcurrencyLimiter concurrencyLimiter;
+		private boolean concurrencyLimiterSet;
+		private RetryPolicy retryPolicy;
+		private int circuitBreakerThreshold;
+		private long circuitBreakerOpenTime;
+		private boolean circuitBreakerSet;
+		private MetricsRecorder metricsRecorder;
+		private boolean metricsRecorderSet;
+		private Boolean compressionEnabled;
+		private Map<String, CircuitBreaker> circuitBreakers;
+		private SingleFlight singleFlight;
+
+
+		private Builder() {
+		}
+
+
+		/**
+		 * @param tciaConf the TCIA configuration: the server, the credentials, and the components of the client
+		 * @return this builder
+		 */
+		public Builder conf(TCIAConf tciaConf) {
+			this.conf = tciaConf;
+			return this;
+		}
+
+
+		/**
+		 * @param transport the transport of the requests, which its owner closes after the client
+		 * @return this builder
+		 */
+		public Builder transport(Transport transport) {
+			this.transport = transport;
+			this.transportSet = true;
+			return this;
+		}
+
+
+		/**
+		 * @param cache the cache of the string responses, which its owner shuts down after the client, or null to
+		 * disable caching
+		 * @return this builder
+		 */
+		public Builder responseCache(ResponseCache cache) {
+			this.responseCache = cache;
+			this.responseCacheSet = true;
+			return this;
+		}
+
+
+		/**
+		 * @param cache the cache of the image results, or null to disable caching the images
+		 * @return this builder
+		 */
+		public Builder imageCache(ImageCache cache) {
+			this.imageCache = cache;
+			this.imageCacheSet = true;
+			return this;
+		}
+
+
+		/**
+		 * @param localCatalog the local catalog, or null to always go to the network
+		 * @return this builder
+		 */
+		public Builder catalog(LocalCatalog localCatalog) {
+			this.catalog = localCatalog;
+			this.catalogSet = true;
+			return this;
+		}
+
+
+		/**
+		 * @param limiter the adaptive limit of the concurrent requests, or null to not limit the requests
+		 * @return this builder
+		 */
+		public Builder concurrencyLimiter(AdaptiveConcurrencyLimiter limiter) {
+			this.concurrencyLimiter = limiter;
+			this.concurrencyLimiterSet = true;
+			return this;
+		}
+
+
+		/**
+		 * @param policy the retry policy, or RetryPolicy.none() to never retry
+		 * @return this builder
+		 */
+		public Builder retryPolicy(RetryPolicy policy) {
+			this.retryPolicy = policy;
+			return this;
+		}
+
+
+		/**
+		 * @param threshold the number of consecutive failures opening the circuit of an endpoint, or 0 to disable
+		 * the circuit breakers
+		 * @param openMillis the time the circuit stays open before a trial request, in milliseconds
+		 * @return this builder
+		 */
+		public Builder circuitBreaker(int threshold, long openMillis) {
+			this.circuitBreakerThreshold = threshold;
+			this.circuitBreakerOpenTime = openMillis;
+			this.circuitBreakerSet = true;
+			return this;
+		}
+
+
+		/**
+		 * @param recorder the recorder of the metrics of the requests, or null to not record metrics
+		 * @return this builder
+		 */
+		public Builder metricsRecorder(MetricsRecorder recorder) {
+			this.metricsRecorder = recorder;
+			this.metricsRecorderSet = true;
+			return this;
+		}
+
+
+		/**
+		 * @param enabled whether the string endpoints accept compressed bodies
+		 * @return this builder
+		 */
+		public Builder compressionEnabled(boolean enabled) {
+			this.compressionEnabled = enabled;
+			return this;
+		}
+
+
+		/*
+		 * The circuit breakers and the requests in flight of the default client outlive its rebuilds.
+		 */
+		Builder shared(Map<String, CircuitBreaker> breakers, SingleFlight flight) {
+			this.circuitBreakers = breakers;
+			this.singleFlight = flight;
+			return this;
+		}
+
+
+		/**
+		 * @return the new client
+		 * @throws IllegalArgumentException if the configuration names an unknown transport
+		 */
+		public TCIAClient build() {
+			return new TCIAClient(this);
+		}
+	}
+
+
+	/*
+	 * A response that ends its request when it or its content is closed, or its content is read to the end: it
+	 * releases the permit of the request, and records the bytes received and the transfer time. A compressed body
+	 * is decoded above the count of the bytes received, and its decoded bytes are counted apart.
+	 */
+	private static class MeteredResponse implements TransportResponse {
+		private final TransportResponse response;
+		private final AdaptiveConcurrencyLimiter.Permit permit;
+		private final RequestTimer timer;
+		private final String contentEncoding;
+		private InputStream content;
+
+		MeteredResponse(TransportResponse response, AdaptiveConcurrencyLimiter.Permit permit, RequestTimer timer,
+		                String contentEncoding) {
+			this.response = response;
+			this.permit = permit;
+			this.timer = timer;
+			this.contentEncoding = contentEncoding;
+		}
+
+		@Override
+		public int getStatusCode() {
+			return response.getStatusCode();
+		}
+
+		@Override
+		public String getReasonPhrase() {
+			return response.getReasonPhrase();
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return response.getHeader(name);
+		}
+
+		/*
+		 * The length of a compressed body is unknown until it is decoded.
+		 */
+		@Override
+		public long getContentLength() {
+			return contentEncoding != null ? -1 : response.getContentLength();
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			if (content == null) {
+				InputStream in = response.getContent();
+				if (in == null) {
+					end();
+					return null;
+				}
+				InputStream received = new FilterInputStream(in) {
+					@Override
+					public int read() throws IOException {
+						int read = super.read();
+						if (read == -1) {
+							end();
+						} else {
+							received(1);
+						}
+						return read;
+					}
+
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						int read = super.read(b, off, len);
+						if (read == -1) {
+							end();
+						} else {
+							received(read);
+						}
+						return read;
+					}
+
+					@Override
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							end();
+						}
+					}
+				};
+				content = contentEncoding != null ? decode(received) : received;
+			}
+			return content;
+		}
+
+		/*
+		 * A decoder stops at the end of the compressed data, which may leave a trailer unread. The rest of the body
+		 * is read once the decoder ends, to count it and to end the request.
+		 */
+		private InputStream decode(InputStream received) throws IOException {
+			if (timer != null) {
+				timer.onDecodedBytes(0);
+			}
+			InputStream decoded;
+			try {
+				decoded = ContentEncoding.decode(received, contentEncoding);
+			} catch (IOException e) {
+				received.close();
+				throw e;
+			}
+			return new FilterInputStream(decoded) {
+				@Override
+				public int read() throws IOException {
+					int read = super.read();
+					if (read == -1) {
+						drain(received);
+					} else if (timer != null) {
+						timer.onDecodedBytes(1);
+					}
+					return read;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					int read = super.read(b, off, len);
+					if (read == -1) {
+						drain(received);
+					} else if (timer != null) {
+						timer.onDecodedBytes(read);
+					}
+					return read;
+				}
+
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						received.close();
+					}
+				}
+			};
+		}
+
+		private void drain(InputStream received) throws IOException {
+			byte[] buffer = new byte[512];
+			int read;
+			do {
+				read = received.read(buffer);
+			} while (read != -1);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				response.close();
+			} finally {
+				end();
+			}
+		}
+
+		private void received(long count) {
+			if (timer != null) {
+				timer.onBytes(count);
+			}
+		}
+
+		void end() {
+			if (timer != null) {
+				timer.complete();
+			}
+			if (permit != null) {
+				permit.release();
+			}
+		}
+	}
+}
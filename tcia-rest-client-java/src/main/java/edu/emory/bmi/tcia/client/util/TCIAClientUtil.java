@@ -1,24 +1,45 @@
 package edu.emory.bmi.tcia.client.util;
 
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.Base64;
-
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import edu.emory.bmi.tcia.client.cache.ImageCache;
+import edu.emory.bmi.tcia.client.cache.ResponseCache;
+import edu.emory.bmi.tcia.client.cache.SingleFlight;
+import edu.emory.bmi.tcia.client.catalog.LocalCatalog;
 import edu.emory.bmi.tcia.client.conf.TCIAConf;
 import edu.emory.bmi.tcia.client.conf.TCIAConstants;
 import edu.emory.bmi.tcia.client.core.OutputFormat;
 import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
-import org.apache.http.HttpEntity;
+import edu.emory.bmi.tcia.client.exceptions.TCIAServerException;
+import edu.emory.bmi.tcia.client.metrics.MetricsRecorder;
+import edu.emory.bmi.tcia.client.metrics.MetricsRegistry;
+import edu.emory.bmi.tcia.client.metrics.MetricsSnapshot;
+import edu.emory.bmi.tcia.client.request.Query;
+import edu.emory.bmi.tcia.client.resilience.AdaptiveConcurrencyLimiter;
+import edu.emory.bmi.tcia.client.resilience.CircuitBreaker;
+import edu.emory.bmi.tcia.client.resilience.RetryPolicy;
+import edu.emory.bmi.tcia.client.transport.ApacheTransport;
+import edu.emory.bmi.tcia.client.transport.Transport;
+import edu.emory.bmi.tcia.client.transport.TransportResponse;
+import edu.emory.bmi.tcia.client.transport.Transports;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.client.HttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -27,14 +48,27 @@ import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 
 
 /**
- * The utility methods of the TCIA client.
+ * The utility methods of the TCIA client. The static configuration set here makes up a default TCIAClient, which the
+ * static methods and the TCIAClientImpl of the default constructor run against; it is rebuilt when the configuration
+ * changes. An application with several configurations builds a TCIAClient of each instead.
  */
 public class TCIAClientUtil {
 
-	private static String authValue;
-	private static String AUTHORIZATION_HEADER;
+	private static TCIAConf conf;
 	private static String RESOURCE_URL;
-	private static HttpClient httpClient;
+	private static Transport transport;
+	private static ResponseCache responseCache;
+	private static ImageCache imageCache;
+	private static LocalCatalog catalog;
+	private static AdaptiveConcurrencyLimiter concurrencyLimiter;
+	private static RetryPolicy retryPolicy = new RetryPolicy();
+	private static int circuitBreakerThreshold = CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+	private static long circuitBreakerOpenTime = CircuitBreaker.DEFAULT_OPEN_MILLIS;
+	private static final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+	private static final SingleFlight singleFlight = new SingleFlight();
+	private static MetricsRecorder metricsRecorder = new MetricsRegistry();
+	private static volatile boolean compressionEnabled = true;
+	private static volatile TCIAClient defaultClient;
 
 	private static Logger logger = LogManager.getLogger(TCIAClientUtil.class.getName());
 
@@ -43,24 +77,302 @@ public class TCIAClientUtil {
 	 * Initialize the configuration parameters based on the values presented in the configuration file.
 	 */
 	public static void init() {
-		httpClient = new DefaultHttpClient();
-		httpClient = WebClientDevWrapper.wrapClient(httpClient);
+		TCIAConf tciaConf = loadConf();
+		if (tciaConf != null) {
+			init(tciaConf);
+		} else {
+			initTransport(new TCIAConf());
+			defaultClient = null;
+		}
+	}
 
+
+	/**
+	 * Read the configuration file.
+	 * @return the TCIA configuration, or null if the configuration file could not be read
+	 */
+	public static TCIAConf loadConf() {
 		ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
 		try {
-			TCIAConf tciaConf = mapper.readValue(new File(TCIAConstants.TCIA_CONF_FILE), TCIAConf.class);
+			return mapper.readValue(new File(TCIAConstants.TCIA_CONF_FILE), TCIAConf.class);
+		} catch (IOException e) {
+			logger.error("Exception in initializing the TCIA Client", e);
+			return null;
+		}
+	}
 
-			AUTHORIZATION_HEADER = tciaConf.getAuthheader();
-			String AUTHORIZATION_FLAG = tciaConf.getAuthflag();
 
-			RESOURCE_URL = tciaConf.getBaseurl() + tciaConf.getResource();
+	/**
+	 * Initialize the configuration parameters based on the given configuration.
+	 * The pooled HTTP client is created on the first initialization and shared by the later ones.
+	 * @param tciaConf the TCIA configuration
+	 */
+	public static synchronized void init(TCIAConf tciaConf) {
+		conf = tciaConf;
+		RESOURCE_URL = tciaConf.getBaseurl() + tciaConf.getResource();
+
+		initTransport(tciaConf);
+		initResponseCache(tciaConf);
+		initImageCache(tciaConf);
+		initCatalog(tciaConf);
+		initConcurrencyLimiter(tciaConf);
+		initRetryPolicy(tciaConf);
+		initMetrics(tciaConf);
+		compressionEnabled = !Boolean.FALSE.equals(tciaConf.getCompressionenabled());
+		defaultClient = null;
+	}
 
-			String authString = tciaConf.getUsername() + TCIAConstants.AUTH_SEPARATOR + tciaConf.getPassword();
-			String encodedBytes = Base64.getEncoder().encodeToString(authString.getBytes());
-			authValue = AUTHORIZATION_FLAG + TCIAConstants.AUTH_VAL_SEPARATOR + encodedBytes;
-		} catch (IOException e) {
-			logger.error("Exception in initializing the TCIA Client", e);
+
+	/**
+	 * Get the default client, made of the static configuration. The client is initialized from the configuration
+	 * file on the first call, unless init has been called; it is initialized again after a shutdown.
+	 * @return the default client
+	 */
+	public static TCIAClient getDefault() {
+		TCIAClient client = defaultClient;
+		return client != null ? client : buildDefault();
+	}
+
+
+	private static synchronized TCIAClient buildDefault() {
+		if (defaultClient == null) {
+			if (transport == null) {
+				if (conf != null) {
+					init(conf);
+				} else {
+					init();
+				}
+			}
+			defaultClient = TCIAClient.builder().conf(conf).transport(transport).responseCache(responseCache)
+					.imageCache(imageCache).catalog(catalog).concurrencyLimiter(concurrencyLimiter)
+					.retryPolicy(retryPolicy).circuitBreaker(circuitBreakerThreshold, circuitBreakerOpenTime)
+					.metricsRecorder(metricsRecorder).compressionEnabled(compressionEnabled)
+					.shared(circuitBreakers, singleFlight).build();
+		}
+		return defaultClient;
+	}
+
+
+	/**
+	 * Close the transport and its connections, and save the local catalog, if any. The next init creates a new
+	 * transport.
+	 */
+	public static synchronized void shutdown() {
+		if (catalog != null) {
+			try {
+				catalog.save();
+			} catch (IOException e) {
+				logger.error("Exception in saving the catalog", e);
+			}
+		}
+		if (transport != null) {
+			try {
+				transport.close();
+			} catch (IOException e) {
+				logger.error("Exception in closing the transport", e);
+			}
+			transport = null;
 		}
+		defaultClient = null;
+	}
+
+
+	/**
+	 * Set the cache of the string responses. The cache is consulted before going to the network.
+	 * @param cache the response cache, or null to disable caching
+	 */
+	public static synchronized void setResponseCache(ResponseCache cache) {
+		if (responseCache != null && responseCache != cache) {
+			responseCache.shutdown();
+		}
+		responseCache = cache;
+		defaultClient = null;
+	}
+
+
+	/**
+	 * Get the cache of the string responses.
+	 * @return the response cache, or null if caching is disabled
+	 */
+	public static ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+
+	/**
+	 * Set the cache of the image results, consulted by getImage and getSingleImage before going to the network.
+	 * @param cache the image cache, or null to disable caching the images
+	 */
+	public static synchronized void setImageCache(ImageCache cache) {
+		imageCache = cache;
+		defaultClient = null;
+	}
+
+
+	/**
+	 * Get the cache of the image results.
+	 * @return the image cache, or null if caching the images is disabled
+	 */
+	public static ImageCache getImageCache() {
+		return imageCache;
+	}
+
+
+	/**
+	 * Set the local catalog, consulted by the typed results of getPatient, getPatientStudy and getSeries before
+	 * going to the network, and populated from their responses.
+	 * @param localCatalog the local catalog, or null to always go to the network
+	 */
+	public static synchronized void setCatalog(LocalCatalog localCatalog) {
+		catalog = localCatalog;
+		defaultClient = null;
+	}
+
+
+	/**
+	 * Get the local catalog.
+	 * @return the local catalog, or null if there is none
+	 */
+	public static LocalCatalog getCatalog() {
+		return catalog;
+	}
+
+
+	/**
+	 * Set the adaptive limit of the concurrent requests. Every request of the client waits for a permit, and holds
+	 * it until its response has been consumed, so that the multi-request operations adapt to the server load.
+	 * @param limiter the concurrency limiter, or null to not limit the requests
+	 */
+	public static synchronized void setConcurrencyLimiter(AdaptiveConcurrencyLimiter limiter) {
+		concurrencyLimiter = limiter;
+		defaultClient = null;
+	}
+
+
+	/**
+	 * Get the adaptive limit of the concurrent requests, for monitoring its current limit.
+	 * @return the concurrency limiter, or null if the requests are not limited
+	 */
+	public static AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+
+	/**
+	 * Set the retry policy of the requests. The policy may be overridden per call with RetryPolicy.override.
+	 * @param policy the retry policy, or RetryPolicy.none() to never retry
+	 */
+	public static synchronized void setRetryPolicy(RetryPolicy policy) {
+		retryPolicy = policy;
+		defaultClient = null;
+	}
+
+
+	/**
+	 * Get the retry policy of the requests.
+	 * @return the retry policy
+	 */
+	public static RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+
+	/**
+	 * Get the circuit breaker of an endpoint, for monitoring its state.
+	 * @param endpoint the endpoint, such as getSeries
+	 * @return the circuit breaker, or null if the circuit breakers are disabled
+	 */
+	public static CircuitBreaker getCircuitBreaker(String endpoint) {
+		return getDefault().getCircuitBreaker(endpoint);
+	}
+
+
+	/**
+	 * Get the coalescing of the identical concurrent requests, for monitoring how many calls shared a request.
+	 * @return the single-flight coalescing of the string requests
+	 */
+	public static SingleFlight getSingleFlight() {
+		return singleFlight;
+	}
+
+
+	/**
+	 * Set the recorder of the metrics of the requests. The client records into an in-process MetricsRegistry by
+	 * default; another recorder forwards the metrics to a monitoring system.
+	 * @param recorder the metrics recorder, or null to not record metrics
+	 */
+	public static synchronized void setMetricsRecorder(MetricsRecorder recorder) {
+		metricsRecorder = recorder;
+		defaultClient = null;
+	}
+
+
+	/**
+	 * Get the recorder of the metrics of the requests.
+	 * @return the metrics recorder, or null if the metrics are not recorded
+	 */
+	public static MetricsRecorder getMetricsRecorder() {
+		return metricsRecorder;
+	}
+
+
+	/**
+	 * Take a snapshot of the metrics of the requests: the latency, bytes, status codes and in-flight requests of
+	 * each endpoint, and the time spent writing to the disk.
+	 * @return the snapshot, or null if the metrics are not recorded in a MetricsRegistry
+	 */
+	public static MetricsSnapshot getMetricsSnapshot() {
+		MetricsRecorder recorder = metricsRecorder;
+		return recorder instanceof MetricsRegistry ? ((MetricsRegistry) recorder).snapshot() : null;
+	}
+
+
+	/**
+	 * Enable or disable the compressed transfer of the metadata. When enabled, the string endpoints accept gzip and
+	 * deflate bodies, which are decoded as they are read.
+	 * @param enabled whether to accept compressed metadata
+	 */
+	public static synchronized void setCompressionEnabled(boolean enabled) {
+		compressionEnabled = enabled;
+		defaultClient = null;
+	}
+
+
+	/**
+	 * @return whether the string endpoints accept compressed bodies
+	 */
+	public static boolean isCompressionEnabled() {
+		return compressionEnabled;
+	}
+
+
+	/**
+	 * Get the connection manager of the pooled HTTP client, to monitor the pool statistics.
+	 * @return the pooling connection manager, or null if the client has not been initialized or does not use the
+	 * apache transport
+	 */
+	public static PoolingHttpClientConnectionManager getConnectionManager() {
+		Transport current = transport;
+		return current instanceof ApacheTransport ? ((ApacheTransport) current).getConnectionManager() : null;
+	}
+
+
+	/**
+	 * @return the transport of the requests, or null if the client has not been initialized
+	 */
+	public static Transport getTransport() {
+		return transport;
+	}
+
+
+	/**
+	 * Replace the transport of the requests, such as with an instrumented one. The previous transport is closed.
+	 * @param newTransport the new transport
+	 */
+	public static synchronized void setTransport(Transport newTransport) {
+		shutdown();
+		transport = newTransport;
+		defaultClient = null;
 	}
 
 
@@ -73,6 +385,14 @@ public class TCIAClientUtil {
 	}
 
 
+	/*
+	 * The configuration of the default client, or null if it was initialized without a configuration file.
+	 */
+	static TCIAConf getConf() {
+		return conf;
+	}
+
+
 	/**
 	 * Authenticate with the given authentication mechanism and return the image result.
 	 * @param uriBuilder the URIBuilder object
@@ -82,24 +402,25 @@ public class TCIAClientUtil {
 	 * @throws IOException if an IO Exception occurred
 	 */
 	public static ImageResult authenticateAndGetImage(URIBuilder uriBuilder) throws URISyntaxException, TCIAClientException, IOException {
-		URI uri = uriBuilder.build();
-		// create a new HttpGet request
-		HttpGet request = new HttpGet(uri);
-
-		// add authentication header
-		request.setHeader(TCIAClientUtil.getAuthorizationHeader(), TCIAClientUtil.getAuthValue());
+		return getDefault().getImage(uriBuilder.build());
+	}
 
-		long startTime = System.currentTimeMillis();
-		HttpResponse response = httpClient.execute(request);
-		long diff = System.currentTimeMillis() - startTime;
 
-		logger.info("Server Response Received in " + diff + " ms");
-		return getImageResult(uri, response);
+	/**
+	 * Authenticate with the given authentication mechanism and return the image result of a query.
+	 * @param query the query of an image endpoint
+	 * @return the ImageResult
+	 * @throws TCIAClientException if TCIA client exception occurred
+	 * @throws IOException if an IO Exception occurred
+	 */
+	public static ImageResult authenticateAndGetImage(Query query) throws TCIAClientException, IOException {
+		return getDefault().getImage(query);
 	}
 
 
 	/**
-	 * Return a string in a specified output format from a URI Builder object
+	 * Return a string in a specified output format from a URI Builder object. Identical concurrent calls share
+	 * a single request to the server.
 	 * @param format the output format
 	 * @param uriBuilder the URI Builder object
 	 * @return the string in the specified output format
@@ -110,11 +431,55 @@ public class TCIAClientUtil {
 	public static String getStringFromURIBuilder(OutputFormat format, URIBuilder uriBuilder)
 			throws URISyntaxException, TCIAClientException, IOException {
 		uriBuilder.addParameter("format", format.name());
+		return getDefault().getCachedString(uriBuilder.build());
+	}
+
+
+	/**
+	 * Return a string in a specified output format from a query. Identical concurrent calls share a single request
+	 * to the server.
+	 * @param format the output format
+	 * @param query the query of a metadata endpoint
+	 * @return the string in the specified output format
+	 * @throws TCIAClientException if the TCIA client throws an error.
+	 * @throws IOException an IO Exception during the execution.
+	 */
+	public static String getStringFromQuery(OutputFormat format, Query query) throws TCIAClientException, IOException {
+		return getDefault().getString(format, query);
+	}
+
+
+	/**
+	 * Return a lazily decoded stream of typed records from a URI Builder object, requesting the JSON output format.
+	 * The records are decoded incrementally off the response stream, so that the memory use does not grow with
+	 * the size of the response. Close the returned stream, to release the connection if it is not fully consumed.
+	 * @param type the type of the records
+	 * @param uriBuilder the URI Builder object
+	 * @param <T> the type of the records
+	 * @return the stream of records
+	 * @throws URISyntaxException if the URI syntax is invalid.
+	 * @throws TCIAClientException if the TCIA client throws an error.
+	 * @throws IOException an IO Exception during the execution.
+	 */
+	public static <T> Stream<T> getStreamFromURIBuilder(Class<T> type, URIBuilder uriBuilder)
+			throws URISyntaxException, TCIAClientException, IOException {
+		uriBuilder.addParameter("format", OutputFormat.json.name());
+		return getDefault().getStream(type, uriBuilder.build());
+	}
 
-		URI uri = uriBuilder.build();
-		InputStream is = getRawData(uri); // Get the raw data from the given uri
-		java.util.Scanner s = new java.util.Scanner(is).useDelimiter("\\A");
-		return s.hasNext() ? s.next() : "";
+
+	/**
+	 * Return a lazily decoded stream of typed records from a query, requesting the JSON output format. Close the
+	 * returned stream, to release the connection if it is not fully consumed.
+	 * @param type the type of the records
+	 * @param query the query of a metadata endpoint
+	 * @param <T> the type of the records
+	 * @return the stream of records
+	 * @throws TCIAClientException if the TCIA client throws an error.
+	 * @throws IOException an IO Exception during the execution.
+	 */
+	public static <T> Stream<T> getStreamFromQuery(Class<T> type, Query query) throws TCIAClientException, IOException {
+		return getDefault().getStream(type, query);
 	}
 
 
@@ -127,29 +492,114 @@ public class TCIAClientUtil {
 	 */
 	public static void saveTo(ImageResult imageResult, String name, String directory) throws IOException
 	{
-		InputStream in = imageResult.getRawData();
-		double averageDICOMFileSize = 200 * 1024d ; // 200KB
-		double compressionRatio = 0.75 ; // approx
-		int estimatedBytes = (int) (averageDICOMFileSize * compressionRatio * imageResult.getImageCount());
-
-		FileOutputStream fos = new FileOutputStream(directory + "/" + name);
-		byte[] buffer = new byte[4096];
-		int read = -1;
-		int sum = 0;
-		while((read = in.read(buffer)) > 0)
-		{
-			fos.write(buffer , 0 , read);
-			long mseconds = System.currentTimeMillis();
-			sum += read;
+		long startTime = System.currentTimeMillis();
+		long bytesWritten = saveTo(imageResult, Paths.get(directory, name), new SaveOptions());
+		logger.info(bytesWritten + " bytes written to " + name + " in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+
+	/**
+	 * Save the image result object as a file, through a file channel. A cached image is transferred by the
+	 * operating system without being copied through the heap; a network stream is copied in large chunks.
+	 * The raw data of the image result is closed afterwards.
+	 * @param imageResult an instance of the ImageResult
+	 * @param path the path of the file to be saved
+	 * @param options the options of saving, such as the buffer size and the progress listener
+	 * @return the number of bytes written
+	 * @throws IOException if saving the image result failed, or if fewer bytes than the announced content length
+	 * were received.
+	 */
+	public static long saveTo(ImageResult imageResult, Path path, SaveOptions options) throws IOException {
+		return saveTo(imageResult, path, options, metricsRecorder);
+	}
 
-			if(mseconds % 10 == 0)
-			{
-				logger.info(String.format("Bytes Written %s out of estimated %s  : " , sum , estimatedBytes));
+
+	static long saveTo(ImageResult imageResult, Path path, SaveOptions options, MetricsRecorder recorder)
+			throws IOException {
+		long totalBytes = imageResult.getContentLength();
+		ProgressListener listener = options.getProgressListener();
+		long nextProgress = options.getProgressInterval();
+		long position = 0;
+
+		try (InputStream in = imageResult.getRawData();
+		     FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				     StandardOpenOption.TRUNCATE_EXISTING)) {
+			if (in instanceof FileInputStream) {
+				FileChannel source = ((FileInputStream) in).getChannel();
+				long size = source.size();
+				totalBytes = size;
+				while (position < size) {
+					long writeStart = System.nanoTime();
+					long transferred = source.transferTo(position, Math.min(size - position, nextProgress - position),
+							out);
+					recordDiskWrite(recorder, transferred, System.nanoTime() - writeStart);
+					position += transferred;
+					if (position >= nextProgress) {
+						notifyProgress(listener, position, totalBytes);
+						nextProgress += options.getProgressInterval();
+					}
+				}
+			} else {
+				byte[] buffer = new byte[options.getBufferSize()];
+				ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+				int filled;
+				while ((filled = fill(in, buffer)) > 0) {
+					byteBuffer.clear().limit(filled);
+					long writeStart = System.nanoTime();
+					while (byteBuffer.hasRemaining()) {
+						out.write(byteBuffer);
+					}
+					recordDiskWrite(recorder, filled, System.nanoTime() - writeStart);
+					position += filled;
+					if (position >= nextProgress) {
+						notifyProgress(listener, position, totalBytes);
+						nextProgress = position + options.getProgressInterval();
+					}
+				}
 			}
 		}
 
-		fos.close();
-		in.close();
+		notifyProgress(listener, position, totalBytes);
+		if (totalBytes >= 0 && position < totalBytes) {
+			throw new IOException("Truncated image: received " + position + " of " + totalBytes + " bytes for " + path);
+		}
+		return position;
+	}
+
+
+	/**
+	 * Download an image into a file, resuming an interrupted download of the same image where it stopped.
+	 * The image is downloaded into path.part, next to a path.part.checkpoint sidecar, and moved to the path once
+	 * complete. A download that finds a partial file continues it with a byte-range request, if the server
+	 * supports it; otherwise, the download restarts from the first byte. A failed transfer is resumed up to the
+	 * resume attempts of the options.
+	 * @param uriBuilder the URIBuilder object
+	 * @param path the path of the file to be saved
+	 * @param options the options of saving, such as the buffer size, the progress listener and the resume attempts
+	 * @return the image result of the download, without raw data
+	 * @throws URISyntaxException if the given URI syntax is invalid
+	 * @throws TCIAClientException if TCIA client exception occurred
+	 * @throws IOException if the download failed after all the resume attempts
+	 */
+	public static ImageResult authenticateAndDownloadImage(URIBuilder uriBuilder, Path path, SaveOptions options)
+			throws URISyntaxException, TCIAClientException, IOException {
+		return getDefault().downloadImage(uriBuilder.build(), path, options);
+	}
+
+
+	/**
+	 * Download the image of a query into a file, resuming an interrupted download of the same image where it
+	 * stopped, as authenticateAndDownloadImage of a URIBuilder does.
+	 * @param query the query of an image endpoint
+	 * @param path the path of the file to be saved
+	 * @param options the options of saving, such as the buffer size, the progress listener and the resume attempts
+	 * @return the image result of the download, without raw data
+	 * @throws TCIAClientException if TCIA client exception occurred
+	 * @throws IOException if the download failed after all the resume attempts
+	 */
+	public static ImageResult authenticateAndDownloadImage(Query query, Path path, SaveOptions options)
+			throws TCIAClientException, IOException {
+		return getDefault().downloadImage(query, path, options);
 	}
 
 
@@ -157,68 +607,150 @@ public class TCIAClientUtil {
 	 * The private utility methods to be used by the public utility methods of this class.
 	 */
 
-	private static InputStream getRawData(URI uri) throws TCIAClientException, ClientProtocolException, IOException {
-		// create a new HttpGet request
-		HttpGet request = new HttpGet(uri);
+	/*
+	 * Fill the buffer as far as the stream allows, so that each write to the file is large.
+	 */
+	static int fill(InputStream in, byte[] buffer) throws IOException {
+		int filled = 0;
+		int read;
+		while (filled < buffer.length && (read = in.read(buffer, filled, buffer.length - filled)) > 0) {
+			filled += read;
+		}
+		return filled;
+	}
 
-		// add api_key to the header
-		request.setHeader(AUTHORIZATION_HEADER, authValue);
-		HttpResponse response = httpClient.execute(request);
-		if (response.getStatusLine().getStatusCode() != 200) // TCIA Server
-		// error
-		{
-			return getStatus(uri, response);
 
-		} else {
-			HttpEntity entity = response.getEntity();
-			if (entity != null && entity.getContent() != null) {
-				return entity.getContent();
-			} else {
-				throw new TCIAClientException(RESOURCE_URL, "No Content");
-			}
+	static void notifyProgress(ProgressListener listener, long bytesWritten, long totalBytes) {
+		if (listener != null) {
+			listener.onProgress(bytesWritten, totalBytes);
 		}
 	}
 
 
-	private static ImageResult getImageResult(URI uri, HttpResponse response) throws TCIAClientException, IOException {
-		if (response.getStatusLine().getStatusCode() != 200) {
-			getStatus(uri, response);
-		} else {
-			HttpEntity entity = response.getEntity();
-			if (entity != null && entity.getContent() != null) {
-				ImageResult imageResult = new ImageResult();
-				imageResult.setRawData(entity.getContent());
-				imageResult.setImageCount(Integer.parseInt(response.getFirstHeader("imageCount").getValue()));
-				return imageResult;
-			} else {
-				throw new TCIAClientException(TCIAClientUtil.getResourceUrl(), "No Content");
-			}
+	static void recordDiskWrite(MetricsRecorder recorder, long bytes, long nanos) {
+		if (recorder != null) {
+			recorder.onDiskWrite(bytes, nanos);
+		}
+	}
+
+
+	private static synchronized void initResponseCache(TCIAConf tciaConf) {
+		if (responseCache == null) {
+			responseCache = TCIAClient.newResponseCache(tciaConf);
+		}
+	}
+
+
+	private static synchronized void initImageCache(TCIAConf tciaConf) {
+		if (imageCache == null) {
+			imageCache = TCIAClient.newImageCache(tciaConf);
+		}
+	}
+
+
+	private static synchronized void initCatalog(TCIAConf tciaConf) {
+		if (catalog == null) {
+			catalog = TCIAClient.newCatalog(tciaConf);
 		}
-		return null;
 	}
 
 
-	private static InputStream getStatus(URI uri, HttpResponse response) throws TCIAClientException {
-		if (response.getStatusLine().getStatusCode() == 401) // Unauthorized
+	private static synchronized void initRetryPolicy(TCIAConf tciaConf) {
+		// A configuration without the retry keys restores the default policy.
+		RetryPolicy configured = TCIAClient.newRetryPolicy(tciaConf);
+		retryPolicy = configured != null ? configured : new RetryPolicy();
+		circuitBreakerThreshold = valueOrDefault(tciaConf.getCircuitbreakerthreshold(),
+				CircuitBreaker.DEFAULT_FAILURE_THRESHOLD);
+		circuitBreakerOpenTime = valueOrDefault(tciaConf.getCircuitbreakeropentime(), CircuitBreaker.DEFAULT_OPEN_MILLIS);
+		circuitBreakers.clear();
+	}
+
+
+	private static synchronized void initMetrics(TCIAConf tciaConf) {
+		if (Boolean.FALSE.equals(tciaConf.getMetricsenabled())) {
+			metricsRecorder = null;
+		} else if (metricsRecorder == null) {
+			metricsRecorder = new MetricsRegistry();
+		}
+	}
+
+
+	private static synchronized void initConcurrencyLimiter(TCIAConf tciaConf) {
+		if (concurrencyLimiter == null) {
+			concurrencyLimiter = TCIAClient.newConcurrencyLimiter(tciaConf);
+		}
+	}
+
+
+	private static synchronized void initTransport(TCIAConf tciaConf) {
+		if (transport == null) {
+			transport = Transports.create(tciaConf);
+			logger.info("Using the " + transport.getName() + " transport");
+		}
+	}
+
+
+	/**
+	 * @param value a configured value
+	 * @param defaultValue the default value
+	 * @param <T> the type of the value
+	 * @return the configured value, or the default value if it is not configured
+	 */
+	public static <T> T valueOrDefault(T value, T defaultValue) {
+		return value != null ? value : defaultValue;
+	}
+
+
+	static InputStream getStatus(URI uri, TransportResponse response) throws TCIAClientException {
+		// Release the connection of the failed response back to the pool.
+		try {
+			response.close();
+		} catch (IOException e) {
+			logger.debug("Exception in closing the failed response of " + uri, e);
+		}
+		int statusCode = response.getStatusCode();
+		long retryAfter = getRetryAfterMillis(response);
+		if (statusCode == 401) // Unauthorized
 		{
-			throw new TCIAClientException(uri.toString(),
-					"Unauthorized access");
-		} else if (response.getStatusLine().getStatusCode() == 404) {
-			throw new TCIAClientException(uri.toString(),
-					"Resource not found");
+			throw new TCIAServerException("Unauthorized access", uri.toString(), statusCode, retryAfter);
+		} else if (statusCode == 404) {
+			throw new TCIAServerException("Resource not found", uri.toString(), statusCode, retryAfter);
 		} else {
-			throw new TCIAClientException(uri.toString(), "Server Error : "
-					+ response.getStatusLine().getReasonPhrase());
+			throw new TCIAServerException("Server Error : " + response.getReasonPhrase(),
+					uri.toString(), statusCode, retryAfter);
+		}
+	}
+
+
+	static InputStream getStatus(URI uri, HttpResponse response) throws TCIAClientException {
+		return getStatus(uri, ApacheTransport.adapt(response));
+	}
+
+
+	/*
+	 * The Retry-After header holds either a number of seconds or an HTTP date.
+	 */
+	static long getRetryAfterMillis(TransportResponse response) {
+		String retryAfter = response.getHeader("Retry-After");
+		if (retryAfter == null) {
+			return -1;
+		}
+		String value = retryAfter.trim();
+		try {
+			return Math.max(0, Long.parseLong(value) * 1000);
+		} catch (NumberFormatException e) {
+			Date date = DateUtils.parseDate(value);
+			return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
 		}
 	}
 
 
-	private static String getAuthValue() {
-		return authValue;
+	static String getAuthValue() {
+		return getDefault().getAuthValue();
 	}
 
 
-	private static String getAuthorizationHeader() {
-		return AUTHORIZATION_HEADER;
+	static String getAuthorizationHeader() {
+		return getDefault().getAuthorizationHeader();
 	}
 }
@@ -10,6 +10,8 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.logging.log4j.LogManager;
@@ -23,28 +25,29 @@ public class WebClientDevWrapper {
 
 	private static Logger logger = LogManager.getLogger(WebClientDevWrapper.class.getName());
 
+	/**
+	 * Create the SSL socket factory used by the pooled connection manager, accepting the TCIA certificates.
+	 * @return the SSL connection socket factory, or null if the SSL context could not be initialized
+	 */
+	public static SSLConnectionSocketFactory getSSLConnectionSocketFactory() {
+		try {
+			return new SSLConnectionSocketFactory(createSSLContext(), NoopHostnameVerifier.INSTANCE);
+		} catch (Exception ex) {
+			logger.error("Web Client Dev Wrapper Exception", ex);
+			return null;
+		}
+	}
+
 	/**
 	 * Wrap the HTTP client
 	 * @param base input HTTP client object
 	 * @return output HTTP client object
+	 * @deprecated the client is now built on a pooling connection manager; use {@link #getSSLConnectionSocketFactory()}
 	 */
+	@Deprecated
 	public static HttpClient wrapClient(HttpClient base) {
 		try {
-			SSLContext ctx = SSLContext.getInstance("TLS");
-			X509TrustManager tm = new X509TrustManager() {
-
-				public void checkClientTrusted(X509Certificate[] xcs, String string) throws CertificateException {
-				}
-
-				public void checkServerTrusted(X509Certificate[] xcs, String string) throws CertificateException {
-				}
-
-				public X509Certificate[] getAcceptedIssuers() {
-					return null;
-				}
-			};
-			ctx.init(null, new TrustManager[]{tm}, null);
-			SSLSocketFactory ssf = new SSLSocketFactory(ctx);
+			SSLSocketFactory ssf = new SSLSocketFactory(createSSLContext());
 			ssf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
 			ClientConnectionManager ccm = base.getConnectionManager();
 			SchemeRegistry sr = ccm.getSchemeRegistry();
@@ -55,4 +58,27 @@ public class WebClientDevWrapper {
 			return null;
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Create an SSL context that accepts the TCIA certificates.
+	 * @return the SSL context
+	 * @throws Exception if the SSL context could not be initialized
+	 */
+	public static SSLContext createSSLContext() throws Exception {
+		SSLContext ctx = SSLContext.getInstance("TLS");
+		X509TrustManager tm = new X509TrustManager() {
+
+			public void checkClientTrusted(X509Certificate[] xcs, String string) throws CertificateException {
+			}
+
+			public void checkServerTrusted(X509Certificate[] xcs, String string) throws CertificateException {
+			}
+
+			public X509Certificate[] getAcceptedIssuers() {
+				return null;
+			}
+		};
+		ctx.init(null, new TrustManager[]{tm}, null);
+		return ctx;
+	}
+}
@@ -0,0 +1,262 @@
+package edu.emory.bmi.tcia.client.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Extracts the ZIP of an image result as it is read from the response, writing each DICOM file of the ZIP to
+ * SOPInstanceUID.dcm in a target directory. The ZIP is never stored as a whole.
+ * <p>
+ * The thread reading the response only inflates the entries; the files are written by a small pool of writer
+ * threads, so that reading from the network does not stall on the disk. The entries waiting for a writer are
+ * bounded in bytes, so that a slow disk slows down the reading rather than filling the heap.
+ * The SOPInstanceUID is read from the DICOM file meta information; an entry without it, such as a license, is written
+ * under the name of the entry, as it is.
+ * An extractor may be shared by concurrent extractions, and should be closed to stop its writer threads.
+ */
+public class ZipExtractor implements Closeable {
+
+	public static final int DEFAULT_WRITER_THREADS = 2;
+	public static final int DEFAULT_MAX_PENDING_BYTES = 64 * 1024 * 1024;
+
+	private static final String DICOM_SUFFIX = ".dcm";
+
+	// The DICOM file meta information follows a 128-byte preamble and the DICM prefix.
+	private static final int PREAMBLE_LENGTH = 128;
+	private static final byte[] DICM = {'D', 'I', 'C', 'M'};
+	private static final int META_GROUP = 0x0002;
+	private static final int MEDIA_STORAGE_SOP_INSTANCE_UID = 0x0003;
+
+	private static Logger logger = LogManager.getLogger(ZipExtractor.class.getName());
+
+	private final ExecutorService writers;
+	private final int maxPendingBytes;
+	private final Semaphore pendingBytes;
+
+
+	/**
+	 * Create an extractor with the default writer threads and pending bytes.
+	 */
+	public ZipExtractor() {
+		this(DEFAULT_WRITER_THREADS, DEFAULT_MAX_PENDING_BYTES);
+	}
+
+
+	/**
+	 * Create an extractor.
+	 * @param writerThreads the number of threads writing the files
+	 * @param maxPendingBytes the maximum number of bytes inflated but not yet written
+	 */
+	public ZipExtractor(int writerThreads, int maxPendingBytes) {
+		if (writerThreads < 1) {
+			throw new IllegalArgumentException("The number of writer threads must be at least 1: " + writerThreads);
+		}
+		final AtomicInteger threadCount = new AtomicInteger();
+		this.writers = Executors.newFixedThreadPool(writerThreads, r -> {
+			Thread thread = new Thread(r, "tcia-zip-writer-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.maxPendingBytes = maxPendingBytes;
+		this.pendingBytes = new Semaphore(maxPendingBytes);
+	}
+
+
+	/**
+	 * Extract the DICOM files of an image result into a directory. The raw data of the image result is closed
+	 * afterwards.
+	 * @param imageResult an instance of the ImageResult
+	 * @param directory the directory to write the files, created if missing
+	 * @return the paths of the written files, in the order of the ZIP entries
+	 * @throws IOException if reading the ZIP or writing any of the files failed.
+	 */
+	public List<Path> extract(ImageResult imageResult, Path directory) throws IOException {
+		Files.createDirectories(directory);
+		List<Future<Path>> writes = new ArrayList<>();
+		IOException failure = null;
+
+		try (ZipInputStream zip = new ZipInputStream(imageResult.getRawData())) {
+			ZipEntry entry;
+			byte[] buffer = new byte[64 * 1024];
+			while ((entry = zip.getNextEntry()) != null) {
+				if (entry.isDirectory()) {
+					continue;
+				}
+				byte[] data = readEntry(zip, entry, buffer);
+				Path path = directory.resolve(getFileName(entry, data));
+				int permits = Math.min(data.length, maxPendingBytes);
+				pendingBytes.acquireUninterruptibly(permits);
+				try {
+					writes.add(writers.submit(() -> {
+						try {
+							return Files.write(path, data);
+						} finally {
+							pendingBytes.release(permits);
+						}
+					}));
+				} catch (RuntimeException e) {
+					pendingBytes.release(permits);
+					throw new IOException("The ZIP extractor is closed", e);
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+		}
+
+		// Wait for the pending writes even on failure, so that no file is written after returning.
+		List<Path> paths = new ArrayList<>(writes.size());
+		for (Future<Path> write : writes) {
+			try {
+				paths.add(write.get());
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof IOException ? (IOException) e.getCause() :
+							new IOException(e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (failure == null) {
+					failure = new IOException("Interrupted while writing the files to " + directory, e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		logger.info(paths.size() + " DICOM files extracted to " + directory);
+		return paths;
+	}
+
+
+	/**
+	 * Stop the writer threads.
+	 */
+	@Override
+	public void close() {
+		writers.shutdown();
+	}
+
+
+	/*
+	 * Read an entry fully, sized by the entry when the ZIP announces its size.
+	 */
+	private static byte[] readEntry(InputStream zip, ZipEntry entry, byte[] buffer) throws IOException {
+		long size = entry.getSize();
+		byte[] data = new byte[size > 0 && size < Integer.MAX_VALUE ? (int) size : buffer.length];
+		int length = 0;
+		int read;
+		while ((read = zip.read(buffer)) > 0) {
+			if (length + read > data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length * 2, length + read));
+			}
+			System.arraycopy(buffer, 0, data, length, read);
+			length += read;
+		}
+		return length == data.length ? data : Arrays.copyOf(data, length);
+	}
+
+
+	private static String getFileName(ZipEntry entry, byte[] data) {
+		String sopInstanceUID = getSOPInstanceUID(data);
+		if (sopInstanceUID != null) {
+			return sopInstanceUID + DICOM_SUFFIX;
+		}
+		// An entry without a DICOM meta header, such as a license or a manifest, keeps its own name, so that the
+		// DICOM tools do not take it for a DICOM file.
+		String name = entry.getName();
+		logger.warn("No SOPInstanceUID in the entry " + name + ", which is extracted by its name");
+		return name.substring(name.lastIndexOf('/') + 1);
+	}
+
+
+	/**
+	 * Get the Media Storage SOP Instance UID (0002,0003) of the file meta information of a DICOM file, which is
+	 * encoded in explicit VR little endian.
+	 * @param data the content of the DICOM file
+	 * @return the SOPInstanceUID, or null if the data is not a DICOM file with a valid UID
+	 */
+	static String getSOPInstanceUID(byte[] data) {
+		int offset = PREAMBLE_LENGTH;
+		if (data.length < offset + DICM.length ||
+				!Arrays.equals(DICM, Arrays.copyOfRange(data, offset, offset + DICM.length))) {
+			return null;
+		}
+		offset += DICM.length;
+
+		while (offset + 8 <= data.length) {
+			int group = readShort(data, offset);
+			int element = readShort(data, offset + 2);
+			if (group != META_GROUP) {
+				return null;
+			}
+			String vr = new String(data, offset + 4, 2, StandardCharsets.US_ASCII);
+			long length;
+			if (vr.equals("OB") || vr.equals("OW") || vr.equals("OF") || vr.equals("SQ") || vr.equals("UT") ||
+					vr.equals("UN")) {
+				if (offset + 12 > data.length) {
+					return null;
+				}
+				length = readInt(data, offset + 8);
+				offset += 12;
+			} else {
+				length = readShort(data, offset + 6);
+				offset += 8;
+			}
+			if (length < 0 || offset + length > data.length) {
+				return null;
+			}
+			if (element == MEDIA_STORAGE_SOP_INSTANCE_UID) {
+				String uid = new String(data, offset, (int) length, StandardCharsets.US_ASCII).trim();
+				return isValidUID(uid) ? uid : null;
+			}
+			offset += length;
+		}
+		return null;
+	}
+
+
+	/*
+	 * Also guards the file name: a valid UID is made of digits and dots only.
+	 */
+	private static boolean isValidUID(String uid) {
+		if (uid.isEmpty() || uid.length() > 64) {
+			return false;
+		}
+		for (int i = 0; i < uid.length(); i++) {
+			char c = uid.charAt(i);
+			if ((c < '0' || c > '9') && c != '.') {
+				return false;
+			}
+		}
+		return !uid.startsWith(".") && !uid.endsWith(".");
+	}
+
+
+	private static int readShort(byte[] data, int offset) {
+		return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8;
+	}
+
+
+	private static long readInt(byte[] data, int offset) {
+		return (readShort(data, offset) | (long) readShort(data, offset + 2) << 16);
+	}
+}
@@ -0,0 +1,147 @@
+package edu.emory.bmi.tcia.client.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.conf.TCIAConstants;
+import edu.emory.bmi.tcia.client.util.WebClientDevWrapper;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import static edu.emory.bmi.tcia.client.util.TCIAClientUtil.valueOrDefault;
+
+
+/**
+ * The transport on the HTTP client of Java 11. It negotiates HTTP/2 with the servers that support it, multiplexing
+ * all the requests in flight to a host as streams of a single connection, and falls back to HTTP/1.1 otherwise.
+ * Unlike the Apache transport, it verifies the host names of the certificates.
+ */
+public class HttpClientTransport implements Transport {
+
+	private static Logger logger = LogManager.getLogger(HttpClientTransport.class.getName());
+
+	private final ExecutorService executor;
+	private final HttpClient httpClient;
+	private final Duration requestTimeout;
+
+
+	/**
+	 * Build the client of a configuration.
+	 * @param tciaConf the configuration, for the timeouts
+	 */
+	public HttpClientTransport(TCIAConf tciaConf) {
+		executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "tcia-http2");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		HttpClient.Builder builder = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.executor(executor);
+		int connectTimeout = valueOrDefault(tciaConf.getConnecttimeout(), TCIAConstants.DEFAULT_CONNECT_TIMEOUT_MS);
+		if (connectTimeout > 0) {
+			builder.connectTimeout(Duration.ofMillis(connectTimeout));
+		}
+		try {
+			builder.sslContext(WebClientDevWrapper.createSSLContext());
+		} catch (Exception e) {
+			logger.error("Exception in initializing the SSL context, using the default one", e);
+		}
+		httpClient = builder.build();
+
+		// The client has no read timeout; the request timeout bounds the wait for the response head instead.
+		int socketTimeout = valueOrDefault(tciaConf.getSockettimeout(), TCIAConstants.DEFAULT_SOCKET_TIMEOUT_MS);
+		requestTimeout = socketTimeout > 0 ? Duration.ofMillis(socketTimeout) : null;
+	}
+
+
+	@Override
+	public TransportResponse execute(TransportRequest request) throws IOException {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(request.getURI()).GET();
+		for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+			builder.setHeader(header.getKey(), header.getValue());
+		}
+		if (requestTimeout != null) {
+			builder.timeout(requestTimeout);
+		}
+		try {
+			return new Response(httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream()));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException interrupted = new InterruptedIOException("Interrupted request to " +
+					request.getURI());
+			interrupted.initCause(e);
+			throw interrupted;
+		}
+	}
+
+
+	@Override
+	public String getName() {
+		return Transports.HTTP2;
+	}
+
+
+	/*
+	 * The client of Java 11 cannot be closed; its connections are released once it is no longer referenced.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+
+	private static class Response implements TransportResponse {
+		private final HttpResponse<InputStream> response;
+
+		Response(HttpResponse<InputStream> response) {
+			this.response = response;
+		}
+
+		@Override
+		public int getStatusCode() {
+			return response.statusCode();
+		}
+
+		@Override
+		public String getReasonPhrase() {
+			// HTTP/2 has no reason phrases.
+			return EnglishReasonPhraseCatalog.INSTANCE.getReason(response.statusCode(), null);
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return response.headers().firstValue(name).orElse(null);
+		}
+
+		@Override
+		public long getContentLength() {
+			return response.headers().firstValueAsLong("Content-Length").orElse(-1);
+		}
+
+		@Override
+		public InputStream getContent() {
+			return response.body();
+		}
+
+		/*
+		 * Closing the body before its end cancels the stream, rather than reading the rest of it.
+		 */
+		@Override
+		public void close() throws IOException {
+			response.body().close();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import edu.emory.bmi.tcia.client.resilience.AdaptiveConcurrencyLimiter;
+import org.junit.Test;
+
+
+/**
+ * Tests the adaptive concurrency limiter, without accessing the TCIA server.
+ */
+public class TestAdaptiveConcurrencyLimiter {
+
+	/**
+	 * The limit grows while the requests succeed, and shrinks on an overloaded response.
+	 */
+	@Test
+	public void testIncreaseAndDecrease() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 4, 16);
+		for (int round = 0; round < 50; round++) {
+			List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+			for (int i = 0; i < limiter.getLimit(); i++) {
+				permits.add(limiter.acquire());
+			}
+			for (AdaptiveConcurrencyLimiter.Permit permit : permits) {
+				permit.onResponse(200);
+				permit.release();
+			}
+		}
+		int grown = limiter.getLimit();
+		assertTrue("The limit should have grown from 4: " + grown, grown > 4);
+		assertEquals(0, limiter.getInFlight());
+
+		AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire();
+		permit.onResponse(503);
+		permit.release();
+		assertTrue(limiter.getLimit() < grown);
+	}
+
+
+	/**
+	 * The requests over the limit wait for a permit to be released.
+	 */
+	@Test
+	public void testAcquireWaits() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+		AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire();
+
+		CompletableFuture<AdaptiveConcurrencyLimiter.Permit> waiting = CompletableFuture.supplyAsync(() -> {
+			try {
+				return limiter.acquire();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		try {
+			waiting.get(200, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			// Expected, as the only permit is held.
+		}
+		assertFalse(waiting.isDone());
+
+		permit.release();
+		// Releasing twice must not free a second permit.
+		permit.release();
+		waiting.get(5, TimeUnit.SECONDS).release();
+		assertEquals(0, limiter.getInFlight());
+	}
+}
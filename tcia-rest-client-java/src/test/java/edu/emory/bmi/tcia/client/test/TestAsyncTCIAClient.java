@@ -0,0 +1,142 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipInputStream;
+
+import edu.emory.bmi.tcia.client.core.IAsyncTCIAClient;
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.definitions.ServiceEndpoints;
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import edu.emory.bmi.tcia.client.exceptions.TCIAServerException;
+import edu.emory.bmi.tcia.client.impl.AsyncTCIAClientImpl;
+import edu.emory.bmi.tcia.client.simulator.TCIASimulator;
+import edu.emory.bmi.tcia.client.util.AsyncTCIAClientUtil;
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the futures of the asynchronous client against the embedded TCIA simulator.
+ */
+public class TestAsyncTCIAClient {
+
+	private TCIASimulator simulator;
+	private IAsyncTCIAClient client;
+	private String defaultResourceUrl;
+
+
+	@Before
+	public void setUp() throws Exception {
+		simulator = new TCIASimulator().setCollections(2).setPatientsPerCollection(3).setInstancesPerSeries(4)
+				.setInstanceSize(128 * 1024).start();
+		defaultResourceUrl = TCIAClientUtil.getResourceUrl();
+		AsyncTCIAClientUtil.init(simulator.getConf());
+		client = new AsyncTCIAClientImpl();
+	}
+
+
+	@After
+	public void tearDown() {
+		AsyncTCIAClientUtil.shutdown();
+		simulator.close();
+	}
+
+
+	/**
+	 * The string futures complete with the whole response, and the configuration of the asynchronous client leaves
+	 * the default client unchanged.
+	 */
+	@Test
+	public void testString() throws Exception {
+		String collection = simulator.getCollections().get(1);
+		assertTrue(client.getCollectionValues(OutputFormat.json).get().contains(collection));
+		String patients = client.getPatient(collection, OutputFormat.csv).get();
+		assertTrue(patients.contains(simulator.getPatientIDs().get(3)));
+		assertEquals(defaultResourceUrl, TCIAClientUtil.getResourceUrl());
+		assertEquals(simulator.getConf().getBaseurl() + simulator.getConf().getResource(),
+				AsyncTCIAClientUtil.getClient().getResourceUrl());
+	}
+
+
+	/**
+	 * The image future completes on the response headers, and the ZIP streams through its raw data.
+	 */
+	@Test
+	public void testImage() throws Exception {
+		String seriesInstanceUID = simulator.getSeriesInstanceUIDs().get(2);
+		ImageResult imageResult = client.getImage(seriesInstanceUID).get();
+		assertEquals(Integer.valueOf(4), imageResult.getImageCount());
+
+		int entries = 0;
+		try (InputStream in = imageResult.getRawData(); ZipInputStream zip = new ZipInputStream(in)) {
+			while (zip.getNextEntry() != null) {
+				entries++;
+			}
+		}
+		assertEquals(4, entries);
+		assertEquals(1, AsyncTCIAClientUtil.getClient().getMetricsSnapshot().getEndpoints()
+				.get(ServiceEndpoints.getImage).getRequests());
+	}
+
+
+	/**
+	 * A dependent stage reads the whole ZIP, larger than the buffer of the stream, without blocking the I/O
+	 * dispatcher that fills it.
+	 */
+	@Test
+	public void testReadInStage() throws Exception {
+		AtomicInteger entries = new AtomicInteger();
+		client.getImage(simulator.getSeriesInstanceUIDs().get(1)).thenAccept(imageResult -> {
+			assertTrue(!Thread.currentThread().getName().startsWith("I/O dispatcher"));
+			try (ZipInputStream zip = new ZipInputStream(imageResult.getRawData())) {
+				while (zip.getNextEntry() != null) {
+					entries.incrementAndGet();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}).get(30, TimeUnit.SECONDS);
+		assertEquals(4, entries.get());
+	}
+
+
+	/**
+	 * The futures of the rejected requests and of the unreachable servers fail with the exceptions of the
+	 * synchronous client.
+	 */
+	@Test
+	public void testFailedFuture() throws Exception {
+		simulator.setErrorRate(1);
+		assertFailure(client.getCollectionValues(OutputFormat.json), 503);
+		assertFailure(client.getImage(simulator.getSeriesInstanceUIDs().get(0)), 503);
+
+		simulator.close();
+		assertFailure(client.getCollectionValues(OutputFormat.json), -1);
+	}
+
+
+	private static void assertFailure(CompletableFuture<?> future, int statusCode) throws InterruptedException {
+		try {
+			future.get();
+			fail("The future should have failed");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TCIAClientException);
+			if (statusCode > 0) {
+				assertEquals(statusCode, ((TCIAServerException) e.getCause()).getStatusCode());
+			}
+		}
+	}
+}
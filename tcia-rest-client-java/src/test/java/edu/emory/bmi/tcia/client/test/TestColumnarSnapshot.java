@@ -0,0 +1,135 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.emory.bmi.tcia.client.columnar.ColumnarReader;
+import edu.emory.bmi.tcia.client.columnar.ColumnarSchema;
+import edu.emory.bmi.tcia.client.columnar.ColumnarWriter;
+import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.model.Study;
+import edu.emory.bmi.tcia.client.simulator.TCIASimulator;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the columnar snapshots of the records of the embedded TCIA simulator.
+ */
+public class TestColumnarSnapshot {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private TCIASimulator simulator;
+	private TCIAClientImpl client;
+	private Path directory;
+
+
+	@Before
+	public void setUp() throws Exception {
+		simulator = new TCIASimulator().setCollections(2).setPatientsPerCollection(5).setStudiesPerPatient(2)
+				.setSeriesPerStudy(4).start();
+		TCIAClientUtil.init(simulator.getConf());
+		client = new TCIAClientImpl();
+		directory = Files.createTempDirectory("tcia-columnar");
+	}
+
+
+	@After
+	public void tearDown() throws Exception {
+		TCIAClientUtil.shutdown();
+		simulator.close();
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : files.collect(Collectors.toList())) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+
+	/**
+	 * The series written from getSeries read back as they were, and scan by the value of a column.
+	 */
+	@Test
+	public void testSeries() throws Exception {
+		List<Series> expected;
+		try (Stream<Series> series = client.streamSeries(null, null, null, null, null, null, null, null)) {
+			expected = series.collect(Collectors.toList());
+		}
+		String file = directory.resolve("series.col").toString();
+		try (ColumnarWriter<Series> writer = new ColumnarWriter<>(file, ColumnarSchema.SERIES)) {
+			writer.addAll(client.streamSeries(null, null, null, null, null, null, null, null));
+			assertEquals(expected.size(), writer.getRowCount());
+		}
+
+		ColumnarReader<Series> reader = new ColumnarReader<>(file, ColumnarSchema.SERIES);
+		assertEquals(expected.size(), reader.size());
+		assertEquals(toJson(expected), toJson(reader.stream().collect(Collectors.toList())));
+
+		List<Series> mr = expected.stream().filter(s -> "MR".equals(s.getModality())).collect(Collectors.toList());
+		assertEquals(toJson(mr), toJson(reader.stream(DICOMAttributes.MODALITY, "MR").collect(Collectors.toList())));
+		assertEquals(0, reader.count(DICOMAttributes.MODALITY, "XA"));
+		assertEquals(expected.stream().map(Series::getModality).collect(Collectors.toSet()),
+				new HashSet<>(reader.getDistinctValues(DICOMAttributes.MODALITY)));
+
+		Series last = expected.get(expected.size() - 1);
+		assertEquals(1, reader.count(DICOMAttributes.SERIES_INSTANCE_UID, last.getSeriesInstanceUID()));
+		assertEquals(last.getPatientID(), reader.getValue(expected.size() - 1, DICOMAttributes.PATIENT_ID));
+		assertEquals(expected.size(), reader.count("ImageCount", String.valueOf(last.getImageCount())));
+	}
+
+
+	/**
+	 * The UIDs that are not made of digits and dots, the empty values and the nulls are kept as they were.
+	 */
+	@Test
+	public void testValues() throws Exception {
+		List<String> uids = Arrays.asList("1.2.840.10008.1", "1.2.840.10008.12", "", null, "not-a-UID.\u00e9", "0");
+		String file = directory.resolve("studies.col").toString();
+		try (ColumnarWriter<Study> writer = new ColumnarWriter<>(file, ColumnarSchema.STUDY)) {
+			for (String uid : uids) {
+				Study study = new Study();
+				study.setStudyInstanceUID(uid);
+				study.setPatientID(uid == null ? null : "P-" + uid.length());
+				writer.add(study);
+			}
+		}
+
+		ColumnarReader<Study> reader = new ColumnarReader<>(file, ColumnarSchema.STUDY);
+		assertEquals(uids, reader.stream().map(Study::getStudyInstanceUID).collect(Collectors.toList()));
+		assertNull(reader.get(3).getPatientID());
+		assertNull(reader.get(3).getSeriesCount());
+		assertEquals(1, reader.count(DICOMAttributes.STUDY_INSTANCE_UID, null));
+		assertEquals(1, reader.count(DICOMAttributes.STUDY_INSTANCE_UID, "not-a-UID.\u00e9"));
+		assertEquals(uids.size(), reader.count(DICOMAttributes.COLLECTION, null));
+
+		try {
+			new ColumnarReader<>(file, ColumnarSchema.SERIES);
+			fail("A snapshot of studies should not open as series");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("The snapshot is of Study"));
+		}
+	}
+
+
+	private static String toJson(List<?> records) throws Exception {
+		return MAPPER.writeValueAsString(records);
+	}
+}
@@ -0,0 +1,148 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.emory.bmi.tcia.client.cache.ImageCache;
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import org.junit.Test;
+
+
+/**
+ * Tests the persistent image cache, without accessing the TCIA server.
+ */
+public class TestImageCache {
+
+	/**
+	 * Concurrent readers of the same series share a single download, and get the same bytes and image count.
+	 */
+	@Test
+	public void testConcurrentReaders() throws Exception {
+		File directory = Files.createTempDirectory("tcia-image-cache").toFile();
+		ImageCache cache = new ImageCache(directory.getPath(), 1024 * 1024);
+		byte[] zip = new byte[100000];
+		zip[0] = 'P';
+		zip[1] = 'K';
+		AtomicInteger loads = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<byte[]>> futures = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			futures.add(executor.submit(() -> {
+				ImageResult imageResult = cache.get(ImageCache.seriesKey("1.2.3"), () -> {
+					loads.incrementAndGet();
+					return newImageResult(zip, 5);
+				});
+				assertEquals(Integer.valueOf(5), imageResult.getImageCount());
+				return readFully(imageResult.getRawData());
+			}));
+		}
+		for (Future<byte[]> future : futures) {
+			assertArrayEquals(zip, future.get());
+		}
+		executor.shutdown();
+
+		assertEquals(1, loads.get());
+		assertTrue(cache.contains(ImageCache.seriesKey("1.2.3")));
+	}
+
+
+	/**
+	 * The downloads of different series run concurrently, even though more series than lock stripes are loaded.
+	 */
+	@Test
+	public void testConcurrentLoads() throws Exception {
+		File directory = Files.createTempDirectory("tcia-image-cache").toFile();
+		ImageCache cache = new ImageCache(directory.getPath(), 1024 * 1024);
+		int series = 65;
+		CountDownLatch started = new CountDownLatch(series);
+
+		ExecutorService executor = Executors.newFixedThreadPool(series);
+		List<Future<ImageResult>> futures = new ArrayList<>();
+		for (int i = 0; i < series; i++) {
+			String uid = "1.4." + i;
+			futures.add(executor.submit(() -> cache.get(ImageCache.seriesKey(uid), () -> {
+				// Every load waits for all the others to start, so that a lock held while loading fails the test.
+				started.countDown();
+				try {
+					assertTrue(started.await(30, TimeUnit.SECONDS));
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				return newImageResult(new byte[1000], 1);
+			})));
+		}
+		for (Future<ImageResult> future : futures) {
+			assertEquals(1000, readFully(future.get().getRawData()).length);
+		}
+		executor.shutdown();
+
+		assertEquals(series, Arrays.stream(directory.list()).filter(name -> name.endsWith(".zip")).count());
+	}
+
+
+	/**
+	 * The least recently used images are evicted when the cache exceeds its quota.
+	 */
+	@Test
+	public void testEviction() throws Exception {
+		File directory = Files.createTempDirectory("tcia-image-cache").toFile();
+		ImageCache cache = new ImageCache(directory.getPath(), 250000);
+		byte[] zip = new byte[100000];
+
+		for (String uid : new String[]{"1.1", "1.2", "1.3"}) {
+			readFully(cache.get(ImageCache.seriesKey(uid), () -> newImageResult(zip, 1)).getRawData());
+			// Distinct modification times, as some file systems have a coarse resolution.
+			Thread.sleep(1100);
+		}
+
+		assertFalse(cache.contains(ImageCache.seriesKey("1.1")));
+		assertTrue(cache.contains(ImageCache.seriesKey("1.2")));
+		assertTrue(cache.contains(ImageCache.seriesKey("1.3")));
+		assertTrue(cache.getSize() <= 250000);
+		// The evicted entry leaves no file behind, and the entries share the lock files of their stripes.
+		String[] files = directory.list();
+		assertEquals(4, Arrays.stream(files).filter(name -> !name.endsWith(".lock")).count());
+		assertTrue(Arrays.stream(files).filter(name -> name.endsWith(".lock")).allMatch(name ->
+				name.startsWith("stripe-")));
+	}
+
+
+	private static ImageResult newImageResult(byte[] zip, int imageCount) {
+		ImageResult imageResult = new ImageResult();
+		imageResult.setRawData(new ByteArrayInputStream(zip));
+		imageResult.setImageCount(imageCount);
+		return imageResult;
+	}
+
+
+	private static byte[] readFully(InputStream in) throws Exception {
+		try (InputStream input = in) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+}
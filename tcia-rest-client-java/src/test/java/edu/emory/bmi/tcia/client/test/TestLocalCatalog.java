@@ -0,0 +1,196 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import edu.emory.bmi.tcia.client.catalog.LocalCatalog;
+import edu.emory.bmi.tcia.client.definitions.ServiceEndpoints;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.model.Patient;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.model.Study;
+import edu.emory.bmi.tcia.client.request.RequestTemplate;
+import edu.emory.bmi.tcia.client.simulator.TCIASimulator;
+import edu.emory.bmi.tcia.client.sync.CollectionSnapshot;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the local catalog against the embedded TCIA simulator.
+ */
+public class TestLocalCatalog {
+
+	private TCIASimulator simulator;
+	private TCIAClientImpl client;
+	private String collection;
+
+
+	@Before
+	public void setUp() throws Exception {
+		simulator = new TCIASimulator().setCollections(2).setPatientsPerCollection(4).setStudiesPerPatient(2)
+				.setSeriesPerStudy(3).start();
+		TCIAClientUtil.init(simulator.getConf());
+		client = new TCIAClientImpl();
+		collection = simulator.getCollections().get(0);
+	}
+
+
+	@After
+	public void tearDown() {
+		TCIAClientUtil.setCatalog(null);
+		TCIAClientUtil.shutdown();
+		simulator.close();
+	}
+
+
+	/**
+	 * The series of a collection answer the queries of that collection by any other filter, as the service does.
+	 */
+	@Test
+	public void testQueries() throws Exception {
+		String patientID = simulator.getPatientIDs().get(1);
+		List<String> byModality = getSeriesUIDs(collection, "MR", null);
+		List<String> byPatient = getSeriesUIDs(collection, null, patientID);
+		List<String> none = getSeriesUIDs(collection, "XA", null);
+
+		LocalCatalog catalog = new LocalCatalog();
+		TCIAClientUtil.setCatalog(catalog);
+		assertEquals(4 * 2 * 3, getSeriesUIDs(collection, null, null).size());
+		long requests = simulator.getRequestCount(ServiceEndpoints.getSeries);
+
+		assertEquals(byModality, getSeriesUIDs(collection, "MR", null));
+		assertEquals(byPatient, getSeriesUIDs(collection, null, patientID));
+		assertEquals(none, getSeriesUIDs(collection, "XA", null));
+		assertEquals(requests, simulator.getRequestCount(ServiceEndpoints.getSeries));
+		assertEquals(3, catalog.getHits());
+
+		// Another collection, or another endpoint, is not covered.
+		getSeriesUIDs(simulator.getCollections().get(1), null, null);
+		try (Stream<Study> studies = client.streamPatientStudy(collection, patientID, null)) {
+			assertEquals(2, studies.count());
+		}
+		assertEquals(requests + 1, simulator.getRequestCount(ServiceEndpoints.getSeries));
+		assertEquals(3, catalog.getMisses());
+		assertEquals(4 * 2 * 3 * 2, catalog.getSeriesCount());
+		assertEquals(2, catalog.getStudyCount());
+	}
+
+
+	/**
+	 * A response older than the maximum age, or not read to its end, does not answer queries.
+	 */
+	@Test
+	public void testFreshness() throws Exception {
+		LocalCatalog catalog = new LocalCatalog();
+		TCIAClientUtil.setCatalog(catalog);
+		try (Stream<Series> series = client.streamSeries(collection, null, null, null, null, null, null, null)) {
+			assertEquals(1, series.limit(1).count());
+		}
+		assertNull(catalog.query(Series.class, RequestTemplate.GET_SERIES.query().collection(collection)));
+
+		getSeriesUIDs(collection, null, null);
+		long requests = simulator.getRequestCount(ServiceEndpoints.getSeries);
+		getSeriesUIDs(collection, "MR", null);
+		assertEquals(requests, simulator.getRequestCount(ServiceEndpoints.getSeries));
+
+		catalog.setClock(Clock.offset(Clock.systemUTC(), Duration.ofMillis(catalog.getMaxAge() + 1000)));
+		assertNull(catalog.query(Series.class, RequestTemplate.GET_SERIES.query().collection(collection)));
+		getSeriesUIDs(collection, "MR", null);
+		assertEquals(requests + 1, simulator.getRequestCount(ServiceEndpoints.getSeries));
+	}
+
+
+	/**
+	 * A saved catalog answers the queries it covers once loaded.
+	 */
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		Path directory = Files.createTempDirectory("tcia-catalog");
+		try {
+			LocalCatalog catalog = new LocalCatalog(directory.toString());
+			TCIAClientUtil.setCatalog(catalog);
+			List<String> all = getSeriesUIDs(collection, null, null);
+			catalog.close();
+
+			LocalCatalog loaded = new LocalCatalog(directory.toString());
+			assertEquals(all.size(), loaded.getSeriesCount());
+			try (Stream<Series> series = loaded.query(Series.class, RequestTemplate.GET_SERIES.query()
+					.collection(collection))) {
+				assertEquals(all, series.map(Series::getSeriesInstanceUID).collect(Collectors.toList()));
+			}
+		} finally {
+			for (File file : directory.toFile().listFiles()) {
+				file.delete();
+			}
+			Files.deleteIfExists(directory);
+		}
+	}
+
+
+	/**
+	 * The same PatientID and StudyInstanceUID in two collections are two records, each answering its collection,
+	 * and the later collection does not take the records of the earlier one.
+	 */
+	@Test
+	public void testSharedIDs() throws Exception {
+		LocalCatalog catalog = new LocalCatalog();
+		catalog.add(newSnapshot("COLLECTION-A", "F"));
+		catalog.add(newSnapshot("COLLECTION-B", "M"));
+		assertEquals(2, catalog.getPatientCount());
+		assertEquals(2, catalog.getStudyCount());
+
+		for (String collection : new String[] {"COLLECTION-A", "COLLECTION-B"}) {
+			try (Stream<Patient> patients = catalog.query(Patient.class, RequestTemplate.GET_PATIENT.query()
+					.collection(collection))) {
+				List<Patient> list = patients.collect(Collectors.toList());
+				assertEquals(1, list.size());
+				assertEquals(collection, list.get(0).getCollection());
+			}
+			try (Stream<Study> studies = catalog.query(Study.class, RequestTemplate.GET_PATIENT_STUDY.query()
+					.collection(collection).patientID("SHARED"))) {
+				assertEquals(1, studies.filter(s -> collection.equals(s.getCollection())).count());
+			}
+		}
+	}
+
+
+	private static CollectionSnapshot newSnapshot(String collection, String patientSex) {
+		Patient patient = new Patient();
+		patient.setCollection(collection);
+		patient.setPatientID("SHARED");
+		patient.setPatientSex(patientSex);
+		Study study = new Study();
+		study.setCollection(collection);
+		study.setPatientID("SHARED");
+		study.setStudyInstanceUID("1.2.3");
+
+		CollectionSnapshot snapshot = new CollectionSnapshot();
+		snapshot.setCollection(collection);
+		snapshot.setSyncedAt(System.currentTimeMillis());
+		snapshot.setPatients(Collections.singletonList(patient));
+		snapshot.setStudies(Collections.singletonList(study));
+		snapshot.setSeries(Collections.emptyList());
+		return snapshot;
+	}
+
+
+	private List<String> getSeriesUIDs(String collection, String modality, String patientID) throws Exception {
+		try (Stream<Series> series = client.streamSeries(collection, null, modality, patientID, null, null, null,
+				null)) {
+			return series.map(Series::getSeriesInstanceUID).collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.exceptions.TCIAServerException;
+import edu.emory.bmi.tcia.client.metrics.EndpointSnapshot;
+import edu.emory.bmi.tcia.client.metrics.HistogramSnapshot;
+import edu.emory.bmi.tcia.client.metrics.LatencyHistogram;
+import edu.emory.bmi.tcia.client.metrics.MetricsRegistry;
+import edu.emory.bmi.tcia.client.metrics.MetricsSnapshot;
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import edu.emory.bmi.tcia.client.util.SaveOptions;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.apache.http.client.utils.URIBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the metrics of the requests against a local server.
+ */
+public class TestMetrics {
+
+	private static final String SERIES = "[{\"SeriesInstanceUID\":\"1.2.3\"}]";
+	private static final int IMAGE_SIZE = 3 * 1024 * 1024;
+
+	private HttpServer server;
+
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/query/getSeries", exchange -> respond(exchange, 200,
+				SERIES.getBytes(StandardCharsets.UTF_8)));
+		server.createContext("/query/getPatient", exchange -> respond(exchange, 404, new byte[0]));
+		server.createContext("/query/getImage", exchange -> respond(exchange, 200, new byte[IMAGE_SIZE]));
+		server.start();
+
+		TCIAConf tciaConf = new TCIAConf();
+		tciaConf.setBaseurl("http://localhost:" + server.getAddress().getPort());
+		tciaConf.setResource("/query");
+		tciaConf.setAuthheader("Authorization");
+		tciaConf.setAuthflag("Basic");
+		TCIAClientUtil.init(tciaConf);
+		TCIAClientUtil.setMetricsRecorder(new MetricsRegistry());
+	}
+
+
+	@After
+	public void tearDown() {
+		TCIAClientUtil.setMetricsRecorder(new MetricsRegistry());
+		TCIAClientUtil.shutdown();
+		server.stop(0);
+	}
+
+
+	/**
+	 * The requests, status codes, errors and bytes are counted per endpoint, and none is left in flight.
+	 */
+	@Test
+	public void testEndpointMetrics() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			assertEquals(SERIES, TCIAClientUtil.getStringFromURIBuilder(OutputFormat.json,
+					new URIBuilder(TCIAClientUtil.getResourceUrl() + "/getSeries")));
+		}
+		try {
+			TCIAClientUtil.getStringFromURIBuilder(OutputFormat.json,
+					new URIBuilder(TCIAClientUtil.getResourceUrl() + "/getPatient"));
+			fail("The request should have been rejected");
+		} catch (TCIAServerException e) {
+			assertEquals(404, e.getStatusCode());
+		}
+
+		MetricsSnapshot snapshot = TCIAClientUtil.getMetricsSnapshot();
+		EndpointSnapshot series = snapshot.getEndpoints().get("getSeries");
+		assertEquals(3, series.getRequests());
+		assertEquals(0, series.getErrors());
+		assertEquals(0, series.getInFlight());
+		assertEquals(3L * SERIES.length(), series.getBytesReceived());
+		assertEquals(Long.valueOf(3), series.getStatusCodes().get(200));
+		assertEquals(3, series.getLatency().getCount());
+
+		EndpointSnapshot patient = snapshot.getEndpoints().get("getPatient");
+		assertEquals(1, patient.getErrors());
+		assertEquals(0, patient.getInFlight());
+		assertEquals(Long.valueOf(1), patient.getStatusCodes().get(404));
+		assertTrue(snapshot.toText().contains("tcia_responses_total{endpoint=\"getPatient\",status=\"404\"} 1"));
+	}
+
+
+	/**
+	 * Saving an image records its transfer and the writes to the disk.
+	 */
+	@Test
+	public void testDiskMetrics() throws Exception {
+		Path path = Files.createTempFile("tcia", ".zip");
+		try {
+			ImageResult imageResult = TCIAClientUtil.authenticateAndGetImage(
+					new URIBuilder(TCIAClientUtil.getResourceUrl() + "/getImage"));
+			TCIAClientUtil.saveTo(imageResult, path, new SaveOptions());
+
+			MetricsSnapshot snapshot = TCIAClientUtil.getMetricsSnapshot();
+			EndpointSnapshot image = snapshot.getEndpoints().get("getImage");
+			assertEquals(IMAGE_SIZE, image.getBytesReceived());
+			assertEquals(0, image.getInFlight());
+			assertEquals(1, image.getTransfer().getCount());
+			assertEquals(IMAGE_SIZE, snapshot.getDiskBytesWritten());
+			assertTrue(snapshot.getDiskWrites().getCount() >= 3);
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+
+	/**
+	 * The percentiles are reported within the precision of the buckets.
+	 */
+	@Test
+	public void testHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int millis = 1; millis <= 1000; millis++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+		}
+		HistogramSnapshot snapshot = histogram.snapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(1000000, snapshot.getMax());
+		assertEquals(500500, snapshot.getMean());
+		assertWithin(500000, snapshot.getP50());
+		assertWithin(990000, snapshot.getP99());
+	}
+
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue("Expected about " + expected + " but was " + actual,
+				actual >= expected && actual <= expected * 1.125);
+	}
+
+
+	private static void respond(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+		exchange.sendResponseHeaders(statusCode, body.length > 0 ? body.length : -1);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
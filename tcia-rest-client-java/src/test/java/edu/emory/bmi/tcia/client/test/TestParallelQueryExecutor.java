@@ -0,0 +1,138 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import edu.emory.bmi.tcia.client.bulk.ParallelQueryExecutor;
+import edu.emory.bmi.tcia.client.definitions.ServiceEndpoints;
+import edu.emory.bmi.tcia.client.exceptions.TCIAServerException;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.model.Patient;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.request.Query;
+import edu.emory.bmi.tcia.client.request.RequestTemplate;
+import edu.emory.bmi.tcia.client.resilience.RetryPolicy;
+import edu.emory.bmi.tcia.client.simulator.TCIASimulator;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the parallel sub-queries against the embedded TCIA simulator.
+ */
+public class TestParallelQueryExecutor {
+
+	private TCIASimulator simulator;
+	private TCIAClientImpl client;
+
+
+	@Before
+	public void setUp() throws Exception {
+		simulator = new TCIASimulator().setCollections(3).setPatientsPerCollection(4).setStudiesPerPatient(2)
+				.setSeriesPerStudy(3).setLatency(20).start();
+		TCIAClientUtil.init(simulator.getConf());
+		TCIAClientUtil.setRetryPolicy(new RetryPolicy().setMaxAttempts(1));
+		client = new TCIAClientImpl();
+	}
+
+
+	@After
+	public void tearDown() {
+		TCIAClientUtil.setRetryPolicy(new RetryPolicy());
+		TCIAClientUtil.shutdown();
+		simulator.close();
+	}
+
+
+	/**
+	 * The ordered merge of the collections is their sequential concatenation; the unordered one has the same records.
+	 */
+	@Test
+	public void testByCollection() throws Exception {
+		List<String> expected = new ArrayList<>();
+		for (String collection : simulator.getCollections()) {
+			expected.addAll(getSeriesUIDs(client.streamSeries(collection, null, null, null, null, null, null, null)));
+		}
+		ParallelQueryExecutor executor = new ParallelQueryExecutor(client, 3).setQueueCapacity(4);
+		Query query = RequestTemplate.GET_SERIES.query();
+
+		assertEquals(expected, getSeriesUIDs(executor.setOrdered(true).executeByCollection(Series.class, query,
+				simulator.getCollections())));
+		List<String> unordered = getSeriesUIDs(executor.setOrdered(false).executeByCollection(Series.class, query,
+				simulator.getCollections()));
+		assertEquals(expected.size(), unordered.size());
+		assertEquals(new HashSet<>(expected), new HashSet<>(unordered));
+	}
+
+
+	/**
+	 * The series of a collection split by patient are the series of the collection, and the overlapping sub-queries
+	 * are deduplicated unless asked otherwise.
+	 */
+	@Test
+	public void testByPatient() throws Exception {
+		String collection = simulator.getCollections().get(1);
+		Query query = RequestTemplate.GET_SERIES.query().collection(collection).modality("MR");
+		List<String> expected = getSeriesUIDs(client.getStream(Series.class, query));
+		ParallelQueryExecutor executor = new ParallelQueryExecutor(client, 4).setOrdered(true);
+		assertEquals(new HashSet<>(expected), new HashSet<>(getSeriesUIDs(executor.executeByPatient(Series.class,
+				query))));
+
+		List<Query> overlapping = Arrays.asList(query, query.copy(), RequestTemplate.GET_SERIES.query()
+				.collection(collection));
+		List<String> distinct = getSeriesUIDs(executor.execute(Series.class, overlapping));
+		assertEquals(4 * 2 * 3, distinct.size());
+		assertEquals(expected, distinct.subList(0, expected.size()));
+		assertEquals(4 * 2 * 3 + 2 * expected.size(), getSeriesUIDs(executor.setDistinct(false)
+				.execute(Series.class, overlapping)).size());
+	}
+
+
+	/**
+	 * The patients that share a PatientID across collections are distinct records.
+	 */
+	@Test
+	public void testSharedPatientIDs() throws Exception {
+		simulator.setRecordedResponse(ServiceEndpoints.getPatient,
+				"[{\"PatientID\":\"SHARED\",\"Collection\":\"A\"},{\"PatientID\":\"SHARED\",\"Collection\":\"B\"}]");
+		try (Stream<Patient> patients = new ParallelQueryExecutor(client, 2).executeByCollection(Patient.class,
+				RequestTemplate.GET_PATIENT.query(), Arrays.asList("A", "B"))) {
+			assertEquals(Arrays.asList("A", "B"), patients.map(Patient::getCollection).sorted()
+					.collect(Collectors.toList()));
+		}
+	}
+
+
+	/**
+	 * A failed sub-query fails the stream.
+	 */
+	@Test
+	public void testFailure() {
+		simulator.setErrorRate(1);
+		try (Stream<Series> series = new ParallelQueryExecutor(client, 2).executeByCollection(Series.class,
+				RequestTemplate.GET_SERIES.query(), simulator.getCollections())) {
+			series.count();
+			fail("The stream should have failed");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof TCIAServerException);
+		}
+	}
+
+
+	private static List<String> getSeriesUIDs(Stream<Series> series) {
+		try (Stream<Series> s = series) {
+			return s.map(Series::getSeriesInstanceUID).collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.net.URI;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.definitions.DICOMAttributes;
+import edu.emory.bmi.tcia.client.definitions.ServiceEndpoints;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.request.Query;
+import edu.emory.bmi.tcia.client.request.RequestTemplate;
+import edu.emory.bmi.tcia.client.simulator.TCIASimulator;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.apache.http.client.utils.URIBuilder;
+import org.junit.Test;
+
+
+/**
+ * Tests the request templates and their queries.
+ */
+public class TestRequestTemplate {
+
+	private static final String RESOURCE_URL = "https://services.cancerimagingarchive.net/services/v4/TCIA/query";
+
+
+	/**
+	 * Every endpoint has a template.
+	 */
+	@Test
+	public void testTemplates() throws Exception {
+		for (Field field : ServiceEndpoints.class.getFields()) {
+			String endpoint = (String) field.get(null);
+			assertNotNull(endpoint, RequestTemplate.forEndpoint(endpoint));
+		}
+		assertEquals(ServiceEndpoints.class.getFields().length, RequestTemplate.getTemplates().size());
+	}
+
+
+	/**
+	 * A query encodes to the same URI as a URIBuilder, leaving out the null values.
+	 */
+	@Test
+	public void testEncoding() throws Exception {
+		String[] collections = {"TCGA-BRCA", "QIN Breast", "Head-Neck Cetuximab", "a&b=c/d?e", "Prostate+Fused-MRI",
+				"Ünïcödé 脳", "100%"};
+		for (String collection : collections) {
+			URI uri = RequestTemplate.GET_SERIES.query().collection(collection).modality(null).patientID("TCGA-AO")
+					.format(OutputFormat.csv).toURI(RESOURCE_URL);
+
+			URIBuilder uriBuilder = new URIBuilder(RESOURCE_URL + "/" + ServiceEndpoints.getSeries);
+			uriBuilder.addParameter(DICOMAttributes.COLLECTION, collection);
+			uriBuilder.addParameter(DICOMAttributes.PATIENT_ID, "TCGA-AO");
+			uriBuilder.addParameter("format", OutputFormat.csv.name());
+			assertEquals(uriBuilder.build(), uri);
+		}
+
+		Query query = RequestTemplate.GET_COLLECTION_VALUES.query();
+		assertFalse(query.hasParameters());
+		assertEquals("/getCollectionValues", query.toString());
+		assertEquals("/getCollectionValues?format=json", query.format(OutputFormat.json).toString());
+	}
+
+
+	/**
+	 * A parameter the endpoint does not accept is rejected.
+	 */
+	@Test
+	public void testRejectedParameter() {
+		assertTrue(RequestTemplate.GET_SINGLE_IMAGE.accepts(DICOMAttributes.SOP_INSTANCE_UID));
+		try {
+			RequestTemplate.GET_PATIENT.query().modality("CT");
+			fail("getPatient should not accept a modality");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains(DICOMAttributes.MODALITY));
+		}
+	}
+
+
+	/**
+	 * NewStudiesInPatientCollection sends the patient, whether or not the collection is given.
+	 */
+	@Test
+	public void testNewStudiesOfPatient() throws Exception {
+		try (TCIASimulator simulator = new TCIASimulator().start()) {
+			TCIAClientUtil.init(simulator.getConf());
+			String patientID = simulator.getPatientIDs().get(4);
+
+			JsonNode studies = new ObjectMapper().readTree(new TCIAClientImpl()
+					.NewStudiesInPatientCollection("2000-01-01", null, patientID, OutputFormat.json));
+			assertTrue(studies.size() > 0);
+			for (JsonNode study : studies) {
+				assertEquals(patientID, study.get(DICOMAttributes.PATIENT_ID).asText());
+			}
+		} finally {
+			TCIAClientUtil.shutdown();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.emory.bmi.tcia.client.cache.RequestKey;
+import edu.emory.bmi.tcia.client.cache.ResponseCache;
+import org.junit.Test;
+
+
+/**
+ * Tests the two-tier response cache, without accessing the TCIA server.
+ */
+public class TestResponseCache {
+
+	private static final String BASE = "https://services.cancerimagingarchive.net/services/v4/TCIA/query/";
+
+
+	/**
+	 * The query parameters are normalized, so that their order does not matter, and the requests to other servers
+	 * have other keys.
+	 */
+	@Test
+	public void testRequestKey() throws Exception {
+		assertEquals(RequestKey.of(new URI(BASE + "getPatient?Collection=TCGA-GBM&format=json")),
+				RequestKey.of(new URI(BASE + "getPatient?format=json&Collection=TCGA-GBM")));
+		assertEquals("getPatient", RequestKey.getEndpoint(new URI(BASE + "getPatient?format=json")));
+		assertNotEquals(RequestKey.of(new URI(BASE + "getPatient?format=json")),
+				RequestKey.of(new URI("http://localhost:8080/services/v4/TCIA/query/getPatient?format=json")));
+		assertNotEquals(RequestKey.of(new URI(BASE + "getPatient?format=json")),
+				RequestKey.of(new URI(BASE.replace("v4", "v3") + "getPatient?format=json")));
+	}
+
+
+	/**
+	 * The responses of the cached endpoints are loaded once, and the other endpoints are not cached.
+	 */
+	@Test
+	public void testMemoryTier() throws Exception {
+		ResponseCache cache = new ResponseCache(10, null, Collections.singletonMap("getPatient", 60000L));
+		AtomicInteger loads = new AtomicInteger();
+
+		for (int i = 0; i < 3; i++) {
+			cache.get(new URI(BASE + "getPatient?Collection=TCGA-GBM&format=json"),
+					() -> "patients" + loads.incrementAndGet());
+		}
+		assertEquals(1, loads.get());
+		assertEquals(2, cache.getHitCount());
+
+		for (int i = 0; i < 3; i++) {
+			cache.get(new URI(BASE + "getSeries?Collection=TCGA-GBM&format=json"),
+					() -> "series" + loads.incrementAndGet());
+		}
+		assertEquals(4, loads.get());
+		cache.shutdown();
+	}
+
+
+	/**
+	 * The least recently used entries are evicted from the memory tier.
+	 */
+	@Test
+	public void testLRUEviction() throws Exception {
+		ResponseCache cache = new ResponseCache(2, null, Collections.singletonMap("getPatient", 60000L));
+		for (String collection : new String[]{"A", "B", "A", "C"}) {
+			cache.get(new URI(BASE + "getPatient?Collection=" + collection), () -> collection);
+		}
+		assertEquals(2, cache.getMemorySize());
+		assertEquals(3, cache.getMissCount());
+
+		// B was the least recently used entry, so it is loaded again.
+		AtomicInteger loads = new AtomicInteger();
+		cache.get(new URI(BASE + "getPatient?Collection=B"), () -> "B" + loads.incrementAndGet());
+		cache.get(new URI(BASE + "getPatient?Collection=C"), () -> "C" + loads.incrementAndGet());
+		assertEquals(1, loads.get());
+		cache.shutdown();
+	}
+
+
+	/**
+	 * The disk tier serves the entries of a previous cache instance.
+	 */
+	@Test
+	public void testDiskTier() throws Exception {
+		File directory = Files.createTempDirectory("tcia-cache").toFile();
+		URI uri = new URI(BASE + "getCollectionValues?format=json");
+
+		ResponseCache cache = new ResponseCache(10, directory.getPath(),
+				Collections.singletonMap("getCollectionValues", 60000L));
+		cache.get(uri, () -> "[\"TCGA-GBM\"]");
+		cache.shutdown();
+
+		ResponseCache restarted = new ResponseCache(10, directory.getPath(),
+				Collections.singletonMap("getCollectionValues", 60000L));
+		assertEquals("[\"TCGA-GBM\"]", restarted.get(uri, () -> "reloaded"));
+		restarted.clear();
+		assertEquals("reloaded", restarted.get(uri, () -> "reloaded"));
+		restarted.clear();
+		restarted.shutdown();
+		directory.delete();
+	}
+
+
+	/**
+	 * The least recently used entries of the disk tier are evicted when it exceeds its quota.
+	 */
+	@Test
+	public void testDiskQuota() throws Exception {
+		File directory = Files.createTempDirectory("tcia-cache").toFile();
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			value.append('x');
+		}
+
+		ResponseCache cache = new ResponseCache(10, directory.getPath(), 2500,
+				Collections.singletonMap("getPatient", 60000L));
+		for (int i = 0; i < 5; i++) {
+			cache.get(new URI(BASE + "getPatient?Collection=C" + i), value::toString);
+		}
+		assertTrue(cache.getDiskSize() <= 2500);
+		assertEquals(2, directory.listFiles().length);
+		assertEquals(cache.getDiskSize(), directory.listFiles()[0].length() + directory.listFiles()[1].length());
+
+		ResponseCache restarted = new ResponseCache(10, directory.getPath(), 2500,
+				Collections.singletonMap("getPatient", 60000L));
+		assertEquals("reloaded", restarted.get(new URI(BASE + "getPatient?Collection=C0"), () -> "reloaded"));
+		assertEquals(value.toString(), restarted.get(new URI(BASE + "getPatient?Collection=C4"), () -> "reloaded"));
+		cache.shutdown();
+		restarted.clear();
+		restarted.shutdown();
+		directory.delete();
+	}
+}
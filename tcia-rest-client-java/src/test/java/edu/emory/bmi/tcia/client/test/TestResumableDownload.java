@@ -0,0 +1,198 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import edu.emory.bmi.tcia.client.util.SaveOptions;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.apache.http.client.utils.URIBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the resumable downloads against a local server that drops the first transfer halfway.
+ */
+public class TestResumableDownload {
+
+	private static final int IMAGE_LENGTH = 3 * 1024 * 1024;
+	private static final String ETAG = "\"v1\"";
+
+	private final byte[] image = new byte[IMAGE_LENGTH];
+	private final List<String> ranges = new CopyOnWriteArrayList<>();
+	private final AtomicBoolean dropped = new AtomicBoolean();
+	private volatile boolean rangeSupported;
+	private volatile boolean validated = true;
+	private volatile byte[] changed;
+	private HttpServer server;
+
+
+	@Before
+	public void setUp() throws Exception {
+		for (int i = 0; i < image.length; i++) {
+			image[i] = (byte) (i * 31);
+		}
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/query/getImage", this::handle);
+		server.start();
+
+		TCIAConf tciaConf = new TCIAConf();
+		tciaConf.setBaseurl("http://localhost:" + server.getAddress().getPort());
+		tciaConf.setResource("/query");
+		tciaConf.setAuthheader("Authorization");
+		tciaConf.setAuthflag("Basic");
+		TCIAClientUtil.init(tciaConf);
+	}
+
+
+	@After
+	public void tearDown() {
+		TCIAClientUtil.shutdown();
+		server.stop(0);
+	}
+
+
+	/**
+	 * The second attempt continues from the bytes received by the first one.
+	 */
+	@Test
+	public void testResume() throws Exception {
+		rangeSupported = true;
+		Path path = Files.createTempDirectory("tcia-resume").resolve("1.2.3.zip");
+
+		ImageResult imageResult = download(path);
+
+		assertArrayEquals(image, Files.readAllBytes(path));
+		assertEquals(Integer.valueOf(7), imageResult.getImageCount());
+		assertEquals(2, ranges.size());
+		assertNull(ranges.get(0));
+		assertEquals("bytes=" + IMAGE_LENGTH / 2 + "-", ranges.get(1));
+		assertFalse(Files.exists(path.resolveSibling("1.2.3.zip.part")));
+		assertFalse(Files.exists(path.resolveSibling("1.2.3.zip.part.checkpoint")));
+	}
+
+
+	/**
+	 * A server ignoring the range sends the whole image again, and the download restarts.
+	 */
+	@Test
+	public void testRestart() throws Exception {
+		rangeSupported = false;
+		Path path = Files.createTempDirectory("tcia-resume").resolve("1.2.3.zip");
+
+		download(path);
+
+		assertArrayEquals(image, Files.readAllBytes(path));
+		assertEquals(2, ranges.size());
+		assertEquals("bytes=" + IMAGE_LENGTH / 2 + "-", ranges.get(1));
+	}
+
+
+	/**
+	 * An image without a validator, which changes between the attempts, is downloaded again from the first byte
+	 * rather than spliced, even from a server honoring any range.
+	 */
+	@Test
+	public void testChangedWithoutValidator() throws Exception {
+		rangeSupported = true;
+		validated = false;
+		changed = changedImage(IMAGE_LENGTH);
+		Path path = Files.createTempDirectory("tcia-resume").resolve("1.2.3.zip");
+
+		download(path);
+
+		assertArrayEquals(changed, Files.readAllBytes(path));
+		assertEquals(2, ranges.size());
+		assertNull(ranges.get(1));
+	}
+
+
+	/**
+	 * A partial response of another total length than the checkpoint, from a server keeping the same validator,
+	 * restarts the download.
+	 */
+	@Test
+	public void testChangedLength() throws Exception {
+		rangeSupported = true;
+		changed = changedImage(IMAGE_LENGTH + 1024);
+		Path path = Files.createTempDirectory("tcia-resume").resolve("1.2.3.zip");
+
+		download(path);
+
+		assertArrayEquals(changed, Files.readAllBytes(path));
+		assertEquals(3, ranges.size());
+		assertEquals("bytes=" + IMAGE_LENGTH / 2 + "-", ranges.get(1));
+		assertNull(ranges.get(2));
+	}
+
+
+	private ImageResult download(Path path) throws Exception {
+		URIBuilder uriBuilder = new URIBuilder(TCIAClientUtil.getResourceUrl() + "/getImage")
+				.addParameter("SeriesInstanceUID", "1.2.3");
+		return TCIAClientUtil.authenticateAndDownloadImage(uriBuilder, path,
+				new SaveOptions().setBufferSize(64 * 1024).setResumeAttempts(3));
+	}
+
+
+	private static byte[] changedImage(int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (i * 17 + 5);
+		}
+		return bytes;
+	}
+
+
+	/*
+	 * The server serves the changed image, if any, after the first transfer. Without a validator, it honors any
+	 * range, as a server unaware of the changes would.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		ranges.add(range);
+		byte[] image = dropped.get() && changed != null ? changed : this.image;
+		if (validated) {
+			exchange.getResponseHeaders().add("ETag", ETAG);
+		}
+		exchange.getResponseHeaders().add("imageCount", "7");
+
+		int offset = 0;
+		if (range != null && rangeSupported && (!validated ||
+				ETAG.equals(exchange.getRequestHeaders().getFirst("If-Range")))) {
+			offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+			exchange.getResponseHeaders().add("Content-Range",
+					"bytes " + offset + "-" + (image.length - 1) + "/" + image.length);
+			exchange.sendResponseHeaders(206, image.length - offset);
+		} else {
+			exchange.sendResponseHeaders(200, image.length);
+		}
+
+		OutputStream out = exchange.getResponseBody();
+		if (dropped.compareAndSet(false, true)) {
+			// Drop the connection halfway through the first transfer.
+			out.write(image, 0, IMAGE_LENGTH / 2);
+			out.flush();
+			// Closing the exchange short of the announced length closes the connection.
+			exchange.close();
+			return;
+		}
+		out.write(image, offset, image.length - offset);
+		exchange.close();
+	}
+}
@@ -0,0 +1,178 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.emory.bmi.tcia.client.exceptions.CircuitBreakerOpenException;
+import edu.emory.bmi.tcia.client.exceptions.TCIAServerException;
+import edu.emory.bmi.tcia.client.resilience.CircuitBreaker;
+import edu.emory.bmi.tcia.client.resilience.RetryPolicy;
+import org.junit.Test;
+
+
+/**
+ * Tests the retry policy and the circuit breaker, without accessing the TCIA server.
+ */
+public class TestRetryPolicy {
+
+	private static final String URL = "https://services.cancerimagingarchive.net/services/v4/TCIA/query/getSeries";
+
+
+	/**
+	 * The transient failures are retried, and the rejections are not.
+	 */
+	@Test
+	public void testRetry() throws Exception {
+		RetryPolicy policy = new RetryPolicy().setMaxAttempts(3).setBaseDelay(1);
+		AtomicInteger calls = new AtomicInteger();
+
+		String result = policy.execute(null, URL, () -> {
+			if (calls.incrementAndGet() == 1) {
+				throw new IOException("Connection reset");
+			} else if (calls.get() == 2) {
+				throw new TCIAServerException("Server Error : Service Unavailable", URL, 503, -1);
+			}
+			return "series";
+		});
+		assertEquals("series", result);
+		assertEquals(3, calls.get());
+
+		calls.set(0);
+		try {
+			policy.execute(null, URL, () -> {
+				calls.incrementAndGet();
+				throw new TCIAServerException("Resource not found", URL, 404, -1);
+			});
+			fail("A 404 should not be retried");
+		} catch (TCIAServerException e) {
+			assertEquals(404, e.getStatusCode());
+		}
+		assertEquals(1, calls.get());
+	}
+
+
+	/**
+	 * A Retry-After longer than the maximum delay fails right away, and a shorter one is waited for.
+	 */
+	@Test
+	public void testRetryAfter() {
+		RetryPolicy policy = new RetryPolicy().setMaxDelay(10000);
+		assertEquals(-1, policy.getDelay(1, 60000));
+		assertEquals(5000, policy.getDelay(1, 5000));
+		for (int attempt = 1; attempt < 40; attempt++) {
+			long delay = policy.getDelay(attempt, -1);
+			if (delay < 0 || delay > 10000) {
+				fail("The delay of attempt " + attempt + " is out of bounds: " + delay);
+			}
+		}
+	}
+
+
+	/**
+	 * The doubled delays saturate at the maximum delay rather than overflowing, and negative delays are rejected.
+	 */
+	@Test
+	public void testDelayBounds() {
+		RetryPolicy policy = new RetryPolicy().setBaseDelay(Long.MAX_VALUE / 3).setMaxDelay(Long.MAX_VALUE);
+		for (int attempt = 1; attempt < 70; attempt++) {
+			if (policy.getDelay(attempt, -1) < 0) {
+				fail("The delay of attempt " + attempt + " is negative");
+			}
+		}
+		assertEquals(0, new RetryPolicy().setBaseDelay(0).getDelay(5, -1));
+		for (long delay : new long[] {-1, Long.MIN_VALUE}) {
+			try {
+				new RetryPolicy().setBaseDelay(delay);
+				fail("A negative base delay should be rejected");
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().startsWith("The base delay"));
+			}
+			try {
+				new RetryPolicy().setMaxDelay(delay);
+				fail("A negative maximum delay should be rejected");
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().startsWith("The maximum delay"));
+			}
+		}
+	}
+
+
+	/**
+	 * The breaker opens after consecutive failures and fails fast, then lets a single trial through.
+	 */
+	@Test
+	public void testCircuitBreaker() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("getSeries", 2, 100);
+		RetryPolicy policy = RetryPolicy.none();
+		AtomicInteger calls = new AtomicInteger();
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				policy.execute(breaker, URL, () -> {
+					calls.incrementAndGet();
+					throw new IOException("Connection refused");
+				});
+				fail("The call should have failed");
+			} catch (IOException e) {
+				// Expected.
+			}
+		}
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+		try {
+			policy.execute(breaker, URL, calls::incrementAndGet);
+			fail("The breaker should be open");
+		} catch (CircuitBreakerOpenException e) {
+			assertEquals(2, calls.get());
+		}
+
+		Thread.sleep(150);
+		assertEquals(Integer.valueOf(3), policy.execute(breaker, URL, calls::incrementAndGet));
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+
+	/**
+	 * The 500 responses, which are not retried, open the breaker, and the 4xx responses do not.
+	 */
+	@Test
+	public void testCircuitBreakerServerErrors() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("getSeries", 2, 60000);
+		RetryPolicy policy = new RetryPolicy().setBaseDelay(1).setMaxDelay(10);
+		AtomicInteger calls = new AtomicInteger();
+
+		for (int status : new int[] {404, 404, 500, 500}) {
+			assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+			try {
+				policy.execute(breaker, URL, () -> {
+					calls.incrementAndGet();
+					throw new TCIAServerException("Error", URL, status, -1);
+				});
+				fail("The call should have failed");
+			} catch (TCIAServerException e) {
+				assertEquals(status, e.getStatusCode());
+			}
+		}
+		assertEquals(4, calls.get());
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+
+	/**
+	 * The policy may be overridden for the current thread.
+	 */
+	@Test
+	public void testOverride() {
+		RetryPolicy defaultPolicy = new RetryPolicy();
+		RetryPolicy none = RetryPolicy.none();
+		try (RetryPolicy.Scope ignored = RetryPolicy.override(none)) {
+			assertSame(none, RetryPolicy.current(defaultPolicy));
+		}
+		assertSame(defaultPolicy, RetryPolicy.current(defaultPolicy));
+	}
+}
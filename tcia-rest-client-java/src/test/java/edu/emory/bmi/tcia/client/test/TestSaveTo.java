@@ -0,0 +1,129 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import edu.emory.bmi.tcia.client.util.SaveOptions;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests saving the image results to files, from a network stream and from a cached file.
+ */
+public class TestSaveTo {
+
+	private static final int IMAGE_LENGTH = 1024 * 1024 + 123;
+
+	private final byte[] image = new byte[IMAGE_LENGTH];
+	private final List<Long> progress = new CopyOnWriteArrayList<>();
+	private Path directory;
+
+
+	@Before
+	public void setUp() throws IOException {
+		for (int i = 0; i < image.length; i++) {
+			image[i] = (byte) (i * 31);
+		}
+		directory = Files.createTempDirectory("tcia-save");
+	}
+
+
+	@After
+	public void tearDown() throws IOException {
+		for (String name : new String[] {"cached.zip", "saved.zip"}) {
+			Files.deleteIfExists(directory.resolve(name));
+		}
+		Files.delete(directory);
+	}
+
+
+	/**
+	 * A stream is copied in full, with a progress notification per interval and one at the end.
+	 */
+	@Test
+	public void testStream() throws IOException {
+		ImageResult imageResult = new ImageResult();
+		imageResult.setRawData(new ByteArrayInputStream(image));
+		imageResult.setContentLength(IMAGE_LENGTH);
+		Path path = directory.resolve("saved.zip");
+
+		assertEquals(IMAGE_LENGTH, TCIAClientUtil.saveTo(imageResult, path, getOptions()));
+		assertArrayEquals(image, Files.readAllBytes(path));
+		assertProgress();
+	}
+
+
+	/**
+	 * A cached file is transferred through its channel, with the same progress notifications.
+	 */
+	@Test
+	public void testFile() throws IOException {
+		Path cached = directory.resolve("cached.zip");
+		Files.write(cached, image);
+		ImageResult imageResult = new ImageResult();
+		imageResult.setRawData(new FileInputStream(cached.toFile()));
+		imageResult.setContentLength(-1);
+		Path path = directory.resolve("saved.zip");
+
+		assertEquals(IMAGE_LENGTH, TCIAClientUtil.saveTo(imageResult, path, getOptions()));
+		assertArrayEquals(image, Files.readAllBytes(path));
+		assertProgress();
+	}
+
+
+	/**
+	 * A stream shorter than its announced length fails, and the interval of the progress must be positive.
+	 */
+	@Test
+	public void testInvalid() throws IOException {
+		ImageResult imageResult = new ImageResult();
+		imageResult.setRawData(new ByteArrayInputStream(image));
+		imageResult.setContentLength(IMAGE_LENGTH + 1);
+		try {
+			TCIAClientUtil.saveTo(imageResult, directory.resolve("saved.zip"), new SaveOptions());
+			fail("A truncated image should not be saved");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("Truncated image"));
+		}
+
+		try {
+			new SaveOptions().setProgressInterval(0);
+			fail("A progress interval of 0 should be rejected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("The progress interval must be positive"));
+		}
+	}
+
+
+	private SaveOptions getOptions() {
+		return new SaveOptions().setBufferSize(64 * 1024).setProgressInterval(100000)
+				.setProgressListener((bytesWritten, totalBytes) -> {
+					assertEquals(IMAGE_LENGTH, totalBytes);
+					progress.add(bytesWritten);
+				});
+	}
+
+
+	private void assertProgress() {
+		// A stream is notified once per interval rounded up to the buffer, a file exactly once per interval.
+		assertTrue(progress.size() >= IMAGE_LENGTH / (100000 + 64 * 1024));
+		for (int i = 1; i < progress.size(); i++) {
+			assertTrue(progress.get(i) >= progress.get(i - 1));
+		}
+		assertEquals(IMAGE_LENGTH, progress.get(progress.size() - 1).longValue());
+	}
+}
@@ -0,0 +1,119 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.emory.bmi.tcia.client.bulk.DownloadStrategy;
+import edu.emory.bmi.tcia.client.bulk.SeriesDownloader;
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.util.TCIAClient;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the download strategies of a series against a local server.
+ */
+public class TestSeriesDownloader {
+
+	private static final int INSTANCES = 20;
+
+	private HttpServer server;
+	private volatile String seriesSize;
+	private TCIAConf tciaConf;
+
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/query/getSeriesSize", exchange -> respond(exchange, seriesSize));
+		server.createContext("/query/getSOPInstanceUIDs", exchange -> {
+			StringBuilder json = new StringBuilder("[");
+			for (int i = 0; i < INSTANCES; i++) {
+				json.append(i > 0 ? "," : "").append("{\"SOPInstanceUID\":\"1.2.3.").append(i).append("\"}");
+			}
+			respond(exchange, json.append("]").toString());
+		});
+		server.createContext("/query/getSingleImage", exchange -> {
+			String query = exchange.getRequestURI().getQuery();
+			respond(exchange, "DICOM " + query.substring(query.indexOf("SOPInstanceUID=") + 15));
+		});
+		server.start();
+
+		tciaConf = new TCIAConf();
+		tciaConf.setBaseurl("http://localhost:" + server.getAddress().getPort());
+		tciaConf.setResource("/query");
+		tciaConf.setAuthheader("Authorization");
+		tciaConf.setAuthflag("Basic");
+		TCIAClientUtil.init(tciaConf);
+	}
+
+
+	@After
+	public void tearDown() {
+		TCIAClientUtil.shutdown();
+		server.stop(0);
+	}
+
+
+	/**
+	 * Large series fan out over their instances, while small series with many instances stay a single ZIP.
+	 */
+	@Test
+	public void testChoose() throws Exception {
+		try (SeriesDownloader downloader = new SeriesDownloader(new TCIAClientImpl(), 8)) {
+			seriesSize = "[{\"TotalSizeInBytes\":\"1073741824.0\",\"ObjectCount\":1000}]";
+			assertEquals(DownloadStrategy.FAN_OUT, downloader.choose("1.2.3"));
+
+			seriesSize = "[{\"TotalSizeInBytes\":\"10485760.0\",\"ObjectCount\":1000}]";
+			assertEquals(DownloadStrategy.ZIP, downloader.choose("1.2.3"));
+
+			seriesSize = "[{\"TotalSizeInBytes\":\"1073741824.0\",\"ObjectCount\":1}]";
+			assertEquals(DownloadStrategy.ZIP, downloader.choose("1.2.3"));
+		}
+	}
+
+
+	/**
+	 * The fan-out writes each instance to SOPInstanceUID.dcm, and records the writes into the metrics of its client.
+	 */
+	@Test
+	public void testFanOut() throws Exception {
+		Path directory = Files.createTempDirectory("tcia-fan-out");
+		try (TCIAClient tcia = TCIAClient.builder().conf(tciaConf).build();
+		     SeriesDownloader downloader = new SeriesDownloader(new TCIAClientImpl(tcia), 4)
+				     .setStrategy(DownloadStrategy.FAN_OUT)) {
+			List<Path> paths = downloader.download("1.2.3", directory);
+			assertEquals(INSTANCES, paths.size());
+
+			long bytes = 0;
+			for (int i = 0; i < INSTANCES; i++) {
+				byte[] expected = ("DICOM 1.2.3." + i).getBytes(StandardCharsets.US_ASCII);
+				assertArrayEquals(expected, Files.readAllBytes(directory.resolve("1.2.3." + i + ".dcm")));
+				bytes += expected.length;
+			}
+			assertEquals(bytes, tcia.getMetricsSnapshot().getDiskBytesWritten());
+		}
+	}
+
+
+	private static void respond(HttpExchange exchange, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+		exchange.getResponseHeaders().add("imageCount", "1");
+		exchange.sendResponseHeaders(200, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+}
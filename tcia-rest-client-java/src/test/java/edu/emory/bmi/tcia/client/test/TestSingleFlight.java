@@ -0,0 +1,111 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.emory.bmi.tcia.client.cache.SingleFlight;
+import org.junit.Test;
+
+
+/**
+ * Tests the coalescing of the identical concurrent requests, without accessing the TCIA server.
+ */
+public class TestSingleFlight {
+
+	private static final int CALLERS = 8;
+
+
+	/**
+	 * The concurrent callers share one load, and a later caller loads again.
+	 */
+	@Test
+	public void testShared() throws Exception {
+		SingleFlight singleFlight = new SingleFlight();
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+
+		List<Future<String>> futures = submit(singleFlight, () -> {
+			loads.incrementAndGet();
+			release.await();
+			return "series";
+		});
+		awaitWaiters(singleFlight);
+		release.countDown();
+
+		for (Future<String> future : futures) {
+			assertEquals("series", future.get());
+		}
+		assertEquals(1, loads.get());
+		assertEquals(CALLERS - 1, singleFlight.getSharedCount());
+		assertEquals(0, singleFlight.getInFlightCount());
+
+		assertEquals("series 2", singleFlight.get("getSeries?Collection=X", () -> "series " + loads.incrementAndGet()));
+	}
+
+
+	/**
+	 * The failure of the shared load is thrown to every caller.
+	 */
+	@Test
+	public void testSharedFailure() throws Exception {
+		SingleFlight singleFlight = new SingleFlight();
+		CountDownLatch release = new CountDownLatch(1);
+
+		List<Future<String>> futures = submit(singleFlight, () -> {
+			release.await();
+			throw new IOException("Connection reset");
+		});
+		awaitWaiters(singleFlight);
+		release.countDown();
+
+		for (Future<String> future : futures) {
+			try {
+				future.get();
+				fail("The shared failure should be thrown");
+			} catch (ExecutionException e) {
+				assertEquals("Connection reset", e.getCause().getMessage());
+			}
+		}
+	}
+
+
+	private interface BlockingLoader {
+		String load() throws Exception;
+	}
+
+
+	private static List<Future<String>> submit(SingleFlight singleFlight, BlockingLoader loader) {
+		ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+		List<Future<String>> futures = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++) {
+			futures.add(executor.submit(() -> singleFlight.get("getSeries?Collection=X", () -> {
+				try {
+					return loader.load();
+				} catch (IOException | RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			})));
+		}
+		executor.shutdown();
+		return futures;
+	}
+
+
+	private static void awaitWaiters(SingleFlight singleFlight) throws InterruptedException {
+		for (int i = 0; i < 500 && singleFlight.getSharedCount() < CALLERS - 1; i++) {
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.emory.bmi.tcia.client.definitions.ServiceEndpoints;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.simulator.TCIASimulator;
+import edu.emory.bmi.tcia.client.sync.CollectionSnapshot;
+import edu.emory.bmi.tcia.client.sync.SnapshotStore;
+import edu.emory.bmi.tcia.client.sync.SyncEngine;
+import edu.emory.bmi.tcia.client.sync.SyncResult;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the delta synchronization of the collections against the embedded TCIA simulator, whose generated studies
+ * all date from before 2019.
+ */
+public class TestSyncEngine {
+
+	private TCIASimulator simulator;
+	private Path directory;
+	private SnapshotStore store;
+	private SyncEngine engine;
+
+
+	@Before
+	public void setUp() throws Exception {
+		simulator = new TCIASimulator().setCollections(2).setPatientsPerCollection(3).setStudiesPerPatient(2)
+				.setSeriesPerStudy(3).start();
+		TCIAClientUtil.init(simulator.getConf());
+		directory = Files.createTempDirectory("tcia-sync");
+		store = new SnapshotStore(directory.toString());
+		engine = new SyncEngine(new TCIAClientImpl(), store)
+				.setClock(Clock.fixed(Instant.parse("2024-06-01T12:00:00Z"), ZoneOffset.UTC));
+	}
+
+
+	@After
+	public void tearDown() throws Exception {
+		TCIAClientUtil.shutdown();
+		simulator.close();
+		for (String collection : store.getCollections()) {
+			Files.deleteIfExists(store.getPath(collection));
+		}
+		Files.deleteIfExists(directory);
+	}
+
+
+	/**
+	 * The first sync crawls the collection; the next one fetches the series of the new studies only, and gives the
+	 * same snapshot as a full crawl.
+	 */
+	@Test
+	public void testDeltaSync() throws Exception {
+		String collection = simulator.getCollections().get(0);
+		assertNull(store.load(collection));
+
+		SyncResult first = engine.sync(collection);
+		assertTrue(first.isFull());
+		assertEquals(3, first.getPatientCount());
+		assertEquals(3 * 2, first.getStudyCount());
+		assertEquals(3 * 2 * 3, first.getSeriesCount());
+		assertEquals("2024-06-01", store.load(collection).getWatermark());
+
+		simulator.publishStudy(collection, "SIM-NEW-0001", "2024-06-03");
+		simulator.publishStudy(collection, simulator.getPatientIDs().get(0), "2024-06-04");
+		long seriesRequests = simulator.getRequestCount(ServiceEndpoints.getSeries);
+
+		engine.setClock(Clock.fixed(Instant.parse("2024-06-05T12:00:00Z"), ZoneOffset.UTC));
+		SyncResult delta = engine.sync(collection);
+		assertFalse(delta.isFull());
+		assertEquals("2024-05-31", delta.getSince());
+		assertEquals(1, delta.getPatientsAdded());
+		assertEquals(2, delta.getStudiesChanged());
+		assertEquals(2 * 3, delta.getSeriesAdded());
+		assertEquals(0, delta.getSeriesRemoved());
+		assertEquals(4, delta.getPatientCount());
+		assertEquals(3 * 2 + 2, delta.getStudyCount());
+		assertEquals((3 * 2 + 2) * 3, delta.getSeriesCount());
+		assertEquals(seriesRequests + 2, simulator.getRequestCount(ServiceEndpoints.getSeries));
+
+		// Nothing new since the last sync.
+		SyncResult unchanged = engine.sync(collection);
+		assertEquals(0, unchanged.getPatientsAdded());
+		assertEquals(0, unchanged.getSeriesAdded());
+		assertEquals(0, unchanged.getSeriesRemoved());
+
+		CollectionSnapshot synced = store.load(collection);
+		assertEquals("2024-06-05", synced.getWatermark());
+		assertTrue(engine.resync(collection).isFull());
+		assertSameRecords(synced, store.load(collection));
+		assertEquals(Collections.singletonList(collection), store.getCollections());
+	}
+
+
+	private static void assertSameRecords(CollectionSnapshot expected, CollectionSnapshot actual) throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		assertEquals(mapper.writeValueAsString(expected.getPatients()), mapper.writeValueAsString(actual.getPatients()));
+		assertEquals(mapper.writeValueAsString(expected.getStudies()), mapper.writeValueAsString(actual.getStudies()));
+		assertEquals(mapper.writeValueAsString(expected.getSeries()), mapper.writeValueAsString(actual.getSeries()));
+	}
+}
@@ -5,12 +5,15 @@ import static org.junit.Assert.fail;
 import edu.emory.bmi.tcia.client.core.ITCIAClient;
 import edu.emory.bmi.tcia.client.core.OutputFormat;
 import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.model.Series;
 import edu.emory.bmi.tcia.client.util.ImageResult;
 import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.Test;
 
+import java.util.stream.Stream;
+
 
 /**
  * The core Test class to test the TCIA functionality with sample values, as JUnit tests.
@@ -122,6 +125,30 @@ public class TestTCIAClient {
 	}
 
 
+	/**
+	 * Method: GetSeries, as a stream of typed records
+	 * Description: Returns the matching series, decoded lazily from the response
+	 */
+	@Test
+	public void testStreamSeries()
+	{
+		ITCIAClient client = new TCIAClientImpl();
+		String collection = "TCGA-GBM"; // optional
+		String modality = "MR"; // optional
+
+		// Make the RESTful call. The series are decoded as they are read from the response.
+		try (Stream<Series> series = client.streamSeries(collection, null, modality, null, null,
+				null, null, null)) {
+			logger.info("[STREAM SERIES]");
+
+			series.limit(10).forEach(s -> logger.info(s.getSeriesInstanceUID() + " " + s.getModality()));
+
+		} catch (Exception e) {
+			fail(e.getMessage()); // request failed
+		}
+	}
+
+
 	/**
 	 * Method: Get Series Size
 	 * Description: Returns the size of the series
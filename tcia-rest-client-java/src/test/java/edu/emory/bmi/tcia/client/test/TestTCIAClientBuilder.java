@@ -0,0 +1,164 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import edu.emory.bmi.tcia.client.cache.ResponseCache;
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.core.ITCIAClient;
+import edu.emory.bmi.tcia.client.definitions.ServiceEndpoints;
+import edu.emory.bmi.tcia.client.exceptions.TCIAServerException;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.model.Patient;
+import edu.emory.bmi.tcia.client.resilience.RetryPolicy;
+import edu.emory.bmi.tcia.client.simulator.TCIASimulator;
+import edu.emory.bmi.tcia.client.transport.Transport;
+import edu.emory.bmi.tcia.client.transport.Transports;
+import edu.emory.bmi.tcia.client.util.TCIAClient;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the clients of different configurations against two embedded TCIA simulators.
+ */
+public class TestTCIAClientBuilder {
+
+	private TCIASimulator first;
+	private TCIASimulator second;
+
+
+	@Before
+	public void setUp() throws Exception {
+		first = new TCIASimulator().setCollections(2).setPatientsPerCollection(3).start();
+		second = new TCIASimulator().setCollections(3).setPatientsPerCollection(4).start();
+	}
+
+
+	@After
+	public void tearDown() {
+		TCIAClientUtil.setRetryPolicy(new RetryPolicy());
+		TCIAClientUtil.shutdown();
+		first.close();
+		second.close();
+	}
+
+
+	/**
+	 * Two clients query their own server concurrently, with their own retry policy, circuit breakers and metrics,
+	 * and do not follow later changes to their configuration.
+	 */
+	@Test
+	public void testTwoClients() throws Exception {
+		TCIAConf firstConf = first.getConf();
+		try (TCIAClient firstTCIA = TCIAClient.builder().conf(firstConf).build();
+		     TCIAClient secondTCIA = TCIAClient.builder().conf(second.getConf())
+				     .retryPolicy(new RetryPolicy().setMaxAttempts(1)).circuitBreaker(0, 0).build()) {
+			firstConf.setBaseurl("http://localhost:1");
+			ITCIAClient firstClient = new TCIAClientImpl(firstTCIA);
+			ITCIAClient secondClient = new TCIAClientImpl(secondTCIA);
+
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				List<Future<Long>> counts = new ArrayList<>();
+				for (int i = 0; i < 8; i++) {
+					ITCIAClient client = i % 2 == 0 ? firstClient : secondClient;
+					counts.add(executor.submit(() -> count(client.streamPatient(null))));
+				}
+				for (int i = 0; i < counts.size(); i++) {
+					assertEquals(i % 2 == 0 ? 2 * 3 : 3 * 4, counts.get(i).get().longValue());
+				}
+			} finally {
+				executor.shutdown();
+			}
+
+			second.setErrorRate(1);
+			try {
+				count(secondClient.streamPatient(null));
+				fail("The request should have failed without a retry");
+			} catch (TCIAServerException e) {
+				assertEquals(5, getRequests(secondTCIA));
+			}
+			assertNull(secondTCIA.getCircuitBreaker(ServiceEndpoints.getPatient));
+			assertEquals(2 * 3, count(firstClient.streamPatient(null)));
+			assertEquals(5, getRequests(firstTCIA));
+		}
+	}
+
+
+	/**
+	 * The default constructor does not initialize the default client again, whose transport outlives the changes
+	 * to the static configuration until the next init.
+	 */
+	@Test
+	public void testDefaultClient() throws Exception {
+		TCIAClientUtil.init(first.getConf());
+		TCIAClient tcia = TCIAClientUtil.getDefault();
+		ITCIAClient client = new TCIAClientImpl();
+		assertSame(tcia, TCIAClientUtil.getDefault());
+
+		TCIAClientUtil.setRetryPolicy(new RetryPolicy().setMaxAttempts(1));
+		assertNotSame(tcia, TCIAClientUtil.getDefault());
+		assertSame(tcia.getTransport(), TCIAClientUtil.getDefault().getTransport());
+		assertEquals(1, TCIAClientUtil.getDefault().getRetryPolicy().getMaxAttempts());
+		assertEquals(2 * 3, count(client.streamPatient(null)));
+
+		// A configuration without the retry keys restores the default policy.
+		TCIAClientUtil.init(first.getConf());
+		assertEquals(RetryPolicy.DEFAULT_MAX_ATTEMPTS, TCIAClientUtil.getRetryPolicy().getMaxAttempts());
+	}
+
+
+	/**
+	 * Closing a client shuts down the transport and response cache it created, and leaves the ones given to its
+	 * builder to their owner.
+	 */
+	@Test
+	public void testClose() throws Exception {
+		TCIAConf conf = first.getConf();
+		conf.setCacheenabled(true);
+		TCIAClient owner = TCIAClient.builder().conf(conf).build();
+		ResponseCache cache = owner.getResponseCache();
+		owner.close();
+		assertTrue(cache.isShutdown());
+
+		Transport transport = Transports.create(conf);
+		ResponseCache givenCache = ResponseCache.create(null, null, null, null);
+		try {
+			TCIAClient.builder().conf(conf).transport(transport).responseCache(givenCache).build().close();
+			assertFalse(givenCache.isShutdown());
+			try (TCIAClient tcia = TCIAClient.builder().conf(conf).transport(transport).responseCache(null).build()) {
+				assertEquals(2 * 3, count(new TCIAClientImpl(tcia).streamPatient(null)));
+			}
+		} finally {
+			givenCache.shutdown();
+			transport.close();
+		}
+	}
+
+
+	private static long getRequests(TCIAClient tcia) {
+		return tcia.getMetricsSnapshot().getEndpoints().get(ServiceEndpoints.getPatient).getRequests();
+	}
+
+
+	private static long count(Stream<Patient> patients) {
+		try (Stream<Patient> s = patients) {
+			return s.count();
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import edu.emory.bmi.tcia.client.core.ITCIAClient;
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.definitions.ServiceEndpoints;
+import edu.emory.bmi.tcia.client.exceptions.TCIAClientException;
+import edu.emory.bmi.tcia.client.exceptions.TCIAServerException;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.model.Patient;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.model.Study;
+import edu.emory.bmi.tcia.client.resilience.RetryPolicy;
+import edu.emory.bmi.tcia.client.simulator.TCIASimulator;
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import edu.emory.bmi.tcia.client.util.SaveOptions;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import edu.emory.bmi.tcia.client.util.ZipExtractor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the client against the embedded TCIA simulator.
+ */
+public class TestTCIASimulator {
+
+	private TCIASimulator simulator;
+	private TCIAClientImpl client;
+
+
+	@Before
+	public void setUp() throws Exception {
+		simulator = new TCIASimulator().setCollections(2).setPatientsPerCollection(3).setInstancesPerSeries(4)
+				.setInstanceSize(8 * 1024).start();
+		TCIAClientUtil.init(simulator.getConf());
+		TCIAClientUtil.setRetryPolicy(new RetryPolicy().setBaseDelay(1).setMaxDelay(10));
+		client = new TCIAClientImpl();
+	}
+
+
+	@After
+	public void tearDown() {
+		TCIAClientUtil.setRetryPolicy(new RetryPolicy());
+		TCIAClientUtil.shutdown();
+		simulator.close();
+	}
+
+
+	/**
+	 * The metadata endpoints select the generated archive by their query parameters.
+	 */
+	@Test
+	public void testMetadata() throws Exception {
+		String collection = simulator.getCollections().get(1);
+		assertTrue(client.getCollectionValues(OutputFormat.json).contains(collection));
+
+		String patients = client.getPatient(collection, OutputFormat.csv);
+		assertEquals("PatientID,PatientName,PatientSex,Collection", patients.split("\n")[0]);
+		assertEquals(1 + 3, patients.split("\n").length);
+
+		String patientID = simulator.getPatientIDs().get(0);
+		try (Stream<Series> series = client.streamSeries(null, null, null, patientID, null, null, null, null)) {
+			List<Series> list = series.collect(Collectors.toList());
+			assertEquals(2 * 3, list.size());
+			for (Series s : list) {
+				assertEquals(patientID, s.getPatientID());
+			}
+		}
+
+		String seriesInstanceUID = simulator.getSeriesInstanceUIDs().get(0);
+		assertTrue(client.getSeriesSize(seriesInstanceUID, OutputFormat.json).contains("\"ObjectCount\":4"));
+		assertTrue(client.getSOPInstanceUIDs(seriesInstanceUID, OutputFormat.json)
+				.contains(simulator.getSOPInstanceUIDs(seriesInstanceUID).get(3)));
+	}
+
+
+	/**
+	 * The default typed streams of ITCIAClient decode the JSON strings of an implementation that only provides them.
+	 */
+	@Test
+	public void testDefaultStreams() throws Exception {
+		ITCIAClient strings = new StringClient(client);
+		String collection = simulator.getCollections().get(1);
+		String patientID = simulator.getPatientIDs().get(0);
+		try (Stream<Patient> patients = strings.streamPatient(collection)) {
+			assertEquals(3, patients.filter(p -> collection.equals(p.getCollection())).count());
+		}
+		try (Stream<Study> studies = strings.streamPatientStudy(null, patientID, null)) {
+			assertEquals(2, studies.filter(s -> patientID.equals(s.getPatientID())).count());
+		}
+		try (Stream<Series> series = strings.streamSeries(null, null, null, patientID, null, null, null, null)) {
+			assertEquals(2 * 3, series.filter(s -> patientID.equals(s.getPatientID())).count());
+		}
+	}
+
+
+	/**
+	 * The ZIP of a series holds its instances, as announced by the imageCount header, and is extracted with the
+	 * SOPInstanceUIDs of the instances.
+	 */
+	@Test
+	public void testImage() throws Exception {
+		String seriesInstanceUID = simulator.getSeriesInstanceUIDs().get(2);
+		Path directory = Files.createTempDirectory("tcia");
+		try (ZipExtractor extractor = new ZipExtractor()) {
+			ImageResult imageResult = client.getImage(seriesInstanceUID);
+			assertEquals(Integer.valueOf(4), imageResult.getImageCount());
+
+			List<String> names = new ArrayList<>();
+			for (Path path : extractor.extract(imageResult, directory)) {
+				names.add(path.getFileName().toString());
+				Files.delete(path);
+			}
+			List<String> expected = new ArrayList<>();
+			for (String sopInstanceUID : simulator.getSOPInstanceUIDs(seriesInstanceUID)) {
+				expected.add(sopInstanceUID + ".dcm");
+			}
+			assertEquals(expected, names);
+		} finally {
+			Files.deleteIfExists(directory);
+		}
+	}
+
+
+	/**
+	 * A recorded ZIP announces the number of its files, or the image count it was recorded with.
+	 */
+	@Test
+	public void testRecordedImage() throws Exception {
+		String seriesInstanceUID = simulator.getSeriesInstanceUIDs().get(1);
+		ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(recorded)) {
+			zip.putNextEntry(new ZipEntry("series/"));
+			for (String name : new String[] {"series/1.dcm", "series/2.dcm"}) {
+				zip.putNextEntry(new ZipEntry(name));
+				zip.write(name.getBytes(StandardCharsets.US_ASCII));
+			}
+		}
+
+		simulator.setRecordedImage(seriesInstanceUID, recorded.toByteArray());
+		ImageResult imageResult = client.getImage(seriesInstanceUID);
+		assertEquals(Integer.valueOf(2), imageResult.getImageCount());
+		assertArrayEquals(recorded.toByteArray(), readAll(imageResult));
+
+		simulator.setRecordedImage(seriesInstanceUID, recorded.toByteArray(), 7);
+		imageResult = client.getImage(seriesInstanceUID);
+		assertEquals(Integer.valueOf(7), imageResult.getImageCount());
+		readAll(imageResult);
+
+		simulator.setRecordedImage(seriesInstanceUID, null);
+		imageResult = client.getImage(seriesInstanceUID);
+		assertEquals(Integer.valueOf(4), imageResult.getImageCount());
+		readAll(imageResult);
+	}
+
+
+	/**
+	 * The injected errors are retried, and a dropped download is resumed from where it stopped.
+	 */
+	@Test
+	public void testFaultInjection() throws Exception {
+		simulator.setErrorRate(1);
+		try {
+			client.getCollectionValues(OutputFormat.json);
+			fail("The request should have failed");
+		} catch (TCIAServerException e) {
+			assertEquals(503, e.getStatusCode());
+		}
+		assertEquals(RetryPolicy.DEFAULT_MAX_ATTEMPTS, simulator.getRequestCount(ServiceEndpoints.getCollectionValues));
+
+		simulator.setErrorRate(0).setDropRate(0.5);
+		Path path = Files.createTempFile("tcia", ".zip");
+		try {
+			String seriesInstanceUID = simulator.getSeriesInstanceUIDs().get(0);
+			ImageResult imageResult = client.downloadImage(seriesInstanceUID, path,
+					new SaveOptions().setResumeAttempts(10));
+			assertEquals(Integer.valueOf(4), imageResult.getImageCount());
+			assertEquals(imageResult.getContentLength(), Files.size(path));
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+
+	private static byte[] readAll(ImageResult imageResult) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = imageResult.getRawData()) {
+			byte[] buffer = new byte[8192];
+			for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+				bytes.write(buffer, 0, read);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+
+	/*
+	 * A client written before the typed results, which only returns strings.
+	 */
+	private static class StringClient implements ITCIAClient {
+		private final ITCIAClient delegate;
+
+		StringClient(ITCIAClient delegate) {
+			this.delegate = delegate;
+		}
+
+		public String getModalityValues(String collection, String bodyPartExamined, OutputFormat format)
+				throws TCIAClientException {
+			return delegate.getModalityValues(collection, bodyPartExamined, format);
+		}
+
+		public String getManufacturerValues(String collection, String bodyPartExamined, String modality,
+				OutputFormat format) throws TCIAClientException {
+			return delegate.getManufacturerValues(collection, bodyPartExamined, modality, format);
+		}
+
+		public String getCollectionValues(OutputFormat format) throws TCIAClientException {
+			return delegate.getCollectionValues(format);
+		}
+
+		public String getBodyPartValues(String collection, String modality, OutputFormat format)
+				throws TCIAClientException {
+			return delegate.getBodyPartValues(collection, modality, format);
+		}
+
+		public String getPatientStudy(String collection, String patientID, String studyInstanceUID,
+				OutputFormat format) throws TCIAClientException {
+			return delegate.getPatientStudy(collection, patientID, studyInstanceUID, format);
+		}
+
+		public String getSeries(String collection, String studyInstanceUID, String modality, String patientID,
+				String seriesInstanceUID, String bodyPartExamined, String manufacturer, String manufacturerModelName,
+				OutputFormat format) throws TCIAClientException {
+			return delegate.getSeries(collection, studyInstanceUID, modality, patientID, seriesInstanceUID,
+					bodyPartExamined, manufacturer, manufacturerModelName, format);
+		}
+
+		public String getPatient(String collection, OutputFormat format) throws TCIAClientException {
+			return delegate.getPatient(collection, format);
+		}
+
+		public ImageResult getImage(String seriesInstanceUID) throws TCIAClientException {
+			return delegate.getImage(seriesInstanceUID);
+		}
+
+		public ImageResult getSingleImage(String seriesInstanceUID, String sopInstanceUID)
+				throws TCIAClientException {
+			return delegate.getSingleImage(seriesInstanceUID, sopInstanceUID);
+		}
+
+		public String getSeriesSize(String seriesInstanceUID, OutputFormat format) throws TCIAClientException {
+			return delegate.getSeriesSize(seriesInstanceUID, format);
+		}
+
+		public String NewStudiesInPatientCollection(String date, String collection, String patientID,
+				OutputFormat format) throws TCIAClientException {
+			return delegate.NewStudiesInPatientCollection(date, collection, patientID, format);
+		}
+
+		public String getSOPInstanceUIDs(String seriesInstanceUID, OutputFormat format) throws TCIAClientException {
+			return delegate.getSOPInstanceUIDs(seriesInstanceUID, format);
+		}
+
+		public String PatientsByModality(String collection, String modality, OutputFormat format)
+				throws TCIAClientException {
+			return delegate.PatientsByModality(collection, modality, format);
+		}
+
+		public String NewPatientsInCollection(String date, String collection, OutputFormat format)
+				throws TCIAClientException {
+			return delegate.NewPatientsInCollection(date, collection, format);
+		}
+
+		public String getSharedList(String name, OutputFormat format) throws TCIAClientException {
+			return delegate.getSharedList(name, format);
+		}
+	}
+}
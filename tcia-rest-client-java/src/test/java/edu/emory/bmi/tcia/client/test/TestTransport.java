@@ -0,0 +1,192 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import edu.emory.bmi.tcia.client.conf.TCIAConf;
+import edu.emory.bmi.tcia.client.core.OutputFormat;
+import edu.emory.bmi.tcia.client.definitions.ServiceEndpoints;
+import edu.emory.bmi.tcia.client.exceptions.TCIAServerException;
+import edu.emory.bmi.tcia.client.impl.TCIAClientImpl;
+import edu.emory.bmi.tcia.client.metrics.EndpointSnapshot;
+import edu.emory.bmi.tcia.client.metrics.MetricsRegistry;
+import edu.emory.bmi.tcia.client.model.Series;
+import edu.emory.bmi.tcia.client.resilience.RetryPolicy;
+import edu.emory.bmi.tcia.client.simulator.TCIASimulator;
+import edu.emory.bmi.tcia.client.transport.ApacheTransport;
+import edu.emory.bmi.tcia.client.transport.ContentEncoding;
+import edu.emory.bmi.tcia.client.transport.Transports;
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import edu.emory.bmi.tcia.client.util.SaveOptions;
+import edu.emory.bmi.tcia.client.util.TCIAClientUtil;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the client over each of its transports, and the compressed transfer of the metadata, against the embedded
+ * TCIA simulator.
+ */
+public class TestTransport {
+
+	private TCIASimulator simulator;
+
+
+	@Before
+	public void setUp() throws Exception {
+		simulator = new TCIASimulator().setCollections(2).setPatientsPerCollection(3).setInstancesPerSeries(4)
+				.setInstanceSize(8 * 1024).start();
+	}
+
+
+	@After
+	public void tearDown() {
+		TCIAClientUtil.setRetryPolicy(new RetryPolicy());
+		TCIAClientUtil.shutdown();
+		simulator.close();
+	}
+
+
+	/**
+	 * The apache transport is the default, and exposes its connection pool.
+	 */
+	@Test
+	public void testApacheTransport() throws Exception {
+		init(simulator.getConf());
+		assertEquals(ApacheTransport.NAME, TCIAClientUtil.getTransport().getName());
+		assertNotNull(TCIAClientUtil.getConnectionManager());
+		checkTransport();
+	}
+
+
+	/**
+	 * The http2 transport serves the same requests, where the JDK has its HTTP client.
+	 */
+	@Test
+	public void testHttp2Transport() throws Exception {
+		Assume.assumeTrue(Transports.isHttp2Available());
+		TCIAConf tciaConf = simulator.getConf();
+		tciaConf.setTransport(Transports.HTTP2);
+		init(tciaConf);
+		assertEquals(Transports.HTTP2, TCIAClientUtil.getTransport().getName());
+		assertNull(TCIAClientUtil.getConnectionManager());
+		checkTransport();
+	}
+
+
+	/**
+	 * An unknown transport is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownTransport() {
+		TCIAConf tciaConf = simulator.getConf();
+		tciaConf.setTransport("carrier-pigeon");
+		Transports.create(tciaConf);
+	}
+
+
+	/**
+	 * The metadata is transferred compressed, and decodes to the same text as uncompressed.
+	 */
+	@Test
+	public void testCompression() throws Exception {
+		init(simulator.getConf());
+		TCIAClientUtil.setMetricsRecorder(new MetricsRegistry());
+		TCIAClientImpl client = new TCIAClientImpl();
+		String collection = simulator.getCollections().get(1);
+		String compressed = client.getSeries(collection, null, null, null, null, null, null, null, OutputFormat.json);
+		try (Stream<Series> series = client.streamSeries(collection, null, null, null, null, null, null, null)) {
+			assertEquals(3 * 2 * 3, series.count());
+		}
+
+		EndpointSnapshot metrics = TCIAClientUtil.getMetricsSnapshot().getEndpoints().get(ServiceEndpoints.getSeries);
+		assertEquals(metrics.getBytesReceived(), metrics.getEncodedBytesReceived());
+		assertTrue(metrics.getDecodedBytes() > 4 * metrics.getEncodedBytesReceived());
+		assertEquals(0, metrics.getInFlight());
+
+		TCIAClientUtil.setCompressionEnabled(false);
+		try {
+			assertEquals(compressed, client.getSeries(collection, null, null, null, null, null, null, null,
+					OutputFormat.json));
+		} finally {
+			TCIAClientUtil.setCompressionEnabled(true);
+		}
+	}
+
+
+	/**
+	 * The deflate encoding is decoded whether the server sends a zlib stream or raw deflate data.
+	 */
+	@Test
+	public void testDeflate() throws Exception {
+		byte[] text = "SeriesInstanceUID,Modality\n1.2.3,CT\n1.2.4,CT\n".getBytes(StandardCharsets.UTF_8);
+		for (boolean raw : new boolean[]{false, true}) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try (OutputStream out = new DeflaterOutputStream(compressed, new Deflater(Deflater.DEFAULT_COMPRESSION,
+					raw))) {
+				out.write(text);
+			}
+			ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+			try (InputStream in = ContentEncoding.decode(new ByteArrayInputStream(compressed.toByteArray()),
+					ContentEncoding.DEFLATE)) {
+				for (int b = in.read(); b != -1; b = in.read()) {
+					decoded.write(b);
+				}
+			}
+			assertArrayEquals(text, decoded.toByteArray());
+		}
+	}
+
+
+	private void checkTransport() throws Exception {
+		TCIAClientImpl client = new TCIAClientImpl();
+		String collection = simulator.getCollections().get(0);
+		assertTrue(client.getPatient(collection, OutputFormat.csv).startsWith("PatientID"));
+
+		simulator.setDropRate(0.5);
+		Path path = Files.createTempFile("tcia", ".zip");
+		try {
+			ImageResult imageResult = client.downloadImage(simulator.getSeriesInstanceUIDs().get(1), path,
+					new SaveOptions().setResumeAttempts(10));
+			assertEquals(Integer.valueOf(4), imageResult.getImageCount());
+			assertEquals(imageResult.getContentLength(), Files.size(path));
+		} finally {
+			Files.deleteIfExists(path);
+		}
+
+		simulator.setDropRate(0).setErrorRate(1).setRetryAfter(2);
+		try {
+			client.getCollectionValues(OutputFormat.json);
+			fail("The request should have failed");
+		} catch (TCIAServerException e) {
+			assertEquals(503, e.getStatusCode());
+			assertEquals(2000, e.getRetryAfterMillis());
+		}
+	}
+
+
+	/*
+	 * An init restores the default retry policy, which the requests here do without.
+	 */
+	private static void init(TCIAConf tciaConf) {
+		TCIAClientUtil.init(tciaConf);
+		TCIAClientUtil.setRetryPolicy(new RetryPolicy().setMaxAttempts(1));
+	}
+}
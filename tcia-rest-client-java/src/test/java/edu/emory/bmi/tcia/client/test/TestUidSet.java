@@ -0,0 +1,167 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import edu.emory.bmi.tcia.client.bulk.BulkDownloader;
+import edu.emory.bmi.tcia.client.bulk.DownloadResult;
+import edu.emory.bmi.tcia.client.uid.Uid;
+import edu.emory.bmi.tcia.client.uid.UidMap;
+import edu.emory.bmi.tcia.client.uid.UidSet;
+import org.junit.Test;
+
+
+/**
+ * Tests the packed UIDs, and the UID sets and maps against the collections of Strings.
+ */
+public class TestUidSet {
+
+	/**
+	 * The UIDs are packed, and any other identifier is kept as it is.
+	 */
+	@Test
+	public void testUid() {
+		for (String value : Arrays.asList("1.2.840.10008.5.1.4.1.1.2", "1.2.840.10008.5.1.4.1.1.20", "0", "",
+				"TCGA-02-0001", "1.2.3\u00e9")) {
+			assertEquals(value, Uid.of(value).toString());
+			assertEquals(Uid.of(value), Uid.of(value));
+			assertEquals(Uid.of(value).hashCode(), Uid.of(value).hashCode());
+		}
+		assertEquals(32, Uid.encode("1.3.6.1.4.1.14519.5.2.1.7695.4164.123456789012345678901234567890").length);
+		assertFalse(Uid.of("1.2.3").equals(Uid.of("1.2.30")));
+	}
+
+
+	/**
+	 * Random additions and removals leave a UID set and a UID map as they leave a HashSet and a HashMap.
+	 */
+	@Test
+	public void testRandomOperations() {
+		Random random = new Random(42);
+		UidSet uidSet = new UidSet();
+		UidMap<Integer> uidMap = new UidMap<>();
+		Set<String> set = new HashSet<>();
+		Map<String, Integer> map = new HashMap<>();
+		for (int i = 0; i < 200000; i++) {
+			String uid = "1.3.6.1.4.1.14519.5.2.1." + random.nextInt(20000);
+			switch (random.nextInt(4)) {
+			case 0:
+				assertEquals(set.remove(uid), uidSet.remove(uid));
+				assertEquals(map.remove(uid), uidMap.remove(uid));
+				break;
+			case 1:
+				assertEquals(set.contains(uid), uidSet.contains(Uid.of(uid)));
+				assertEquals(map.get(uid), uidMap.get(Uid.of(uid)));
+				break;
+			default:
+				assertEquals(set.add(uid), uidSet.add(uid));
+				assertEquals(map.put(uid, i), uidMap.put(uid, i));
+			}
+			assertEquals(set.size(), uidSet.size());
+		}
+
+		Set<String> iterated = new HashSet<>();
+		uidSet.forEach(iterated::add);
+		assertEquals(set, iterated);
+		Map<String, Integer> entries = new HashMap<>();
+		uidMap.forEach(entries::put);
+		assertEquals(map, entries);
+
+		uidSet.clear();
+		assertTrue(uidSet.isEmpty());
+		assertFalse(uidSet.contains(set.iterator().next()));
+		assertNull(uidMap.get("1.2.3"));
+	}
+
+
+	/**
+	 * The bulk downloader skips the series of its set, and downloads a series listed twice once.
+	 */
+	@Test
+	public void testBulkDownloaderSkipsDownloaded() throws IOException, InterruptedException {
+		List<String> downloads = Collections.synchronizedList(new ArrayList<>());
+		BulkDownloader downloader = new BulkDownloader(null, 2) {
+			@Override
+			protected String downloadSeries(String seriesInstanceUID, String directory) throws Exception {
+				if (seriesInstanceUID.endsWith(".9")) {
+					throw new IOException("Failed " + seriesInstanceUID);
+				}
+				downloads.add(seriesInstanceUID);
+				return directory;
+			}
+		};
+		UidSet downloaded = new UidSet();
+		downloaded.add("1.2.1");
+		downloader.setDownloaded(downloaded);
+
+		Path directory = Files.createTempDirectory("tcia-bulk");
+		try {
+			List<DownloadResult> results = downloader.download(Arrays.asList("1.2.1", "1.2.2", "1.2.9", "1.2.2"),
+					directory.toString());
+			assertEquals(2, results.size());
+			assertEquals(Collections.singletonList("1.2.2"), downloads);
+			assertTrue(downloaded.contains("1.2.2"));
+			assertFalse(downloaded.contains("1.2.9"));
+		} finally {
+			Files.delete(directory);
+		}
+	}
+
+
+	/**
+	 * A series listed again while its failed download is in flight is downloaded again, and a UID too long for the
+	 * set fails alone.
+	 */
+	@Test
+	public void testBulkDownloaderRetriesDuplicate() throws IOException, InterruptedException {
+		List<String> downloads = Collections.synchronizedList(new ArrayList<>());
+		Set<String> failed = Collections.synchronizedSet(new HashSet<>());
+		BulkDownloader downloader = new BulkDownloader(null, 4) {
+			@Override
+			protected String downloadSeries(String seriesInstanceUID, String directory) throws Exception {
+				if (failed.add(seriesInstanceUID)) {
+					Thread.sleep(50);
+					throw new IOException("Failed " + seriesInstanceUID);
+				}
+				downloads.add(seriesInstanceUID);
+				return directory;
+			}
+		};
+		UidSet downloaded = new UidSet();
+		downloader.setDownloaded(downloaded);
+
+		StringBuilder oversize = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			oversize.append('X');
+		}
+		Path directory = Files.createTempDirectory("tcia-bulk");
+		try {
+			List<DownloadResult> results = downloader.download(Arrays.asList("1.2.5", oversize.toString(), "1.2.5",
+					"1.2.5"), directory.toString());
+			assertEquals(3, results.size());
+			assertNotNull(results.get(0).getError());
+			assertTrue(results.get(1).getError() instanceof IllegalArgumentException);
+			assertNull(results.get(2).getError());
+			assertEquals(Collections.singletonList("1.2.5"), downloads);
+			assertTrue(downloaded.contains("1.2.5"));
+		} finally {
+			Files.delete(directory);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package edu.emory.bmi.tcia.client.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import edu.emory.bmi.tcia.client.util.ImageResult;
+import edu.emory.bmi.tcia.client.util.ZipExtractor;
+import org.junit.Test;
+
+
+/**
+ * Tests the extraction of the DICOM files of a ZIP, without accessing the TCIA server.
+ */
+public class TestZipExtractor {
+
+	/**
+	 * The DICOM files are named by their SOPInstanceUID, and the other files by their entry name.
+	 */
+	@Test
+	public void testExtract() throws Exception {
+		byte[] first = newDicomFile("1.2.840.1");
+		byte[] second = newDicomFile("1.2.840.22");
+		byte[] other = "not a DICOM file".getBytes(StandardCharsets.US_ASCII);
+
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		try (ZipOutputStream out = new ZipOutputStream(zip)) {
+			addEntry(out, "1-001.dcm", first);
+			addEntry(out, "1-002.dcm", second);
+			addEntry(out, "series/LICENSE", other);
+		}
+		ImageResult imageResult = new ImageResult();
+		imageResult.setRawData(new ByteArrayInputStream(zip.toByteArray()));
+
+		Path directory = Files.createTempDirectory("tcia-extract");
+		try (ZipExtractor extractor = new ZipExtractor(2, 1024)) {
+			List<Path> paths = extractor.extract(imageResult, directory);
+			assertEquals(3, paths.size());
+			assertEquals(directory.resolve("1.2.840.1.dcm"), paths.get(0));
+			assertEquals(directory.resolve("1.2.840.22.dcm"), paths.get(1));
+			assertEquals(directory.resolve("LICENSE"), paths.get(2));
+		}
+		assertArrayEquals(first, Files.readAllBytes(directory.resolve("1.2.840.1.dcm")));
+		assertArrayEquals(second, Files.readAllBytes(directory.resolve("1.2.840.22.dcm")));
+		assertArrayEquals(other, Files.readAllBytes(directory.resolve("LICENSE")));
+	}
+
+
+	/*
+	 * A DICOM file with a minimal file meta information: the group length, the version and the SOP instance UID.
+	 */
+	private static byte[] newDicomFile(String sopInstanceUID) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(new byte[128], 0, 128);
+		out.write('D');
+		out.write('I');
+		out.write('C');
+		out.write('M');
+		writeElement(out, 0x0000, "UL", new byte[]{0, 0, 0, 0});
+		writeElement(out, 0x0001, "OB", new byte[]{0, 1});
+		byte[] uid = sopInstanceUID.getBytes(StandardCharsets.US_ASCII);
+		// UI values are padded to an even length with a null byte.
+		writeElement(out, 0x0003, "UI", uid.length % 2 == 0 ? uid : Arrays.copyOf(uid, uid.length + 1));
+		out.write(new byte[256], 0, 256);
+		return out.toByteArray();
+	}
+
+
+	private static void writeElement(ByteArrayOutputStream out, int element, String vr, byte[] value) {
+		out.write(0x02);
+		out.write(0x00);
+		out.write(element & 0xff);
+		out.write(element >> 8);
+		out.write(vr.charAt(0));
+		out.write(vr.charAt(1));
+		if (vr.equals("OB")) {
+			out.write(new byte[]{0, 0, (byte) value.length, 0, 0, 0}, 0, 6);
+		} else {
+			out.write(value.length & 0xff);
+			out.write(value.length >> 8);
+		}
+		out.write(value, 0, value.length);
+	}
+
+
+	private static void addEntry(ZipOutputStream out, String name, byte[] data) throws Exception {
+		out.putNextEntry(new ZipEntry(name));
+		out.write(data);
+		out.closeEntry();
+	}
+}